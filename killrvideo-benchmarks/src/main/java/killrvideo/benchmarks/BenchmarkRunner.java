@@ -0,0 +1,31 @@
+package killrvideo.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of benchmarks.jar, same command line as the JMH one but the
+ * gc profiler is always on, so every result comes with its allocation rate
+ * (gc.alloc.rate.norm is the number of bytes allocated per operation).
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar                   # every benchmark
+ * java -jar target/benchmarks.jar TypeConverter     # benchmarks matching a regexp
+ * </pre>
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        final Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .jvmArgsAppend("-Dlogback.configurationFile=logback-benchmarks.xml")
+                .build();
+        new Runner(options).run();
+    }
+}
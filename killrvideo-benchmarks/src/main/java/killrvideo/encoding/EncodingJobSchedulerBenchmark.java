@@ -0,0 +1,96 @@
+package killrvideo.encoding;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import killrvideo.metrics.KillrVideoMetrics;
+import killrvideo.metrics.RequestMetrics;
+
+/**
+ * Videos encoded per second by the scheduler with the simulated encoder, for a burst
+ * of uploads spread over a few tenants. The queueing delay of the jobs is printed at
+ * the end of each trial, to size killrvideo.encoding.workers and
+ * killrvideo.encoding.max.queued.jobs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncodingJobSchedulerBenchmark {
+
+    private static final int VIDEO_BYTES = 256 * 1024;
+    private static final int BURST = 64;
+
+    @Param({"1", "4"})
+    public int workers;
+
+    @Param({"1", "8"})
+    public int tenants;
+
+    /**
+     * Simulated encoder throughput, 256 MiB/s encodes a video in 1ms
+     */
+    @Param({"268435456"})
+    public long bytesPerSecond;
+
+    private Path directory;
+    private Path source;
+    private KillrVideoMetrics metrics;
+    private EncodingJobScheduler scheduler;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("encoding-benchmark");
+        source = directory.resolve("video.mp4");
+        Files.write(source, new byte[VIDEO_BYTES]);
+        metrics = new KillrVideoMetrics();
+        scheduler = new EncodingJobScheduler(new SimulatedTranscoder(bytesPerSecond),
+                (videoId, jobId, oldState, newState) -> CompletableFuture.completedFuture(null),
+                metrics, workers, BURST);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        scheduler.close();
+        final RequestMetrics queue = metrics.encodingJob("queue");
+        System.out.printf("%nQueueing delay: mean %.2f ms, p95 %.2f ms, max %.2f ms%n",
+                queue.getMeanMillis(), queue.get95thPercentileMillis(), queue.getMaxMillis());
+        metrics.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted((a, b) -> b.compareTo(a)).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public int encodeBurst() throws Exception {
+        final CompletableFuture<?>[] jobs = new CompletableFuture<?>[BURST];
+        for (int i = 0; i < BURST; i++) {
+            jobs[i] = scheduler.submit(UUID.randomUUID(), "tenant-" + (i % tenants), EncodingJobScheduler.NORMAL_PRIORITY,
+                    source, directory.resolve("encoded").resolve("video-" + i + ".mp4"));
+        }
+        CompletableFuture.allOf(jobs).get();
+        return jobs.length;
+    }
+}
@@ -0,0 +1,54 @@
+package killrvideo.entity;
+
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import killrvideo.statistics.StatisticsServiceOuterClass.PlayStats;
+import killrvideo.video_catalog.VideoCatalogServiceOuterClass.VideoPreview;
+
+/**
+ * Row to protobuf mappings done for every row returned by the read paths
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntityToProtobufBenchmark {
+
+    private LatestVideos latestVideo;
+    private VideoPlaybackStats playbackStats;
+
+    @Setup
+    public void setup() {
+        latestVideo = new LatestVideos("20171107", UUID.randomUUID(), UUID.randomUUID(),
+                "Getting started with Apache Cassandra", "//img.youtube.com/vi/abcdefghijk/hqdefault.jpg", new Date());
+
+        playbackStats = new VideoPlaybackStats();
+        playbackStats.setVideoid(UUID.randomUUID());
+        playbackStats.setViews(123456L);
+    }
+
+    @Benchmark
+    public VideoPreview latestVideosToVideoPreview() {
+        return latestVideo.toVideoPreview();
+    }
+
+    @Benchmark
+    public PlayStats videoPlaybackStatsToPlayStats() {
+        return playbackStats.toPlayStats();
+    }
+}
@@ -0,0 +1,52 @@
+package killrvideo.loadtest;
+
+import java.util.concurrent.TimeUnit;
+
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import killrvideo.comments.CommentsServiceGrpc;
+import killrvideo.comments.CommentsServiceGrpc.CommentsServiceFutureStub;
+import killrvideo.ratings.RatingsServiceGrpc;
+import killrvideo.ratings.RatingsServiceGrpc.RatingsServiceFutureStub;
+import killrvideo.search.SearchServiceGrpc;
+import killrvideo.search.SearchServiceGrpc.SearchServiceFutureStub;
+import killrvideo.statistics.StatisticsServiceGrpc;
+import killrvideo.statistics.StatisticsServiceGrpc.StatisticsServiceFutureStub;
+import killrvideo.user_management.UserManagementServiceGrpc;
+import killrvideo.user_management.UserManagementServiceGrpc.UserManagementServiceFutureStub;
+import killrvideo.video_catalog.VideoCatalogServiceGrpc;
+import killrvideo.video_catalog.VideoCatalogServiceGrpc.VideoCatalogServiceFutureStub;
+
+/**
+ * Stubs of the services bound by GrpcServer, sharing a single channel.
+ * Future stubs only, closed loop clients simply wait for the futures.
+ */
+final class Clients implements AutoCloseable {
+
+    final CommentsServiceFutureStub comments;
+    final RatingsServiceFutureStub ratings;
+    final SearchServiceFutureStub search;
+    final StatisticsServiceFutureStub statistics;
+    final UserManagementServiceFutureStub userManagement;
+    final VideoCatalogServiceFutureStub videoCatalog;
+
+    private final ManagedChannel channel;
+
+    Clients(String host, int port) {
+        this.channel = ManagedChannelBuilder
+                .forAddress(host, port)
+                .usePlaintext(true)
+                .build();
+        this.comments = CommentsServiceGrpc.newFutureStub(channel);
+        this.ratings = RatingsServiceGrpc.newFutureStub(channel);
+        this.search = SearchServiceGrpc.newFutureStub(channel);
+        this.statistics = StatisticsServiceGrpc.newFutureStub(channel);
+        this.userManagement = UserManagementServiceGrpc.newFutureStub(channel);
+        this.videoCatalog = VideoCatalogServiceGrpc.newFutureStub(channel);
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        channel.shutdown().awaitTermination(5, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,165 @@
+package killrvideo.loadtest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntFunction;
+
+import com.datastax.driver.core.utils.UUIDs;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import killrvideo.comments.CommentsServiceOuterClass.CommentOnVideoRequest;
+import killrvideo.common.CommonTypes.TimeUuid;
+import killrvideo.common.CommonTypes.Uuid;
+import killrvideo.user_management.UserManagementServiceOuterClass.CreateUserRequest;
+import killrvideo.video_catalog.VideoCatalogServiceOuterClass.SubmitYouTubeVideoRequest;
+
+/**
+ * Users and videos the calls are made on, created through the services
+ * before the run so that every table is written the way the server writes it.
+ *
+ * Video popularity is skewed, a few videos get most of the reads like on
+ * a real video site, which gives the near cache and the counters hot keys.
+ */
+final class Dataset {
+
+    static final List<String> TAGS = Arrays.asList(
+            "cassandra", "cql", "datastax", "dse", "graph", "gremlin", "solr", "search", "spark", "analytics",
+            "java", "python", "nodejs", "csharp", "go", "grpc", "protobuf", "docker", "kubernetes", "cloud",
+            "data modeling", "time series", "replication", "consistency", "compaction", "tombstones", "repair",
+            "security", "performance", "tuning", "monitoring", "streaming", "kafka", "microservices", "tutorial",
+            "conference", "webinar", "meetup", "demo", "keynote");
+
+    private static final int TAGS_PER_VIDEO = 3;
+    private static final int SEED_CONCURRENCY = 64;
+
+    private final UUID[] users;
+    private final UUID[] videos;
+    private final double videoSkew;
+
+    Dataset(int users, int videos, double videoSkew) {
+        this.users = new UUID[users];
+        this.videos = new UUID[videos];
+        this.videoSkew = videoSkew;
+        for (int i = 0; i < users; i++) {
+            this.users[i] = UUID.randomUUID();
+        }
+        for (int i = 0; i < videos; i++) {
+            this.videos[i] = UUID.randomUUID();
+        }
+    }
+
+    /**
+     * Create the users, submit the videos and post the comments, blocks until every call is answered
+     */
+    void seed(Clients clients, int commentsPerVideo) throws InterruptedException {
+        callAll(users.length, i -> clients.userManagement.createUser(CreateUserRequest.newBuilder()
+                .setUserId(uuid(users[i]))
+                .setFirstName("First" + i)
+                .setLastName("Last" + i)
+                .setEmail(email(i))
+                .setPassword(password(i))
+                .build()));
+
+        callAll(videos.length, i -> clients.videoCatalog.submitYouTubeVideo(
+                video(videos[i], users[i % users.length], i)));
+
+        callAll(videos.length * commentsPerVideo, i -> clients.comments.commentOnVideo(
+                comment(videos[i / commentsPerVideo], users[i % users.length])));
+    }
+
+    int userCount() {
+        return users.length;
+    }
+
+    UUID user(int index) {
+        return users[index];
+    }
+
+    UUID randomUser() {
+        return users[ThreadLocalRandom.current().nextInt(users.length)];
+    }
+
+    /**
+     * Pick a video, the lower the index the more popular the video
+     */
+    UUID randomVideo() {
+        final double position = Math.pow(ThreadLocalRandom.current().nextDouble(), videoSkew);
+        return videos[(int) (position * videos.length)];
+    }
+
+    String randomTag() {
+        return TAGS.get(ThreadLocalRandom.current().nextInt(TAGS.size()));
+    }
+
+    static String email(int userIndex) {
+        return "user" + userIndex + "@killrvideo.test";
+    }
+
+    static String password(int userIndex) {
+        return "password" + userIndex;
+    }
+
+    static SubmitYouTubeVideoRequest video(UUID videoId, UUID userId, int index) {
+        final List<String> tags = new ArrayList<>(TAGS_PER_VIDEO);
+        for (int i = 0; i < TAGS_PER_VIDEO; i++) {
+            tags.add(TAGS.get((index * 7 + i * 13) % TAGS.size()));
+        }
+        return SubmitYouTubeVideoRequest.newBuilder()
+                .setVideoId(uuid(videoId))
+                .setUserId(uuid(userId))
+                .setName("Video " + index + " about " + String.join(" and ", tags))
+                .setDescription("Everything about " + String.join(", ", tags) + " in video " + index)
+                .addAllTags(tags)
+                .setYouTubeVideoId(String.format("yt%09d", index))
+                .build();
+    }
+
+    static CommentOnVideoRequest comment(UUID videoId, UUID userId) {
+        return CommentOnVideoRequest.newBuilder()
+                .setVideoId(uuid(videoId))
+                .setUserId(uuid(userId))
+                .setCommentId(TimeUuid.newBuilder().setValue(UUIDs.timeBased().toString()))
+                .setComment("Great video, thanks for sharing !")
+                .build();
+    }
+
+    static Uuid uuid(UUID uuid) {
+        return Uuid.newBuilder().setValue(uuid.toString()).build();
+    }
+
+    /**
+     * Make count calls with at most SEED_CONCURRENCY of them waiting for an answer
+     */
+    private static void callAll(int count, IntFunction<ListenableFuture<?>> call) throws InterruptedException {
+        final Semaphore permits = new Semaphore(SEED_CONCURRENCY);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        for (int i = 0; i < count && failure.get() == null; i++) {
+            permits.acquire();
+            Futures.addCallback(call.apply(i), new FutureCallback<Object>() {
+                @Override
+                public void onSuccess(Object result) {
+                    permits.release();
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    failure.compareAndSet(null, t);
+                    permits.release();
+                }
+            }, MoreExecutors.directExecutor());
+        }
+        permits.acquire(SEED_CONCURRENCY);
+
+        if (failure.get() != null) {
+            throw new IllegalStateException("Seeding failed : " + failure.get(), failure.get());
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package killrvideo.loadtest;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import io.grpc.Status;
+
+/**
+ * Latencies of the successful calls of one operation, in microseconds,
+ * and count of the failed ones by gRPC status.
+ *
+ * Calls are recorded lock free from any thread, the reporter drains them
+ * every interval into a histogram holding the whole measured run.
+ */
+final class LatencyStats {
+
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(10);
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private final Recorder recorder = new Recorder(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+    private final Map<Status.Code, LongAdder> errors = new ConcurrentHashMap<>();
+    private final LongAdder errorCount = new LongAdder();
+    private final Histogram total = newHistogram();
+    private Histogram interval;
+
+    static Histogram newHistogram() {
+        return new Histogram(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+    }
+
+    void recordSuccess(long latencyNanos) {
+        recorder.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(latencyNanos), HIGHEST_TRACKABLE_MICROS));
+    }
+
+    void recordFailure(Throwable failure) {
+        errors.computeIfAbsent(Status.fromThrowable(failure).getCode(), code -> new LongAdder()).increment();
+        errorCount.increment();
+    }
+
+    /**
+     * Latencies recorded since the previous call, also added to {@link #total()}.
+     * The histogram returned is reused by the next call.
+     */
+    synchronized Histogram drainInterval() {
+        interval = recorder.getIntervalHistogram(interval);
+        total.add(interval);
+        return interval;
+    }
+
+    /**
+     * Forget every call recorded so far, at the end of the warmup
+     */
+    synchronized void reset() {
+        interval = recorder.getIntervalHistogram(interval);
+        total.reset();
+        errors.clear();
+        errorCount.reset();
+    }
+
+    synchronized Histogram total() {
+        return total;
+    }
+
+    long errorCount() {
+        return errorCount.sum();
+    }
+
+    Map<Status.Code, Long> errorsByStatus() {
+        final Map<Status.Code, Long> byStatus = new TreeMap<>();
+        errors.forEach((code, count) -> byStatus.put(code, count.sum()));
+        return byStatus;
+    }
+}
@@ -0,0 +1,163 @@
+package killrvideo.loadtest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * Send the calls of the mix until stopped, either from a fixed number of
+ * threads each waiting for the answer before the next call (closed loop)
+ * or at a fixed rate whatever the answers (open loop).
+ *
+ * In open loop the latency of a call is measured from the time it was meant
+ * to be sent, not from the time it was actually sent: when the server falls
+ * behind, the calls that queued up in the client count as slow calls instead
+ * of disappearing from the measures (coordinated omission).
+ */
+final class LoadGenerator {
+
+    private final Clients clients;
+    private final Dataset dataset;
+    private final LoadTestOptions options;
+    private final Operation[] operations;
+    private final int[] cumulativeWeights;
+    private final Map<Operation, LatencyStats> stats;
+    private final List<Thread> threads = new ArrayList<>();
+    private final Semaphore inFlight;
+
+    private volatile boolean running;
+
+    LoadGenerator(Clients clients, Dataset dataset, LoadTestOptions options) {
+        this.clients = clients;
+        this.dataset = dataset;
+        this.options = options;
+        this.operations = options.mix.keySet().toArray(new Operation[0]);
+        this.cumulativeWeights = new int[operations.length];
+        final Map<Operation, LatencyStats> stats = new EnumMap<>(Operation.class);
+        int cumulative = 0;
+        for (int i = 0; i < operations.length; i++) {
+            cumulative += options.mix.get(operations[i]);
+            cumulativeWeights[i] = cumulative;
+            stats.put(operations[i], new LatencyStats());
+        }
+        this.stats = Collections.unmodifiableMap(stats);
+        this.inFlight = new Semaphore(options.maxInFlight);
+    }
+
+    void start() {
+        running = true;
+        if (options.mode == LoadTestOptions.Mode.CLOSED) {
+            for (int i = 0; i < options.concurrency; i++) {
+                threads.add(new Thread(this::closedLoop, "loadtest-client-" + i));
+            }
+        } else {
+            threads.add(new Thread(this::openLoop, "loadtest-sender"));
+        }
+        threads.forEach(Thread::start);
+    }
+
+    /**
+     * Stop sending and wait for the answers of the calls in flight
+     */
+    void stop() throws InterruptedException {
+        running = false;
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (inFlight.tryAcquire(options.maxInFlight, 30, TimeUnit.SECONDS)) {
+            inFlight.release(options.maxInFlight);
+        }
+    }
+
+    Map<Operation, LatencyStats> stats() {
+        return stats;
+    }
+
+    private void closedLoop() {
+        while (running) {
+            final Operation operation = nextOperation();
+            final LatencyStats operationStats = stats.get(operation);
+            final long start = System.nanoTime();
+            try {
+                operation.call(clients, dataset).get();
+                operationStats.recordSuccess(System.nanoTime() - start);
+            } catch (ExecutionException ex) {
+                operationStats.recordFailure(ex.getCause());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException ex) {
+                operationStats.recordFailure(ex);
+            }
+        }
+    }
+
+    private void openLoop() {
+        final long period = TimeUnit.SECONDS.toNanos(1) / options.rate;
+        long intendedStart = System.nanoTime();
+        while (running) {
+            final long wait = intendedStart - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+                continue;
+            }
+            try {
+                if (!inFlight.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+                    continue;
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            send(nextOperation(), intendedStart);
+            intendedStart += period;
+        }
+    }
+
+    private void send(Operation operation, long intendedStart) {
+        final LatencyStats operationStats = stats.get(operation);
+        final ListenableFuture<?> call;
+        try {
+            call = operation.call(clients, dataset);
+        } catch (RuntimeException ex) {
+            operationStats.recordFailure(ex);
+            inFlight.release();
+            return;
+        }
+        Futures.addCallback(call, new FutureCallback<Object>() {
+            @Override
+            public void onSuccess(Object result) {
+                operationStats.recordSuccess(System.nanoTime() - intendedStart);
+                inFlight.release();
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                operationStats.recordFailure(t);
+                inFlight.release();
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    private Operation nextOperation() {
+        final int pick = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < operations.length; i++) {
+            if (pick < cumulativeWeights[i]) {
+                return operations[i];
+            }
+        }
+        throw new IllegalStateException("Cannot pick an operation for " + pick);
+    }
+}
@@ -0,0 +1,242 @@
+package killrvideo.loadtest;
+
+import static java.lang.String.format;
+import static killrvideo.utils.ExceptionUtils.mergeStackTrace;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.Banner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.google.common.io.ByteStreams;
+
+import io.grpc.Status;
+import killrvideo.KillrVideoServer;
+import killrvideo.configuration.KillrVideoProperties;
+import killrvideo.entity.Schema;
+import killrvideo.grpc.GrpcServer;
+import killrvideo.loadtest.cql.CqlStandIn;
+import killrvideo.loadtest.cql.LatencyInjector;
+
+/**
+ * Load test of the seven services bound by GrpcServer, on one box and without DSE nor etcd.
+ *
+ * The server runs in this JVM as it does in production, same Spring context, driver,
+ * prepared statements and mapper, connected to a CQL stand-in answering the native
+ * protocol from memory with an injected latency. The seeded data is created through
+ * the services, then the calls of the mix are sent in closed or open loop and the
+ * latency percentiles of each call are reported, along with the throughput and the
+ * number of CQL requests each call costs.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar killrvideo.loadtest.LoadTest --mode=open --rate=5000 --duration=120
+ * </pre>
+ *
+ * The server connects to the stand-in on the loopback address, --cql.port defaults to 9042.
+ */
+public class LoadTest {
+
+    private static final String LOGGING_CONFIGURATION = "logback-loadtest.xml";
+
+    public static void main(String[] args) throws Exception {
+        final LoadTestOptions options;
+        try {
+            options = LoadTestOptions.parse(args);
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.err.println();
+            System.err.println(LoadTestOptions.USAGE);
+            System.exit(2);
+            return;
+        }
+
+        if (System.getProperty("logback.configurationFile") == null) {
+            System.setProperty("logback.configurationFile", LOGGING_CONFIGURATION);
+        }
+
+        final LatencyInjector latency = new LatencyInjector(options.latencyBaseMicros, options.latencyJitterMicros,
+                options.latencySlowRatio, options.latencySlowMicros);
+        System.out.println(options);
+        System.out.println("CQL latency " + latency);
+
+        int status = 0;
+        try (CqlStandIn standIn = new CqlStandIn(new InetSocketAddress(InetAddress.getLoopbackAddress(), options.cqlPort),
+                latency, options.cqlThreads)) {
+            standIn.executeScript(resource("cql/keyspace.cql"), null);
+            standIn.executeScript(resource("cql/schema.cql"), Schema.KEYSPACE);
+            standIn.start();
+
+            final ConfigurableApplicationContext context = startServer(options);
+            try (Clients clients = new Clients(InetAddress.getLoopbackAddress().getHostAddress(), options.grpcPort)) {
+                run(options, standIn, clients);
+            } finally {
+                context.getBean(GrpcServer.class).stop();
+                context.close();
+            }
+        } catch (Exception ex) {
+            System.err.println("Load test failed : " + mergeStackTrace(ex));
+            status = 1;
+        }
+
+        /**
+         * The driver and gRPC threads would keep the JVM alive
+         */
+        System.exit(status);
+    }
+
+    private static void run(LoadTestOptions options, CqlStandIn standIn, Clients clients) throws Exception {
+        final Dataset dataset = new Dataset(options.users, options.videos, options.videoSkew);
+        long start = System.nanoTime();
+        dataset.seed(clients, options.commentsPerVideo);
+        awaitQuiescence(standIn);
+        System.out.println(format("Seeded in %.1fs, %d CQL requests", seconds(System.nanoTime() - start),
+                standIn.requests()));
+
+        final LoadGenerator generator = new LoadGenerator(clients, dataset, options);
+        generator.start();
+        if (options.warmupSeconds > 0) {
+            System.out.println(format("Warming up for %ds", options.warmupSeconds));
+            TimeUnit.SECONDS.sleep(options.warmupSeconds);
+        }
+        generator.stats().values().forEach(LatencyStats::reset);
+        final long cqlRequestsAtStart = standIn.requests();
+        start = System.nanoTime();
+
+        System.out.println(format("%8s %12s %10s %10s %10s %8s", "time", "calls/s", "p50 ms", "p99 ms", "max ms",
+                "errors"));
+        final long end = start + TimeUnit.SECONDS.toNanos(options.durationSeconds);
+        final long interval = TimeUnit.SECONDS.toNanos(options.reportIntervalSeconds);
+        long previousReport = start;
+        long previousErrors = 0;
+        while (System.nanoTime() < end) {
+            final long nextReport = Math.min(previousReport + interval, end);
+            TimeUnit.NANOSECONDS.sleep(nextReport - System.nanoTime());
+
+            final Histogram calls = LatencyStats.newHistogram();
+            long errors = 0;
+            for (LatencyStats stats : generator.stats().values()) {
+                calls.add(stats.drainInterval());
+                errors += stats.errorCount();
+            }
+            final long now = System.nanoTime();
+            System.out.println(format("%7.0fs %12.0f %10.3f %10.3f %10.3f %8d", seconds(now - start),
+                    calls.getTotalCount() / seconds(now - previousReport), millis(calls.getValueAtPercentile(50)),
+                    millis(calls.getValueAtPercentile(99)), millis(calls.getMaxValue()), errors - previousErrors));
+            previousReport = now;
+            previousErrors = errors;
+        }
+        generator.stop();
+        final double elapsedSeconds = seconds(System.nanoTime() - start);
+        final long cqlRequests = standIn.requests() - cqlRequestsAtStart;
+        generator.stats().values().forEach(LatencyStats::drainInterval);
+
+        report(generator.stats(), elapsedSeconds, cqlRequests);
+    }
+
+    private static void report(Map<Operation, LatencyStats> stats, double elapsedSeconds, long cqlRequests) {
+        final String header = "%-24s %10s %8s %10s %9s %9s %9s %9s %9s%n";
+        final String line = "%-24s %10d %8d %10.1f %9.3f %9.3f %9.3f %9.3f %9.3f%n";
+        System.out.println();
+        System.out.printf(header, "call", "count", "errors", "calls/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms",
+                "max ms");
+
+        final Histogram all = LatencyStats.newHistogram();
+        final Map<Status.Code, Long> errorsByStatus = new LinkedHashMap<>();
+        long errors = 0;
+        for (Map.Entry<Operation, LatencyStats> entry : stats.entrySet()) {
+            final Histogram total = entry.getValue().total();
+            all.add(total);
+            errors += entry.getValue().errorCount();
+            entry.getValue().errorsByStatus().forEach((code, count) -> errorsByStatus.merge(code, count, Long::sum));
+            System.out.printf(line, entry.getKey().callName(), total.getTotalCount(), entry.getValue().errorCount(),
+                    total.getTotalCount() / elapsedSeconds, millis(total.getValueAtPercentile(50)),
+                    millis(total.getValueAtPercentile(90)), millis(total.getValueAtPercentile(99)),
+                    millis(total.getValueAtPercentile(99.9)), millis(total.getMaxValue()));
+        }
+        System.out.printf(line, "all", all.getTotalCount(), errors, all.getTotalCount() / elapsedSeconds,
+                millis(all.getValueAtPercentile(50)), millis(all.getValueAtPercentile(90)),
+                millis(all.getValueAtPercentile(99)), millis(all.getValueAtPercentile(99.9)),
+                millis(all.getMaxValue()));
+
+        System.out.println();
+        System.out.println(format("%.0f CQL requests/s, %.2f per call", cqlRequests / elapsedSeconds,
+                all.getTotalCount() + errors == 0 ? 0.0 : (double) cqlRequests / (all.getTotalCount() + errors)));
+        if (!errorsByStatus.isEmpty()) {
+            System.out.println("Errors by status " + errorsByStatus);
+        }
+    }
+
+    /**
+     * Start the same Spring context as KillrVideoServer, without etcd registration and
+     * with the mutation journal in a temporary directory
+     */
+    private static ConfigurableApplicationContext startServer(LoadTestOptions options) throws Exception {
+        final Map<String, String> properties = new LinkedHashMap<>();
+        properties.put(KillrVideoProperties.ETCD_REGISTRATION, "false");
+        properties.put(KillrVideoProperties.APPLICATION_PORT, String.valueOf(options.grpcPort));
+        properties.put(KillrVideoProperties.DSE_CONTACT_POINTS, InetAddress.getLoopbackAddress().getHostAddress());
+        properties.put(KillrVideoProperties.DSE_PORT, String.valueOf(options.cqlPort));
+        properties.put(KillrVideoProperties.MUTATION_JOURNAL_DIR,
+                Files.createTempDirectory("killrvideo-loadtest-journal").toString());
+        if (System.getProperty("logging.config") == null) {
+            properties.put("logging.config", "classpath:" + LOGGING_CONFIGURATION);
+        }
+        for (String argument : options.serverArguments) {
+            final int equals = argument.indexOf('=');
+            properties.put(argument.substring(2, equals), argument.substring(equals + 1));
+        }
+        final String[] arguments = properties.entrySet().stream()
+                .map(property -> "--" + property.getKey() + "=" + property.getValue())
+                .toArray(String[]::new);
+
+        final SpringApplication application = new SpringApplication(KillrVideoServer.class);
+        application.setWebEnvironment(false);
+        application.setBannerMode(Banner.Mode.OFF);
+        final ConfigurableApplicationContext context = application.run(arguments);
+        context.getBean(GrpcServer.class).start();
+        return context;
+    }
+
+    /**
+     * Wait for the work triggered by the seeding calls, tags indexing, statistics flushes... to complete
+     */
+    private static void awaitQuiescence(CqlStandIn standIn) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        long requests = standIn.requests();
+        while (System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(500);
+            final long current = standIn.requests();
+            if (current == requests) {
+                return;
+            }
+            requests = current;
+        }
+    }
+
+    private static String resource(String name) throws IOException {
+        try (InputStream in = LoadTest.class.getClassLoader().getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IllegalStateException("Cannot find resource " + name);
+            }
+            return new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1e9;
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+}
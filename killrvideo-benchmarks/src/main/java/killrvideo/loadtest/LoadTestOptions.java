@@ -0,0 +1,181 @@
+package killrvideo.loadtest;
+
+import static java.lang.Double.parseDouble;
+import static java.lang.Integer.parseInt;
+import static java.lang.Long.parseLong;
+import static java.lang.String.format;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Command line of {@link LoadTest}, every option is given as --name=value.
+ * Options starting with "killrvideo." are handed over to the server
+ * so its thread pools, caches... can be tuned from the same command line.
+ */
+final class LoadTestOptions {
+
+    enum Mode {
+        /**
+         * Each client thread waits for the answer before sending the next call,
+         * the throughput is whatever the server can sustain
+         */
+        CLOSED,
+
+        /**
+         * Calls are sent at a fixed rate whatever the server answers,
+         * latencies are measured from the time each call should have been sent
+         */
+        OPEN
+    }
+
+    static final String USAGE = String.join("\n",
+            "java -cp target/benchmarks.jar killrvideo.loadtest.LoadTest [--option=value]...",
+            "",
+            "  --mode=closed|open          closed: fixed concurrency, open: fixed arrival rate (closed)",
+            "  --concurrency=32            client threads in closed mode",
+            "  --rate=2000                 calls per second in open mode",
+            "  --max.inflight=10000        calls waiting for an answer in open mode before the sender blocks",
+            "  --warmup=10                 seconds of load before the measures start",
+            "  --duration=60               seconds of measured load",
+            "  --report.interval=5         seconds between two progress lines",
+            "  --users=200                 users created before the run",
+            "  --videos=1000               videos submitted before the run",
+            "  --comments=10               comments posted on every video before the run",
+            "  --video.skew=2.0            popularity skew of the videos, 1.0 is uniform",
+            "  --latency.base.us=200       delay added by the CQL stand-in to every query",
+            "  --latency.jitter.us=300     upper bound of the random delay added to every query",
+            "  --latency.slow.ratio=0.01   fraction of the queries taking the slow path",
+            "  --latency.slow.us=5000      delay added to the queries taking the slow path",
+            "  --cql.threads=8             threads answering the queries in the CQL stand-in",
+            "  --cql.port=9042             port of the CQL stand-in",
+            "  --grpc.port=8899            port of the gRPC server",
+            "  --mix=getVideo:30,...       weight of each call, calls left out are not sent",
+            "  --killrvideo.*=...          any server property, e.g. --killrvideo.grpc.executor.mode=fixed",
+            "",
+            "Calls: " + Operation.names());
+
+    final Mode mode;
+    final int concurrency;
+    final int rate;
+    final int maxInFlight;
+    final long warmupSeconds;
+    final long durationSeconds;
+    final long reportIntervalSeconds;
+    final int users;
+    final int videos;
+    final int commentsPerVideo;
+    final double videoSkew;
+    final long latencyBaseMicros;
+    final long latencyJitterMicros;
+    final double latencySlowRatio;
+    final long latencySlowMicros;
+    final int cqlThreads;
+    final int cqlPort;
+    final int grpcPort;
+    final Map<Operation, Integer> mix;
+    final List<String> serverArguments;
+
+    private LoadTestOptions(Map<String, String> options, List<String> serverArguments) {
+        this.mode = Mode.valueOf(take(options, "mode", "closed").toUpperCase());
+        this.concurrency = parseInt(take(options, "concurrency", "32"));
+        this.rate = parseInt(take(options, "rate", "2000"));
+        this.maxInFlight = parseInt(take(options, "max.inflight", "10000"));
+        this.warmupSeconds = parseLong(take(options, "warmup", "10"));
+        this.durationSeconds = parseLong(take(options, "duration", "60"));
+        this.reportIntervalSeconds = parseLong(take(options, "report.interval", "5"));
+        this.users = parseInt(take(options, "users", "200"));
+        this.videos = parseInt(take(options, "videos", "1000"));
+        this.commentsPerVideo = parseInt(take(options, "comments", "10"));
+        this.videoSkew = parseDouble(take(options, "video.skew", "2.0"));
+        this.latencyBaseMicros = parseLong(take(options, "latency.base.us", "200"));
+        this.latencyJitterMicros = parseLong(take(options, "latency.jitter.us", "300"));
+        this.latencySlowRatio = parseDouble(take(options, "latency.slow.ratio", "0.01"));
+        this.latencySlowMicros = parseLong(take(options, "latency.slow.us", "5000"));
+        this.cqlThreads = parseInt(take(options, "cql.threads", "8"));
+        this.cqlPort = parseInt(take(options, "cql.port", "9042"));
+        this.grpcPort = parseInt(take(options, "grpc.port", "8899"));
+        this.mix = parseMix(take(options, "mix", Operation.DEFAULT_MIX));
+        this.serverArguments = serverArguments;
+
+        if (!options.isEmpty()) {
+            throw new IllegalArgumentException("Unknown options " + options.keySet());
+        }
+        if (concurrency <= 0 || rate <= 0 || maxInFlight <= 0 || durationSeconds <= 0 || reportIntervalSeconds <= 0) {
+            throw new IllegalArgumentException("concurrency, rate, max.inflight, duration and report.interval must be > 0");
+        }
+        if (users <= 0 || videos <= 0 || commentsPerVideo < 0) {
+            throw new IllegalArgumentException("users and videos must be > 0, comments must be >= 0");
+        }
+        if (videoSkew < 1.0) {
+            throw new IllegalArgumentException("video.skew must be >= 1.0");
+        }
+    }
+
+    static LoadTestOptions parse(String[] args) {
+        final Map<String, String> options = new LinkedHashMap<>();
+        final List<String> serverArguments = new ArrayList<>();
+        for (String arg : args) {
+            final int equals = arg.indexOf('=');
+            if (!arg.startsWith("--") || equals < 0) {
+                throw new IllegalArgumentException(format("Invalid argument %s, expecting --name=value", arg));
+            }
+            if (arg.startsWith("--killrvideo.")) {
+                serverArguments.add(arg);
+            } else {
+                options.put(arg.substring(2, equals), arg.substring(equals + 1));
+            }
+        }
+        return new LoadTestOptions(options, serverArguments);
+    }
+
+    /**
+     * Parse "name:weight,name:weight", with the names of {@link Operation#callName()}
+     */
+    static Map<Operation, Integer> parseMix(String mix) {
+        final Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String entry : mix.split(",")) {
+            final String[] nameAndWeight = entry.trim().split(":");
+            if (nameAndWeight.length != 2) {
+                throw new IllegalArgumentException(format("Invalid mix entry %s, expecting name:weight", entry));
+            }
+            final int weight = parseInt(nameAndWeight[1].trim());
+            if (weight < 0) {
+                throw new IllegalArgumentException(format("Invalid mix entry %s, weight must be >= 0", entry));
+            }
+            if (weight > 0) {
+                weights.put(Operation.fromCallName(nameAndWeight[0].trim()), weight);
+            }
+        }
+        if (weights.isEmpty()) {
+            throw new IllegalArgumentException("The mix must contain at least one call");
+        }
+        return weights;
+    }
+
+    private static String take(Map<String, String> options, String name, String defaultValue) {
+        final String value = options.remove(name);
+        return value == null ? defaultValue : value;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder description = new StringBuilder();
+        if (mode == Mode.CLOSED) {
+            description.append(format("closed loop, %d client threads", concurrency));
+        } else {
+            description.append(format("open loop, %d calls/s, at most %d in flight", rate, maxInFlight));
+        }
+        description.append(format(", %ds warmup, %ds measured", warmupSeconds, durationSeconds));
+        description.append(format("%n%d users, %d videos, %d comments per video, video skew %.1f",
+                users, videos, commentsPerVideo, videoSkew));
+        description.append("\nmix ").append(mix);
+        if (!serverArguments.isEmpty()) {
+            description.append("\nserver ").append(serverArguments);
+        }
+        return description.toString();
+    }
+}
@@ -0,0 +1,237 @@
+package killrvideo.loadtest;
+
+import static killrvideo.loadtest.Dataset.uuid;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import killrvideo.comments.CommentsServiceOuterClass.GetVideoCommentsRequest;
+import killrvideo.comments.CommentsServiceOuterClass.GetVideoCommentsResponse;
+import killrvideo.ratings.RatingsServiceOuterClass.GetRatingRequest;
+import killrvideo.ratings.RatingsServiceOuterClass.RateVideoRequest;
+import killrvideo.search.SearchServiceOuterClass.GetQuerySuggestionsRequest;
+import killrvideo.search.SearchServiceOuterClass.SearchVideosRequest;
+import killrvideo.statistics.StatisticsServiceOuterClass.GetNumberOfPlaysRequest;
+import killrvideo.statistics.StatisticsServiceOuterClass.RecordPlaybackStartedRequest;
+import killrvideo.user_management.UserManagementServiceOuterClass.GetUserProfileRequest;
+import killrvideo.user_management.UserManagementServiceOuterClass.VerifyCredentialsRequest;
+import killrvideo.video_catalog.VideoCatalogServiceOuterClass.GetLatestVideoPreviewsRequest;
+import killrvideo.video_catalog.VideoCatalogServiceOuterClass.GetUserVideoPreviewsRequest;
+import killrvideo.video_catalog.VideoCatalogServiceOuterClass.GetVideoRequest;
+
+/**
+ * Calls a load test is made of, each one is what a page of the web
+ * application sends to one service.
+ */
+enum Operation {
+
+    GET_VIDEO {
+        @Override
+        ListenableFuture<?> call(Clients clients, Dataset dataset) {
+            return clients.videoCatalog.getVideo(GetVideoRequest.newBuilder()
+                    .setVideoId(uuid(dataset.randomVideo()))
+                    .build());
+        }
+    },
+
+    /**
+     * First page of the comments of a video then, when there is one, the next page
+     */
+    GET_VIDEO_COMMENTS {
+        @Override
+        ListenableFuture<?> call(Clients clients, Dataset dataset) {
+            final GetVideoCommentsRequest firstPage = GetVideoCommentsRequest.newBuilder()
+                    .setVideoId(uuid(dataset.randomVideo()))
+                    .setPageSize(COMMENTS_PAGE_SIZE)
+                    .build();
+            return Futures.transformAsync(clients.comments.getVideoComments(firstPage),
+                    (GetVideoCommentsResponse response) -> response.getPagingState().isEmpty()
+                            ? Futures.immediateFuture(response)
+                            : clients.comments.getVideoComments(firstPage.toBuilder()
+                                    .setPagingState(response.getPagingState())
+                                    .build()),
+                    MoreExecutors.directExecutor());
+        }
+    },
+
+    COMMENT_ON_VIDEO {
+        @Override
+        ListenableFuture<?> call(Clients clients, Dataset dataset) {
+            return clients.comments.commentOnVideo(Dataset.comment(dataset.randomVideo(), dataset.randomUser()));
+        }
+    },
+
+    RATE_VIDEO {
+        @Override
+        ListenableFuture<?> call(Clients clients, Dataset dataset) {
+            return clients.ratings.rateVideo(RateVideoRequest.newBuilder()
+                    .setVideoId(uuid(dataset.randomVideo()))
+                    .setUserId(uuid(dataset.randomUser()))
+                    .setRating(1 + ThreadLocalRandom.current().nextInt(5))
+                    .build());
+        }
+    },
+
+    GET_RATING {
+        @Override
+        ListenableFuture<?> call(Clients clients, Dataset dataset) {
+            return clients.ratings.getRating(GetRatingRequest.newBuilder()
+                    .setVideoId(uuid(dataset.randomVideo()))
+                    .build());
+        }
+    },
+
+    RECORD_PLAYBACK_STARTED {
+        @Override
+        ListenableFuture<?> call(Clients clients, Dataset dataset) {
+            return clients.statistics.recordPlaybackStarted(RecordPlaybackStartedRequest.newBuilder()
+                    .setVideoId(uuid(dataset.randomVideo()))
+                    .build());
+        }
+    },
+
+    /**
+     * Views of a row of video previews
+     */
+    GET_NUMBER_OF_PLAYS {
+        @Override
+        ListenableFuture<?> call(Clients clients, Dataset dataset) {
+            final GetNumberOfPlaysRequest.Builder request = GetNumberOfPlaysRequest.newBuilder();
+            for (int i = 0; i < PREVIEWS_ROW_SIZE; i++) {
+                request.addVideoIds(uuid(dataset.randomVideo()));
+            }
+            return clients.statistics.getNumberOfPlays(request.build());
+        }
+    },
+
+    /**
+     * Suggestions while typing the first letters of a tag
+     */
+    GET_QUERY_SUGGESTIONS {
+        @Override
+        ListenableFuture<?> call(Clients clients, Dataset dataset) {
+            final String tag = dataset.randomTag();
+            final int typed = 1 + ThreadLocalRandom.current().nextInt(Math.min(3, tag.length()));
+            return clients.search.getQuerySuggestions(GetQuerySuggestionsRequest.newBuilder()
+                    .setQuery(tag.substring(0, typed))
+                    .setPageSize(SUGGESTIONS_PAGE_SIZE)
+                    .build());
+        }
+    },
+
+    SEARCH_VIDEOS {
+        @Override
+        ListenableFuture<?> call(Clients clients, Dataset dataset) {
+            return clients.search.searchVideos(SearchVideosRequest.newBuilder()
+                    .setQuery(dataset.randomTag())
+                    .setPageSize(PREVIEWS_PAGE_SIZE)
+                    .build());
+        }
+    },
+
+    GET_LATEST_VIDEO_PREVIEWS {
+        @Override
+        ListenableFuture<?> call(Clients clients, Dataset dataset) {
+            return clients.videoCatalog.getLatestVideoPreviews(GetLatestVideoPreviewsRequest.newBuilder()
+                    .setPageSize(PREVIEWS_PAGE_SIZE)
+                    .build());
+        }
+    },
+
+    GET_USER_VIDEO_PREVIEWS {
+        @Override
+        ListenableFuture<?> call(Clients clients, Dataset dataset) {
+            return clients.videoCatalog.getUserVideoPreviews(GetUserVideoPreviewsRequest.newBuilder()
+                    .setUserId(uuid(dataset.randomUser()))
+                    .setPageSize(PREVIEWS_PAGE_SIZE)
+                    .build());
+        }
+    },
+
+    /**
+     * Authors of the comments of a page
+     */
+    GET_USER_PROFILE {
+        @Override
+        ListenableFuture<?> call(Clients clients, Dataset dataset) {
+            final GetUserProfileRequest.Builder request = GetUserProfileRequest.newBuilder();
+            for (int i = 0; i < COMMENTS_PAGE_SIZE; i++) {
+                request.addUserIds(uuid(dataset.randomUser()));
+            }
+            return clients.userManagement.getUserProfile(request.build());
+        }
+    },
+
+    VERIFY_CREDENTIALS {
+        @Override
+        ListenableFuture<?> call(Clients clients, Dataset dataset) {
+            final int user = ThreadLocalRandom.current().nextInt(dataset.userCount());
+            return clients.userManagement.verifyCredentials(VerifyCredentialsRequest.newBuilder()
+                    .setEmail(Dataset.email(user))
+                    .setPassword(Dataset.password(user))
+                    .build());
+        }
+    },
+
+    /**
+     * New videos are not added to the dataset, the reads keep hitting the seeded ones
+     */
+    SUBMIT_YOUTUBE_VIDEO {
+        @Override
+        ListenableFuture<?> call(Clients clients, Dataset dataset) {
+            final int index = ThreadLocalRandom.current().nextInt(Integer.MAX_VALUE);
+            return clients.videoCatalog.submitYouTubeVideo(
+                    Dataset.video(UUID.randomUUID(), dataset.randomUser(), index));
+        }
+    };
+
+    static final String DEFAULT_MIX = "getVideo:30,getVideoComments:10,commentOnVideo:2,rateVideo:5,getRating:5,"
+            + "recordPlaybackStarted:15,getNumberOfPlays:5,getQuerySuggestions:8,searchVideos:4,"
+            + "getLatestVideoPreviews:5,getUserVideoPreviews:4,getUserProfile:4,verifyCredentials:1,"
+            + "submitYouTubeVideo:2";
+
+    private static final int COMMENTS_PAGE_SIZE = 5;
+    private static final int PREVIEWS_PAGE_SIZE = 10;
+    private static final int PREVIEWS_ROW_SIZE = 4;
+    private static final int SUGGESTIONS_PAGE_SIZE = 5;
+
+    /**
+     * Send the call, the future fails with a StatusRuntimeException when the server answers an error
+     */
+    abstract ListenableFuture<?> call(Clients clients, Dataset dataset);
+
+    /**
+     * Name of the rpc in camel case, e.g. getVideo
+     */
+    String callName() {
+        final StringBuilder name = new StringBuilder();
+        for (String word : name().toLowerCase().split("_")) {
+            name.append(name.length() == 0 ? word : Character.toUpperCase(word.charAt(0)) + word.substring(1));
+        }
+        return name.toString();
+    }
+
+    static Operation fromCallName(String callName) {
+        for (Operation operation : values()) {
+            if (operation.callName().equals(callName)) {
+                return operation;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Unknown call %s, expecting one of %s", callName, names()));
+    }
+
+    static String names() {
+        return Arrays.stream(values()).map(Operation::callName).collect(Collectors.joining(", "));
+    }
+
+    @Override
+    public String toString() {
+        return callName();
+    }
+}
@@ -0,0 +1,32 @@
+package killrvideo.loadtest.cql;
+
+/**
+ * Failure sent back to the driver as an ERROR frame
+ */
+class CqlException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    static final int SERVER_ERROR = 0x0000;
+    static final int PROTOCOL_ERROR = 0x000A;
+    static final int SYNTAX_ERROR = 0x2000;
+    static final int INVALID = 0x2200;
+    static final int UNPREPARED = 0x2500;
+
+    final int code;
+
+    /**
+     * Id of the statement the driver must prepare again, for {@link #UNPREPARED}
+     */
+    final byte[] preparedId;
+
+    CqlException(int code, String message) {
+        this(code, message, null);
+    }
+
+    CqlException(int code, String message, byte[] preparedId) {
+        super(message);
+        this.code = code;
+        this.preparedId = preparedId;
+    }
+}
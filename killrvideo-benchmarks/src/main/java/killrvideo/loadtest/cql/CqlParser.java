@@ -0,0 +1,586 @@
+package killrvideo.loadtest.cql;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import killrvideo.loadtest.cql.Statement.Assignment;
+import killrvideo.loadtest.cql.Statement.Relation;
+import killrvideo.loadtest.cql.Statement.Selector;
+
+/**
+ * Recursive descent parser of the CQL subset used by KillrVideo, the
+ * mapper and the driver: SELECT, INSERT, UPDATE, DELETE, USE, and the
+ * CREATE KEYSPACE and CREATE TABLE of the schema scripts.
+ */
+final class CqlParser {
+
+    private static final Pattern UUID_LITERAL = Pattern.compile(
+            "[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+    private static final Pattern NUMBER = Pattern.compile("-?\\d+(\\.\\d+)?([eE][-+]?\\d+)?");
+
+    private enum Type { IDENTIFIER, QUOTED_IDENTIFIER, STRING, NUMBER, SYMBOL, END }
+
+    private static final class Token {
+        final Type type;
+        final String text;
+
+        Token(Type type, String text) {
+            this.type = type;
+            this.text = text;
+        }
+
+        boolean is(String keywordOrSymbol) {
+            return (type == Type.IDENTIFIER || type == Type.SYMBOL) && text.equals(keywordOrSymbol);
+        }
+
+        @Override
+        public String toString() {
+            return type == Type.END ? "end of statement" : text;
+        }
+    }
+
+    private final List<Token> tokens;
+    private final String defaultKeyspace;
+    private final List<String> markerNames = new ArrayList<>();
+    private int position = 0;
+
+    private CqlParser(String cql, String defaultKeyspace) {
+        this.tokens = tokenize(cql);
+        this.defaultKeyspace = defaultKeyspace;
+    }
+
+    /**
+     * @param defaultKeyspace keyspace of the unqualified table names, may be null
+     */
+    static Statement parse(String cql, String defaultKeyspace) {
+        final CqlParser parser = new CqlParser(cql, defaultKeyspace);
+        final Statement statement = parser.statement();
+        parser.accept(";");
+        if (parser.peek().type != Type.END) {
+            throw parser.error();
+        }
+        statement.markerNames.addAll(parser.markerNames);
+        return statement;
+    }
+
+    /**
+     * @return the statements of a script, separated by semicolons
+     */
+    static List<String> split(String script) {
+        final List<String> statements = new ArrayList<>();
+        final StringBuilder current = new StringBuilder();
+        for (Token token : tokenize(script)) {
+            if (token.is(";") || token.type == Type.END) {
+                if (current.length() > 0) {
+                    statements.add(current.toString());
+                    current.setLength(0);
+                }
+            } else {
+                current.append(current.length() > 0 ? " " : "").append(quote(token));
+            }
+        }
+        return statements;
+    }
+
+    private static String quote(Token token) {
+        switch (token.type) {
+            case STRING:
+                return "'" + token.text.replace("'", "''") + "'";
+            case QUOTED_IDENTIFIER:
+                return "\"" + token.text.replace("\"", "\"\"") + "\"";
+            default:
+                return token.text;
+        }
+    }
+
+    private static List<Token> tokenize(String cql) {
+        final List<Token> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < cql.length()) {
+            final char c = cql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (cql.startsWith("--", i) || cql.startsWith("//", i)) {
+                final int end = cql.indexOf('\n', i);
+                i = end < 0 ? cql.length() : end + 1;
+            } else if (cql.startsWith("/*", i)) {
+                final int end = cql.indexOf("*/", i + 2);
+                i = end < 0 ? cql.length() : end + 2;
+            } else if (c == '\'' || c == '"') {
+                final StringBuilder text = new StringBuilder();
+                int j = i + 1;
+                while (true) {
+                    if (j >= cql.length()) {
+                        throw new CqlException(CqlException.SYNTAX_ERROR, "Unterminated quote at " + i);
+                    }
+                    if (cql.charAt(j) == c) {
+                        if (j + 1 < cql.length() && cql.charAt(j + 1) == c) {
+                            text.append(c);
+                            j += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    text.append(cql.charAt(j++));
+                }
+                tokens.add(new Token(c == '\'' ? Type.STRING : Type.QUOTED_IDENTIFIER, text.toString()));
+                i = j + 1;
+            } else {
+                final Matcher uuid = UUID_LITERAL.matcher(cql).region(i, cql.length());
+                final Matcher number = NUMBER.matcher(cql).region(i, cql.length());
+                if (uuid.lookingAt()) {
+                    tokens.add(new Token(Type.STRING, uuid.group()));
+                    i = uuid.end();
+                } else if ((Character.isDigit(c) || c == '-') && number.lookingAt()) {
+                    tokens.add(new Token(Type.NUMBER, number.group()));
+                    i = number.end();
+                } else if (Character.isLetter(c) || c == '_') {
+                    int j = i;
+                    while (j < cql.length() && (Character.isLetterOrDigit(cql.charAt(j)) || cql.charAt(j) == '_')) {
+                        j++;
+                    }
+                    tokens.add(new Token(Type.IDENTIFIER, cql.substring(i, j).toLowerCase()));
+                    i = j;
+                } else if (cql.startsWith("<=", i) || cql.startsWith(">=", i) || cql.startsWith("!=", i)) {
+                    tokens.add(new Token(Type.SYMBOL, cql.substring(i, i + 2)));
+                    i += 2;
+                } else {
+                    tokens.add(new Token(Type.SYMBOL, String.valueOf(c)));
+                    i++;
+                }
+            }
+        }
+        tokens.add(new Token(Type.END, ""));
+        return tokens;
+    }
+
+    private Token peek() {
+        return tokens.get(position);
+    }
+
+    private Token next() {
+        final Token token = tokens.get(position);
+        if (token.type != Type.END) {
+            position++;
+        }
+        return token;
+    }
+
+    private boolean accept(String keywordOrSymbol) {
+        if (peek().is(keywordOrSymbol)) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(String keywordOrSymbol) {
+        if (!accept(keywordOrSymbol)) {
+            throw error();
+        }
+    }
+
+    private CqlException error() {
+        return new CqlException(CqlException.SYNTAX_ERROR, "line 1: no viable alternative at input '" + peek() + "'");
+    }
+
+    private String identifier() {
+        final Token token = peek();
+        if (token.type != Type.IDENTIFIER && token.type != Type.QUOTED_IDENTIFIER) {
+            throw error();
+        }
+        position++;
+        return token.text;
+    }
+
+    /**
+     * @return keyspace and table of a possibly qualified table name
+     */
+    private String[] tableName() {
+        final String first = identifier();
+        if (accept(".")) {
+            return new String[] { first, identifier() };
+        }
+        return new String[] { defaultKeyspace, first };
+    }
+
+    private Term term() {
+        final Token token = peek();
+        if (token.type == Type.END) {
+            throw error();
+        }
+        position++;
+        if (token.is("?")) {
+            markerNames.add(null);
+            return Term.marker(markerNames.size() - 1);
+        }
+        if (token.is(":")) {
+            markerNames.add(identifier());
+            return Term.marker(markerNames.size() - 1);
+        }
+        if (token.type == Type.STRING || token.type == Type.NUMBER) {
+            return Term.literal(token.text);
+        }
+        if (token.is("true") || token.is("false")) {
+            return Term.literal(token.text);
+        }
+        if (token.is("null")) {
+            return Term.nullLiteral();
+        }
+        position--;
+        throw error();
+    }
+
+    private boolean isMarker() {
+        return peek().is("?") || peek().is(":");
+    }
+
+    private Statement statement() {
+        if (accept("select")) {
+            return select();
+        }
+        if (accept("insert")) {
+            return insert();
+        }
+        if (accept("update")) {
+            return update();
+        }
+        if (accept("delete")) {
+            return delete();
+        }
+        if (accept("use")) {
+            final Statement.Use use = new Statement.Use();
+            use.keyspace = identifier();
+            return use;
+        }
+        if (accept("create")) {
+            if (accept("keyspace")) {
+                return createKeyspace();
+            }
+            if (accept("table") || accept("columnfamily")) {
+                return createTable();
+            }
+        }
+        throw error();
+    }
+
+    private Statement select() {
+        final Statement.Select select = new Statement.Select();
+        if (!accept("*")) {
+            select.selectors = new ArrayList<>();
+            do {
+                String function = null;
+                String column = identifier();
+                if (accept("(")) {
+                    function = column;
+                    column = identifier();
+                    expect(")");
+                }
+                select.selectors.add(new Selector(function, column, accept("as") ? identifier() : null));
+            } while (accept(","));
+        }
+        expect("from");
+        final String[] table = tableName();
+        select.keyspace = table[0];
+        select.tableName = table[1];
+        if (accept("where")) {
+            relations(select.where);
+        }
+        if (accept("order")) {
+            expect("by");
+            select.orderColumn = identifier();
+            select.orderDescending = accept("desc");
+            if (!select.orderDescending) {
+                accept("asc");
+            }
+        }
+        if (accept("limit")) {
+            select.limit = term();
+        }
+        if (accept("allow")) {
+            expect("filtering");
+        }
+        return select;
+    }
+
+    private void relations(List<Relation> relations) {
+        do {
+            if (accept("(")) {
+                final List<String> columns = new ArrayList<>();
+                do {
+                    columns.add(identifier());
+                } while (accept(","));
+                expect(")");
+                final String operator = operator();
+                expect("(");
+                final List<Term> terms = new ArrayList<>();
+                do {
+                    terms.add(term());
+                } while (accept(","));
+                expect(")");
+                relations.add(new Relation(columns, operator, terms, false));
+            } else {
+                final List<String> column = Collections.singletonList(identifier());
+                if (accept("in")) {
+                    if (isMarker()) {
+                        relations.add(new Relation(column, "IN", Collections.singletonList(term()), true));
+                    } else {
+                        final List<Term> terms = new ArrayList<>();
+                        expect("(");
+                        if (!peek().is(")")) {
+                            do {
+                                terms.add(term());
+                            } while (accept(","));
+                        }
+                        expect(")");
+                        relations.add(new Relation(column, "IN", terms, false));
+                    }
+                } else {
+                    final String operator = operator();
+                    relations.add(new Relation(column, operator, Collections.singletonList(term()), false));
+                }
+            }
+        } while (accept("and"));
+    }
+
+    private String operator() {
+        for (String operator : new String[] { "=", "<", "<=", ">", ">=" }) {
+            if (accept(operator)) {
+                return operator;
+            }
+        }
+        throw error();
+    }
+
+    private Statement insert() {
+        final Statement.Insert insert = new Statement.Insert();
+        expect("into");
+        final String[] table = tableName();
+        insert.keyspace = table[0];
+        insert.tableName = table[1];
+        expect("(");
+        do {
+            insert.columnNames.add(identifier());
+        } while (accept(","));
+        expect(")");
+        expect("values");
+        expect("(");
+        do {
+            insert.terms.add(term());
+        } while (accept(","));
+        expect(")");
+        while (true) {
+            if (accept("if")) {
+                expect("not");
+                expect("exists");
+                insert.ifNotExists = true;
+            } else if (accept("using")) {
+                final Term[] using = using();
+                insert.ttl = using[0];
+                insert.timestamp = using[1];
+            } else {
+                return insert;
+            }
+        }
+    }
+
+    /**
+     * @return the TTL and the TIMESTAMP of a USING clause, either may be null
+     */
+    private Term[] using() {
+        final Term[] using = new Term[2];
+        do {
+            if (accept("ttl")) {
+                using[0] = term();
+            } else {
+                expect("timestamp");
+                using[1] = term();
+            }
+        } while (accept("and"));
+        return using;
+    }
+
+    private Statement update() {
+        final Statement.Update update = new Statement.Update();
+        final String[] table = tableName();
+        update.keyspace = table[0];
+        update.tableName = table[1];
+        if (accept("using")) {
+            final Term[] using = using();
+            update.ttl = using[0];
+            update.timestamp = using[1];
+        }
+        expect("set");
+        do {
+            final String column = identifier();
+            expect("=");
+            if (peek().type == Type.IDENTIFIER && peek().text.equals(column)) {
+                next();
+                final int sign = accept("+") ? 1 : 0;
+                if (sign == 0) {
+                    expect("-");
+                }
+                update.assignments.add(new Assignment(column, term(), sign == 0 ? -1 : 1));
+            } else {
+                update.assignments.add(new Assignment(column, term(), 0));
+            }
+        } while (accept(","));
+        expect("where");
+        relations(update.where);
+        if (accept("if")) {
+            expect("exists");
+            update.ifExists = true;
+        }
+        return update;
+    }
+
+    private Statement delete() {
+        final Statement.Delete delete = new Statement.Delete();
+        if (!peek().is("from")) {
+            do {
+                delete.columnNames.add(identifier());
+            } while (accept(","));
+        }
+        expect("from");
+        final String[] table = tableName();
+        delete.keyspace = table[0];
+        delete.tableName = table[1];
+        if (accept("using")) {
+            expect("timestamp");
+            delete.timestamp = term();
+        }
+        expect("where");
+        relations(delete.where);
+        return delete;
+    }
+
+    private boolean ifNotExists() {
+        if (accept("if")) {
+            expect("not");
+            expect("exists");
+            return true;
+        }
+        return false;
+    }
+
+    private Statement createKeyspace() {
+        final Statement.CreateKeyspace create = new Statement.CreateKeyspace();
+        create.ifNotExists = ifNotExists();
+        create.keyspace = identifier();
+        expect("with");
+        do {
+            final String option = identifier();
+            expect("=");
+            if (option.equals("replication")) {
+                map(create.replication);
+            } else if (option.equals("durable_writes")) {
+                create.durableWrites = Boolean.parseBoolean(next().text);
+            } else {
+                throw new CqlException(CqlException.SYNTAX_ERROR, "Unknown keyspace property " + option);
+            }
+        } while (accept("and"));
+        return create;
+    }
+
+    private void map(Map<String, String> map) {
+        expect("{");
+        if (!peek().is("}")) {
+            do {
+                final String key = next().text;
+                expect(":");
+                map.put(key, next().text);
+            } while (accept(","));
+        }
+        expect("}");
+    }
+
+    private Statement createTable() {
+        final Statement.CreateTable create = new Statement.CreateTable();
+        create.ifNotExists = ifNotExists();
+        final String[] table = tableName();
+        create.keyspace = table[0];
+        create.tableName = table[1];
+        expect("(");
+        do {
+            if (accept("primary")) {
+                expect("key");
+                expect("(");
+                if (accept("(")) {
+                    do {
+                        create.partitionKey.add(identifier());
+                    } while (accept(","));
+                    expect(")");
+                } else {
+                    create.partitionKey.add(identifier());
+                }
+                while (accept(",")) {
+                    create.clustering.add(identifier());
+                }
+                expect(")");
+            } else {
+                final String column = identifier();
+                create.columnTypes.put(column, CqlType.parse(type()));
+                if (accept("static")) {
+                    create.staticColumns.add(column);
+                }
+                if (accept("primary")) {
+                    expect("key");
+                    create.partitionKey.add(column);
+                }
+            }
+        } while (accept(","));
+        expect(")");
+        if (accept("with")) {
+            do {
+                if (accept("clustering")) {
+                    expect("order");
+                    expect("by");
+                    expect("(");
+                    do {
+                        final String column = identifier();
+                        if (accept("desc")) {
+                            create.descending.add(column);
+                        } else {
+                            accept("asc");
+                        }
+                    } while (accept(","));
+                    expect(")");
+                } else {
+                    // Storage options mean nothing to the stand-in
+                    identifier();
+                    expect("=");
+                    if (peek().is("{")) {
+                        map(new HashMap<>());
+                    } else {
+                        next();
+                    }
+                }
+            } while (accept("and"));
+        }
+        return create;
+    }
+
+    /**
+     * @return a type as text, with its parameters for collections
+     */
+    private String type() {
+        final StringBuilder type = new StringBuilder(identifier());
+        if (accept("<")) {
+            type.append('<');
+            do {
+                type.append(type());
+                if (peek().is(",")) {
+                    type.append(',');
+                }
+            } while (accept(","));
+            expect(">");
+            type.append('>');
+        }
+        return type.toString();
+    }
+}
@@ -0,0 +1,495 @@
+package killrvideo.loadtest.cql;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import killrvideo.loadtest.cql.Result.ColumnSpec;
+
+/**
+ * In-process stand-in for a single Cassandra node, serving the CQL native
+ * protocol v4 from memory.
+ *
+ * The driver, the mapper and the prepared statements of KillrVideo run
+ * unchanged against it: the node answers the driver's discovery queries
+ * from its own system tables, prepares and executes the CQL subset used by
+ * the services (see {@link CqlParser}) and delays each answer with a
+ * {@link LatencyInjector}, without the cost of a real node skewing the
+ * measures of the process under test.
+ *
+ * Data is only kept in memory, there is no compaction, no paxos (conditional
+ * statements are applied under the partition lock) and deletions are not
+ * purged.
+ */
+public final class CqlStandIn implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CqlStandIn.class);
+
+    private static final int PROTOCOL_VERSION = 4;
+
+    private static final int ERROR = 0x00;
+    private static final int STARTUP = 0x01;
+    private static final int READY = 0x02;
+    private static final int OPTIONS = 0x05;
+    private static final int SUPPORTED = 0x06;
+    private static final int QUERY = 0x07;
+    private static final int RESULT = 0x08;
+    private static final int PREPARE = 0x09;
+    private static final int EXECUTE = 0x0A;
+    private static final int REGISTER = 0x0B;
+    private static final int BATCH = 0x0D;
+
+    private static final int FLAG_COMPRESSION = 0x01;
+    private static final int FLAG_CUSTOM_PAYLOAD = 0x04;
+
+    private static final int VALUES = 0x01;
+    private static final int SKIP_METADATA = 0x02;
+    private static final int PAGE_SIZE = 0x04;
+    private static final int PAGING_STATE = 0x08;
+    private static final int SERIAL_CONSISTENCY = 0x10;
+    private static final int DEFAULT_TIMESTAMP = 0x20;
+    private static final int NAMES_FOR_VALUES = 0x40;
+
+    private final InetSocketAddress address;
+    private final LatencyInjector latency;
+    private final Database database;
+    private final Map<String, Statement> preparedStatements = new ConcurrentHashMap<>();
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private final ScheduledThreadPoolExecutor workers;
+    private final LongAdder requests = new LongAdder();
+    private ServerSocket serverSocket;
+
+    /**
+     * @param address to listen on, the address of the node in its system tables
+     * @param latency added to every query
+     * @param workerThreads running the queries
+     */
+    public CqlStandIn(InetSocketAddress address, LatencyInjector latency, int workerThreads) {
+        this.address = address;
+        this.latency = latency;
+        this.database = new Database(address.getAddress());
+        final AtomicInteger threadNumber = new AtomicInteger();
+        this.workers = new ScheduledThreadPoolExecutor(workerThreads, runnable -> {
+            final Thread thread = new Thread(runnable, "cql-stand-in-worker-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Run a CQL script such as schema.cql, before or while serving
+     *
+     * @param keyspace of the unqualified table names until the script USEs another one, may be null
+     */
+    public void executeScript(String script, String keyspace) {
+        String current = keyspace;
+        for (String cql : CqlParser.split(script)) {
+            final Statement statement = CqlParser.parse(cql, current);
+            statement.prepare(database);
+            final Result result = statement.execute(database, new byte[0][], QueryOptions.DEFAULT);
+            if (result instanceof Result.SetKeyspace) {
+                current = ((Result.SetKeyspace) result).keyspace;
+            }
+        }
+    }
+
+    public void start() throws IOException {
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(address);
+        final Thread acceptor = new Thread(this::accept, "cql-stand-in-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        LOGGER.info("CQL stand-in listening on " + address + ", latency " + latency);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (serverSocket != null) {
+            serverSocket.close();
+        }
+        for (Socket connection : connections) {
+            connection.close();
+        }
+        workers.shutdownNow();
+    }
+
+    /**
+     * @return number of queries, preparations and batches received so far
+     */
+    public long requests() {
+        return requests.sum();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                final Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                connections.add(socket);
+                final Thread reader = new Thread(() -> serve(socket), "cql-stand-in-" + socket.getRemoteSocketAddress());
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException ex) {
+                if (!serverSocket.isClosed()) {
+                    LOGGER.error("Exception accepting a CQL connection : " + ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Read the frames of a connection, the queries are answered by the workers
+     */
+    private void serve(Socket socket) {
+        final Connection connection = new Connection(socket);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            final byte[] header = new byte[9];
+            while (true) {
+                in.readFully(header);
+                final ByteBuffer buffer = ByteBuffer.wrap(header);
+                final int version = buffer.get() & 0x7F;
+                final int flags = buffer.get();
+                final int stream = buffer.getShort();
+                final int opcode = buffer.get();
+                final byte[] body = new byte[buffer.getInt()];
+                in.readFully(body);
+
+                if (version != PROTOCOL_VERSION) {
+                    // The driver tries again with the version of this answer
+                    connection.write(error(new CqlException(CqlException.PROTOCOL_ERROR,
+                            "Invalid or unsupported protocol version (" + version + "); supported versions are (4/v4)"))
+                            .toFrame(stream, ERROR));
+                    break;
+                }
+                if ((flags & FLAG_COMPRESSION) != 0) {
+                    connection.write(error(new CqlException(CqlException.PROTOCOL_ERROR, "Compression is not supported"))
+                            .toFrame(stream, ERROR));
+                    break;
+                }
+                final ByteBuffer request = ByteBuffer.wrap(body);
+                if ((flags & FLAG_CUSTOM_PAYLOAD) != 0) {
+                    for (int entries = request.getShort(); entries > 0; entries--) {
+                        readString(request);
+                        readBytes(request);
+                    }
+                }
+                connection.receive(stream, opcode, request);
+            }
+        } catch (EOFException | SocketException ex) {
+            LOGGER.debug("CQL connection closed " + socket.getRemoteSocketAddress());
+        } catch (IOException ex) {
+            LOGGER.error("Exception reading a CQL connection : " + ex);
+        } finally {
+            connections.remove(socket);
+            try {
+                socket.close();
+            } catch (IOException ex) {
+                LOGGER.debug("Exception closing a CQL connection : " + ex);
+            }
+        }
+    }
+
+    private final class Connection {
+        private final OutputStream out;
+        private volatile String keyspace;
+
+        Connection(Socket socket) {
+            try {
+                this.out = new BufferedOutputStream(socket.getOutputStream());
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        void receive(int stream, int opcode, ByteBuffer request) throws IOException {
+            switch (opcode) {
+                case STARTUP:
+                case REGISTER:
+                    write(new FrameWriter().toFrame(stream, READY));
+                    return;
+                case OPTIONS:
+                    final Map<String, List<String>> supported = new LinkedHashMap<>();
+                    supported.put("CQL_VERSION", Collections.singletonList("3.4.4"));
+                    supported.put("COMPRESSION", Collections.emptyList());
+                    supported.put("PROTOCOL_VERSIONS", Collections.singletonList("4/v4"));
+                    write(new FrameWriter().writeStringMultimap(supported).toFrame(stream, SUPPORTED));
+                    return;
+                case QUERY:
+                case PREPARE:
+                case EXECUTE:
+                case BATCH:
+                    requests.increment();
+                    try {
+                        workers.schedule(() -> respond(stream, opcode, request), latency.nextDelayMicros(),
+                                TimeUnit.MICROSECONDS);
+                    } catch (RejectedExecutionException ex) {
+                        LOGGER.debug("CQL stand-in stopped");
+                    }
+                    return;
+                default:
+                    write(error(new CqlException(CqlException.PROTOCOL_ERROR, "Unsupported opcode " + opcode))
+                            .toFrame(stream, ERROR));
+            }
+        }
+
+        private void respond(int stream, int opcode, ByteBuffer request) {
+            byte[] frame;
+            try {
+                final FrameWriter out = new FrameWriter();
+                switch (opcode) {
+                    case QUERY:
+                        query(request, out);
+                        break;
+                    case PREPARE:
+                        prepare(readLongString(request)).write(out, false);
+                        break;
+                    case EXECUTE:
+                        execute(request, out);
+                        break;
+                    default:
+                        batch(request, out);
+                }
+                frame = out.toFrame(stream, RESULT);
+            } catch (CqlException ex) {
+                frame = error(ex).toFrame(stream, ERROR);
+            } catch (RuntimeException ex) {
+                LOGGER.error("Exception running a CQL request : " + ex, ex);
+                frame = error(new CqlException(CqlException.SERVER_ERROR, String.valueOf(ex))).toFrame(stream, ERROR);
+            }
+            try {
+                write(frame);
+            } catch (IOException ex) {
+                LOGGER.debug("Exception answering a CQL request : " + ex);
+            }
+        }
+
+        private void query(ByteBuffer request, FrameWriter out) {
+            final Statement statement = CqlParser.parse(readLongString(request), keyspace);
+            statement.prepare(database);
+            final Bound bound = readParameters(request, statement);
+            final Result result = statement.execute(database, bound.values, bound.options);
+            if (result instanceof Result.SetKeyspace) {
+                keyspace = ((Result.SetKeyspace) result).keyspace;
+            }
+            result.write(out, bound.options.skipMetadata);
+        }
+
+        private Result.Prepared prepare(String cql) {
+            final Statement statement = CqlParser.parse(cql, keyspace);
+            statement.prepare(database);
+            final byte[] id = md5((keyspace == null ? "" : keyspace) + cql);
+            preparedStatements.put(hex(id), statement);
+            return new Result.Prepared(id, statement.variables(), statement.partitionKeyIndexes(),
+                    statement.resultColumns());
+        }
+
+        private Statement prepared(byte[] id) {
+            final Statement statement = preparedStatements.get(hex(id));
+            if (statement == null) {
+                throw new CqlException(CqlException.UNPREPARED, "Prepared query with ID " + hex(id) + " not found", id);
+            }
+            return statement;
+        }
+
+        private void execute(ByteBuffer request, FrameWriter out) {
+            final Statement statement = prepared(readShortBytes(request));
+            final Bound bound = readParameters(request, statement);
+            statement.execute(database, bound.values, bound.options).write(out, bound.options.skipMetadata);
+        }
+
+        private void batch(ByteBuffer request, FrameWriter out) {
+            request.get();
+            final List<Statement> statements = new ArrayList<>();
+            final List<byte[][]> values = new ArrayList<>();
+            for (int count = request.getShort(); count > 0; count--) {
+                final Statement statement;
+                if (request.get() == 0) {
+                    statement = CqlParser.parse(readLongString(request), keyspace);
+                    statement.prepare(database);
+                } else {
+                    statement = prepared(readShortBytes(request));
+                }
+                if (statement.isConditional()) {
+                    throw new CqlException(CqlException.INVALID, "Conditional batches are not supported by the stand-in");
+                }
+                final byte[][] statementValues = new byte[request.getShort()][];
+                for (int i = 0; i < statementValues.length; i++) {
+                    statementValues[i] = readValue(request);
+                }
+                statements.add(statement);
+                values.add(statementValues);
+            }
+            request.getShort();
+            final int flags = request.get();
+            if ((flags & SERIAL_CONSISTENCY) != 0) {
+                request.getShort();
+            }
+            final long timestamp = (flags & DEFAULT_TIMESTAMP) != 0 ? request.getLong() : database.nowMicros();
+            final QueryOptions options = new QueryOptions(-1, null, timestamp, false);
+            for (int i = 0; i < statements.size(); i++) {
+                statements.get(i).execute(database, values.get(i), options);
+            }
+            Result.NONE.write(out, false);
+        }
+
+        private Bound readParameters(ByteBuffer request, Statement statement) {
+            request.getShort();
+            final int flags = request.get();
+            final List<ColumnSpec> variables = statement.variables();
+            byte[][] values = new byte[0][];
+            if ((flags & VALUES) != 0) {
+                values = new byte[request.getShort()][];
+                final String[] names = new String[values.length];
+                for (int i = 0; i < values.length; i++) {
+                    if ((flags & NAMES_FOR_VALUES) != 0) {
+                        names[i] = readString(request);
+                    }
+                    values[i] = readValue(request);
+                }
+                if ((flags & NAMES_FOR_VALUES) != 0) {
+                    values = byName(variables, names, values);
+                }
+            }
+            if (values.length != variables.size()) {
+                throw new CqlException(CqlException.INVALID,
+                        "There were " + variables.size() + " markers(?) in CQL but " + values.length + " bound variables");
+            }
+            final int pageSize = (flags & PAGE_SIZE) != 0 ? request.getInt() : -1;
+            final byte[] pagingState = (flags & PAGING_STATE) != 0 ? readValue(request) : null;
+            if ((flags & SERIAL_CONSISTENCY) != 0) {
+                request.getShort();
+            }
+            final long timestamp = (flags & DEFAULT_TIMESTAMP) != 0 ? request.getLong() : QueryOptions.NO_TIMESTAMP;
+            return new Bound(values, new QueryOptions(pageSize, pagingState, timestamp, (flags & SKIP_METADATA) != 0));
+        }
+
+        private byte[][] byName(List<ColumnSpec> variables, String[] names, byte[][] values) {
+            final byte[][] ordered = new byte[variables.size()][];
+            Arrays.fill(ordered, Term.UNSET);
+            for (int i = 0; i < names.length; i++) {
+                boolean found = false;
+                for (int j = 0; j < ordered.length; j++) {
+                    if (variables.get(j).name.equals(names[i])) {
+                        ordered[j] = values[i];
+                        found = true;
+                    }
+                }
+                if (!found) {
+                    throw new CqlException(CqlException.INVALID, "Invalid bound variable name " + names[i]);
+                }
+            }
+            return ordered;
+        }
+
+        synchronized void write(byte[] frame) throws IOException {
+            out.write(frame);
+            out.flush();
+        }
+    }
+
+    private static final class Bound {
+        final byte[][] values;
+        final QueryOptions options;
+
+        Bound(byte[][] values, QueryOptions options) {
+            this.values = values;
+            this.options = options;
+        }
+    }
+
+    private static FrameWriter error(CqlException ex) {
+        final FrameWriter out = new FrameWriter().writeInt(ex.code).writeString(String.valueOf(ex.getMessage()));
+        if (ex.code == CqlException.UNPREPARED) {
+            out.writeShortBytes(ex.preparedId);
+        }
+        return out;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String readLongString(ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readShortBytes(ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static byte[] readBytes(ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * [value], -1 for null and -2 for a variable left unset
+     */
+    private static byte[] readValue(ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        if (length == -2) {
+            return Term.UNSET;
+        }
+        if (length < 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static byte[] md5(String cql) {
+        try {
+            return MessageDigest.getInstance("MD5").digest(cql.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        final StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,345 @@
+package killrvideo.loadtest.cql;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * CQL data types known to the stand-in, with their native protocol ids.
+ *
+ * Values are always kept in their serialized form, this class compares
+ * them for the clustering order and converts literals and Java objects
+ * to that form.
+ */
+final class CqlType {
+
+    static final CqlType ASCII = new CqlType(0x0001, "ascii");
+    static final CqlType BIGINT = new CqlType(0x0002, "bigint");
+    static final CqlType BLOB = new CqlType(0x0003, "blob");
+    static final CqlType BOOLEAN = new CqlType(0x0004, "boolean");
+    static final CqlType COUNTER = new CqlType(0x0005, "counter");
+    static final CqlType DOUBLE = new CqlType(0x0007, "double");
+    static final CqlType FLOAT = new CqlType(0x0008, "float");
+    static final CqlType INT = new CqlType(0x0009, "int");
+    static final CqlType TIMESTAMP = new CqlType(0x000B, "timestamp");
+    static final CqlType UUID_TYPE = new CqlType(0x000C, "uuid");
+    static final CqlType TEXT = new CqlType(0x000D, "text");
+    static final CqlType TIMEUUID = new CqlType(0x000F, "timeuuid");
+    static final CqlType INET = new CqlType(0x0010, "inet");
+
+    private static final int LIST = 0x0020;
+    private static final int MAP = 0x0021;
+    private static final int SET = 0x0022;
+
+    private static final CqlType[] NATIVE_TYPES = {
+            ASCII, BIGINT, BLOB, BOOLEAN, COUNTER, DOUBLE, FLOAT, INT, TIMESTAMP, UUID_TYPE, TEXT, TIMEUUID, INET
+    };
+
+    final int id;
+    private final String name;
+    private final CqlType[] elements;
+
+    private CqlType(int id, String name, CqlType... elements) {
+        this.id = id;
+        this.name = name;
+        this.elements = elements;
+    }
+
+    static CqlType list(CqlType element) {
+        return new CqlType(LIST, "list", element);
+    }
+
+    static CqlType set(CqlType element) {
+        return new CqlType(SET, "set", element);
+    }
+
+    static CqlType map(CqlType key, CqlType value) {
+        return new CqlType(MAP, "map", key, value);
+    }
+
+    /**
+     * @param cql type as written in a CREATE TABLE, frozen collections are read as plain ones
+     */
+    static CqlType parse(String cql) {
+        final String type = cql.replace(" ", "").toLowerCase();
+        if (type.startsWith("frozen<")) {
+            return parse(type.substring(7, type.length() - 1));
+        }
+        if (type.startsWith("list<")) {
+            return list(parse(type.substring(5, type.length() - 1)));
+        }
+        if (type.startsWith("set<")) {
+            return set(parse(type.substring(4, type.length() - 1)));
+        }
+        if (type.startsWith("map<")) {
+            final String arguments = type.substring(4, type.length() - 1);
+            int depth = 0;
+            for (int i = 0; i < arguments.length(); i++) {
+                final char c = arguments.charAt(i);
+                if (c == '<') {
+                    depth++;
+                } else if (c == '>') {
+                    depth--;
+                } else if (c == ',' && depth == 0) {
+                    return map(parse(arguments.substring(0, i)), parse(arguments.substring(i + 1)));
+                }
+            }
+        }
+        if (type.equals("varchar")) {
+            return TEXT;
+        }
+        for (CqlType nativeType : NATIVE_TYPES) {
+            if (nativeType.name.equals(type)) {
+                return nativeType;
+            }
+        }
+        throw new CqlException(CqlException.INVALID, "Unknown type " + cql);
+    }
+
+    boolean isCollection() {
+        return id == LIST || id == SET || id == MAP;
+    }
+
+    CqlType element() {
+        return elements[0];
+    }
+
+    void writeOption(FrameWriter out) {
+        out.writeShort(id);
+        for (CqlType element : elements) {
+            element.writeOption(out);
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (id == MAP) {
+            return "map<" + elements[0] + ", " + elements[1] + ">";
+        }
+        return isCollection() ? name + "<" + elements[0] + ">" : name;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof CqlType && toString().equals(other.toString());
+    }
+
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
+
+    /**
+     * Order of the serialized values, as Cassandra sorts clustering columns
+     */
+    int compare(byte[] left, byte[] right) {
+        switch (id) {
+            case 0x0002:
+            case 0x0005:
+            case 0x000B:
+                return Long.compare(ByteBuffer.wrap(left).getLong(), ByteBuffer.wrap(right).getLong());
+            case 0x0009:
+                return Integer.compare(ByteBuffer.wrap(left).getInt(), ByteBuffer.wrap(right).getInt());
+            case 0x0007:
+                return Double.compare(ByteBuffer.wrap(left).getDouble(), ByteBuffer.wrap(right).getDouble());
+            case 0x0008:
+                return Float.compare(ByteBuffer.wrap(left).getFloat(), ByteBuffer.wrap(right).getFloat());
+            case 0x000C:
+            case 0x000F:
+                return compareUuids(left, right);
+            default:
+                return compareUnsigned(left, right);
+        }
+    }
+
+    /**
+     * Version first, then time based UUIDs by their timestamp, then the raw bytes
+     */
+    private static int compareUuids(byte[] left, byte[] right) {
+        final UUID leftUuid = toUuid(left);
+        final UUID rightUuid = toUuid(right);
+        int result = Integer.compare(leftUuid.version(), rightUuid.version());
+        if (result == 0 && leftUuid.version() == 1) {
+            result = Long.compare(leftUuid.timestamp(), rightUuid.timestamp());
+        }
+        return result != 0 ? result : compareUnsigned(left, right);
+    }
+
+    static int compareUnsigned(byte[] left, byte[] right) {
+        final int length = Math.min(left.length, right.length);
+        for (int i = 0; i < length; i++) {
+            final int result = Integer.compare(left[i] & 0xFF, right[i] & 0xFF);
+            if (result != 0) {
+                return result;
+            }
+        }
+        return Integer.compare(left.length, right.length);
+    }
+
+    static UUID toUuid(byte[] value) {
+        final ByteBuffer buffer = ByteBuffer.wrap(value);
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+
+    /**
+     * Milliseconds since the epoch of a version 1 UUID
+     */
+    static long unixTimestamp(byte[] timeUuid) {
+        return (toUuid(timeUuid).timestamp() - 0x01B21DD213814000L) / 10000;
+    }
+
+    static long toLong(byte[] value) {
+        return value.length == 4 ? ByteBuffer.wrap(value).getInt() : ByteBuffer.wrap(value).getLong();
+    }
+
+    static String toText(byte[] value) {
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the serialized form of a string, number or boolean literal
+     */
+    byte[] fromLiteral(String literal) {
+        try {
+            switch (id) {
+                case 0x0001:
+                case 0x000D:
+                    return literal.getBytes(StandardCharsets.UTF_8);
+                case 0x0003:
+                    return hex(literal);
+                case 0x0002:
+                case 0x0005:
+                    return serialize(Long.parseLong(literal));
+                case 0x0009:
+                    return serialize(Integer.parseInt(literal));
+                case 0x0004:
+                    return serialize(Boolean.parseBoolean(literal));
+                case 0x0007:
+                    return serialize(Double.parseDouble(literal));
+                case 0x0008:
+                    return serialize(Float.parseFloat(literal));
+                case 0x000B:
+                    return serialize(literal.matches("-?\\d+") ? Long.parseLong(literal)
+                            : Instant.parse(literal).toEpochMilli());
+                case 0x000C:
+                case 0x000F:
+                    return serialize(UUID.fromString(literal));
+                case 0x0010:
+                    return serialize(InetAddress.getByName(literal));
+                default:
+                    throw new CqlException(CqlException.INVALID, "Collection literals are not supported");
+            }
+        } catch (IllegalArgumentException | DateTimeParseException | UnknownHostException ex) {
+            throw new CqlException(CqlException.INVALID, "Invalid " + this + " literal " + literal);
+        }
+    }
+
+    private static byte[] hex(String literal) {
+        final String digits = literal.startsWith("0x") ? literal.substring(2) : literal;
+        final byte[] bytes = new byte[digits.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(digits.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the serialized form of a Java value of this type, null for null
+     */
+    byte[] encode(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (id == LIST || id == SET) {
+            final List<byte[]> values = new ArrayList<>();
+            for (Object element : (Collection<?>) value) {
+                values.add(elements[0].encode(element));
+            }
+            return encodeCollection(values);
+        }
+        if (id == MAP) {
+            final List<byte[]> values = new ArrayList<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                values.add(elements[0].encode(entry.getKey()));
+                values.add(elements[1].encode(entry.getValue()));
+            }
+            final byte[] serialized = encodeCollection(values);
+            ByteBuffer.wrap(serialized).putInt(values.size() / 2);
+            return serialized;
+        }
+        if (value instanceof Date) {
+            return serialize(((Date) value).getTime());
+        }
+        if (value instanceof Number && id == INT.id) {
+            return serialize(((Number) value).intValue());
+        }
+        if (value instanceof Number && (id == BIGINT.id || id == COUNTER.id || id == TIMESTAMP.id)) {
+            return serialize(((Number) value).longValue());
+        }
+        return serialize(value);
+    }
+
+    static byte[] serialize(Object value) {
+        if (value instanceof String) {
+            return ((String) value).getBytes(StandardCharsets.UTF_8);
+        }
+        if (value instanceof Long) {
+            return ByteBuffer.allocate(8).putLong((Long) value).array();
+        }
+        if (value instanceof Integer) {
+            return ByteBuffer.allocate(4).putInt((Integer) value).array();
+        }
+        if (value instanceof Double) {
+            return ByteBuffer.allocate(8).putDouble((Double) value).array();
+        }
+        if (value instanceof Float) {
+            return ByteBuffer.allocate(4).putFloat((Float) value).array();
+        }
+        if (value instanceof Boolean) {
+            return new byte[] { (byte) ((Boolean) value ? 1 : 0) };
+        }
+        if (value instanceof UUID) {
+            final UUID uuid = (UUID) value;
+            return ByteBuffer.allocate(16).putLong(uuid.getMostSignificantBits())
+                    .putLong(uuid.getLeastSignificantBits()).array();
+        }
+        if (value instanceof InetAddress) {
+            return ((InetAddress) value).getAddress();
+        }
+        if (value instanceof byte[]) {
+            return (byte[]) value;
+        }
+        throw new IllegalArgumentException("Cannot serialize " + value.getClass());
+    }
+
+    /**
+     * Native protocol v4 collection layout, an int count then each element as [bytes]
+     */
+    private static byte[] encodeCollection(List<byte[]> values) {
+        int size = 4;
+        for (byte[] value : values) {
+            size += 4 + value.length;
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate(size).putInt(values.size());
+        for (byte[] value : values) {
+            buffer.putInt(value.length).put(value);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Cassandra stores an empty collection as no value at all
+     */
+    boolean isEmptyCollection(byte[] value) {
+        return isCollection() && value != null && value.length >= 4 && ByteBuffer.wrap(value).getInt() == 0;
+    }
+}
@@ -0,0 +1,243 @@
+package killrvideo.loadtest.cql;
+
+import static killrvideo.loadtest.cql.Table.values;
+
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import killrvideo.loadtest.cql.Table.Cell;
+import killrvideo.loadtest.cql.Table.Column;
+import killrvideo.loadtest.cql.Table.Partition;
+import killrvideo.loadtest.cql.Table.Row;
+
+/**
+ * Keyspaces and tables of the stand-in, including the system tables the
+ * driver reads to discover the node and the schema.
+ *
+ * The stand-in presents itself as a single node cluster owning the whole
+ * ring, every keyspace created with CQL is described in system_schema so
+ * the driver metadata, and therefore the mapper, sees it as on a real node.
+ */
+final class Database {
+
+    static final String RELEASE_VERSION = "3.11.1";
+
+    private static final String[] SYSTEM_TABLES = {
+            "CREATE TABLE system.local (key text PRIMARY KEY, bootstrapped text, broadcast_address inet, "
+                    + "cluster_name text, cql_version text, data_center text, dse_version text, gossip_generation int, "
+                    + "graph boolean, host_id uuid, listen_address inet, native_protocol_version text, partitioner text, "
+                    + "rack text, release_version text, rpc_address inet, schema_version uuid, thrift_version text, "
+                    + "tokens set<text>, truncated_at map<uuid, blob>, workload text)",
+            "CREATE TABLE system.peers (peer inet PRIMARY KEY, data_center text, dse_version text, graph boolean, "
+                    + "host_id uuid, preferred_ip inet, rack text, release_version text, rpc_address inet, "
+                    + "schema_version uuid, tokens set<text>, workload text)",
+            "CREATE TABLE system_schema.keyspaces (keyspace_name text PRIMARY KEY, durable_writes boolean, "
+                    + "replication map<text, text>)",
+            "CREATE TABLE system_schema.tables (keyspace_name text, table_name text, bloom_filter_fp_chance double, "
+                    + "caching map<text, text>, cdc boolean, comment text, compaction map<text, text>, "
+                    + "compression map<text, text>, crc_check_chance double, dclocal_read_repair_chance double, "
+                    + "default_time_to_live int, extensions map<text, blob>, flags set<text>, gc_grace_seconds int, "
+                    + "id uuid, max_index_interval int, memtable_flush_period_in_ms int, min_index_interval int, "
+                    + "read_repair_chance double, speculative_retry text, PRIMARY KEY (keyspace_name, table_name))",
+            "CREATE TABLE system_schema.columns (keyspace_name text, table_name text, column_name text, "
+                    + "clustering_order text, column_name_bytes blob, kind text, position int, type text, "
+                    + "PRIMARY KEY (keyspace_name, table_name, column_name))",
+            "CREATE TABLE system_schema.types (keyspace_name text, type_name text, field_names frozen<list<text>>, "
+                    + "field_types frozen<list<text>>, PRIMARY KEY (keyspace_name, type_name))",
+            "CREATE TABLE system_schema.functions (keyspace_name text, function_name text, "
+                    + "argument_types frozen<list<text>>, argument_names frozen<list<text>>, body text, "
+                    + "called_on_null_input boolean, language text, return_type text, "
+                    + "PRIMARY KEY (keyspace_name, function_name, argument_types))",
+            "CREATE TABLE system_schema.aggregates (keyspace_name text, aggregate_name text, "
+                    + "argument_types frozen<list<text>>, final_func text, initcond text, return_type text, "
+                    + "state_func text, state_type text, PRIMARY KEY (keyspace_name, aggregate_name, argument_types))",
+            "CREATE TABLE system_schema.indexes (keyspace_name text, table_name text, index_name text, kind text, "
+                    + "options map<text, text>, PRIMARY KEY (keyspace_name, table_name, index_name))",
+            "CREATE TABLE system_schema.views (keyspace_name text, view_name text, base_table_id uuid, "
+                    + "base_table_name text, include_all_columns boolean, where_clause text, "
+                    + "PRIMARY KEY (keyspace_name, view_name))",
+            "CREATE TABLE system_schema.triggers (keyspace_name text, table_name text, trigger_name text, "
+                    + "options map<text, text>, PRIMARY KEY (keyspace_name, table_name, trigger_name))"
+    };
+
+    private final Map<String, Map<String, Table>> keyspaces = new ConcurrentHashMap<>();
+    private final AtomicLong lastMicros = new AtomicLong();
+    private final UUID hostId = UUID.randomUUID();
+    private final InetAddress address;
+
+    Database(InetAddress address) {
+        this.address = address;
+        keyspaces.put("system", new ConcurrentHashMap<>());
+        keyspaces.put("system_schema", new ConcurrentHashMap<>());
+        for (String cql : SYSTEM_TABLES) {
+            CqlParser.parse(cql, null).execute(this, new byte[0][], QueryOptions.DEFAULT);
+        }
+        writeLocal();
+    }
+
+    /**
+     * Server side write timestamp, in microseconds and always increasing
+     */
+    long nowMicros() {
+        final long now = System.currentTimeMillis() * 1000;
+        return lastMicros.updateAndGet(last -> Math.max(last + 1, now));
+    }
+
+    void requireKeyspace(String keyspace) {
+        if (keyspace == null) {
+            throw new CqlException(CqlException.INVALID,
+                    "No keyspace has been specified. USE a keyspace, or explicitly specify keyspace.tablename");
+        }
+        if (!keyspaces.containsKey(keyspace)) {
+            throw new CqlException(CqlException.INVALID, "Keyspace " + keyspace + " does not exist");
+        }
+    }
+
+    Table table(String keyspace, String name) {
+        requireKeyspace(keyspace);
+        final Table table = keyspaces.get(keyspace).get(name);
+        if (table == null) {
+            throw new CqlException(CqlException.INVALID, "unconfigured table " + name);
+        }
+        return table;
+    }
+
+    /**
+     * @return false if the keyspace already exists
+     */
+    synchronized boolean createKeyspace(String keyspace, Map<String, String> replication, boolean durableWrites) {
+        if (keyspaces.putIfAbsent(keyspace, new ConcurrentHashMap<>()) != null) {
+            return false;
+        }
+        final Map<String, String> strategy = new LinkedHashMap<>(replication);
+        final String strategyClass = strategy.get("class");
+        if (strategyClass != null && !strategyClass.contains(".")) {
+            strategy.put("class", "org.apache.cassandra.locator." + strategyClass);
+        }
+        write(table("system_schema", "keyspaces"), values(
+                "keyspace_name", keyspace,
+                "durable_writes", durableWrites,
+                "replication", strategy));
+        writeLocal();
+        return true;
+    }
+
+    /**
+     * @return false if the table already exists
+     */
+    synchronized boolean createTable(Table table) {
+        requireKeyspace(table.keyspace);
+        if (keyspaces.get(table.keyspace).putIfAbsent(table.name, table) != null) {
+            return false;
+        }
+        if (table.keyspace.startsWith("system")) {
+            return true;
+        }
+
+        final Map<String, String> caching = new LinkedHashMap<>();
+        caching.put("keys", "ALL");
+        caching.put("rows_per_partition", "NONE");
+        final Map<String, String> compaction = new LinkedHashMap<>();
+        compaction.put("class", "org.apache.cassandra.db.compaction.SizeTieredCompactionStrategy");
+        compaction.put("max_threshold", "32");
+        compaction.put("min_threshold", "4");
+        final Map<String, String> compression = new LinkedHashMap<>();
+        compression.put("chunk_length_in_kb", "64");
+        compression.put("class", "org.apache.cassandra.io.compress.LZ4Compressor");
+        write(table("system_schema", "tables"), values(
+                "keyspace_name", table.keyspace,
+                "table_name", table.name,
+                "bloom_filter_fp_chance", 0.01,
+                "caching", caching,
+                "cdc", false,
+                "comment", "",
+                "compaction", compaction,
+                "compression", compression,
+                "crc_check_chance", 1.0,
+                "dclocal_read_repair_chance", 0.1,
+                "default_time_to_live", 0,
+                "extensions", Collections.emptyMap(),
+                "flags", Collections.singleton("compound"),
+                "gc_grace_seconds", 864000,
+                "id", table.id,
+                "max_index_interval", 2048,
+                "memtable_flush_period_in_ms", 0,
+                "min_index_interval", 128,
+                "read_repair_chance", 0.0,
+                "speculative_retry", "99PERCENTILE"));
+
+        for (Column column : table.columns) {
+            write(table("system_schema", "columns"), values(
+                    "keyspace_name", table.keyspace,
+                    "table_name", table.name,
+                    "column_name", column.name,
+                    "clustering_order", column.kind != Table.Kind.CLUSTERING ? "none" : column.descending ? "desc" : "asc",
+                    "column_name_bytes", column.name.getBytes(StandardCharsets.UTF_8),
+                    "kind", column.kind.schemaName(),
+                    "position", column.position,
+                    "type", column.type.toString()));
+        }
+        writeLocal();
+        return true;
+    }
+
+    /**
+     * The local node, with a new schema version after each schema change
+     */
+    private void writeLocal() {
+        write(table("system", "local"), values(
+                "key", "local",
+                "bootstrapped", "COMPLETED",
+                "broadcast_address", address,
+                "cluster_name", "KillrVideo Stand-in",
+                "cql_version", "3.4.4",
+                "data_center", "dc1",
+                "dse_version", "5.1.5",
+                "gossip_generation", (int) (System.currentTimeMillis() / 1000),
+                "graph", false,
+                "host_id", hostId,
+                "listen_address", address,
+                "native_protocol_version", "4",
+                "partitioner", "org.apache.cassandra.dht.Murmur3Partitioner",
+                "rack", "rack1",
+                "release_version", RELEASE_VERSION,
+                "rpc_address", address,
+                "schema_version", UUID.randomUUID(),
+                "thrift_version", "20.1.0",
+                "tokens", Collections.singleton("0"),
+                "workload", "Cassandra"));
+    }
+
+    /**
+     * Insert a row of Java values, for the system tables
+     */
+    private void write(Table table, Map<String, Object> javaValues) {
+        final long now = System.currentTimeMillis();
+        final long timestamp = nowMicros();
+        final Map<Column, byte[]> serialized = new HashMap<>();
+        for (Map.Entry<String, Object> value : javaValues.entrySet()) {
+            final Column column = table.column(value.getKey());
+            serialized.put(column, column.type.encode(value.getValue()));
+        }
+        final byte[][] key = table.partitionKey.stream().map(serialized::get).toArray(byte[][]::new);
+        final byte[][] clustering = table.clustering.stream().map(serialized::get).toArray(byte[][]::new);
+        final Partition partition = table.partition(key);
+        synchronized (partition) {
+            final Row row = partition.row(clustering);
+            row.writeMarker(new Cell(new byte[0], timestamp, 0, now));
+            for (Map.Entry<Column, byte[]> value : serialized.entrySet()) {
+                if (!value.getKey().isPrimaryKey()) {
+                    final byte[] bytes = value.getKey().type.isEmptyCollection(value.getValue()) ? null : value.getValue();
+                    row.write(value.getKey().name, new Cell(bytes, timestamp, 0, now));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package killrvideo.loadtest.cql;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Growable buffer writing the native protocol notations ([short], [string], [bytes]...)
+ */
+final class FrameWriter {
+
+    private byte[] buffer = new byte[256];
+    private int size = 0;
+
+    private void ensure(int extra) {
+        if (size + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+        }
+    }
+
+    FrameWriter writeByte(int value) {
+        ensure(1);
+        buffer[size++] = (byte) value;
+        return this;
+    }
+
+    FrameWriter writeShort(int value) {
+        ensure(2);
+        buffer[size++] = (byte) (value >>> 8);
+        buffer[size++] = (byte) value;
+        return this;
+    }
+
+    FrameWriter writeInt(int value) {
+        ensure(4);
+        buffer[size++] = (byte) (value >>> 24);
+        buffer[size++] = (byte) (value >>> 16);
+        buffer[size++] = (byte) (value >>> 8);
+        buffer[size++] = (byte) value;
+        return this;
+    }
+
+    FrameWriter writeRaw(byte[] value) {
+        ensure(value.length);
+        System.arraycopy(value, 0, buffer, size, value.length);
+        size += value.length;
+        return this;
+    }
+
+    FrameWriter writeString(String value) {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return writeShort(bytes.length).writeRaw(bytes);
+    }
+
+    FrameWriter writeShortBytes(byte[] value) {
+        return writeShort(value.length).writeRaw(value);
+    }
+
+    /**
+     * [bytes], a negative length for null
+     */
+    FrameWriter writeBytes(byte[] value) {
+        return value == null ? writeInt(-1) : writeInt(value.length).writeRaw(value);
+    }
+
+    FrameWriter writeStringMultimap(Map<String, List<String>> multimap) {
+        writeShort(multimap.size());
+        for (Map.Entry<String, List<String>> entry : multimap.entrySet()) {
+            writeString(entry.getKey());
+            writeShort(entry.getValue().size());
+            for (String value : entry.getValue()) {
+                writeString(value);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * @return a frame of this body, with a v4 response header
+     */
+    byte[] toFrame(int stream, int opcode) {
+        final byte[] frame = new byte[9 + size];
+        frame[0] = (byte) 0x84;
+        frame[1] = 0;
+        frame[2] = (byte) (stream >>> 8);
+        frame[3] = (byte) stream;
+        frame[4] = (byte) opcode;
+        frame[5] = (byte) (size >>> 24);
+        frame[6] = (byte) (size >>> 16);
+        frame[7] = (byte) (size >>> 8);
+        frame[8] = (byte) size;
+        System.arraycopy(buffer, 0, frame, 9, size);
+        return frame;
+    }
+}
@@ -0,0 +1,49 @@
+package killrvideo.loadtest.cql;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Delay added by the stand-in before answering each query, a fixed part
+ * plus a uniform jitter, and a slow path taken by a fraction of the queries
+ * to give the latency distribution a tail like a real cluster's.
+ */
+public final class LatencyInjector {
+
+    public static final LatencyInjector NONE = new LatencyInjector(0, 0, 0.0, 0);
+
+    private final long baseMicros;
+    private final long jitterMicros;
+    private final double slowRatio;
+    private final long slowMicros;
+
+    /**
+     * @param baseMicros added to every query
+     * @param jitterMicros upper bound of the uniform random delay added to every query
+     * @param slowRatio fraction of the queries taking the slow path, between 0 and 1
+     * @param slowMicros added to the queries taking the slow path
+     */
+    public LatencyInjector(long baseMicros, long jitterMicros, double slowRatio, long slowMicros) {
+        this.baseMicros = baseMicros;
+        this.jitterMicros = jitterMicros;
+        this.slowRatio = slowRatio;
+        this.slowMicros = slowMicros;
+    }
+
+    long nextDelayMicros() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        long delay = baseMicros;
+        if (jitterMicros > 0) {
+            delay += random.nextLong(jitterMicros + 1);
+        }
+        if (slowRatio > 0 && random.nextDouble() < slowRatio) {
+            delay += slowMicros;
+        }
+        return delay;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%dus + [0, %dus], %.2f%% of queries +%dus", baseMicros, jitterMicros, slowRatio * 100,
+                slowMicros);
+    }
+}
@@ -0,0 +1,23 @@
+package killrvideo.loadtest.cql;
+
+/**
+ * Query parameters of a QUERY, EXECUTE or BATCH frame the stand-in cares about
+ */
+final class QueryOptions {
+
+    static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+    static final QueryOptions DEFAULT = new QueryOptions(-1, null, NO_TIMESTAMP, false);
+
+    final int pageSize;
+    final byte[] pagingState;
+    final long defaultTimestamp;
+    final boolean skipMetadata;
+
+    QueryOptions(int pageSize, byte[] pagingState, long defaultTimestamp, boolean skipMetadata) {
+        this.pageSize = pageSize;
+        this.pagingState = pagingState;
+        this.defaultTimestamp = defaultTimestamp;
+        this.skipMetadata = skipMetadata;
+    }
+}
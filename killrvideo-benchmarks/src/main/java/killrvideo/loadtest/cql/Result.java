@@ -0,0 +1,174 @@
+package killrvideo.loadtest.cql;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Body of a RESULT frame
+ */
+abstract class Result {
+
+    private static final int VOID = 0x0001;
+    private static final int ROWS = 0x0002;
+    private static final int SET_KEYSPACE = 0x0003;
+    private static final int PREPARED = 0x0004;
+    private static final int SCHEMA_CHANGE = 0x0005;
+
+    private static final int GLOBAL_TABLES_SPEC = 0x0001;
+    private static final int HAS_MORE_PAGES = 0x0002;
+    private static final int NO_METADATA = 0x0004;
+
+    static final Result NONE = new Result() {
+        @Override
+        void write(FrameWriter out, boolean skipMetadata) {
+            out.writeInt(VOID);
+        }
+    };
+
+    abstract void write(FrameWriter out, boolean skipMetadata);
+
+    /**
+     * Name and type of a result column or of a bind variable
+     */
+    static final class ColumnSpec {
+        final String keyspace;
+        final String table;
+        final String name;
+        final CqlType type;
+
+        ColumnSpec(String keyspace, String table, String name, CqlType type) {
+            this.keyspace = keyspace;
+            this.table = table;
+            this.name = name;
+            this.type = type;
+        }
+    }
+
+    static final class Rows extends Result {
+        final List<ColumnSpec> columns;
+        final List<byte[][]> rows = new ArrayList<>();
+        byte[] pagingState;
+
+        Rows(List<ColumnSpec> columns) {
+            this.columns = columns;
+        }
+
+        @Override
+        void write(FrameWriter out, boolean skipMetadata) {
+            out.writeInt(ROWS);
+            writeMetadata(out, columns, pagingState, skipMetadata);
+            out.writeInt(rows.size());
+            for (byte[][] row : rows) {
+                for (byte[] value : row) {
+                    out.writeBytes(value);
+                }
+            }
+        }
+    }
+
+    static final class Prepared extends Result {
+        final byte[] id;
+        final List<ColumnSpec> variables;
+        final int[] partitionKeyIndexes;
+
+        /**
+         * Null for statements not returning rows
+         */
+        final List<ColumnSpec> resultColumns;
+
+        Prepared(byte[] id, List<ColumnSpec> variables, int[] partitionKeyIndexes, List<ColumnSpec> resultColumns) {
+            this.id = id;
+            this.variables = variables;
+            this.partitionKeyIndexes = partitionKeyIndexes;
+            this.resultColumns = resultColumns;
+        }
+
+        @Override
+        void write(FrameWriter out, boolean skipMetadata) {
+            out.writeInt(PREPARED);
+            out.writeShortBytes(id);
+
+            out.writeInt(variables.isEmpty() ? 0 : GLOBAL_TABLES_SPEC);
+            out.writeInt(variables.size());
+            out.writeInt(partitionKeyIndexes.length);
+            for (int index : partitionKeyIndexes) {
+                out.writeShort(index);
+            }
+            writeColumns(out, variables);
+
+            if (resultColumns == null) {
+                out.writeInt(NO_METADATA);
+                out.writeInt(0);
+            } else {
+                writeMetadata(out, resultColumns, null, false);
+            }
+        }
+    }
+
+    static final class SetKeyspace extends Result {
+        final String keyspace;
+
+        SetKeyspace(String keyspace) {
+            this.keyspace = keyspace;
+        }
+
+        @Override
+        void write(FrameWriter out, boolean skipMetadata) {
+            out.writeInt(SET_KEYSPACE);
+            out.writeString(keyspace);
+        }
+    }
+
+    static final class SchemaChange extends Result {
+        private final String keyspace;
+        private final String table;
+
+        /**
+         * @param table null for a keyspace creation
+         */
+        SchemaChange(String keyspace, String table) {
+            this.keyspace = keyspace;
+            this.table = table;
+        }
+
+        @Override
+        void write(FrameWriter out, boolean skipMetadata) {
+            out.writeInt(SCHEMA_CHANGE);
+            out.writeString("CREATED");
+            out.writeString(table == null ? "KEYSPACE" : "TABLE");
+            out.writeString(keyspace);
+            if (table != null) {
+                out.writeString(table);
+            }
+        }
+    }
+
+    private static void writeMetadata(FrameWriter out, List<ColumnSpec> columns, byte[] pagingState,
+                                      boolean skipMetadata) {
+        int flags = pagingState == null ? 0 : HAS_MORE_PAGES;
+        flags |= skipMetadata ? NO_METADATA : columns.isEmpty() ? 0 : GLOBAL_TABLES_SPEC;
+        out.writeInt(flags);
+        out.writeInt(columns.size());
+        if (pagingState != null) {
+            out.writeBytes(pagingState);
+        }
+        if (!skipMetadata) {
+            writeColumns(out, columns);
+        }
+    }
+
+    /**
+     * Columns with a global table spec, every column of a statement belongs to the same table
+     */
+    private static void writeColumns(FrameWriter out, List<ColumnSpec> columns) {
+        if (columns.isEmpty()) {
+            return;
+        }
+        out.writeString(columns.get(0).keyspace);
+        out.writeString(columns.get(0).table);
+        for (ColumnSpec column : columns) {
+            out.writeString(column.name);
+            column.type.writeOption(out);
+        }
+    }
+}
@@ -0,0 +1,798 @@
+package killrvideo.loadtest.cql;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import killrvideo.loadtest.cql.Result.ColumnSpec;
+import killrvideo.loadtest.cql.Table.Cell;
+import killrvideo.loadtest.cql.Table.Column;
+import killrvideo.loadtest.cql.Table.Kind;
+import killrvideo.loadtest.cql.Table.Partition;
+import killrvideo.loadtest.cql.Table.Row;
+
+/**
+ * Parsed CQL statement.
+ *
+ * {@link #prepare(Database)} resolves the table and the types of the bind
+ * variables once, the statement is then executed any number of times with
+ * the serialized values of these variables.
+ */
+abstract class Statement {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    /**
+     * Names of the named bind markers, null for the anonymous ones, by marker index
+     */
+    final List<String> markerNames = new ArrayList<>();
+
+    private ColumnSpec[] variables = new ColumnSpec[0];
+
+    /**
+     * Resolve the schema objects used by this statement
+     */
+    void prepare(Database database) {
+        variables = new ColumnSpec[markerNames.size()];
+    }
+
+    abstract Result execute(Database database, byte[][] values, QueryOptions options);
+
+    List<ColumnSpec> variables() {
+        return Collections.unmodifiableList(Arrays.asList(variables));
+    }
+
+    /**
+     * @return columns of the rows returned, null if the statement returns no rows or not always the same ones
+     */
+    List<ColumnSpec> resultColumns() {
+        return null;
+    }
+
+    /**
+     * @return the variables bound to the partition key, for token aware routing
+     */
+    int[] partitionKeyIndexes() {
+        return new int[0];
+    }
+
+    boolean isConditional() {
+        return false;
+    }
+
+    void variable(Term term, Table table, String name, CqlType type) {
+        if (term != null && term.isMarker()) {
+            final String markerName = markerNames.get(term.marker);
+            variables[term.marker] = new ColumnSpec(table.keyspace, table.name,
+                    markerName != null ? markerName : name, type);
+        }
+    }
+
+    static long timestamp(Database database, Term term, byte[][] values, QueryOptions options) {
+        if (term != null) {
+            return CqlType.toLong(term.require(CqlType.BIGINT, values, "[timestamp]"));
+        }
+        return options.defaultTimestamp != QueryOptions.NO_TIMESTAMP ? options.defaultTimestamp : database.nowMicros();
+    }
+
+    static int ttl(Term term, byte[][] values) {
+        return term == null ? 0 : (int) CqlType.toLong(term.require(CqlType.INT, values, "[ttl]"));
+    }
+
+    /**
+     * Result of a conditional statement, with the current row when it was not applied
+     */
+    static Result conditionalResult(Table table, boolean applied, Partition partition, Row row, long nowMillis) {
+        final List<ColumnSpec> columns = new ArrayList<>();
+        columns.add(new ColumnSpec(table.keyspace, table.name, "[applied]", CqlType.BOOLEAN));
+        if (!applied) {
+            for (Column column : table.columns) {
+                columns.add(new ColumnSpec(table.keyspace, table.name, column.name, column.type));
+            }
+        }
+        final Result.Rows rows = new Result.Rows(columns);
+        final byte[][] values = new byte[columns.size()][];
+        values[0] = CqlType.serialize(applied);
+        if (!applied) {
+            for (int i = 0; i < table.columns.size(); i++) {
+                values[i + 1] = columnValue(partition, row, table.columns.get(i), nowMillis);
+            }
+        }
+        rows.rows.add(values);
+        return rows;
+    }
+
+    static byte[] columnValue(Partition partition, Row row, Column column, long nowMillis) {
+        final Cell cell = cell(partition, row, column, nowMillis);
+        if (cell != null) {
+            return cell.value;
+        }
+        switch (column.kind) {
+            case PARTITION_KEY:
+                return partition.key[column.position];
+            case CLUSTERING:
+                return row.clustering[column.position];
+            default:
+                return null;
+        }
+    }
+
+    static Cell cell(Partition partition, Row row, Column column, long nowMillis) {
+        switch (column.kind) {
+            case STATIC:
+                return partition.statics.live(column.name, nowMillis, partition.deletedAt);
+            case REGULAR:
+                return row.live(column.name, nowMillis, partition.deletedAt);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Restriction of the WHERE clause, on one column or on a tuple of clustering columns
+     */
+    static final class Relation {
+        final List<String> columnNames;
+        final String operator;
+        final List<Term> terms;
+
+        /**
+         * IN ? with the list of values bound to a single variable
+         */
+        final boolean inMarker;
+
+        List<Column> columns;
+
+        Relation(List<String> columnNames, String operator, List<Term> terms, boolean inMarker) {
+            this.columnNames = columnNames;
+            this.operator = operator;
+            this.terms = terms;
+            this.inMarker = inMarker;
+        }
+
+        void prepare(Statement statement, Table table) {
+            columns = new ArrayList<>();
+            for (String name : columnNames) {
+                columns.add(table.column(name));
+            }
+            if (columns.size() > 1 && terms.size() != columns.size()) {
+                throw new CqlException(CqlException.INVALID, "Expected " + columns.size() + " elements in value tuple");
+            }
+            for (int i = 0; i < terms.size(); i++) {
+                final Column column = columns.size() > 1 ? columns.get(i) : columns.get(0);
+                if (inMarker) {
+                    statement.variable(terms.get(i), table, "in(" + column.name + ")", CqlType.list(column.type));
+                } else {
+                    statement.variable(terms.get(i), table, column.name, column.type);
+                }
+            }
+        }
+
+        /**
+         * @return the values this relation compares to, the candidates of an IN
+         */
+        List<byte[]> bind(byte[][] values) {
+            final List<byte[]> bound = new ArrayList<>();
+            if (inMarker) {
+                final ByteBuffer list = ByteBuffer.wrap(terms.get(0).require(CqlType.BLOB, values, "IN"));
+                for (int i = list.getInt(); i > 0; i--) {
+                    final byte[] element = new byte[list.getInt()];
+                    list.get(element);
+                    bound.add(element);
+                }
+                return bound;
+            }
+            for (int i = 0; i < terms.size(); i++) {
+                final Column column = columns.size() > 1 ? columns.get(i) : columns.get(0);
+                bound.add(terms.get(i).require(column.type, values, column.name));
+            }
+            return bound;
+        }
+
+        boolean matches(List<byte[]> bound, Partition partition, Row row, long nowMillis) {
+            if (operator.equals("IN")) {
+                final Column column = columns.get(0);
+                final byte[] value = columnValue(partition, row, column, nowMillis);
+                return value != null && bound.stream().anyMatch(candidate -> column.type.compare(value, candidate) == 0);
+            }
+            int result = 0;
+            for (int i = 0; i < columns.size() && result == 0; i++) {
+                final byte[] value = columnValue(partition, row, columns.get(i), nowMillis);
+                if (value == null) {
+                    return false;
+                }
+                result = columns.get(i).type.compare(value, bound.get(i));
+            }
+            switch (operator) {
+                case "=":
+                    return result == 0;
+                case "<":
+                    return result < 0;
+                case "<=":
+                    return result <= 0;
+                case ">":
+                    return result > 0;
+                case ">=":
+                    return result >= 0;
+                default:
+                    throw new CqlException(CqlException.INVALID, "Unsupported operator " + operator);
+            }
+        }
+
+        boolean isEqualityOn(Column column) {
+            return columns.size() == 1 && columns.get(0) == column && (operator.equals("=") || operator.equals("IN"));
+        }
+    }
+
+    /**
+     * Primary key of the single row or partition written by an INSERT, UPDATE or DELETE
+     */
+    private static byte[][] key(List<Column> keyColumns, Map<Column, byte[]> values, boolean required) {
+        final byte[][] key = new byte[keyColumns.size()][];
+        for (int i = 0; i < key.length; i++) {
+            key[i] = values.get(keyColumns.get(i));
+            if (key[i] == null) {
+                if (required || i > 0) {
+                    throw new CqlException(CqlException.INVALID,
+                            "Some primary key parts are missing: " + keyColumns.get(i).name);
+                }
+                return null;
+            }
+        }
+        return key;
+    }
+
+    private static Map<Column, byte[]> equalities(List<Relation> where, byte[][] values) {
+        final Map<Column, byte[]> keys = new LinkedHashMap<>();
+        for (Relation relation : where) {
+            if (!relation.operator.equals("=") || relation.columns.size() != 1 || !relation.columns.get(0).isPrimaryKey()) {
+                throw new CqlException(CqlException.INVALID, "Only EQ relations on the primary key are supported here");
+            }
+            keys.put(relation.columns.get(0), relation.bind(values).get(0));
+        }
+        return keys;
+    }
+
+    private static int[] partitionKeyIndexes(Table table, Map<Column, Term> terms) {
+        final int[] indexes = new int[table.partitionKey.size()];
+        for (int i = 0; i < indexes.length; i++) {
+            final Term term = terms.get(table.partitionKey.get(i));
+            if (term == null || !term.isMarker()) {
+                return new int[0];
+            }
+            indexes[i] = term.marker;
+        }
+        return indexes;
+    }
+
+    private static Map<Column, Term> equalityTerms(List<Relation> where) {
+        final Map<Column, Term> terms = new LinkedHashMap<>();
+        for (Relation relation : where) {
+            if (relation.operator.equals("=") && relation.columns.size() == 1) {
+                terms.put(relation.columns.get(0), relation.terms.get(0));
+            }
+        }
+        return terms;
+    }
+
+    static final class Selector {
+        final String function;
+        final String columnName;
+        final String alias;
+        Column column;
+        ColumnSpec spec;
+
+        Selector(String function, String columnName, String alias) {
+            this.function = function;
+            this.columnName = columnName;
+            this.alias = alias;
+        }
+
+        void prepare(Table table) {
+            column = table.column(columnName);
+            final String name;
+            final CqlType type;
+            if (function == null) {
+                name = column.name;
+                type = column.type;
+            } else if (function.equals("writetime")) {
+                name = "writetime(" + column.name + ")";
+                type = CqlType.BIGINT;
+            } else if (function.equals("ttl")) {
+                name = "ttl(" + column.name + ")";
+                type = CqlType.INT;
+            } else if (function.equals("totimestamp") || function.equals("dateof")) {
+                name = "system." + function + "(" + column.name + ")";
+                type = CqlType.TIMESTAMP;
+            } else if (function.equals("unixtimestampof")) {
+                name = "system.unixtimestampof(" + column.name + ")";
+                type = CqlType.BIGINT;
+            } else {
+                throw new CqlException(CqlException.INVALID, "Unknown function " + function);
+            }
+            spec = new ColumnSpec(table.keyspace, table.name, alias != null ? alias : name, type);
+        }
+
+        byte[] select(Partition partition, Row row, long nowMillis) {
+            if (function == null) {
+                return columnValue(partition, row, column, nowMillis);
+            }
+            if (function.equals("writetime") || function.equals("ttl")) {
+                final Cell cell = cell(partition, row, column, nowMillis);
+                if (cell == null || (function.equals("ttl") && cell.ttlSeconds == 0)) {
+                    return null;
+                }
+                return function.equals("ttl")
+                        ? CqlType.serialize((int) ((cell.expiresAtMillis - nowMillis + 999) / 1000))
+                        : CqlType.serialize(cell.timestamp);
+            }
+            final byte[] value = columnValue(partition, row, column, nowMillis);
+            return value == null ? null : CqlType.serialize(CqlType.unixTimestamp(value));
+        }
+    }
+
+    static final class Select extends Statement {
+        String keyspace;
+        String tableName;
+
+        /**
+         * Null for SELECT *
+         */
+        List<Selector> selectors;
+        final List<Relation> where = new ArrayList<>();
+        String orderColumn;
+        boolean orderDescending;
+        Term limit;
+
+        private Table table;
+        private boolean reversed;
+        private List<ColumnSpec> resultColumns;
+
+        @Override
+        void prepare(Database database) {
+            super.prepare(database);
+            table = database.table(keyspace, tableName);
+            if (selectors == null) {
+                selectors = new ArrayList<>();
+                for (Column column : table.columns) {
+                    selectors.add(new Selector(null, column.name, null));
+                }
+            }
+            resultColumns = new ArrayList<>();
+            for (Selector selector : selectors) {
+                selector.prepare(table);
+                resultColumns.add(selector.spec);
+            }
+            for (Relation relation : where) {
+                relation.prepare(this, table);
+            }
+            if (orderColumn != null) {
+                final Column column = table.column(orderColumn);
+                if (table.clustering.isEmpty() || column != table.clustering.get(0)) {
+                    throw new CqlException(CqlException.INVALID, "Order by is only supported on the first clustering column");
+                }
+                reversed = orderDescending != column.descending;
+            }
+            variable(limit, table, "[limit]", CqlType.INT);
+        }
+
+        @Override
+        List<ColumnSpec> resultColumns() {
+            return resultColumns;
+        }
+
+        @Override
+        int[] partitionKeyIndexes() {
+            return Statement.partitionKeyIndexes(table, equalityTerms(where));
+        }
+
+        @Override
+        Result execute(Database database, byte[][] values, QueryOptions options) {
+            final long now = System.currentTimeMillis();
+            final List<List<byte[]>> bound = new ArrayList<>();
+            for (Relation relation : where) {
+                bound.add(relation.bind(values));
+            }
+
+            final int offset = options.pagingState == null ? 0 : ByteBuffer.wrap(options.pagingState).getInt();
+            int wanted = limit == null ? Integer.MAX_VALUE : (int) CqlType.toLong(limit.require(CqlType.INT, values, "LIMIT"));
+            if (options.pageSize > 0) {
+                // One more row than the page to know whether there is a next one
+                wanted = (int) Math.min(wanted, (long) offset + options.pageSize + 1);
+            }
+
+            final List<byte[][]> selected = new ArrayList<>();
+            scan:
+            for (Partition partition : partitions(bound)) {
+                synchronized (partition) {
+                    for (Row row : partition.rows(reversed)) {
+                        if (selected.size() >= wanted) {
+                            break scan;
+                        }
+                        if (row.isLive(now, partition.deletedAt) && matches(bound, partition, row, now)) {
+                            final byte[][] result = new byte[selectors.size()][];
+                            for (int i = 0; i < result.length; i++) {
+                                result[i] = selectors.get(i).select(partition, row, now);
+                            }
+                            selected.add(result);
+                        }
+                    }
+                }
+            }
+
+            final Result.Rows rows = new Result.Rows(resultColumns);
+            int end = selected.size();
+            if (options.pageSize > 0 && end > offset + options.pageSize) {
+                end = offset + options.pageSize;
+                rows.pagingState = ByteBuffer.allocate(4).putInt(end).array();
+            }
+            if (offset < end) {
+                rows.rows.addAll(selected.subList(offset, end));
+            }
+            return rows;
+        }
+
+        private boolean matches(List<List<byte[]>> bound, Partition partition, Row row, long now) {
+            for (int i = 0; i < where.size(); i++) {
+                if (!where.get(i).matches(bound.get(i), partition, row, now)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return the partitions restricted by the partition key, or all of them
+         */
+        private Collection<Partition> partitions(List<List<byte[]>> bound) {
+            List<byte[][]> keys = Collections.singletonList(new byte[table.partitionKey.size()][]);
+            for (Column column : table.partitionKey) {
+                List<byte[]> candidates = null;
+                for (int i = 0; i < where.size(); i++) {
+                    if (where.get(i).isEqualityOn(column)) {
+                        candidates = bound.get(i);
+                    }
+                }
+                if (candidates == null) {
+                    return table.allPartitions();
+                }
+                final List<byte[][]> expanded = new ArrayList<>();
+                for (byte[][] key : keys) {
+                    for (byte[] candidate : candidates) {
+                        final byte[][] copy = key.clone();
+                        copy[column.position] = candidate;
+                        expanded.add(copy);
+                    }
+                }
+                keys = expanded;
+            }
+            final List<Partition> partitions = new ArrayList<>();
+            for (byte[][] key : keys) {
+                final Partition partition = table.existingPartition(key);
+                if (partition != null) {
+                    partitions.add(partition);
+                }
+            }
+            return partitions;
+        }
+    }
+
+    static final class Insert extends Statement {
+        String keyspace;
+        String tableName;
+        final List<String> columnNames = new ArrayList<>();
+        final List<Term> terms = new ArrayList<>();
+        boolean ifNotExists;
+        Term ttl;
+        Term timestamp;
+
+        private Table table;
+        private final Map<Column, Term> termsByColumn = new LinkedHashMap<>();
+
+        @Override
+        void prepare(Database database) {
+            super.prepare(database);
+            table = database.table(keyspace, tableName);
+            if (table.isCounterTable()) {
+                throw new CqlException(CqlException.INVALID,
+                        "INSERT statements are not allowed on counter tables, use UPDATE instead");
+            }
+            if (columnNames.size() != terms.size()) {
+                throw new CqlException(CqlException.INVALID, "Unmatched column names/values");
+            }
+            for (int i = 0; i < columnNames.size(); i++) {
+                final Column column = table.column(columnNames.get(i));
+                termsByColumn.put(column, terms.get(i));
+                variable(terms.get(i), table, column.name, column.type);
+            }
+            variable(ttl, table, "[ttl]", CqlType.INT);
+            variable(timestamp, table, "[timestamp]", CqlType.BIGINT);
+        }
+
+        @Override
+        int[] partitionKeyIndexes() {
+            return Statement.partitionKeyIndexes(table, termsByColumn);
+        }
+
+        @Override
+        boolean isConditional() {
+            return ifNotExists;
+        }
+
+        @Override
+        Result execute(Database database, byte[][] values, QueryOptions options) {
+            final long now = System.currentTimeMillis();
+            final long writeTime = timestamp(database, timestamp, values, options);
+            final int ttlSeconds = ttl(ttl, values);
+
+            final Map<Column, byte[]> keyValues = new LinkedHashMap<>();
+            for (Map.Entry<Column, Term> entry : termsByColumn.entrySet()) {
+                if (entry.getKey().isPrimaryKey()) {
+                    keyValues.put(entry.getKey(), entry.getValue().require(entry.getKey().type, values, entry.getKey().name));
+                }
+            }
+            final byte[][] clustering = key(table.clustering, keyValues, true);
+            final Partition partition = table.partition(key(table.partitionKey, keyValues, true));
+
+            synchronized (partition) {
+                if (ifNotExists) {
+                    final Row existing = partition.existingRow(clustering);
+                    if (existing != null && existing.isLive(now, partition.deletedAt)) {
+                        return conditionalResult(table, false, partition, existing, now);
+                    }
+                }
+                final Row row = partition.row(clustering);
+                row.writeMarker(new Cell(EMPTY, writeTime, ttlSeconds, now));
+                for (Map.Entry<Column, Term> entry : termsByColumn.entrySet()) {
+                    final Column column = entry.getKey();
+                    if (!column.isPrimaryKey()) {
+                        final byte[] value = entry.getValue().resolve(column.type, values);
+                        if (value != Term.UNSET) {
+                            final Cell cell = new Cell(column.type.isEmptyCollection(value) ? null : value,
+                                    writeTime, ttlSeconds, now);
+                            (column.kind == Kind.STATIC ? partition.statics : row).write(column.name, cell);
+                        }
+                    }
+                }
+            }
+            return ifNotExists ? conditionalResult(table, true, partition, null, now) : Result.NONE;
+        }
+    }
+
+    static final class Assignment {
+        final String columnName;
+        final Term term;
+
+        /**
+         * 1 for c = c + ?, -1 for c = c - ?, 0 for c = ?
+         */
+        final int sign;
+
+        Assignment(String columnName, Term term, int sign) {
+            this.columnName = columnName;
+            this.term = term;
+            this.sign = sign;
+        }
+    }
+
+    static final class Update extends Statement {
+        String keyspace;
+        String tableName;
+        Term ttl;
+        Term timestamp;
+        final List<Assignment> assignments = new ArrayList<>();
+        final List<Relation> where = new ArrayList<>();
+        boolean ifExists;
+
+        private Table table;
+        private final List<Column> assigned = new ArrayList<>();
+
+        @Override
+        void prepare(Database database) {
+            super.prepare(database);
+            table = database.table(keyspace, tableName);
+            variable(ttl, table, "[ttl]", CqlType.INT);
+            variable(timestamp, table, "[timestamp]", CqlType.BIGINT);
+            for (Assignment assignment : assignments) {
+                final Column column = table.column(assignment.columnName);
+                if (column.isPrimaryKey()) {
+                    throw new CqlException(CqlException.INVALID, "PRIMARY KEY part " + column.name + " found in SET part");
+                }
+                if (assignment.sign != 0 && !column.type.equals(CqlType.COUNTER)) {
+                    throw new CqlException(CqlException.INVALID, "Invalid operation for non counter column " + column.name);
+                }
+                assigned.add(column);
+                variable(assignment.term, table, column.name, column.type);
+            }
+            for (Relation relation : where) {
+                relation.prepare(this, table);
+            }
+        }
+
+        @Override
+        int[] partitionKeyIndexes() {
+            return Statement.partitionKeyIndexes(table, equalityTerms(where));
+        }
+
+        @Override
+        boolean isConditional() {
+            return ifExists;
+        }
+
+        @Override
+        Result execute(Database database, byte[][] values, QueryOptions options) {
+            final long now = System.currentTimeMillis();
+            final long writeTime = timestamp(database, timestamp, values, options);
+            final int ttlSeconds = ttl(ttl, values);
+            final Map<Column, byte[]> keyValues = equalities(where, values);
+            final byte[][] clustering = key(table.clustering, keyValues, true);
+            final Partition partition = table.partition(key(table.partitionKey, keyValues, true));
+
+            synchronized (partition) {
+                if (ifExists) {
+                    final Row existing = partition.existingRow(clustering);
+                    if (existing == null || !existing.isLive(now, partition.deletedAt)) {
+                        return conditionalResult(table, false, partition, partition.row(clustering), now);
+                    }
+                }
+                final Row row = partition.row(clustering);
+                for (int i = 0; i < assignments.size(); i++) {
+                    final Column column = assigned.get(i);
+                    final Row target = column.kind == Kind.STATIC ? partition.statics : row;
+                    byte[] value = assignments.get(i).term.resolve(column.type, values);
+                    if (value == Term.UNSET) {
+                        continue;
+                    }
+                    if (assignments.get(i).sign != 0) {
+                        final Cell current = cell(partition, row, column, now);
+                        final long delta = CqlType.toLong(assignments.get(i).term.require(CqlType.BIGINT, values, column.name));
+                        value = CqlType.serialize((current == null ? 0L : CqlType.toLong(current.value))
+                                + assignments.get(i).sign * delta);
+                        target.cells.put(column.name, new Cell(value, writeTime, 0, now));
+                    } else {
+                        target.write(column.name, new Cell(column.type.isEmptyCollection(value) ? null : value,
+                                writeTime, ttlSeconds, now));
+                    }
+                }
+            }
+            return ifExists ? conditionalResult(table, true, partition, null, now) : Result.NONE;
+        }
+    }
+
+    static final class Delete extends Statement {
+        String keyspace;
+        String tableName;
+        final List<String> columnNames = new ArrayList<>();
+        Term timestamp;
+        final List<Relation> where = new ArrayList<>();
+
+        private Table table;
+
+        @Override
+        void prepare(Database database) {
+            super.prepare(database);
+            table = database.table(keyspace, tableName);
+            for (String columnName : columnNames) {
+                table.column(columnName);
+            }
+            variable(timestamp, table, "[timestamp]", CqlType.BIGINT);
+            for (Relation relation : where) {
+                relation.prepare(this, table);
+            }
+        }
+
+        @Override
+        int[] partitionKeyIndexes() {
+            return Statement.partitionKeyIndexes(table, equalityTerms(where));
+        }
+
+        @Override
+        Result execute(Database database, byte[][] values, QueryOptions options) {
+            final long now = System.currentTimeMillis();
+            final long writeTime = timestamp(database, timestamp, values, options);
+            final Map<Column, byte[]> keyValues = equalities(where, values);
+            final byte[][] clustering = key(table.clustering, keyValues, !columnNames.isEmpty());
+            final Partition partition = table.partition(key(table.partitionKey, keyValues, true));
+
+            synchronized (partition) {
+                if (clustering == null) {
+                    partition.deletedAt = Math.max(partition.deletedAt, writeTime);
+                } else if (columnNames.isEmpty()) {
+                    final Row row = partition.row(clustering);
+                    row.deletedAt = Math.max(row.deletedAt, writeTime);
+                } else {
+                    final Row row = partition.row(clustering);
+                    for (String columnName : columnNames) {
+                        final Column column = table.column(columnName);
+                        (column.kind == Kind.STATIC ? partition.statics : row)
+                                .write(column.name, new Cell(null, writeTime, 0, now));
+                    }
+                }
+            }
+            return Result.NONE;
+        }
+    }
+
+    static final class Use extends Statement {
+        String keyspace;
+
+        @Override
+        Result execute(Database database, byte[][] values, QueryOptions options) {
+            database.requireKeyspace(keyspace);
+            return new Result.SetKeyspace(keyspace);
+        }
+    }
+
+    static final class CreateKeyspace extends Statement {
+        String keyspace;
+        boolean ifNotExists;
+        final Map<String, String> replication = new LinkedHashMap<>();
+        boolean durableWrites = true;
+
+        @Override
+        Result execute(Database database, byte[][] values, QueryOptions options) {
+            if (!database.createKeyspace(keyspace, replication, durableWrites)) {
+                if (!ifNotExists) {
+                    throw new CqlException(CqlException.INVALID, "Keyspace " + keyspace + " already exists");
+                }
+                return Result.NONE;
+            }
+            return new Result.SchemaChange(keyspace, null);
+        }
+    }
+
+    static final class CreateTable extends Statement {
+        String keyspace;
+        String tableName;
+        boolean ifNotExists;
+        final Map<String, CqlType> columnTypes = new LinkedHashMap<>();
+        final List<String> staticColumns = new ArrayList<>();
+        final List<String> partitionKey = new ArrayList<>();
+        final List<String> clustering = new ArrayList<>();
+        final List<String> descending = new ArrayList<>();
+
+        @Override
+        Result execute(Database database, byte[][] values, QueryOptions options) {
+            if (partitionKey.isEmpty()) {
+                throw new CqlException(CqlException.INVALID, "No PRIMARY KEY specifed (exactly one required)");
+            }
+            final List<Column> partitionColumns = new ArrayList<>();
+            final List<Column> clusteringColumns = new ArrayList<>();
+            final List<Column> others = new ArrayList<>();
+            for (String name : partitionKey) {
+                partitionColumns.add(new Column(name, type(name), Kind.PARTITION_KEY, partitionColumns.size(), false));
+            }
+            for (String name : clustering) {
+                clusteringColumns.add(new Column(name, type(name), Kind.CLUSTERING, clusteringColumns.size(),
+                        descending.contains(name)));
+            }
+            for (Map.Entry<String, CqlType> column : columnTypes.entrySet()) {
+                if (!partitionKey.contains(column.getKey()) && !clustering.contains(column.getKey())) {
+                    others.add(new Column(column.getKey(), column.getValue(),
+                            staticColumns.contains(column.getKey()) ? Kind.STATIC : Kind.REGULAR, -1, false));
+                }
+            }
+            final Table table = new Table(keyspace, tableName, partitionColumns, clusteringColumns, others);
+            if (!database.createTable(table)) {
+                if (!ifNotExists) {
+                    throw new CqlException(CqlException.INVALID, "Table " + keyspace + "." + tableName + " already exists");
+                }
+                return Result.NONE;
+            }
+            return new Result.SchemaChange(keyspace, tableName);
+        }
+
+        private CqlType type(String column) {
+            final CqlType type = columnTypes.get(column);
+            if (type == null) {
+                throw new CqlException(CqlException.INVALID, "Unknown definition " + column + " referenced in PRIMARY KEY");
+            }
+            return type;
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package killrvideo.loadtest.cql;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Definition and content of a table.
+ *
+ * Partitions are kept in a hash map and their rows sorted by the clustering
+ * order. Each cell keeps its write timestamp and expiration, the newest
+ * write wins and deletions shadow older cells, as in Cassandra.
+ */
+final class Table {
+
+    enum Kind {
+        PARTITION_KEY, CLUSTERING, STATIC, REGULAR;
+
+        String schemaName() {
+            return name().toLowerCase();
+        }
+    }
+
+    static final class Column {
+        final String name;
+        final CqlType type;
+        final Kind kind;
+        final int position;
+        final boolean descending;
+
+        Column(String name, CqlType type, Kind kind, int position, boolean descending) {
+            this.name = name;
+            this.type = type;
+            this.kind = kind;
+            this.position = position;
+            this.descending = descending;
+        }
+
+        boolean isPrimaryKey() {
+            return kind == Kind.PARTITION_KEY || kind == Kind.CLUSTERING;
+        }
+    }
+
+    final String keyspace;
+    final String name;
+    final UUID id = UUID.randomUUID();
+    final List<Column> partitionKey;
+    final List<Column> clustering;
+
+    /**
+     * Columns in the order of SELECT *
+     */
+    final List<Column> columns;
+
+    private final Map<String, Column> columnsByName = new HashMap<>();
+    private final Comparator<byte[][]> clusteringOrder;
+    private final ConcurrentHashMap<Key, Partition> partitions = new ConcurrentHashMap<>();
+
+    Table(String keyspace, String name, List<Column> partitionKey, List<Column> clustering, List<Column> others) {
+        this.keyspace = keyspace;
+        this.name = name;
+        this.partitionKey = partitionKey;
+        this.clustering = clustering;
+
+        final List<Column> sorted = new ArrayList<>(others);
+        sorted.sort(Comparator.comparing((Column column) -> column.kind != Kind.STATIC).thenComparing(column -> column.name));
+        final List<Column> all = new ArrayList<>(partitionKey);
+        all.addAll(clustering);
+        all.addAll(sorted);
+        this.columns = Collections.unmodifiableList(all);
+        for (Column column : all) {
+            columnsByName.put(column.name, column);
+        }
+
+        this.clusteringOrder = (left, right) -> {
+            for (int i = 0; i < clustering.size(); i++) {
+                final Column column = clustering.get(i);
+                final int result = column.type.compare(left[i], right[i]);
+                if (result != 0) {
+                    return column.descending ? -result : result;
+                }
+            }
+            return 0;
+        };
+    }
+
+    Column column(String columnName) {
+        final Column column = columnsByName.get(columnName);
+        if (column == null) {
+            throw new CqlException(CqlException.INVALID, "Undefined column name " + columnName);
+        }
+        return column;
+    }
+
+    boolean isCounterTable() {
+        return columns.stream().anyMatch(column -> column.type.equals(CqlType.COUNTER));
+    }
+
+    Partition partition(byte[][] key) {
+        return partitions.computeIfAbsent(new Key(key), k -> new Partition(key));
+    }
+
+    /**
+     * @return the partition or null if it was never written
+     */
+    Partition existingPartition(byte[][] key) {
+        return partitions.get(new Key(key));
+    }
+
+    Collection<Partition> allPartitions() {
+        return partitions.values();
+    }
+
+    /**
+     * Partition key with value semantics
+     */
+    private static final class Key {
+        private final byte[][] components;
+        private final int hash;
+
+        Key(byte[][] components) {
+            this.components = components;
+            this.hash = Arrays.deepHashCode(components);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && Arrays.deepEquals(components, ((Key) other).components);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    static final class Cell {
+        final byte[] value;
+        final long timestamp;
+        final long expiresAtMillis;
+        final int ttlSeconds;
+
+        Cell(byte[] value, long timestamp, int ttlSeconds, long nowMillis) {
+            this.value = value;
+            this.timestamp = timestamp;
+            this.ttlSeconds = ttlSeconds;
+            this.expiresAtMillis = ttlSeconds > 0 ? nowMillis + ttlSeconds * 1000L : 0L;
+        }
+
+        boolean isLive(long nowMillis, long deletedAt) {
+            return value != null && timestamp > deletedAt && (expiresAtMillis == 0 || expiresAtMillis > nowMillis);
+        }
+
+        /**
+         * Cassandra reconciliation, newest timestamp first, then deletions, then the greatest value
+         */
+        boolean supersedes(Cell other) {
+            if (timestamp != other.timestamp) {
+                return timestamp > other.timestamp;
+            }
+            if (value == null || other.value == null) {
+                return value == null;
+            }
+            return CqlType.compareUnsigned(value, other.value) > 0;
+        }
+    }
+
+    static final class Row {
+        final byte[][] clustering;
+        final Map<String, Cell> cells = new HashMap<>();
+        Cell marker;
+        long deletedAt = Long.MIN_VALUE;
+
+        Row(byte[][] clustering) {
+            this.clustering = clustering;
+        }
+
+        void write(String column, Cell cell) {
+            final Cell current = cells.get(column);
+            if (current == null || cell.supersedes(current)) {
+                cells.put(column, cell);
+            }
+        }
+
+        void writeMarker(Cell cell) {
+            if (marker == null || cell.supersedes(marker)) {
+                marker = cell;
+            }
+        }
+
+        /**
+         * @return the live cell or null
+         */
+        Cell live(String column, long nowMillis, long partitionDeletedAt) {
+            final Cell cell = cells.get(column);
+            return cell != null && cell.isLive(nowMillis, Math.max(deletedAt, partitionDeletedAt)) ? cell : null;
+        }
+
+        boolean isLive(long nowMillis, long partitionDeletedAt) {
+            final long deletion = Math.max(deletedAt, partitionDeletedAt);
+            if (marker != null && marker.isLive(nowMillis, deletion)) {
+                return true;
+            }
+            for (Cell cell : cells.values()) {
+                if (cell.isLive(nowMillis, deletion)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    final class Partition {
+        final byte[][] key;
+        final Row statics = new Row(new byte[0][]);
+        long deletedAt = Long.MIN_VALUE;
+        private final NavigableMap<byte[][], Row> rows = new TreeMap<>(clusteringOrder);
+
+        Partition(byte[][] key) {
+            this.key = key;
+        }
+
+        Row row(byte[][] clusteringKey) {
+            return clustering.isEmpty() ? rows.computeIfAbsent(new byte[0][], Row::new)
+                    : rows.computeIfAbsent(clusteringKey, Row::new);
+        }
+
+        Row existingRow(byte[][] clusteringKey) {
+            return rows.get(clustering.isEmpty() ? new byte[0][] : clusteringKey);
+        }
+
+        /**
+         * @return rows in clustering order, or in reverse order
+         */
+        Collection<Row> rows(boolean reversed) {
+            return reversed ? rows.descendingMap().values() : rows.values();
+        }
+    }
+
+    /**
+     * @return values of a row by column name, for the schema tables
+     */
+    static Map<String, Object> values(Object... namesAndValues) {
+        final Map<String, Object> values = new LinkedHashMap<>();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            values.put((String) namesAndValues[i], namesAndValues[i + 1]);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,61 @@
+package killrvideo.loadtest.cql;
+
+/**
+ * Value in a statement, a literal or a bind marker
+ */
+final class Term {
+
+    /**
+     * Bound value of a variable the driver chose not to set
+     */
+    static final byte[] UNSET = new byte[0];
+
+    final int marker;
+    final String literal;
+
+    private Term(int marker, String literal) {
+        this.marker = marker;
+        this.literal = literal;
+    }
+
+    static Term marker(int index) {
+        return new Term(index, null);
+    }
+
+    static Term literal(String literal) {
+        return new Term(-1, literal);
+    }
+
+    static Term nullLiteral() {
+        return new Term(-1, null);
+    }
+
+    boolean isMarker() {
+        return marker >= 0;
+    }
+
+    /**
+     * @return the serialized value, null for null and {@link #UNSET} for an unset variable
+     */
+    byte[] resolve(CqlType type, byte[][] values) {
+        if (isMarker()) {
+            if (marker >= values.length) {
+                throw new CqlException(CqlException.INVALID,
+                        "There were " + values.length + " markers(?) in CQL but more values are needed");
+            }
+            return values[marker];
+        }
+        return literal == null ? null : type.fromLiteral(literal);
+    }
+
+    /**
+     * @return the value, which must be set and not null
+     */
+    byte[] require(CqlType type, byte[][] values, String what) {
+        final byte[] value = resolve(type, values);
+        if (value == null || value == UNSET) {
+            throw new CqlException(CqlException.INVALID, "Invalid null or unset value for " + what);
+        }
+        return value;
+    }
+}
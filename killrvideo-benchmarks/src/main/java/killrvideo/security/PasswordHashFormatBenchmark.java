@@ -0,0 +1,55 @@
+package killrvideo.security;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of a password check in each format, the PBKDF2 one for a few iterations to
+ * size killrvideo.password.pbkdf2.iterations and killrvideo.password.hashing.threads
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PasswordHashFormatBenchmark {
+
+    @Param({"10000", "100000"})
+    public int pbkdf2Iterations;
+
+    private final LegacyPasswordHashFormat legacy = new LegacyPasswordHashFormat();
+    private Pbkdf2PasswordHashFormat pbkdf2;
+
+    private final String password = "password1234";
+    private String legacyHash;
+    private String pbkdf2Hash;
+
+    @Setup
+    public void setup() {
+        pbkdf2 = new Pbkdf2PasswordHashFormat(pbkdf2Iterations);
+        legacyHash = legacy.hash(password);
+        pbkdf2Hash = pbkdf2.hash(password);
+    }
+
+    @Benchmark
+    public boolean legacyMatches() {
+        return legacy.matches(password, legacyHash);
+    }
+
+    @Benchmark
+    public boolean pbkdf2Matches() {
+        return pbkdf2.matches(password, pbkdf2Hash);
+    }
+}
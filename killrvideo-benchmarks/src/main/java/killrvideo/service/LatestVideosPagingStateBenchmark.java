@@ -0,0 +1,63 @@
+package killrvideo.service;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import killrvideo.service.VideoCatalogService.CustomPagingState;
+
+/**
+ * Custom paging token of getLatestVideoPreviews, built for the first page
+ * and then parsed and encoded again for every following page
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LatestVideosPagingStateBenchmark {
+
+    /**
+     * Hex form of a native driver paging state, as found in real tokens
+     */
+    private static final String ROWS_PAGING_STATE = "001000100d4d1e2bc4d64c6f8e7e5ab1a1c3e0f2f07ffffffdf07ffffffd7a3b4f1c2d0e9f8a";
+
+    private CustomPagingState pagingState;
+    private Optional<String> token;
+
+    @Setup
+    public void setup() {
+        pagingState = VideoCatalogService.buildFirstCustomPagingState();
+        pagingState.currentBucket = 2;
+        pagingState.cassandraPagingState = ROWS_PAGING_STATE;
+        token = Optional.of(VideoCatalogService.createPagingState(pagingState.buckets, pagingState.currentBucket,
+                pagingState.cassandraPagingState));
+    }
+
+    @Benchmark
+    public CustomPagingState buildFirst() {
+        return VideoCatalogService.buildFirstCustomPagingState();
+    }
+
+    @Benchmark
+    public String encode() {
+        return VideoCatalogService.createPagingState(pagingState.buckets, pagingState.currentBucket,
+                pagingState.cassandraPagingState);
+    }
+
+    @Benchmark
+    public Optional<CustomPagingState> parse() {
+        return VideoCatalogService.parseCustomPagingState(token);
+    }
+}
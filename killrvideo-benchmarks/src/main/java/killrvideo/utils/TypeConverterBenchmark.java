@@ -0,0 +1,71 @@
+package killrvideo.utils;
+
+import java.time.Instant;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.protobuf.Timestamp;
+
+import killrvideo.common.CommonTypes.TimeUuid;
+import killrvideo.common.CommonTypes.Uuid;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TypeConverterBenchmark {
+
+    private Instant instant;
+    private Date date;
+    private Timestamp timestamp;
+    private UUID uuid;
+    private UUID timeUuid;
+
+    @Setup
+    public void setup() {
+        instant = Instant.now();
+        date = Date.from(instant);
+        timestamp = TypeConverter.instantToTimeStamp(instant);
+        uuid = UUID.randomUUID();
+        timeUuid = UUID.fromString("1c4b1d40-c0e7-11e7-8f1a-0800200c9a66");
+    }
+
+    @Benchmark
+    public Timestamp instantToTimeStamp() {
+        return TypeConverter.instantToTimeStamp(instant);
+    }
+
+    @Benchmark
+    public Timestamp dateToTimestamp() {
+        return TypeConverter.dateToTimestamp(date);
+    }
+
+    @Benchmark
+    public Date dateFromTimestamp() {
+        return TypeConverter.dateFromTimestamp(timestamp);
+    }
+
+    @Benchmark
+    public Uuid uuidToUuid() {
+        return TypeConverter.uuidToUuid(uuid);
+    }
+
+    @Benchmark
+    public TimeUuid uuidToTimeUuid() {
+        return TypeConverter.uuidToTimeUuid(timeUuid);
+    }
+}
@@ -0,0 +1,217 @@
+package killrvideo.validation;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import javax.validation.Validation;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.grpc.stub.StreamObserver;
+import killrvideo.comments.CommentsServiceOuterClass.CommentOnVideoRequest;
+import killrvideo.comments.CommentsServiceOuterClass.GetVideoCommentsRequest;
+import killrvideo.common.CommonTypes.TimeUuid;
+import killrvideo.common.CommonTypes.Uuid;
+import killrvideo.ratings.RatingsServiceOuterClass.RateVideoRequest;
+import killrvideo.search.SearchServiceOuterClass.GetQuerySuggestionsRequest;
+import killrvideo.statistics.StatisticsServiceOuterClass.GetNumberOfPlaysRequest;
+import killrvideo.statistics.StatisticsServiceOuterClass.RecordPlaybackStartedRequest;
+import killrvideo.uploads.UploadsServiceOuterClass.MarkUploadCompleteRequest;
+import killrvideo.user_management.UserManagementServiceOuterClass.CreateUserRequest;
+import killrvideo.video_catalog.VideoCatalogServiceOuterClass.GetLatestVideoPreviewsRequest;
+import killrvideo.video_catalog.VideoCatalogServiceOuterClass.GetVideoPreviewsRequest;
+import killrvideo.video_catalog.VideoCatalogServiceOuterClass.GetVideoRequest;
+import killrvideo.video_catalog.VideoCatalogServiceOuterClass.SubmitYouTubeVideoRequest;
+
+/**
+ * isValid() is called at the start of every RPC, mostly with valid requests.
+ * The valid requests are checked without allocating, their gc.alloc.rate.norm
+ * should stay at ~0 B/op, only the invalid ones build an error message.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KillrVideoInputValidatorBenchmark {
+
+    private static final StreamObserver<Object> NO_OP_OBSERVER = new StreamObserver<Object>() {
+        @Override
+        public void onNext(Object value) {
+        }
+
+        @Override
+        public void onError(Throwable t) {
+        }
+
+        @Override
+        public void onCompleted() {
+        }
+    };
+
+    private KillrVideoInputValidator validator;
+
+    private CommentOnVideoRequest commentOnVideo;
+    private CommentOnVideoRequest invalidCommentOnVideo;
+    private GetVideoCommentsRequest getVideoComments;
+    private RateVideoRequest rateVideo;
+    private GetQuerySuggestionsRequest getQuerySuggestions;
+    private RecordPlaybackStartedRequest recordPlaybackStarted;
+    private GetNumberOfPlaysRequest getNumberOfPlays;
+    private MarkUploadCompleteRequest markUploadComplete;
+    private CreateUserRequest createUser;
+    private GetVideoRequest getVideo;
+    private GetVideoPreviewsRequest getVideoPreviews;
+    private GetLatestVideoPreviewsRequest getLatestVideoPreviews;
+    private SubmitYouTubeVideoRequest submitYouTubeVideo;
+
+    @Setup
+    public void setup() {
+        validator = new KillrVideoInputValidator();
+        validator.validator = Validation.buildDefaultValidatorFactory().getValidator();
+
+        final Uuid videoId = uuid();
+        final Uuid userId = uuid();
+
+        commentOnVideo = CommentOnVideoRequest.newBuilder()
+                .setVideoId(videoId)
+                .setUserId(userId)
+                .setCommentId(TimeUuid.newBuilder().setValue("1c4b1d40-c0e7-11e7-8f1a-0800200c9a66"))
+                .setComment("Great introduction to data modeling, thanks!")
+                .build();
+        invalidCommentOnVideo = CommentOnVideoRequest.newBuilder()
+                .setVideoId(videoId)
+                .build();
+        getVideoComments = GetVideoCommentsRequest.newBuilder()
+                .setVideoId(videoId)
+                .setPageSize(10)
+                .build();
+        rateVideo = RateVideoRequest.newBuilder()
+                .setVideoId(videoId)
+                .setUserId(userId)
+                .setRating(4)
+                .build();
+        getQuerySuggestions = GetQuerySuggestionsRequest.newBuilder()
+                .setQuery("cass")
+                .setPageSize(5)
+                .build();
+        recordPlaybackStarted = RecordPlaybackStartedRequest.newBuilder()
+                .setVideoId(videoId)
+                .build();
+        final GetNumberOfPlaysRequest.Builder plays = GetNumberOfPlaysRequest.newBuilder();
+        for (int i = 0; i < 10; i++) {
+            plays.addVideoIds(uuid());
+        }
+        getNumberOfPlays = plays.build();
+        markUploadComplete = MarkUploadCompleteRequest.newBuilder()
+                .setUploadUrl("/uploads/" + UUID.randomUUID() + "/holiday.mp4")
+                .setUserId(userId)
+                .build();
+        createUser = CreateUserRequest.newBuilder()
+                .setUserId(userId)
+                .setFirstName("Jane")
+                .setLastName("Doe")
+                .setEmail("jane.doe@example.com")
+                .setPassword("s3cr3t-passw0rd")
+                .build();
+        getVideo = GetVideoRequest.newBuilder()
+                .setVideoId(videoId)
+                .build();
+        final GetVideoPreviewsRequest.Builder previews = GetVideoPreviewsRequest.newBuilder();
+        for (int i = 0; i < 10; i++) {
+            previews.addVideoIds(uuid());
+        }
+        getVideoPreviews = previews.build();
+        getLatestVideoPreviews = GetLatestVideoPreviewsRequest.newBuilder()
+                .setPageSize(10)
+                .build();
+        submitYouTubeVideo = SubmitYouTubeVideoRequest.newBuilder()
+                .setVideoId(videoId)
+                .setUserId(userId)
+                .setName("Getting started with Apache Cassandra")
+                .setDescription("Data modeling basics")
+                .addTags("cassandra")
+                .addTags("datastax")
+                .setYouTubeVideoId("abcdefghijk")
+                .build();
+    }
+
+    private static Uuid uuid() {
+        return Uuid.newBuilder().setValue(UUID.randomUUID().toString()).build();
+    }
+
+    @Benchmark
+    public boolean commentOnVideo() {
+        return validator.isValid(commentOnVideo, NO_OP_OBSERVER);
+    }
+
+    @Benchmark
+    public boolean commentOnVideoInvalid() {
+        return validator.isValid(invalidCommentOnVideo, NO_OP_OBSERVER);
+    }
+
+    @Benchmark
+    public boolean getVideoComments() {
+        return validator.isValid(getVideoComments, NO_OP_OBSERVER);
+    }
+
+    @Benchmark
+    public boolean rateVideo() {
+        return validator.isValid(rateVideo, NO_OP_OBSERVER);
+    }
+
+    @Benchmark
+    public boolean getQuerySuggestions() {
+        return validator.isValid(getQuerySuggestions, NO_OP_OBSERVER);
+    }
+
+    @Benchmark
+    public boolean recordPlaybackStarted() {
+        return validator.isValid(recordPlaybackStarted, NO_OP_OBSERVER);
+    }
+
+    @Benchmark
+    public boolean getNumberOfPlays() {
+        return validator.isValid(getNumberOfPlays, NO_OP_OBSERVER);
+    }
+
+    @Benchmark
+    public boolean markUploadComplete() {
+        return validator.isValid(markUploadComplete, NO_OP_OBSERVER);
+    }
+
+    @Benchmark
+    public boolean createUser() {
+        return validator.isValid(createUser, NO_OP_OBSERVER);
+    }
+
+    @Benchmark
+    public boolean getVideo() {
+        return validator.isValid(getVideo, NO_OP_OBSERVER);
+    }
+
+    @Benchmark
+    public boolean getVideoPreviews() {
+        return validator.isValid(getVideoPreviews, NO_OP_OBSERVER);
+    }
+
+    @Benchmark
+    public boolean getLatestVideoPreviews() {
+        return validator.isValid(getLatestVideoPreviews, NO_OP_OBSERVER);
+    }
+
+    @Benchmark
+    public boolean submitYouTubeVideo() {
+        return validator.isValid(submitYouTubeVideo, NO_OP_OBSERVER);
+    }
+}
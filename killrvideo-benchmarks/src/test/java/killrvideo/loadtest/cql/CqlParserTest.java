@@ -0,0 +1,128 @@
+package killrvideo.loadtest.cql;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class CqlParserTest {
+
+	private static final String KEYSPACE = "killrvideo_java";
+
+	private final Database database = new Database(InetAddress.getLoopbackAddress());
+
+	@Before
+	public void createSchema() {
+		execute("CREATE KEYSPACE killrvideo_java WITH REPLICATION = {'class': 'SimpleStrategy', 'replication_factor': 1}");
+		execute("CREATE TABLE comments_by_video (videoid uuid, commentid timeuuid, comment text, "
+				+ "PRIMARY KEY (videoid, commentid)) WITH CLUSTERING ORDER BY (commentid DESC)");
+		execute("CREATE TABLE video_ratings (videoid uuid, rating_counter counter, rating_total counter, "
+				+ "PRIMARY KEY (videoid))");
+	}
+
+	@Test
+	public void testScriptIsSplitOnSemicolonsOutsideStringsAndComments() {
+		final List<String> statements = CqlParser.split("// Comments; of the script\n"
+				+ "INSERT INTO comments_by_video (videoid, commentid, comment) VALUES (?, ?, 'first; and only');\n"
+				+ "/* ; */ USE killrvideo_java;");
+
+		assertEquals(2, statements.size());
+		assertTrue(statements.get(0).startsWith("insert into comments_by_video"));
+		assertTrue(statements.get(0).endsWith("'first; and only' )"));
+		assertEquals("use killrvideo_java", statements.get(1));
+	}
+
+	@Test
+	public void testBindMarkersAreNumberedInOrder() {
+		final Statement update = CqlParser.parse("UPDATE video_ratings "
+				+ "SET rating_counter = rating_counter + 1, rating_total = rating_total + :rating WHERE videoid = ?", KEYSPACE);
+		update.prepare(database);
+
+		assertEquals(Arrays.asList("rating", null), update.markerNames);
+		assertEquals("rating", update.variables().get(0).name);
+		assertEquals("videoid", update.variables().get(1).name);
+		assertEquals(CqlType.UUID_TYPE, update.variables().get(1).type);
+		assertArrayEquals(new int[] { 1 }, update.partitionKeyIndexes());
+	}
+
+	@Test
+	public void testSelectIsPagedInClusteringOrder() {
+		final UUID videoId = UUID.randomUUID();
+		for (int i = 1; i <= 3; i++) {
+			execute("INSERT INTO comments_by_video (videoid, commentid, comment) VALUES (" + videoId
+					+ ", 0000000" + i + "-0000-1000-8000-000000000000, 'comment " + i + "')");
+		}
+
+		final Statement select = CqlParser.parse("SELECT comment FROM comments_by_video WHERE videoid = ?", KEYSPACE);
+		select.prepare(database);
+		final byte[][] values = { CqlType.serialize(videoId) };
+
+		final Result.Rows first = (Result.Rows) select.execute(database, values, new QueryOptions(2, null, QueryOptions.NO_TIMESTAMP, false));
+		assertEquals(Arrays.asList("comment 3", "comment 2"), comments(first));
+		assertNotNull(first.pagingState);
+
+		final Result.Rows second = (Result.Rows) select.execute(database, values, new QueryOptions(2, first.pagingState, QueryOptions.NO_TIMESTAMP, false));
+		assertEquals(Arrays.asList("comment 1"), comments(second));
+		assertNull(second.pagingState);
+	}
+
+	@Test
+	public void testCounterUpdatesAddUp() {
+		final UUID videoId = UUID.randomUUID();
+		final Statement update = CqlParser.parse("UPDATE video_ratings "
+				+ "SET rating_counter = rating_counter + 1, rating_total = rating_total + ? WHERE videoid = ?", KEYSPACE);
+		update.prepare(database);
+		update.execute(database, new byte[][] { CqlType.serialize(4L), CqlType.serialize(videoId) }, QueryOptions.DEFAULT);
+		update.execute(database, new byte[][] { CqlType.serialize(5L), CqlType.serialize(videoId) }, QueryOptions.DEFAULT);
+
+		final Result.Rows rows = (Result.Rows) execute("SELECT rating_counter, rating_total FROM video_ratings WHERE videoid = " + videoId);
+		assertEquals(1, rows.rows.size());
+		assertEquals(2L, CqlType.toLong(rows.rows.get(0)[0]));
+		assertEquals(9L, CqlType.toLong(rows.rows.get(0)[1]));
+	}
+
+	@Test
+	public void testSyntaxErrorIsReported() {
+		try {
+			CqlParser.parse("SELECT * FROM video_ratings WHERE", KEYSPACE);
+			fail("Incomplete statement parsed");
+		} catch (CqlException ex) {
+			assertEquals(CqlException.SYNTAX_ERROR, ex.code);
+		}
+	}
+
+	@Test
+	public void testUnknownTableIsInvalid() {
+		try {
+			CqlParser.parse("SELECT * FROM videos_by_color", KEYSPACE).prepare(database);
+			fail("Unknown table prepared");
+		} catch (CqlException ex) {
+			assertEquals(CqlException.INVALID, ex.code);
+		}
+	}
+
+	private Result execute(String cql) {
+		final Statement statement = CqlParser.parse(cql, KEYSPACE);
+		statement.prepare(database);
+		return statement.execute(database, new byte[0][], QueryOptions.DEFAULT);
+	}
+
+	private static List<String> comments(Result.Rows rows) {
+		final List<String> comments = new ArrayList<>();
+		for (byte[][] row : rows.rows) {
+			comments.add(CqlType.toText(row[0]));
+		}
+		return comments;
+	}
+}
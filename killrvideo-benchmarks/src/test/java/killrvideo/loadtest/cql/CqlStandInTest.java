@@ -0,0 +1,137 @@
+package killrvideo.loadtest.cql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ProtocolVersion;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.utils.UUIDs;
+import com.google.common.io.ByteStreams;
+
+import killrvideo.entity.Schema;
+
+/**
+ * Round trips of the driver through the stand-in, over the native protocol
+ */
+public class CqlStandInTest {
+
+	private static CqlStandIn standIn;
+	private static Cluster cluster;
+	private static Session session;
+
+	@BeforeClass
+	public static void startStandIn() throws Exception {
+		final InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), freePort());
+		standIn = new CqlStandIn(address, LatencyInjector.NONE, 2);
+		standIn.executeScript(resource("cql/keyspace.cql"), null);
+		standIn.executeScript(resource("cql/schema.cql"), Schema.KEYSPACE);
+		standIn.start();
+
+		cluster = Cluster.builder()
+				.addContactPointsWithPorts(address)
+				.withProtocolVersion(ProtocolVersion.V4)
+				.build();
+		session = cluster.connect(Schema.KEYSPACE);
+	}
+
+	@AfterClass
+	public static void stopStandIn() throws Exception {
+		if (cluster != null) {
+			cluster.close();
+		}
+		if (standIn != null) {
+			standIn.close();
+		}
+	}
+
+	@Test
+	public void testPreparedStatementsRoundTrip() {
+		final PreparedStatement insert = session.prepare(
+				"INSERT INTO videos (videoid, userid, name, tags, added_date) VALUES (?, ?, ?, ?, ?)");
+		final PreparedStatement select = session.prepare(
+				"SELECT name, tags, added_date FROM videos WHERE videoid = ?");
+
+		final UUID videoId = UUID.randomUUID();
+		final Date addedDate = new Date(1509976800123L);
+		session.execute(insert.bind(videoId, UUID.randomUUID(), "Cassandra Day", new HashSet<>(Arrays.asList("cassandra", "datastax")), addedDate));
+
+		final Row row = session.execute(select.bind(videoId)).one();
+		assertNotNull(row);
+		assertEquals("Cassandra Day", row.getString("name"));
+		assertEquals(new HashSet<>(Arrays.asList("cassandra", "datastax")), row.getSet("tags", String.class));
+		assertEquals(addedDate, row.getTimestamp("added_date"));
+	}
+
+	@Test
+	public void testResultsArePaged() {
+		final PreparedStatement insert = session.prepare(
+				"INSERT INTO comments_by_video (videoid, commentid, userid, comment) VALUES (?, ?, ?, ?)");
+		final UUID videoId = UUID.randomUUID();
+		for (int i = 1; i <= 5; i++) {
+			session.execute(insert.bind(videoId, UUIDs.timeBased(), UUID.randomUUID(), "comment " + i));
+		}
+
+		final ResultSet page = session.execute(session.prepare("SELECT comment FROM comments_by_video WHERE videoid = ?")
+				.bind(videoId)
+				.setFetchSize(2));
+		assertEquals(2, page.getAvailableWithoutFetching());
+		assertFalse(page.isFullyFetched());
+		assertNotNull(page.getExecutionInfo().getPagingState());
+
+		final List<String> comments = new ArrayList<>();
+		for (Row row : page) {
+			comments.add(row.getString("comment"));
+		}
+		assertEquals(Arrays.asList("comment 5", "comment 4", "comment 3", "comment 2", "comment 1"), comments);
+	}
+
+	@Test
+	public void testCounterUpdatesAddUp() {
+		final PreparedStatement update = session.prepare("UPDATE video_ratings "
+				+ "SET rating_counter = rating_counter + 1, rating_total = rating_total + ? WHERE videoid = ?");
+		final UUID videoId = UUID.randomUUID();
+		session.execute(update.bind(4L, videoId));
+		session.execute(update.bind(5L, videoId));
+
+		final Row row = session.execute("SELECT rating_counter, rating_total FROM video_ratings WHERE videoid = ?", videoId).one();
+		assertEquals(2L, row.getLong("rating_counter"));
+		assertEquals(9L, row.getLong("rating_total"));
+	}
+
+	private static int freePort() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+
+	private static String resource(String name) throws IOException {
+		try (InputStream in = CqlStandInTest.class.getClassLoader().getResourceAsStream(name)) {
+			if (in == null) {
+				throw new IllegalStateException("Cannot find resource " + name);
+			}
+			return new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8);
+		}
+	}
+}
@@ -0,0 +1,230 @@
+package killrvideo.async;
+
+import static killrvideo.utils.ExceptionUtils.mergeStackTrace;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.driver.core.exceptions.BootstrappingException;
+import com.datastax.driver.core.exceptions.BusyPoolException;
+import com.datastax.driver.core.exceptions.ConnectionException;
+import com.datastax.driver.core.exceptions.NoHostAvailableException;
+import com.datastax.driver.core.exceptions.OverloadedException;
+import com.datastax.driver.core.exceptions.UnavailableException;
+import com.datastax.driver.core.exceptions.WriteTimeoutException;
+
+/**
+ * Write-behind accumulator for Cassandra counter columns.
+ *
+ * Increments are coalesced in memory, one striped {@link LongAdder} per key,
+ * and periodically flushed through the supplied writer as a single
+ * <code>counter = counter + N</code> mutation per key. A flush is triggered
+ * on every <strong>flushIntervalMs</strong>, or earlier as soon as one key
+ * accumulates <strong>flushThreshold</strong> pending increments or more than
+ * <strong>maxPendingKeys</strong> keys are waiting. The keys are kept here,
+ * the {@link WindowedBatcher} only schedules the flushes.
+ *
+ * The loss window on a crash is therefore bounded by the flush interval
+ * and the threshold. {@link #close()} performs a final flush on shutdown.
+ *
+ * Flushing never resets an adder. It reads the current sum and subtracts
+ * exactly that amount so increments racing with the flush are kept for
+ * the next round. Counter updates are not idempotent, so a failed write is
+ * only added back and retried on the next flush when Cassandra is known
+ * not to have applied it, e.g. not enough replicas were alive. After a
+ * timeout the update may have been applied, its delta is logged and
+ * counted as uncertain instead, see {@link #uncertainIncrements()}.
+ *
+ * @param <K> key type, usually the partition key of the counter table
+ */
+public class CounterAggregator<K> implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CounterAggregator.class);
+
+    private final String name;
+    private final long flushThreshold;
+    private final int maxPendingKeys;
+    private final BiFunction<K, Long, CompletableFuture<?>> writer;
+
+    private final ConcurrentHashMap<K, LongAdder> pending = new ConcurrentHashMap<>();
+    private final AtomicBoolean overMaxPendingKeys = new AtomicBoolean(false);
+    private final LongAdder uncertain = new LongAdder();
+    private final WindowedBatcher<K> batcher;
+
+    /**
+     * Adders removed from the map during the previous flush. A writer may still
+     * hold a reference to one of them, so they are drained once more on the
+     * next flush before being discarded.
+     */
+    private List<Map.Entry<K, LongAdder>> retired = new ArrayList<>();
+
+    public CounterAggregator(String name, long flushIntervalMs, long flushThreshold, int maxPendingKeys,
+                             BiFunction<K, Long, CompletableFuture<?>> writer) {
+        this.name = name;
+        this.flushThreshold = flushThreshold;
+        this.maxPendingKeys = maxPendingKeys;
+        this.writer = writer;
+        this.batcher = new WindowedBatcher<>(name, flushIntervalMs, 0, keys -> flushPending());
+    }
+
+    /**
+     * Record an increment of 1 for the given key
+     * @param key
+     */
+    public void increment(K key) {
+        add(key, 1L);
+    }
+
+    /**
+     * Record an arbitrary delta for the given key
+     * @param key
+     * @param delta
+     */
+    public void add(K key, long delta) {
+        if (batcher.isClosed()) {
+            throw new IllegalStateException("Counter aggregator " + name + " is closed");
+        }
+
+        LongAdder adder = pending.get(key);
+        final boolean newKey = adder == null;
+        if (newKey) {
+            adder = pending.computeIfAbsent(key, k -> new LongAdder());
+        }
+        adder.add(delta);
+
+        if (flushThreshold > 0 && adder.sum() >= flushThreshold) {
+            batcher.flushSoon();
+        } else if (newKey && pending.size() > maxPendingKeys && overMaxPendingKeys.compareAndSet(false, true)) {
+            // Only on the way over the bound, the flush re-arms it once back under
+            batcher.flushSoon();
+        }
+    }
+
+    /**
+     * @return number of keys currently waiting to be flushed
+     */
+    public int pendingKeys() {
+        return pending.size();
+    }
+
+    /**
+     * @return increments whose write timed out, they may or may not have been applied
+     */
+    public long uncertainIncrements() {
+        return uncertain.sum();
+    }
+
+    /**
+     * Flush every pending delta to the writer and return a future
+     * completing once all the writes are acknowledged
+     * @return CompletableFuture
+     */
+    public CompletableFuture<Void> flush() {
+        return batcher.flush();
+    }
+
+    private CompletableFuture<Void> flushPending() {
+        final List<CompletableFuture<?>> writes = new ArrayList<>();
+
+        // Drain adders retired on the previous round, late increments included
+        for (Map.Entry<K, LongAdder> entry : retired) {
+            final long leftover = entry.getValue().sum();
+            if (leftover != 0) {
+                pending.computeIfAbsent(entry.getKey(), k -> new LongAdder()).add(leftover);
+            }
+        }
+        retired = new ArrayList<>();
+
+        for (Map.Entry<K, LongAdder> entry : pending.entrySet()) {
+            final K key = entry.getKey();
+            final LongAdder adder = entry.getValue();
+            final long delta = adder.sum();
+
+            if (delta == 0) {
+                // Idle for a whole interval, stop tracking this key
+                if (pending.remove(key, adder)) {
+                    retired.add(entry);
+                }
+                continue;
+            }
+
+            adder.add(-delta);
+            writes.add(writer.apply(key, delta)
+                    .handle((rs, ex) -> {
+                        if (ex == null) {
+                            return rs;
+                        }
+                        if (isNotApplied(ex)) {
+                            LOGGER.error("Exception flushing " + delta + " increments of " + key
+                                    + " for " + name + ", will retry : " + mergeStackTrace(ex));
+                            pending.computeIfAbsent(key, k -> new LongAdder()).add(delta);
+                        } else {
+                            uncertain.add(delta);
+                            LOGGER.error("Exception flushing " + delta + " increments of " + key
+                                    + " for " + name + ", they may have been applied and are not retried : "
+                                    + mergeStackTrace(ex));
+                        }
+                        return rs;
+                    }));
+        }
+
+        if (pending.size() <= maxPendingKeys) {
+            overMaxPendingKeys.set(false);
+        }
+
+        if (!writes.isEmpty()) {
+            LOGGER.debug("Flushed " + writes.size() + " counter updates for " + name);
+        }
+        return CompletableFuture.allOf(writes.toArray(new CompletableFuture[writes.size()]));
+    }
+
+    /**
+     * Stop the periodic flush and write out everything still pending,
+     * waiting at most <strong>timeoutMs</strong> for acknowledgements
+     * @param timeoutMs
+     */
+    public void close(long timeoutMs) {
+        batcher.close(timeoutMs);
+        try {
+            // Second pass for adders retired by the flush above
+            flush().get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            LOGGER.error("Exception during final flush of " + name + ", " + pending.size()
+                    + " keys lost : " + mergeStackTrace(e));
+        }
+    }
+
+    @Override
+    public void close() {
+        close(5000L);
+    }
+
+    /**
+     * @return true when the write certainly did not reach the replicas, retrying it cannot count twice
+     */
+    private static boolean isNotApplied(Throwable ex) {
+        final Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        if (cause instanceof NoHostAvailableException) {
+            // Unless a host dropped or timed out the request once sent
+            return ((NoHostAvailableException) cause).getErrors().values().stream()
+                    .noneMatch(error -> error instanceof ConnectionException || error instanceof WriteTimeoutException);
+        }
+        return cause instanceof UnavailableException
+                || cause instanceof OverloadedException
+                || cause instanceof BootstrappingException
+                || cause instanceof BusyPoolException;
+    }
+}
@@ -0,0 +1,407 @@
+package killrvideo.async;
+
+import static killrvideo.utils.ExceptionUtils.mergeStackTrace;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import killrvideo.async.QueuedEventBus.Backpressure;
+
+/**
+ * One listener registered to the {@link QueuedEventBus}: its bounded queue,
+ * the thread calling its @Subscribe methods, and its metrics.
+ *
+ * With the SPILL policy the posting thread never touches the spill file, the
+ * events overflowing the queue are handed to a spill writer thread through a
+ * second bounded queue, and the dispatcher reads them back from the file.
+ */
+final class EventSubscriber implements EventSubscriberMBean, AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EventSubscriber.class);
+
+    private static final long POLL_INTERVAL_MS = 100;
+    private static final long CLOSE_TIMEOUT_MS = 5000;
+
+    /**
+     * Events waiting for the spill writer, a larger burst is dropped
+     */
+    private static final int SPILL_QUEUE_CAPACITY = 4096;
+
+    private final String name;
+    private final Object listener;
+    private final List<Method> methods;
+    private final Backpressure policy;
+    private final long blockTimeoutMs;
+    private final ArrayBlockingQueue<Envelope> queue;
+    private final SpillFile spill;
+    private final ArrayBlockingQueue<Envelope> spillQueue;
+    private final Thread dispatcher;
+    private final Thread spillWriter;
+
+    private final LongAdder posted = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder spilled = new LongAdder();
+    private final LongAdder spillDropped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final AtomicLong maxDeliveryLagMillis = new AtomicLong();
+    private volatile long lastDeliveryLagMillis = 0;
+
+    /**
+     * Events handed to the spill writer and not delivered yet, in its queue or in the file
+     */
+    private final AtomicInteger overflow = new AtomicInteger();
+
+    private volatile boolean running = true;
+
+    EventSubscriber(String name, Object listener, List<Method> methods, int capacity, Backpressure policy,
+                    long blockTimeoutMs, SpillFile spill) {
+        this.name = name;
+        this.listener = listener;
+        this.methods = methods;
+        this.policy = policy;
+        this.blockTimeoutMs = blockTimeoutMs;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.spill = spill;
+        this.dispatcher = new Thread(this::dispatchLoop, "killrvideo-events-" + name);
+        this.dispatcher.setDaemon(true);
+        if (spill != null) {
+            this.spillQueue = new ArrayBlockingQueue<>(SPILL_QUEUE_CAPACITY);
+            this.spillWriter = new Thread(this::spillLoop, "killrvideo-events-spill-" + name);
+            this.spillWriter.setDaemon(true);
+        } else {
+            this.spillQueue = null;
+            this.spillWriter = null;
+        }
+    }
+
+    void start() {
+        dispatcher.start();
+        if (spillWriter != null) {
+            spillWriter.start();
+        }
+    }
+
+    Object listener() {
+        return listener;
+    }
+
+    boolean accepts(Object event) {
+        for (Method method : methods) {
+            if (method.getParameterTypes()[0].isInstance(event)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Called from the posting thread, only blocks with the BLOCK policy and
+     * at most for the block timeout, if any
+     * @param event
+     */
+    void offer(Object event) {
+        posted.increment();
+        if (!running) {
+            drop(event, "subscriber is closed");
+            return;
+        }
+        final Envelope envelope = new Envelope(System.currentTimeMillis(), event);
+
+        switch (policy) {
+            case DROP:
+                if (!queue.offer(envelope)) {
+                    drop(event, "queue is full");
+                }
+                break;
+
+            case BLOCK:
+                try {
+                    if (blockTimeoutMs <= 0) {
+                        queue.put(envelope);
+                    } else if (!queue.offer(envelope, blockTimeoutMs, TimeUnit.MILLISECONDS)) {
+                        drop(event, "queue is still full after " + blockTimeoutMs + " ms");
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    drop(event, "posting thread interrupted");
+                }
+                break;
+
+            case SPILL:
+                /**
+                 * Once something is spilled, every new event goes to the spill
+                 * writer as well until the file is drained, to keep events in order
+                 */
+                if (overflow.get() == 0 && queue.offer(envelope)) {
+                    return;
+                }
+                if (!(event instanceof Serializable)) {
+                    drop(event, "it cannot be spilled");
+                    return;
+                }
+                overflow.incrementAndGet();
+                if (!spillQueue.offer(envelope)) {
+                    overflow.decrementAndGet();
+                    drop(event, "spill writer is behind");
+                }
+                break;
+        }
+    }
+
+    private void drop(Object event, String reason) {
+        dropped.increment();
+        LOGGER.warn("Dropping " + event.getClass().getSimpleName() + " for " + name + ", " + reason);
+    }
+
+    /**
+     * Append the events handed by the posting threads to the spill file, in order
+     */
+    private void spillLoop() {
+        while (running || !spillQueue.isEmpty()) {
+            final Envelope envelope;
+            try {
+                envelope = spillQueue.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                if (!running) {
+                    break;
+                }
+                continue;
+            }
+            if (envelope == null) {
+                continue;
+            }
+
+            synchronized (spill) {
+                try {
+                    if (spill.append(envelope.postedAtMillis, envelope.event)) {
+                        spilled.increment();
+                    } else {
+                        spillDropped.increment();
+                        dropOverflow(envelope.event, "spill file is full");
+                    }
+                } catch (IOException ex) {
+                    LOGGER.error("Exception spilling event for " + name + " : " + mergeStackTrace(ex));
+                    dropOverflow(envelope.event, "it cannot be spilled");
+                }
+                spill.notifyAll();
+            }
+        }
+    }
+
+    private void dropOverflow(Object event, String reason) {
+        overflow.decrementAndGet();
+        drop(event, reason);
+    }
+
+    private void dispatchLoop() {
+        while (running || !queue.isEmpty() || overflow.get() > 0) {
+            try {
+                Envelope envelope = queue.poll();
+
+                /**
+                 * The queue only holds events older than the spilled ones, the
+                 * spilled ones are read once it is empty
+                 */
+                if (envelope == null && overflow.get() > 0) {
+                    final SpillFile.Record record = pollSpill();
+                    if (record != null) {
+                        overflow.decrementAndGet();
+                        deliver(record.event, record.postedAtMillis);
+                    }
+                    continue;
+                }
+
+                if (envelope == null) {
+                    envelope = queue.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                }
+                if (envelope != null) {
+                    deliver(envelope.event, envelope.postedAtMillis);
+                }
+            } catch (InterruptedException ex) {
+                if (!running) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return oldest spilled event, null when the spill writer did not append it
+     * to the file within the poll interval
+     */
+    private SpillFile.Record pollSpill() throws InterruptedException {
+        synchronized (spill) {
+            try {
+                final SpillFile.Record record = spill.poll();
+                if (record == null) {
+                    spill.wait(POLL_INTERVAL_MS);
+                }
+                return record;
+            } catch (IOException | ClassNotFoundException ex) {
+                final int lost = spill.size();
+                LOGGER.error("Exception reading spilled events of " + name + ", " + lost
+                        + " events lost : " + mergeStackTrace(ex));
+                dropped.add(lost);
+                overflow.addAndGet(-lost);
+                try {
+                    spill.close();
+                } catch (IOException closeEx) {
+                    LOGGER.error("Exception resetting spill file of " + name + " : " + mergeStackTrace(closeEx));
+                }
+                return null;
+            }
+        }
+    }
+
+    private void deliver(Object event, long postedAtMillis) {
+        for (Method method : methods) {
+            if (!method.getParameterTypes()[0].isInstance(event)) {
+                continue;
+            }
+            try {
+                method.invoke(listener, event);
+            } catch (InvocationTargetException ex) {
+                failed.increment();
+                LOGGER.error("Exception handling " + event.getClass().getSimpleName() + " in " + name + " : "
+                        + mergeStackTrace(ex.getCause()));
+            } catch (IllegalAccessException ex) {
+                failed.increment();
+                LOGGER.error("Cannot call " + method + " : " + mergeStackTrace(ex));
+            }
+        }
+
+        final long lag = System.currentTimeMillis() - postedAtMillis;
+        lastDeliveryLagMillis = lag;
+        maxDeliveryLagMillis.accumulateAndGet(lag, Math::max);
+        delivered.increment();
+    }
+
+    /**
+     * Stop accepting events and give the dispatcher some time to deliver
+     * the pending ones
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            dispatcher.join(CLOSE_TIMEOUT_MS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        if (dispatcher.isAlive()) {
+            LOGGER.warn("Subscriber " + name + " closed with " + getLag() + " events not delivered");
+            dispatcher.interrupt();
+        }
+        if (spillWriter != null) {
+            spillWriter.interrupt();
+            try {
+                spillWriter.join(CLOSE_TIMEOUT_MS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (spill != null) {
+            try {
+                spill.close();
+            } catch (IOException ex) {
+                LOGGER.error("Exception closing spill file of " + name + " : " + mergeStackTrace(ex));
+            }
+        }
+    }
+
+    private int spillFileSize() {
+        return spill == null ? 0 : spill.size();
+    }
+
+    @Override
+    public long getSpillFileBytes() {
+        return spill == null ? 0 : spill.bytes();
+    }
+
+    @Override
+    public long getSpillDroppedEvents() {
+        return spillDropped.sum();
+    }
+
+    @Override
+    public String getBackpressurePolicy() {
+        return policy.name();
+    }
+
+    @Override
+    public int getCapacity() {
+        return queue.size() + queue.remainingCapacity();
+    }
+
+    @Override
+    public long getPostedEvents() {
+        return posted.sum();
+    }
+
+    @Override
+    public long getDeliveredEvents() {
+        return delivered.sum();
+    }
+
+    @Override
+    public long getDroppedEvents() {
+        return dropped.sum();
+    }
+
+    @Override
+    public long getSpilledEvents() {
+        return spilled.sum();
+    }
+
+    @Override
+    public long getFailedEvents() {
+        return failed.sum();
+    }
+
+    @Override
+    public int getQueuedEvents() {
+        return queue.size();
+    }
+
+    @Override
+    public int getSpillFileEvents() {
+        return spillFileSize();
+    }
+
+    @Override
+    public long getLag() {
+        return Math.max(0, posted.sum() - delivered.sum() - dropped.sum());
+    }
+
+    @Override
+    public long getLastDeliveryLagMillis() {
+        return lastDeliveryLagMillis;
+    }
+
+    @Override
+    public long getMaxDeliveryLagMillis() {
+        return maxDeliveryLagMillis.get();
+    }
+
+    private static final class Envelope {
+        final long postedAtMillis;
+        final Object event;
+
+        Envelope(long postedAtMillis, Object event) {
+            this.postedAtMillis = postedAtMillis;
+            this.event = event;
+        }
+    }
+}
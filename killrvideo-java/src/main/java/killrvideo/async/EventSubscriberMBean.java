@@ -0,0 +1,53 @@
+package killrvideo.async;
+
+/**
+ * JMX view of a subscriber of the {@link QueuedEventBus}
+ */
+public interface EventSubscriberMBean {
+
+    String getBackpressurePolicy();
+
+    int getCapacity();
+
+    long getPostedEvents();
+
+    long getDeliveredEvents();
+
+    long getDroppedEvents();
+
+    long getSpilledEvents();
+
+    long getFailedEvents();
+
+    /**
+     * @return events waiting in the subscriber queue
+     */
+    int getQueuedEvents();
+
+    /**
+     * @return events waiting in the spill file
+     */
+    int getSpillFileEvents();
+
+    /**
+     * @return size of the spill file, it is truncated once fully read
+     */
+    long getSpillFileBytes();
+
+    /**
+     * @return events dropped because the spill file reached its maximum size
+     */
+    long getSpillDroppedEvents();
+
+    /**
+     * @return events posted but not delivered yet, queued or spilled
+     */
+    long getLag();
+
+    /**
+     * @return time between post and delivery of the last delivered event
+     */
+    long getLastDeliveryLagMillis();
+
+    long getMaxDeliveryLagMillis();
+}
@@ -0,0 +1,242 @@
+package killrvideo.async;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.eventbus.DeadEvent;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+
+/**
+ * {@link EventBus} delivering events asynchronously, so that
+ * <code>eventBus.post()</code> called from a driver callback returns
+ * without running the subscribers on the netty I/O thread.
+ *
+ * Every registered listener gets its own bounded queue and its own thread
+ * calling its @Subscribe methods, one event at a time in posting order. A
+ * slow listener only delays its own events. What happens when its queue is
+ * full depends on the {@link Backpressure} policy of the listener, the bus
+ * default unless given at registration. Listeners that must see every event,
+ * e.g. the ones journaling failed mutations, are registered with
+ * {@link #registerDurable(Object)} and are never dropped an event.
+ *
+ * The metrics of each listener, lag included, are exposed as the
+ * killrvideo:type=EventSubscriber,bus=&lt;bus&gt;,name=&lt;listener class&gt; MBean.
+ */
+public class QueuedEventBus extends EventBus implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(QueuedEventBus.class);
+
+    public enum Backpressure {
+        /**
+         * Discard the event
+         */
+        DROP,
+        /**
+         * Make the posting thread wait for room, up to a timeout after which the event is
+         * discarded, without timeout for the listeners registered as durable
+         */
+        BLOCK,
+        /**
+         * Hand the event to a background writer appending it to a temporary file read back
+         * once the queue has room, the event must be Serializable or it is discarded, and so
+         * is it once the file reached its maximum size
+         */
+        SPILL;
+
+        public static Backpressure parse(String policy) {
+            try {
+                return valueOf(policy.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException("Unknown backpressure policy " + policy + ", expected drop, block or spill");
+            }
+        }
+    }
+
+    private final String identifier;
+    private final int capacity;
+    private final Backpressure policy;
+    private final long blockTimeoutMs;
+    private final File spillDirectory;
+    private final long maxSpillBytes;
+
+    private final List<EventSubscriber> subscribers = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param identifier
+     * @param capacity size of each subscriber queue
+     * @param policy what to do with an event when a subscriber queue is full, unless given at registration
+     * @param blockTimeoutMs longest wait for room with the BLOCK policy, 0 to wait as long as needed
+     * @param spillDirectory where spill files are created with the SPILL policy
+     * @param maxSpillBytes size of a spill file past which the events are discarded
+     */
+    public QueuedEventBus(String identifier, int capacity, Backpressure policy, long blockTimeoutMs, File spillDirectory,
+                          long maxSpillBytes) {
+        super(identifier);
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Subscriber queue capacity should be strictly positive");
+        }
+        this.identifier = identifier;
+        this.capacity = capacity;
+        this.policy = policy;
+        this.blockTimeoutMs = blockTimeoutMs;
+        this.spillDirectory = spillDirectory;
+        this.maxSpillBytes = maxSpillBytes;
+    }
+
+    /**
+     * Register a listener with the default backpressure policy of the bus
+     */
+    @Override
+    public void register(Object listener) {
+        register(listener, policy, blockTimeoutMs);
+    }
+
+    /**
+     * Register a listener with its own backpressure policy
+     * @param listener
+     * @param listenerPolicy what to do with an event when the queue of this listener is full
+     */
+    public void register(Object listener, Backpressure listenerPolicy) {
+        register(listener, listenerPolicy, blockTimeoutMs);
+    }
+
+    /**
+     * Register a listener that must receive every event: once its queue is full
+     * the posting thread waits for room as long as needed
+     * @param listener
+     */
+    public void registerDurable(Object listener) {
+        register(listener, Backpressure.BLOCK, 0L);
+    }
+
+    private void register(Object listener, Backpressure listenerPolicy, long listenerBlockTimeoutMs) {
+        final List<Method> methods = findSubscriberMethods(listener.getClass());
+        if (methods.isEmpty()) {
+            LOGGER.warn(listener.getClass().getName() + " has no @Subscribe method, nothing to register");
+            return;
+        }
+
+        synchronized (subscribers) {
+            if (find(listener) != null) {
+                return;
+            }
+
+            final String name = listener.getClass().getSimpleName();
+            final EventSubscriber subscriber = new EventSubscriber(name, listener, methods, capacity, listenerPolicy,
+                    listenerBlockTimeoutMs, listenerPolicy == Backpressure.SPILL
+                            ? new SpillFile(spillDirectory, "killrvideo-events-" + name + "-", maxSpillBytes)
+                            : null);
+            subscriber.start();
+            subscribers.add(subscriber);
+            registerMBean(name, subscriber);
+        }
+    }
+
+    @Override
+    public void unregister(Object listener) {
+        final EventSubscriber subscriber;
+        synchronized (subscribers) {
+            subscriber = find(listener);
+            if (subscriber == null) {
+                throw new IllegalArgumentException("Missing event subscriber for an annotated method. Is " + listener + " registered?");
+            }
+            subscribers.remove(subscriber);
+        }
+        unregisterMBean(listener.getClass().getSimpleName());
+        subscriber.close();
+    }
+
+    /**
+     * Enqueue the event for every listener accepting it. Events nobody
+     * subscribed to are posted again wrapped in a {@link DeadEvent}.
+     * @param event
+     */
+    @Override
+    public void post(Object event) {
+        boolean accepted = false;
+        for (EventSubscriber subscriber : subscribers) {
+            if (subscriber.accepts(event)) {
+                subscriber.offer(event);
+                accepted = true;
+            }
+        }
+
+        if (!accepted && !(event instanceof DeadEvent)) {
+            post(new DeadEvent(this, event));
+        }
+    }
+
+    /**
+     * Unregister every listener, delivering what they still have queued
+     */
+    @Override
+    public void close() {
+        final List<EventSubscriber> registered;
+        synchronized (subscribers) {
+            registered = new ArrayList<>(subscribers);
+        }
+        for (EventSubscriber subscriber : registered) {
+            unregister(subscriber.listener());
+        }
+    }
+
+    private EventSubscriber find(Object listener) {
+        for (EventSubscriber subscriber : subscribers) {
+            if (subscriber.listener() == listener) {
+                return subscriber;
+            }
+        }
+        return null;
+    }
+
+    private static List<Method> findSubscriberMethods(Class<?> listenerClass) {
+        final List<Method> methods = new ArrayList<>();
+        for (Class<?> clazz = listenerClass; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+            for (Method method : clazz.getDeclaredMethods()) {
+                if (method.isAnnotationPresent(Subscribe.class) && !method.isSynthetic()) {
+                    if (method.getParameterTypes().length != 1) {
+                        throw new IllegalArgumentException("Method " + method
+                                + " has @Subscribe annotation but has " + method.getParameterTypes().length
+                                + " parameters. Subscriber methods must have exactly 1 parameter.");
+                    }
+                    method.setAccessible(true);
+                    methods.add(method);
+                }
+            }
+        }
+        return methods;
+    }
+
+    private ObjectName objectName(String name) throws JMException {
+        return new ObjectName("killrvideo:type=EventSubscriber,bus=" + ObjectName.quote(identifier)
+                + ",name=" + ObjectName.quote(name));
+    }
+
+    private void registerMBean(String name, EventSubscriber subscriber) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(subscriber, objectName(name));
+        } catch (JMException ex) {
+            LOGGER.warn("Cannot expose the metrics of subscriber " + name + " : " + ex.getMessage());
+        }
+    }
+
+    private void unregisterMBean(String name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName(name));
+        } catch (JMException ex) {
+            LOGGER.debug("Subscriber " + name + " metrics were not exposed : " + ex.getMessage());
+        }
+    }
+}
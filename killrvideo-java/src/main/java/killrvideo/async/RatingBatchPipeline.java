@@ -0,0 +1,208 @@
+package killrvideo.async;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.dse.DseSession;
+import com.datastax.driver.mapping.Mapper;
+
+import killrvideo.entity.VideoRatingByUser;
+import killrvideo.utils.FutureUtils;
+
+/**
+ * Batching write path for video ratings.
+ *
+ * Ratings submitted during a short window are grouped by video. For each
+ * video the pipeline issues:
+ * <ul>
+ *     <li>one counter UPDATE adding the number of ratings and their total</li>
+ *     <li>UNLOGGED batches of <strong>video_ratings_by_user</strong> rows. All rows
+ *     of a batch share the videoid partition key, so the batch carries a single
+ *     routing key and the token aware policy sends it straight to a replica</li>
+ * </ul>
+ * The future returned by {@link #submit(UUID, UUID, int)} completes only once
+ * both writes for the video are acknowledged, so callers can safely emit
+ * their events after it. When one of them fails it completes with a
+ * {@link RatingWriteException} telling whether the counters were written.
+ * The window is the one of a {@link WindowedBatcher}.
+ */
+public class RatingBatchPipeline implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RatingBatchPipeline.class);
+
+    /**
+     * Failure of the flush of a rating
+     */
+    public static class RatingWriteException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * True when the counter UPDATE of the rating was acknowledged,
+         * only the video_ratings_by_user row may be missing
+         */
+        public final boolean countersWritten;
+
+        public RatingWriteException(boolean countersWritten, Throwable cause) {
+            super(countersWritten ? "Rating row not written" : "Rating counters not written", cause);
+            this.countersWritten = countersWritten;
+        }
+    }
+
+    private static class PendingRating {
+        final UUID videoId;
+        final UUID userId;
+        final int rating;
+        final CompletableFuture<Void> committed = new CompletableFuture<>();
+
+        PendingRating(UUID videoId, UUID userId, int rating) {
+            this.videoId = videoId;
+            this.userId = userId;
+            this.rating = rating;
+        }
+    }
+
+    private final DseSession dseSession;
+    private final PreparedStatement counterUpdatePrepared;
+    private final Mapper<VideoRatingByUser> videoRatingByUserMapper;
+    private final int maxBatchSize;
+    private final WindowedBatcher<PendingRating> batcher;
+
+    /**
+     * @param dseSession
+     * @param counterUpdatePrepared UPDATE binding <strong>rating_counter</strong>, <strong>rating_total</strong> and <strong>videoid</strong>
+     * @param videoRatingByUserMapper mapper used to build the per-user insert statements
+     * @param flushWindowMs maximum time a rating waits before being written
+     * @param maxBatchSize flush as soon as this many ratings are queued, also caps the size of each per-user batch
+     */
+    public RatingBatchPipeline(DseSession dseSession, PreparedStatement counterUpdatePrepared,
+                               Mapper<VideoRatingByUser> videoRatingByUserMapper, long flushWindowMs, int maxBatchSize) {
+        this.dseSession = dseSession;
+        this.counterUpdatePrepared = counterUpdatePrepared;
+        this.videoRatingByUserMapper = videoRatingByUserMapper;
+        this.maxBatchSize = maxBatchSize;
+        this.batcher = new WindowedBatcher<>("ratings", flushWindowMs, maxBatchSize, this::writeRatings);
+    }
+
+    /**
+     * Queue a rating for the next flush
+     * @param videoId
+     * @param userId
+     * @param rating
+     * @return CompletableFuture completing once the rating is durably written
+     */
+    public CompletableFuture<Void> submit(UUID videoId, UUID userId, int rating) {
+        final PendingRating pendingRating = new PendingRating(videoId, userId, rating);
+
+        if (!batcher.add(pendingRating)) {
+            pendingRating.committed.completeExceptionally(new IllegalStateException("Rating pipeline is closed"));
+        }
+        return pendingRating.committed;
+    }
+
+    /**
+     * Write every queued rating, grouped per video
+     * @return CompletableFuture completing once all the writes are acknowledged
+     */
+    public CompletableFuture<Void> flush() {
+        return batcher.flush();
+    }
+
+    private CompletableFuture<Void> writeRatings(List<PendingRating> pendingRatings) {
+        final Map<UUID, List<PendingRating>> byVideo = new LinkedHashMap<>();
+        for (PendingRating pendingRating : pendingRatings) {
+            byVideo.computeIfAbsent(pendingRating.videoId, k -> new ArrayList<>()).add(pendingRating);
+        }
+
+        final List<CompletableFuture<Void>> writes = new ArrayList<>(byVideo.size());
+        byVideo.forEach((videoId, ratings) -> writes.add(writeVideo(videoId, ratings)));
+
+        if (!writes.isEmpty()) {
+            LOGGER.debug("Flushing ratings for " + writes.size() + " videos");
+        }
+        return CompletableFuture.allOf(writes.toArray(new CompletableFuture[writes.size()]));
+    }
+
+    private CompletableFuture<Void> writeVideo(UUID videoId, List<PendingRating> ratings) {
+        long total = 0L;
+
+        /**
+         * Counters keep the previous semantic of counting every rating,
+         * while only the last rating of a user survives in video_ratings_by_user
+         */
+        final Map<UUID, Integer> lastRatingByUser = new LinkedHashMap<>();
+        for (PendingRating rating : ratings) {
+            total += rating.rating;
+            lastRatingByUser.put(rating.userId, rating.rating);
+        }
+
+        final BoundStatement counterUpdate = counterUpdatePrepared.bind()
+                .setLong("rating_counter", ratings.size())
+                .setLong("rating_total", total)
+                .setUUID("videoid", videoId);
+
+        final CompletableFuture<?> counterFuture = FutureUtils.buildCompletableFuture(dseSession.executeAsync(counterUpdate));
+        final List<CompletableFuture<?>> futures = new ArrayList<>();
+        futures.add(counterFuture);
+
+        BatchStatement batch = new BatchStatement(BatchStatement.Type.UNLOGGED);
+        for (Map.Entry<UUID, Integer> entry : lastRatingByUser.entrySet()) {
+            final Statement insert = videoRatingByUserMapper
+                    .saveQuery(new VideoRatingByUser(videoId, entry.getKey(), entry.getValue()));
+            batch.add(insert);
+
+            if (batch.size() == maxBatchSize) {
+                futures.add(FutureUtils.buildCompletableFuture(dseSession.executeAsync(batch)));
+                batch = new BatchStatement(BatchStatement.Type.UNLOGGED);
+            }
+        }
+        if (batch.size() > 0) {
+            futures.add(FutureUtils.buildCompletableFuture(dseSession.executeAsync(batch)));
+        }
+
+        return CompletableFuture
+                .allOf(futures.toArray(new CompletableFuture[futures.size()]))
+                .handle((rs, ex) -> {
+                    /**
+                     * Every write is done here, the counters are known to be
+                     * written only when their own UPDATE succeeded
+                     */
+                    final RatingWriteException failure = ex == null ? null : new RatingWriteException(
+                            !counterFuture.isCompletedExceptionally(),
+                            ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex);
+                    for (PendingRating rating : ratings) {
+                        if (failure == null) {
+                            rating.committed.complete(null);
+                        } else {
+                            rating.committed.completeExceptionally(failure);
+                        }
+                    }
+                    return null;
+                });
+    }
+
+    /**
+     * Stop the periodic flush and write out every queued rating
+     * @param timeoutMs
+     */
+    public void close(long timeoutMs) {
+        batcher.close(timeoutMs);
+    }
+
+    @Override
+    public void close() {
+        close(5000L);
+    }
+}
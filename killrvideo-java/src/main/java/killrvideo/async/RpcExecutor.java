@@ -0,0 +1,211 @@
+package killrvideo.async;
+
+import java.lang.reflect.Method;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ * Executor running the gRPC handlers and the service continuations that
+ * should not run on a driver I/O thread.
+ *
+ * The threads behind it depend on the {@link Mode}, so that the same load can
+ * be replayed against each mode and compared with the metrics exposed over JMX:
+ * task counts, tasks running, and the time tasks wait before starting.
+ */
+@ManagedResource(objectName = "killrvideo:type=RpcExecutor", description = "gRPC handlers and service callbacks executor")
+public class RpcExecutor implements Executor, AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RpcExecutor.class);
+
+    public enum Mode {
+        /**
+         * Unbounded pool of platform threads, same as the gRPC default executor
+         */
+        CACHED,
+        /**
+         * Fixed pool of platform threads with a bounded queue (killrvideo.threadpool.* properties),
+         * tasks are rejected once the queue is full
+         */
+        BOUNDED,
+        /**
+         * One virtual thread per task, needs a JVM providing Executors.newVirtualThreadPerTaskExecutor (21+)
+         */
+        VIRTUAL;
+
+        public static Mode parse(String mode) {
+            try {
+                return valueOf(mode.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException("Unknown executor mode " + mode + ", expected cached, bounded or virtual");
+            }
+        }
+    }
+
+    private final Mode mode;
+    private final ExecutorService delegate;
+    private final boolean ownsDelegate;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder queueWaitNanos = new LongAdder();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger peakActive = new AtomicInteger();
+
+    RpcExecutor(Mode mode, ExecutorService delegate, boolean ownsDelegate) {
+        this.mode = mode;
+        this.delegate = delegate;
+        this.ownsDelegate = ownsDelegate;
+    }
+
+    /**
+     * @param mode requested mode, VIRTUAL falls back to CACHED when the JVM has no virtual threads
+     * @param boundedPool pool used in BOUNDED mode
+     * @return executor, the bounded pool is not shut down on close since it is not owned
+     */
+    public static RpcExecutor create(Mode mode, ExecutorService boundedPool) {
+        switch (mode) {
+            case BOUNDED:
+                return new RpcExecutor(Mode.BOUNDED, boundedPool, false);
+            case VIRTUAL:
+                final ExecutorService virtual = newVirtualThreadPerTaskExecutor();
+                if (virtual != null) {
+                    return new RpcExecutor(Mode.VIRTUAL, virtual, true);
+                }
+                LOGGER.warn("Virtual threads are not available on Java " + System.getProperty("java.version")
+                        + ", falling back to the cached executor mode");
+                return new RpcExecutor(Mode.CACHED, Executors.newCachedThreadPool(new KillrVideoThreadFactory()), true);
+            default:
+                return new RpcExecutor(Mode.CACHED, Executors.newCachedThreadPool(new KillrVideoThreadFactory()), true);
+        }
+    }
+
+    /**
+     * Looked up by reflection since the application is still built for Java 8
+     * @return the executor, null if the running JVM does not have virtual threads
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            final Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            return null;
+        }
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        final long enqueuedAt = System.nanoTime();
+        submitted.increment();
+        try {
+            delegate.execute(() -> run(task, enqueuedAt));
+        } catch (RejectedExecutionException ex) {
+            submitted.decrement();
+            rejected.increment();
+            throw ex;
+        }
+    }
+
+    private void run(Runnable task, long enqueuedAt) {
+        queueWaitNanos.add(System.nanoTime() - enqueuedAt);
+        final int running = active.incrementAndGet();
+        peakActive.accumulateAndGet(running, Math::max);
+        try {
+            task.run();
+        } catch (RuntimeException | Error ex) {
+            failed.increment();
+            throw ex;
+        } finally {
+            active.decrementAndGet();
+            completed.increment();
+        }
+    }
+
+    /**
+     * Stop accepting tasks and wait a bit for the running ones,
+     * unless the underlying pool is shared
+     */
+    @Override
+    public void close() {
+        if (!ownsDelegate) {
+            return;
+        }
+        delegate.shutdown();
+        try {
+            if (!delegate.awaitTermination(5, TimeUnit.SECONDS)) {
+                delegate.shutdownNow();
+            }
+        } catch (InterruptedException ex) {
+            delegate.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    @ManagedAttribute(description = "Execution mode actually in use")
+    public String getModeName() {
+        return mode.name();
+    }
+
+    @ManagedAttribute(description = "Tasks accepted so far")
+    public long getSubmittedTasks() {
+        return submitted.sum();
+    }
+
+    @ManagedAttribute(description = "Tasks finished so far, failed ones included")
+    public long getCompletedTasks() {
+        return completed.sum();
+    }
+
+    @ManagedAttribute(description = "Tasks that threw an exception")
+    public long getFailedTasks() {
+        return failed.sum();
+    }
+
+    @ManagedAttribute(description = "Tasks rejected because the bounded queue was full")
+    public long getRejectedTasks() {
+        return rejected.sum();
+    }
+
+    @ManagedAttribute(description = "Tasks currently running")
+    public int getActiveTasks() {
+        return active.get();
+    }
+
+    @ManagedAttribute(description = "Highest number of tasks running at the same time")
+    public int getPeakActiveTasks() {
+        return peakActive.get();
+    }
+
+    @ManagedAttribute(description = "Tasks accepted but not started yet")
+    public long getQueuedTasks() {
+        return Math.max(0, submitted.sum() - completed.sum() - active.get());
+    }
+
+    @ManagedAttribute(description = "Mean time between submission and start of a task, in microseconds")
+    public long getMeanQueueWaitMicros() {
+        final long started = completed.sum() + active.get();
+        return started == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(queueWaitNanos.sum() / started);
+    }
+
+    @ManagedAttribute(description = "Platform threads of the pool, -1 when threads are not pooled")
+    public int getPoolSize() {
+        return delegate instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) delegate).getPoolSize() : -1;
+    }
+}
@@ -0,0 +1,130 @@
+package killrvideo.async;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+
+/**
+ * FIFO of serialized objects in a temporary file, used by {@link QueuedEventBus}
+ * when a subscriber queue is full. Each record is the time the event was
+ * posted, the length of the serialized event and the event itself. The file
+ * is truncated whenever it has been fully read, and does not grow past its
+ * maximum size.
+ */
+class SpillFile implements AutoCloseable {
+
+    private final File directory;
+    private final String prefix;
+    private final long maxBytes;
+
+    private File file;
+    private RandomAccessFile raf;
+    private long readPosition = 0;
+    private long writePosition = 0;
+    private int count = 0;
+
+    SpillFile(File directory, String prefix, long maxBytes) {
+        this.directory = directory;
+        this.prefix = prefix;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @param postedAtMillis
+     * @param event must be Serializable
+     * @return false when the record would make the file larger than its maximum size
+     * @throws NotSerializableException if the event is not
+     */
+    synchronized boolean append(long postedAtMillis, Object event) throws IOException {
+        if (!(event instanceof Serializable)) {
+            throw new NotSerializableException(event.getClass().getName());
+        }
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(event);
+        }
+
+        if (writePosition + Long.BYTES + Integer.BYTES + bytes.size() > maxBytes) {
+            return false;
+        }
+
+        if (raf == null) {
+            file = File.createTempFile(prefix, ".spill", directory);
+            file.deleteOnExit();
+            raf = new RandomAccessFile(file, "rw");
+        }
+
+        raf.seek(writePosition);
+        raf.writeLong(postedAtMillis);
+        raf.writeInt(bytes.size());
+        raf.write(bytes.toByteArray());
+        writePosition = raf.getFilePointer();
+        count++;
+        return true;
+    }
+
+    /**
+     * @return oldest record, null if the file is empty
+     */
+    synchronized Record poll() throws IOException, ClassNotFoundException {
+        if (count == 0) {
+            return null;
+        }
+
+        raf.seek(readPosition);
+        final long postedAtMillis = raf.readLong();
+        final byte[] bytes = new byte[raf.readInt()];
+        raf.readFully(bytes);
+        readPosition = raf.getFilePointer();
+
+        if (--count == 0) {
+            raf.setLength(0);
+            readPosition = 0;
+            writePosition = 0;
+        }
+
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return new Record(postedAtMillis, in.readObject());
+        }
+    }
+
+    synchronized int size() {
+        return count;
+    }
+
+    /**
+     * @return bytes used by the records not read yet and the ones read since the file was last truncated
+     */
+    synchronized long bytes() {
+        return writePosition;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (raf != null) {
+            raf.close();
+            raf = null;
+            file.delete();
+        }
+        count = 0;
+        readPosition = 0;
+        writePosition = 0;
+    }
+
+    static final class Record {
+        final long postedAtMillis;
+        final Object event;
+
+        Record(long postedAtMillis, Object event) {
+            this.postedAtMillis = postedAtMillis;
+            this.event = event;
+        }
+    }
+}
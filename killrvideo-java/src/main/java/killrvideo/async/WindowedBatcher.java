@@ -0,0 +1,147 @@
+package killrvideo.async;
+
+import static killrvideo.utils.ExceptionUtils.mergeStackTrace;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Write-behind window shared by the batching write paths.
+ *
+ * Items are queued and handed together to the flush callback every
+ * <strong>windowMs</strong>, or as soon as <strong>maxBatchSize</strong> items
+ * are queued. Owners accumulating their own way, like {@link CounterAggregator},
+ * queue nothing and trigger the early flush themselves with {@link #flushSoon()}.
+ *
+ * Scheduled flushes run one at a time on the thread of the batcher.
+ * {@link #close(long)} stops the window and runs a final flush.
+ *
+ * @param <T> queued item
+ */
+public class WindowedBatcher<T> implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WindowedBatcher.class);
+
+    private final String name;
+    private final int maxBatchSize;
+    private final Function<List<T>, CompletableFuture<Void>> flushCallback;
+
+    private final ConcurrentLinkedQueue<T> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private final ScheduledExecutorService scheduler;
+
+    private volatile boolean closed = false;
+
+    /**
+     * @param name used in the logs
+     * @param windowMs maximum time an item waits before being flushed
+     * @param maxBatchSize flush as soon as this many items are queued, 0 to only flush every window
+     * @param flushCallback writes the items queued since the previous flush, none when the owner queues nothing
+     */
+    public WindowedBatcher(String name, long windowMs, int maxBatchSize,
+                           Function<List<T>, CompletableFuture<Void>> flushCallback) {
+        this.name = name;
+        this.maxBatchSize = maxBatchSize;
+        this.flushCallback = flushCallback;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new KillrVideoThreadFactory());
+        this.scheduler.scheduleWithFixedDelay(this::flushQuietly, windowMs, windowMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queue an item for the next flush
+     * @param item
+     * @return false once closed, the item is then not queued
+     */
+    public boolean add(T item) {
+        if (closed) {
+            return false;
+        }
+
+        queue.add(item);
+        final int size = queued.incrementAndGet();
+        if (closed) {
+            // Raced with close(), make sure the item is not left behind
+            flush();
+        } else if (maxBatchSize > 0 && size >= maxBatchSize) {
+            flushSoon();
+        }
+        return true;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Flush on the thread of the batcher without waiting for the end of the window
+     */
+    public void flushSoon() {
+        if (!closed && flushScheduled.compareAndSet(false, true)) {
+            try {
+                scheduler.execute(this::flushQuietly);
+            } catch (RejectedExecutionException e) {
+                // Closing concurrently, the final flush will pick it up
+            }
+        }
+    }
+
+    /**
+     * Hand every queued item to the flush callback
+     * @return CompletableFuture of the flush callback
+     */
+    public synchronized CompletableFuture<Void> flush() {
+        final List<T> items = new ArrayList<>();
+
+        T item;
+        while ((item = queue.poll()) != null) {
+            queued.decrementAndGet();
+            items.add(item);
+        }
+        return flushCallback.apply(items);
+    }
+
+    /**
+     * Stop the periodic flush and flush what is still queued,
+     * waiting at most <strong>timeoutMs</strong> for it
+     * @param timeoutMs
+     */
+    public void close(long timeoutMs) {
+        closed = true;
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS);
+            flush().get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            LOGGER.error("Exception during final flush of " + name + " : " + mergeStackTrace(e));
+        }
+    }
+
+    @Override
+    public void close() {
+        close(5000L);
+    }
+
+    private void flushQuietly() {
+        flushScheduled.set(false);
+        try {
+            flush();
+        } catch (Throwable t) {
+            LOGGER.error("Exception flushing " + name + " : " + mergeStackTrace(t));
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package killrvideo.cache;
+
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+
+import org.apache.commons.collections4.CollectionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import com.datastax.driver.dse.DseSession;
+import com.datastax.driver.mapping.Mapper;
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.google.common.eventbus.Subscribe;
+
+import killrvideo.configuration.KillrVideoProperties;
+import killrvideo.entity.Video;
+import killrvideo.utils.FutureUtils;
+import killrvideo.utils.IdempotentReads;
+import killrvideo.video_catalog.events.VideoCatalogEvents.YouTubeVideoAdded;
+
+/**
+ * In-process near cache in front of the <strong>videos</strong> table.
+ *
+ * Video rows almost never change once submitted, so they are kept
+ * for <strong>killrvideo.video.cache.ttl.seconds</strong> within a budget of
+ * <strong>killrvideo.video.cache.max.bytes</strong> (estimated entity size).
+ * Eviction is Caffeine's W-TinyLFU policy, so a burst of one-off lookups
+ * cannot flush the popular videos out of the cache.
+ *
+ * Concurrent misses on the same videoid share a single in-flight SELECT.
+ * Unknown videos are not cached. Entries are invalidated whenever a
+ * {@link YouTubeVideoAdded} event is posted on the event bus.
+ *
+ * Hits, misses and evictions are exposed over JMX, killrvideo:type=VideoNearCache.
+ */
+@Component
+@ManagedResource(objectName = "killrvideo:type=VideoNearCache", description = "Near cache of the videos table")
+public class VideoNearCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VideoNearCache.class);
+
+    /**
+     * Rough per-entry overhead: entity, UUIDs, Date, cache node
+     */
+    private static final int ENTRY_OVERHEAD_BYTES = 256;
+
+    @Inject
+    Mapper<Video> videoMapper;
+
+    @Inject
+    DseSession dseSession;
+
+    @Inject
+    KillrVideoProperties properties;
+
+    private AsyncLoadingCache<UUID, Video> cache;
+
+    @PostConstruct
+    public void init() {
+        cache = Caffeine.newBuilder()
+                .maximumWeight(properties.videoCacheMaxBytes)
+                .weigher((UUID videoId, Video video) -> estimateSize(video))
+                .expireAfterWrite(properties.videoCacheTtlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .buildAsync((videoId, executor) -> FutureUtils
+                        .buildCompletableFuture(IdempotentReads.getAsync(dseSession, videoMapper, videoId))
+                        .thenApply(video -> {
+                            /**
+                             * Check to see if any tags exist, if not, ensure to send
+                             * an empty set instead of null
+                             */
+                            if (video != null && CollectionUtils.isEmpty(video.getTags())) {
+                                video.setTags(Collections.emptySet());
+                            }
+                            return video;
+                        }));
+
+        LOGGER.info("Video near cache initialized with " + properties.videoCacheMaxBytes
+                + " bytes and a ttl of " + properties.videoCacheTtlSeconds + " seconds");
+    }
+
+    /**
+     * Get a video from the cache, loading it from Cassandra on a miss
+     * @param videoId
+     * @return CompletableFuture of the video, completing with null if it does not exist
+     */
+    public CompletableFuture<Video> get(UUID videoId) {
+        return cache.get(videoId);
+    }
+
+    public void invalidate(UUID videoId) {
+        cache.synchronous().invalidate(videoId);
+    }
+
+    /**
+     * Hit, miss, load and eviction counters since startup
+     * @return CacheStats
+     */
+    public CacheStats stats() {
+        return cache.synchronous().stats();
+    }
+
+    @ManagedAttribute(description = "Videos currently cached")
+    public long getEstimatedSize() {
+        return cache.synchronous().estimatedSize();
+    }
+
+    @ManagedAttribute(description = "Lookups answered from the cache")
+    public long getHits() {
+        return stats().hitCount();
+    }
+
+    @ManagedAttribute(description = "Lookups that read the videos table")
+    public long getMisses() {
+        return stats().missCount();
+    }
+
+    @ManagedAttribute(description = "Share of the lookups answered from the cache, 1 before the first lookup")
+    public double getHitRate() {
+        return stats().hitRate();
+    }
+
+    @ManagedAttribute(description = "Videos evicted to stay within the size budget")
+    public long getEvictions() {
+        return stats().evictionCount();
+    }
+
+    @ManagedAttribute(description = "Reads of the videos table that failed")
+    public long getLoadFailures() {
+        return stats().loadFailureCount();
+    }
+
+    /**
+     * Drop any cached copy of a video as soon as it is (re)submitted
+     * @param youTubeVideoAdded
+     */
+    @Subscribe
+    public void handle(YouTubeVideoAdded youTubeVideoAdded) {
+        final UUID videoId = UUID.fromString(youTubeVideoAdded.getVideoId().getValue());
+        LOGGER.debug("Invalidating cached video " + videoId);
+        invalidate(videoId);
+    }
+
+    private static int estimateSize(Video video) {
+        int size = ENTRY_OVERHEAD_BYTES
+                + length(video.getName())
+                + length(video.getDescription())
+                + length(video.getLocation())
+                + length(video.getPreviewImageLocation());
+
+        if (video.getTags() != null) {
+            for (String tag : video.getTags()) {
+                size += 48 + length(tag);
+            }
+        }
+        return size;
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : 40 + 2 * value.length();
+    }
+}
@@ -0,0 +1,68 @@
+package killrvideo.codec;
+
+import java.util.function.Function;
+
+import com.datastax.driver.core.ColumnDefinitions;
+import com.datastax.driver.core.Row;
+
+/**
+ * Message of a row, read straight from the row by column index instead of going
+ * through a mapper entity.
+ *
+ * The indexes of the columns are looked up by name once per result metadata and kept
+ * until rows of another metadata come, the rows of a prepared statement usually share
+ * theirs. Subclasses read the columns in the order they were declared.
+ * @param <T> message of a row
+ */
+public abstract class RowCodec<T> implements Function<Row, T> {
+
+    private static final class Binding {
+        final ColumnDefinitions definitions;
+        final int[] indexes;
+
+        Binding(ColumnDefinitions definitions, int[] indexes) {
+            this.definitions = definitions;
+            this.indexes = indexes;
+        }
+    }
+
+    private final String[] columns;
+    private volatile Binding binding;
+
+    /**
+     * @param columns read by {@link #decode(Row, int[])}, aliases included
+     */
+    protected RowCodec(String... columns) {
+        this.columns = columns;
+    }
+
+    /**
+     * @throws IllegalArgumentException when the row misses a column
+     */
+    @Override
+    public final T apply(Row row) {
+        final ColumnDefinitions definitions = row.getColumnDefinitions();
+        Binding current = binding;
+        if (current == null || current.definitions != definitions) {
+            current = bind(definitions);
+            binding = current;
+        }
+        return decode(row, current.indexes);
+    }
+
+    /**
+     * @param indexes index in the row of each column, in declaration order
+     */
+    protected abstract T decode(Row row, int[] indexes);
+
+    private Binding bind(ColumnDefinitions definitions) {
+        final int[] indexes = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            indexes[i] = definitions.getIndexOf(columns[i]);
+            if (indexes[i] < 0) {
+                throw new IllegalArgumentException(columns[i] + " is not a column of " + definitions);
+            }
+        }
+        return new Binding(definitions, indexes);
+    }
+}
@@ -0,0 +1,86 @@
+package killrvideo.codec;
+
+import com.datastax.driver.core.Row;
+
+import killrvideo.comments.CommentsServiceOuterClass.UserComment;
+import killrvideo.comments.CommentsServiceOuterClass.VideoComment;
+import killrvideo.search.SearchServiceOuterClass.SearchResultsVideoPreview;
+import killrvideo.utils.TypeConverter;
+import killrvideo.video_catalog.VideoCatalogServiceOuterClass.VideoPreview;
+
+/**
+ * Codecs of the list endpoints, each one builds the same message as the matching
+ * entity conversion, e.g. {@link killrvideo.entity.UserVideos#toVideoPreview()}
+ */
+public final class RowCodecs {
+
+    /**
+     * Rows of comments_by_user, comment_timestamp being toTimestamp(commentid)
+     */
+    public static final RowCodec<UserComment> USER_COMMENT = new RowCodec<UserComment>(
+            "commentid", "videoid", "comment", "comment_timestamp") {
+        @Override
+        protected UserComment decode(Row row, int[] indexes) {
+            return UserComment.newBuilder()
+                    .setCommentId(TypeConverter.uuidToTimeUuid(row.getUUID(indexes[0])))
+                    .setVideoId(TypeConverter.uuidToUuid(row.getUUID(indexes[1])))
+                    .setComment(row.getString(indexes[2]))
+                    .setCommentTimestamp(TypeConverter.dateToTimestamp(row.getTimestamp(indexes[3])))
+                    .build();
+        }
+    };
+
+    /**
+     * Rows of comments_by_video, comment_timestamp being toTimestamp(commentid)
+     */
+    public static final RowCodec<VideoComment> VIDEO_COMMENT = new RowCodec<VideoComment>(
+            "commentid", "userid", "comment", "comment_timestamp") {
+        @Override
+        protected VideoComment decode(Row row, int[] indexes) {
+            return VideoComment.newBuilder()
+                    .setCommentId(TypeConverter.uuidToTimeUuid(row.getUUID(indexes[0])))
+                    .setUserId(TypeConverter.uuidToUuid(row.getUUID(indexes[1])))
+                    .setComment(row.getString(indexes[2]))
+                    .setCommentTimestamp(TypeConverter.dateToTimestamp(row.getTimestamp(indexes[3])))
+                    .build();
+        }
+    };
+
+    /**
+     * Rows of user_videos, the preview image location is "N/A" when missing
+     */
+    public static final RowCodec<VideoPreview> USER_VIDEO_PREVIEW = new RowCodec<VideoPreview>(
+            "videoid", "userid", "name", "preview_image_location", "added_date") {
+        @Override
+        protected VideoPreview decode(Row row, int[] indexes) {
+            final String previewImageLocation = row.getString(indexes[3]);
+            return VideoPreview.newBuilder()
+                    .setVideoId(TypeConverter.uuidToUuid(row.getUUID(indexes[0])))
+                    .setUserId(TypeConverter.uuidToUuid(row.getUUID(indexes[1])))
+                    .setName(row.getString(indexes[2]))
+                    .setPreviewImageLocation(previewImageLocation != null ? previewImageLocation : "N/A")
+                    .setAddedDate(TypeConverter.dateToTimestamp(row.getTimestamp(indexes[4])))
+                    .build();
+        }
+    };
+
+    /**
+     * Rows of videos_by_tag
+     */
+    public static final RowCodec<SearchResultsVideoPreview> SEARCH_RESULT_VIDEO_PREVIEW = new RowCodec<SearchResultsVideoPreview>(
+            "videoid", "userid", "name", "preview_image_location", "added_date") {
+        @Override
+        protected SearchResultsVideoPreview decode(Row row, int[] indexes) {
+            return SearchResultsVideoPreview.newBuilder()
+                    .setVideoId(TypeConverter.uuidToUuid(row.getUUID(indexes[0])))
+                    .setUserId(TypeConverter.uuidToUuid(row.getUUID(indexes[1])))
+                    .setName(row.getString(indexes[2]))
+                    .setPreviewImageLocation(row.getString(indexes[3]))
+                    .setAddedDate(TypeConverter.dateToTimestamp(row.getTimestamp(indexes[4])))
+                    .build();
+        }
+    };
+
+    private RowCodecs() {
+    }
+}
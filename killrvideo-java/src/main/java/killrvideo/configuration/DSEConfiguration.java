@@ -1,5 +1,7 @@
 package killrvideo.configuration;
 
+import java.util.Optional;
+
 import javax.inject.Inject;
 
 import org.slf4j.Logger;
@@ -8,12 +10,24 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.env.Environment;
 
+import com.datastax.driver.core.HostDistance;
+import com.datastax.driver.core.PoolingOptions;
+import com.datastax.driver.core.QueryOptions;
+import com.datastax.driver.core.SocketOptions;
+import com.datastax.driver.core.policies.ConstantSpeculativeExecutionPolicy;
+import com.datastax.driver.core.policies.DCAwareRoundRobinPolicy;
+import com.datastax.driver.core.policies.NoSpeculativeExecutionPolicy;
+import com.datastax.driver.core.policies.SpeculativeExecutionPolicy;
+import com.datastax.driver.core.policies.TokenAwarePolicy;
 import com.datastax.driver.dse.DseCluster;
 import com.datastax.driver.dse.DseCluster.Builder;
 import com.datastax.driver.dse.DseSession;
 import com.datastax.driver.dse.auth.DsePlainTextAuthProvider;
 import com.datastax.driver.mapping.MappingManager;
 
+import killrvideo.cql.PreparedStatementRegistry;
+import killrvideo.metrics.CqlLatencyTracker;
+import killrvideo.metrics.PreparedStatementNames;
 import killrvideo.utils.ExceptionUtils;
 
 
@@ -32,6 +46,12 @@ public class DSEConfiguration {
     @Inject
     private KillrVideoProperties properties;
 
+    @Inject
+    private CqlLatencyTracker latencyTracker;
+
+    @Inject
+    private PreparedStatementNames statementNames;
+
     @Bean
     public DseSession initializeDSE() {
         LOGGER.info("Initializing connection to Cassandra");
@@ -63,11 +83,12 @@ public class DSEConfiguration {
 */
             Builder clusterConfig = new Builder();
             clusterConfig
-                    .addContactPoints("127.0.0.1")
-                    .withPort(9042)
+                    .addContactPoints(properties.dseContactPoints.toArray(new String[0]))
+                    .withPort(properties.dsePort)
                     .withClusterName(CLUSTER_NAME);
 
-        	
+            applyDriverProfile(clusterConfig);
+
             /**
              * Check to see if we have username and password from the environment
              * This is here because we have a dual use scenario.  One for developers and others
@@ -101,6 +122,11 @@ public class DSEConfiguration {
 
             DseCluster dseCluster = clusterConfig.build();
 
+            /**
+             * Time every CQL request by statement, see killrvideo.metrics
+             */
+            dseCluster.register(latencyTracker);
+
             return dseCluster.connect();
 
         } catch (Throwable e) {
@@ -112,6 +138,59 @@ public class DSEConfiguration {
 
     }
 
+    /**
+     * Pooling, timeouts, paging, routing and speculative execution of the profile,
+     * each value of the profile can be overridden by its own property
+     */
+    private void applyDriverProfile(Builder clusterConfig) {
+        final DriverProfile profile = properties.dseProfile;
+        final int coreConnections = Optional.ofNullable(properties.dsePoolCoreConnections).orElse(profile.coreConnections);
+        final int maxConnections = Optional.ofNullable(properties.dsePoolMaxConnections).orElse(Math.max(coreConnections, profile.maxConnections));
+        final int maxRequestsPerConnection = Optional.ofNullable(properties.dsePoolMaxRequestsPerConnection).orElse(profile.maxRequestsPerConnection);
+        final int heartbeatIntervalSeconds = Optional.ofNullable(properties.dseHeartbeatIntervalSeconds).orElse(profile.heartbeatIntervalSeconds);
+        final int fetchSize = Optional.ofNullable(properties.dseFetchSize).orElse(profile.fetchSize);
+        final long speculativeDelayMs = Optional.ofNullable(properties.dseSpeculativeDelayMs).orElse(profile.speculativeDelayMs);
+
+        LOGGER.info(String.format("Using driver profile %s: %d-%d connections per host, %d requests per connection, " +
+                        "heartbeat %ds, fetch size %d, speculative executions %d after %dms",
+                profile, coreConnections, maxConnections, maxRequestsPerConnection, heartbeatIntervalSeconds,
+                fetchSize, profile.speculativeExecutions, speculativeDelayMs));
+
+        clusterConfig.withPoolingOptions(new PoolingOptions()
+                .setConnectionsPerHost(HostDistance.LOCAL, coreConnections, maxConnections)
+                .setMaxRequestsPerConnection(HostDistance.LOCAL, maxRequestsPerConnection)
+                .setHeartbeatIntervalSeconds(heartbeatIntervalSeconds));
+
+        clusterConfig.withSocketOptions(new SocketOptions()
+                .setConnectTimeoutMillis(profile.connectTimeoutMs)
+                .setReadTimeoutMillis(profile.readTimeoutMs)
+                .setTcpNoDelay(true)
+                .setKeepAlive(true));
+
+        clusterConfig.withQueryOptions(new QueryOptions().setFetchSize(fetchSize));
+
+        /**
+         * Send each statement to a replica of its partition, in the local datacenter when one is given
+         */
+        final DCAwareRoundRobinPolicy.Builder localDcPolicy = DCAwareRoundRobinPolicy.builder();
+        if (!properties.dseLocalDatacenter.isEmpty()) {
+            localDcPolicy.withLocalDc(properties.dseLocalDatacenter);
+        }
+        clusterConfig.withLoadBalancingPolicy(new TokenAwarePolicy(localDcPolicy.build()));
+
+        clusterConfig.withSpeculativeExecutionPolicy(speculativeExecutionPolicy(profile, speculativeDelayMs));
+    }
+
+    /**
+     * The driver only runs speculative executions of the statements marked idempotent,
+     * see {@link killrvideo.utils.IdempotentReads} for the mapper reads
+     */
+    static SpeculativeExecutionPolicy speculativeExecutionPolicy(DriverProfile profile, long speculativeDelayMs) {
+        return profile.speculativeExecutions > 0 && speculativeDelayMs > 0
+                ? new ConstantSpeculativeExecutionPolicy(speculativeDelayMs, profile.speculativeExecutions)
+                : NoSpeculativeExecutionPolicy.INSTANCE;
+    }
+
     @Bean
     public Void cassandraNativeClusterProduction() {
         // Initialize DSE
@@ -131,6 +210,15 @@ public class DSEConfiguration {
         return new MappingManager(session);
     }
 
+    /**
+     * Statements of the services prepared in parallel, then warmed up before the gRPC server starts
+     */
+    @Bean(destroyMethod = "close")
+    public PreparedStatementRegistry preparedStatementRegistry(DseSession session) {
+        return new PreparedStatementRegistry(session, statementNames, properties.cqlWarmupQueries,
+                properties.cqlWarmupIterations, properties.cqlWarmupConcurrency);
+    }
+
 /*    @Bean
     public KillrVideoTraversalSource getKillrVideoTraversalSource(DseSession session) {
         return DseGraph.traversal(session, KillrVideoTraversalSource.class);
@@ -0,0 +1,71 @@
+package killrvideo.configuration;
+
+import java.util.Locale;
+
+/**
+ * Presets of the driver connection pool, timeouts, paging and speculative execution,
+ * chosen with killrvideo.dse.profile. Each value can still be overridden on its own,
+ * see {@link KillrVideoProperties}. Whatever the profile, requests are routed
+ * token aware to a replica of the local datacenter.
+ */
+public enum DriverProfile {
+
+    /**
+     * Driver defaults: one connection per local host, 5000 rows pages, no speculative execution
+     */
+    DEFAULT(1, 1, 1024, 30, 5000, 5000, 12000, 0, 0),
+
+    /**
+     * Interactive reads: small pages so the first rows come back early, a short read timeout,
+     * and a second execution against another replica when the first one is slow to answer
+     * an idempotent statement, which trims the tail latency for a little more load
+     */
+    LOW_LATENCY(2, 2, 1024, 10, 100, 2000, 5000, 25, 1),
+
+    /**
+     * Bulk traffic: more connections and requests per connection so that a busy host
+     * does not queue requests client side, large pages for fewer round trips, and no
+     * speculative execution which would only add load
+     */
+    HIGH_THROUGHPUT(2, 8, 32768, 30, 1000, 5000, 12000, 0, 0);
+
+    /**
+     * Connections to each host of the local datacenter
+     */
+    public final int coreConnections;
+    public final int maxConnections;
+    public final int maxRequestsPerConnection;
+    public final int heartbeatIntervalSeconds;
+    public final int fetchSize;
+    public final int connectTimeoutMs;
+    public final int readTimeoutMs;
+    /**
+     * Delay before an idempotent statement is sent again to another replica, at most speculativeExecutions times
+     */
+    public final long speculativeDelayMs;
+    public final int speculativeExecutions;
+
+    DriverProfile(int coreConnections, int maxConnections, int maxRequestsPerConnection, int heartbeatIntervalSeconds,
+                  int fetchSize, int connectTimeoutMs, int readTimeoutMs, long speculativeDelayMs, int speculativeExecutions) {
+        this.coreConnections = coreConnections;
+        this.maxConnections = maxConnections;
+        this.maxRequestsPerConnection = maxRequestsPerConnection;
+        this.heartbeatIntervalSeconds = heartbeatIntervalSeconds;
+        this.fetchSize = fetchSize;
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.readTimeoutMs = readTimeoutMs;
+        this.speculativeDelayMs = speculativeDelayMs;
+        this.speculativeExecutions = speculativeExecutions;
+    }
+
+    /**
+     * @param profile e.g. low-latency or HIGH_THROUGHPUT
+     */
+    public static DriverProfile parse(String profile) {
+        try {
+            return valueOf(profile.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Unknown driver profile " + profile + ", expected default, low-latency or high-throughput");
+        }
+    }
+}
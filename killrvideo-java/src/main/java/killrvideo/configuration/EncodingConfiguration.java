@@ -0,0 +1,72 @@
+package killrvideo.configuration;
+
+import javax.inject.Inject;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.datastax.driver.dse.DseSession;
+import com.datastax.driver.mapping.Mapper;
+
+import killrvideo.cql.PreparedStatementRegistry;
+import killrvideo.encoding.CommandTranscoder;
+import killrvideo.encoding.EncodingJobScheduler;
+import killrvideo.encoding.EncodingNotifications;
+import killrvideo.encoding.SimulatedTranscoder;
+import killrvideo.encoding.Transcoder;
+import killrvideo.entity.EncodingJobNotification;
+import killrvideo.metrics.KillrVideoMetrics;
+
+@Configuration
+public class EncodingConfiguration {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(EncodingConfiguration.class);
+
+    @Inject
+    KillrVideoProperties properties;
+
+    @Inject
+    KillrVideoMetrics metrics;
+
+    @Inject
+    DseSession dseSession;
+
+    @Inject
+    PreparedStatementRegistry statementRegistry;
+
+    @Inject
+    Mapper<EncodingJobNotification> encodingJobNotificationMapper;
+
+    /**
+     * States of the uploaded videos, written in batches and indexed in memory
+     */
+    @Bean(destroyMethod = "close")
+    public EncodingNotifications encodingNotifications() {
+        return new EncodingNotifications(dseSession, statementRegistry, encodingJobNotificationMapper,
+                properties.encodingNotificationsFlushWindowMs, properties.encodingNotificationsMaxBatchSize,
+                properties.encodingStatusIndexSize);
+    }
+
+    /**
+     * Runs the encoding command when one is set, otherwise copies the uploads at
+     * the pace of an encoder so that the rest of the pipeline can be exercised
+     */
+    @Bean
+    public Transcoder transcoder() {
+        if (StringUtils.isNotBlank(properties.encodingCommand)) {
+            LOGGER.info("Encoding videos with: " + properties.encodingCommand);
+            return new CommandTranscoder(properties.encodingCommand, properties.encodingCommandTimeoutSeconds);
+        }
+        LOGGER.info("No encoding command set, simulating the encoding of videos");
+        return new SimulatedTranscoder(properties.encodingSimulatedBytesPerSecond);
+    }
+
+    @Bean(destroyMethod = "close")
+    public EncodingJobScheduler encodingJobScheduler() {
+        return new EncodingJobScheduler(transcoder(), encodingNotifications(), metrics,
+                properties.encodingWorkers, properties.encodingMaxQueuedJobs);
+    }
+}
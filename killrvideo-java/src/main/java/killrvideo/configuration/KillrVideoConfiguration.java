@@ -1,5 +1,8 @@
 package killrvideo.configuration;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -11,13 +14,22 @@ import javax.validation.Validator;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.env.Environment;
 
-import com.google.common.eventbus.EventBus;
 
 import killrvideo.async.KillrVideoThreadFactory;
+import killrvideo.async.QueuedEventBus;
+import killrvideo.async.RpcExecutor;
+import killrvideo.journal.MutationJournal;
+import killrvideo.metrics.KillrVideoMetrics;
+import killrvideo.metrics.PrometheusEndpoint;
+import killrvideo.security.LegacyPasswordHashFormat;
+import killrvideo.security.PasswordHasher;
+import killrvideo.security.Pbkdf2PasswordHashFormat;
+import killrvideo.storage.UploadStore;
 
 @Configuration
 public class KillrVideoConfiguration {
@@ -32,9 +44,16 @@ public class KillrVideoConfiguration {
         return new KillrVideoProperties(env);
     }
 
-    @Bean
-    public EventBus createEventBus() {
-        return new EventBus("killrvideo_event_bus");
+    /**
+     * Subscribers run on their own threads, never on the thread calling post(),
+     * see {@link QueuedEventBus}
+     */
+    @Bean(destroyMethod = "close")
+    public QueuedEventBus createEventBus() {
+        final KillrVideoProperties properties = this.getApplicationProperties();
+        return new QueuedEventBus("killrvideo_event_bus", properties.eventBusQueueSize,
+                QueuedEventBus.Backpressure.parse(properties.eventBusBackpressure), properties.eventBusBlockTimeoutMs,
+                new File(properties.eventBusSpillDir), properties.eventBusSpillMaxBytes);
     }
 
     @Bean(destroyMethod = "shutdownNow")
@@ -44,6 +63,64 @@ public class KillrVideoConfiguration {
             new LinkedBlockingQueue<>(properties.threadPoolQueuSize), new KillrVideoThreadFactory());
     }
 
+    /**
+     * Runs the gRPC handlers and the service callbacks, see {@link RpcExecutor.Mode}
+     */
+    @Bean(destroyMethod = "close")
+    public RpcExecutor rpcExecutor() {
+        final KillrVideoProperties properties = this.getApplicationProperties();
+        final RpcExecutor executor = RpcExecutor.create(RpcExecutor.Mode.parse(properties.grpcExecutorMode), threadPool());
+        LOGGER.info("Running gRPC handlers in " + executor.getModeName().toLowerCase() + " executor mode");
+        return executor;
+    }
+
+    /**
+     * Failed mutations waiting to be replayed, see {@link killrvideo.journal.MutationReplayService}
+     */
+    @Bean(destroyMethod = "close")
+    public MutationJournal mutationJournal() throws IOException {
+        final KillrVideoProperties properties = this.getApplicationProperties();
+        return new MutationJournal(new File(properties.mutationJournalDir), properties.mutationJournalSegmentBytes);
+    }
+
+    /**
+     * Latencies of the gRPC calls and of the CQL statements, exposed over JMX
+     */
+    @Bean(destroyMethod = "close")
+    public KillrVideoMetrics metrics() {
+        return new KillrVideoMetrics();
+    }
+
+    /**
+     * Same metrics for Prometheus, bound to the loopback interface by default
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = KillrVideoProperties.METRICS_HTTP_ENABLED, havingValue = "true", matchIfMissing = true)
+    public PrometheusEndpoint prometheusEndpoint() throws IOException {
+        final KillrVideoProperties properties = this.getApplicationProperties();
+        return new PrometheusEndpoint(metrics(), properties.metricsHttpHost, properties.metricsHttpPort);
+    }
+
+    /**
+     * Hashes the passwords with PBKDF2 on its own threads, the legacy SHA-512 hashes
+     * are replaced as their users log in
+     */
+    @Bean(destroyMethod = "close")
+    public PasswordHasher passwordHasher() {
+        final KillrVideoProperties properties = this.getApplicationProperties();
+        return new PasswordHasher(properties.passwordHashingThreads, properties.passwordHashingQueueSize, metrics(),
+                new Pbkdf2PasswordHashFormat(properties.passwordPbkdf2Iterations), new LegacyPasswordHashFormat());
+    }
+
+    /**
+     * Videos uploaded through the UploadsService, see {@link UploadStore}
+     */
+    @Bean(destroyMethod = "close")
+    public UploadStore uploadStore() throws IOException {
+        final KillrVideoProperties properties = this.getApplicationProperties();
+        return new UploadStore(Paths.get(properties.uploadsDir), properties.uploadsMaxBytes);
+    }
+
     @Bean
     public Validator getBeanValidator() {
         return Validation.buildDefaultValidatorFactory().getValidator();
@@ -1,12 +1,17 @@
 package killrvideo.configuration;
 
+import static java.lang.Boolean.parseBoolean;
 import static java.lang.Integer.parseInt;
+import static java.lang.Long.parseLong;
 import static java.lang.String.format;
+import static java.util.stream.Collectors.toList;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.core.env.Environment;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 
 public class KillrVideoProperties {
@@ -16,13 +21,69 @@ public class KillrVideoProperties {
     public static final String THREADPOOL_MIN_THREADS = "killrvideo.threadpool.min.threads";
     public static final String THREADPOOL_MAX_THREADS = "killrvideo.threadpool.max.threads";
     public static final String THREADPOOL_TTL_SECONDS = "killrvideo.thread.ttl.seconds";
-    public static final String THREADPOOL_QUEUE_SIZE = "killrvideo.thread.queue.size";
+    public static final String THREADPOOL_QUEUE_SIZE = "killrvideo.threadpool.queue.size";
+    public static final String GRPC_EXECUTOR_MODE = "killrvideo.grpc.executor.mode";
 
     public static final String APPLICATION_NAME = "killrvideo.application.name";
     public static final String APPLICATION_INSTANCE_ID = "killrvideo.application.instance.id";
     public static final String APPLICATION_PORT = "killrvideo.server.port";
     public static final String ETCD_PORT = "killrvideo.etcd.port";
-    public static final String CASSANDRA_MUTATION_ERROR_LOG = "killrvideo.cassandra.mutation.error.log";
+    public static final String ETCD_REGISTRATION = "killrvideo.etcd.registration";
+    public static final String MUTATION_JOURNAL_DIR = "killrvideo.mutation.journal.dir";
+    public static final String MUTATION_JOURNAL_SEGMENT_BYTES = "killrvideo.mutation.journal.segment.bytes";
+    public static final String MUTATION_REPLAY_POLL_MS = "killrvideo.mutation.replay.poll.ms";
+    public static final String MUTATION_REPLAY_BACKOFF_INITIAL_MS = "killrvideo.mutation.replay.backoff.initial.ms";
+    public static final String MUTATION_REPLAY_BACKOFF_MAX_MS = "killrvideo.mutation.replay.backoff.max.ms";
+    public static final String MUTATION_REPLAY_TIMEOUT_MS = "killrvideo.mutation.replay.timeout.ms";
+    public static final String MUTATION_REPLAY_MAX_ATTEMPTS = "killrvideo.mutation.replay.max.attempts";
+    public static final String STATISTICS_FLUSH_INTERVAL_MS = "killrvideo.statistics.flush.interval.ms";
+    public static final String STATISTICS_FLUSH_THRESHOLD = "killrvideo.statistics.flush.threshold";
+    public static final String STATISTICS_MAX_PENDING_VIDEOS = "killrvideo.statistics.max.pending.videos";
+    public static final String RATINGS_FLUSH_WINDOW_MS = "killrvideo.ratings.flush.window.ms";
+    public static final String RATINGS_MAX_BATCH_SIZE = "killrvideo.ratings.max.batch.size";
+    public static final String MULTIGET_MAX_INFLIGHT = "killrvideo.multiget.max.inflight";
+    public static final String VIDEO_CACHE_MAX_BYTES = "killrvideo.video.cache.max.bytes";
+    public static final String VIDEO_CACHE_TTL_SECONDS = "killrvideo.video.cache.ttl.seconds";
+    public static final String SEARCH_MAX_POSTING_LIST_SIZE = "killrvideo.search.max.posting.list.size";
+    public static final String SEARCH_RANKING_CACHE_SIZE = "killrvideo.search.ranking.cache.size";
+    public static final String SEARCH_RANKING_CACHE_TTL_SECONDS = "killrvideo.search.ranking.cache.ttl.seconds";
+    public static final String LATEST_VIDEOS_MAX_BUCKETS_IN_FLIGHT = "killrvideo.latest.videos.max.buckets.in.flight";
+    public static final String LATEST_VIDEOS_SHARDS = "killrvideo.latest.videos.shards";
+    public static final String EVENTBUS_QUEUE_SIZE = "killrvideo.eventbus.queue.size";
+    public static final String EVENTBUS_BACKPRESSURE = "killrvideo.eventbus.backpressure";
+    public static final String EVENTBUS_BLOCK_TIMEOUT_MS = "killrvideo.eventbus.block.timeout.ms";
+    public static final String EVENTBUS_SPILL_DIR = "killrvideo.eventbus.spill.dir";
+    public static final String EVENTBUS_SPILL_MAX_BYTES = "killrvideo.eventbus.spill.max.bytes";
+    public static final String METRICS_HTTP_ENABLED = "killrvideo.metrics.http.enabled";
+    public static final String METRICS_HTTP_HOST = "killrvideo.metrics.http.host";
+    public static final String METRICS_HTTP_PORT = "killrvideo.metrics.http.port";
+    public static final String DSE_CONTACT_POINTS = "killrvideo.dse.contact.points";
+    public static final String DSE_PORT = "killrvideo.dse.port";
+    public static final String DSE_LOCAL_DATACENTER = "killrvideo.dse.local.datacenter";
+    public static final String DSE_PROFILE = "killrvideo.dse.profile";
+    public static final String DSE_POOL_CORE_CONNECTIONS = "killrvideo.dse.pool.core.connections";
+    public static final String DSE_POOL_MAX_CONNECTIONS = "killrvideo.dse.pool.max.connections";
+    public static final String DSE_POOL_MAX_REQUESTS_PER_CONNECTION = "killrvideo.dse.pool.max.requests.per.connection";
+    public static final String DSE_HEARTBEAT_INTERVAL_SECONDS = "killrvideo.dse.heartbeat.interval.seconds";
+    public static final String DSE_FETCH_SIZE = "killrvideo.dse.fetch.size";
+    public static final String DSE_SPECULATIVE_DELAY_MS = "killrvideo.dse.speculative.delay.ms";
+    public static final String PASSWORD_HASHING_THREADS = "killrvideo.password.hashing.threads";
+    public static final String PASSWORD_HASHING_QUEUE_SIZE = "killrvideo.password.hashing.queue.size";
+    public static final String PASSWORD_PBKDF2_ITERATIONS = "killrvideo.password.pbkdf2.iterations";
+    public static final String UPLOADS_DIR = "killrvideo.uploads.dir";
+    public static final String UPLOADS_MAX_BYTES = "killrvideo.uploads.max.bytes";
+    public static final String ENCODING_WORKERS = "killrvideo.encoding.workers";
+    public static final String ENCODING_MAX_QUEUED_JOBS = "killrvideo.encoding.max.queued.jobs";
+    public static final String ENCODING_COMMAND = "killrvideo.encoding.command";
+    public static final String ENCODING_COMMAND_TIMEOUT_SECONDS = "killrvideo.encoding.command.timeout.seconds";
+    public static final String ENCODING_SIMULATED_BYTES_PER_SECOND = "killrvideo.encoding.simulated.bytes.per.second";
+    public static final String ENCODING_NOTIFICATIONS_FLUSH_WINDOW_MS = "killrvideo.encoding.notifications.flush.window.ms";
+    public static final String ENCODING_NOTIFICATIONS_MAX_BATCH_SIZE = "killrvideo.encoding.notifications.max.batch.size";
+    public static final String ENCODING_STATUS_INDEX_SIZE = "killrvideo.encoding.status.index.size";
+    public static final String CQL_WARMUP_QUERIES = "killrvideo.cql.warmup.queries";
+    public static final String CQL_WARMUP_ITERATIONS = "killrvideo.cql.warmup.iterations";
+    public static final String CQL_WARMUP_CONCURRENCY = "killrvideo.cql.warmup.concurrency";
+    public static final String CQL_READY_TIMEOUT_SECONDS = "killrvideo.cql.ready.timeout.seconds";
     public static final String KILLRVIDEO_DOCKER_IP = "KILLRVIDEO_DOCKER_IP";
     public static final String KILLRVIDEO_HOST_IP = "KILLRVIDEO_HOST_IP";
     public static final String KILLRVIDEO_DSE_USERNAME = "KILLRVIDEO_DSE_USERNAME";
@@ -32,11 +93,69 @@ public class KillrVideoProperties {
     public final int maxThreads;
     public final int threadsTTLSeconds;
     public final int threadPoolQueuSize;
+    public final String grpcExecutorMode;
     public final String applicationName;
     public final String applicationInstanceId;
     public final int applicationPort;
     public final int etcdPort;
-    public final String mutationErrorLog;
+    public final boolean etcdRegistration;
+    public final String mutationJournalDir;
+    public final int mutationJournalSegmentBytes;
+    public final long mutationReplayPollMs;
+    public final long mutationReplayBackoffInitialMs;
+    public final long mutationReplayBackoffMaxMs;
+    public final long mutationReplayTimeoutMs;
+    public final int mutationReplayMaxAttempts;
+    public final long statisticsFlushIntervalMs;
+    public final long statisticsFlushThreshold;
+    public final int statisticsMaxPendingVideos;
+    public final long ratingsFlushWindowMs;
+    public final int ratingsMaxBatchSize;
+    public final int multiGetMaxInFlight;
+    public final long videoCacheMaxBytes;
+    public final long videoCacheTtlSeconds;
+    public final int searchMaxPostingListSize;
+    public final long searchRankingCacheSize;
+    public final long searchRankingCacheTtlSeconds;
+    public final int latestVideosMaxBucketsInFlight;
+    public final int latestVideosShards;
+    public final int eventBusQueueSize;
+    public final String eventBusBackpressure;
+    public final long eventBusBlockTimeoutMs;
+    public final String eventBusSpillDir;
+    public final long eventBusSpillMaxBytes;
+    public final String metricsHttpHost;
+    public final int metricsHttpPort;
+    public final List<String> dseContactPoints;
+    public final int dsePort;
+    public final String dseLocalDatacenter;
+    public final DriverProfile dseProfile;
+    /**
+     * Overrides of the profile values, null when not set
+     */
+    public final Integer dsePoolCoreConnections;
+    public final Integer dsePoolMaxConnections;
+    public final Integer dsePoolMaxRequestsPerConnection;
+    public final Integer dseHeartbeatIntervalSeconds;
+    public final Integer dseFetchSize;
+    public final Long dseSpeculativeDelayMs;
+    public final int passwordHashingThreads;
+    public final int passwordHashingQueueSize;
+    public final int passwordPbkdf2Iterations;
+    public final String uploadsDir;
+    public final long uploadsMaxBytes;
+    public final int encodingWorkers;
+    public final int encodingMaxQueuedJobs;
+    public final String encodingCommand;
+    public final long encodingCommandTimeoutSeconds;
+    public final long encodingSimulatedBytesPerSecond;
+    public final long encodingNotificationsFlushWindowMs;
+    public final int encodingNotificationsMaxBatchSize;
+    public final long encodingStatusIndexSize;
+    public final List<String> cqlWarmupQueries;
+    public final int cqlWarmupIterations;
+    public final int cqlWarmupConcurrency;
+    public final long cqlReadyTimeoutSeconds;
     public final String dockerIp;
     public final String serverIp;
     public final String dseUsername;
@@ -47,11 +166,74 @@ public class KillrVideoProperties {
         this.maxThreads = parseInt(env.getProperty(THREADPOOL_MAX_THREADS, "10"));
         this.threadsTTLSeconds = parseInt(env.getProperty(THREADPOOL_TTL_SECONDS, "60"));
         this.threadPoolQueuSize = parseInt(env.getProperty(THREADPOOL_QUEUE_SIZE, "1000"));
+        this.grpcExecutorMode = env.getProperty(GRPC_EXECUTOR_MODE, "cached");
         this.applicationName = env.getProperty(APPLICATION_NAME, "KillrVideo");
         this.applicationInstanceId = env.getProperty(APPLICATION_INSTANCE_ID, "0");
         this.applicationPort = parseInt(env.getProperty(APPLICATION_PORT, "8899"));
         this.etcdPort = parseInt(env.getProperty(ETCD_PORT, "2379"));
-        this.mutationErrorLog = env.getProperty(CASSANDRA_MUTATION_ERROR_LOG, "killrvideo-mutation-errors.log");
+        this.etcdRegistration = parseBoolean(env.getProperty(ETCD_REGISTRATION, "true"));
+        this.mutationJournalDir = env.getProperty(MUTATION_JOURNAL_DIR, "killrvideo-mutation-journal");
+        this.mutationJournalSegmentBytes = parseInt(env.getProperty(MUTATION_JOURNAL_SEGMENT_BYTES, "16777216"));
+        this.mutationReplayPollMs = parseLong(env.getProperty(MUTATION_REPLAY_POLL_MS, "1000"));
+        this.mutationReplayBackoffInitialMs = parseLong(env.getProperty(MUTATION_REPLAY_BACKOFF_INITIAL_MS, "500"));
+        this.mutationReplayBackoffMaxMs = parseLong(env.getProperty(MUTATION_REPLAY_BACKOFF_MAX_MS, "60000"));
+        this.mutationReplayTimeoutMs = parseLong(env.getProperty(MUTATION_REPLAY_TIMEOUT_MS, "10000"));
+        this.mutationReplayMaxAttempts = parseInt(env.getProperty(MUTATION_REPLAY_MAX_ATTEMPTS, "0"));
+        this.statisticsFlushIntervalMs = parseLong(env.getProperty(STATISTICS_FLUSH_INTERVAL_MS, "1000"));
+        this.statisticsFlushThreshold = parseLong(env.getProperty(STATISTICS_FLUSH_THRESHOLD, "500"));
+        this.statisticsMaxPendingVideos = parseInt(env.getProperty(STATISTICS_MAX_PENDING_VIDEOS, "10000"));
+        this.ratingsFlushWindowMs = parseLong(env.getProperty(RATINGS_FLUSH_WINDOW_MS, "50"));
+        this.ratingsMaxBatchSize = parseInt(env.getProperty(RATINGS_MAX_BATCH_SIZE, "100"));
+        this.multiGetMaxInFlight = parseInt(env.getProperty(MULTIGET_MAX_INFLIGHT, "8"));
+        this.videoCacheMaxBytes = parseLong(env.getProperty(VIDEO_CACHE_MAX_BYTES, "67108864"));
+        this.videoCacheTtlSeconds = parseLong(env.getProperty(VIDEO_CACHE_TTL_SECONDS, "600"));
+        this.searchMaxPostingListSize = parseInt(env.getProperty(SEARCH_MAX_POSTING_LIST_SIZE, "10000"));
+        this.searchRankingCacheSize = parseLong(env.getProperty(SEARCH_RANKING_CACHE_SIZE, "1000"));
+        this.searchRankingCacheTtlSeconds = parseLong(env.getProperty(SEARCH_RANKING_CACHE_TTL_SECONDS, "60"));
+        this.latestVideosMaxBucketsInFlight = parseInt(env.getProperty(LATEST_VIDEOS_MAX_BUCKETS_IN_FLIGHT, "4"));
+        this.latestVideosShards = parseInt(env.getProperty(LATEST_VIDEOS_SHARDS, "0"));
+        this.eventBusQueueSize = parseInt(env.getProperty(EVENTBUS_QUEUE_SIZE, "1024"));
+        this.eventBusBackpressure = env.getProperty(EVENTBUS_BACKPRESSURE, "drop");
+        this.eventBusBlockTimeoutMs = parseLong(env.getProperty(EVENTBUS_BLOCK_TIMEOUT_MS, "1000"));
+        this.eventBusSpillDir = env.getProperty(EVENTBUS_SPILL_DIR, System.getProperty("java.io.tmpdir"));
+        this.eventBusSpillMaxBytes = parseLong(env.getProperty(EVENTBUS_SPILL_MAX_BYTES, "67108864"));
+        this.metricsHttpHost = env.getProperty(METRICS_HTTP_HOST, "127.0.0.1");
+        this.metricsHttpPort = parseInt(env.getProperty(METRICS_HTTP_PORT, "9464"));
+        this.dseContactPoints = Arrays.stream(env.getProperty(DSE_CONTACT_POINTS, "127.0.0.1").split(","))
+                .map(String::trim)
+                .filter(host -> !host.isEmpty())
+                .collect(toList());
+        this.dsePort = parseInt(env.getProperty(DSE_PORT, "9042"));
+        this.dseLocalDatacenter = env.getProperty(DSE_LOCAL_DATACENTER, "").trim();
+        this.dseProfile = DriverProfile.parse(env.getProperty(DSE_PROFILE, "default"));
+        this.dsePoolCoreConnections = env.getProperty(DSE_POOL_CORE_CONNECTIONS, Integer.class);
+        this.dsePoolMaxConnections = env.getProperty(DSE_POOL_MAX_CONNECTIONS, Integer.class);
+        this.dsePoolMaxRequestsPerConnection = env.getProperty(DSE_POOL_MAX_REQUESTS_PER_CONNECTION, Integer.class);
+        this.dseHeartbeatIntervalSeconds = env.getProperty(DSE_HEARTBEAT_INTERVAL_SECONDS, Integer.class);
+        this.dseFetchSize = env.getProperty(DSE_FETCH_SIZE, Integer.class);
+        this.dseSpeculativeDelayMs = env.getProperty(DSE_SPECULATIVE_DELAY_MS, Long.class);
+        this.passwordHashingThreads = parseInt(env.getProperty(PASSWORD_HASHING_THREADS,
+                Integer.toString(Runtime.getRuntime().availableProcessors())));
+        this.passwordHashingQueueSize = parseInt(env.getProperty(PASSWORD_HASHING_QUEUE_SIZE, "256"));
+        this.passwordPbkdf2Iterations = parseInt(env.getProperty(PASSWORD_PBKDF2_ITERATIONS, "100000"));
+        this.uploadsDir = env.getProperty(UPLOADS_DIR, "killrvideo-uploads");
+        this.uploadsMaxBytes = parseLong(env.getProperty(UPLOADS_MAX_BYTES, "8589934592"));
+        this.encodingWorkers = parseInt(env.getProperty(ENCODING_WORKERS,
+                Integer.toString(Runtime.getRuntime().availableProcessors())));
+        this.encodingMaxQueuedJobs = parseInt(env.getProperty(ENCODING_MAX_QUEUED_JOBS, "1000"));
+        this.encodingCommand = env.getProperty(ENCODING_COMMAND, "");
+        this.encodingCommandTimeoutSeconds = parseLong(env.getProperty(ENCODING_COMMAND_TIMEOUT_SECONDS, "3600"));
+        this.encodingSimulatedBytesPerSecond = parseLong(env.getProperty(ENCODING_SIMULATED_BYTES_PER_SECOND, "52428800"));
+        this.encodingNotificationsFlushWindowMs = parseLong(env.getProperty(ENCODING_NOTIFICATIONS_FLUSH_WINDOW_MS, "100"));
+        this.encodingNotificationsMaxBatchSize = parseInt(env.getProperty(ENCODING_NOTIFICATIONS_MAX_BATCH_SIZE, "50"));
+        this.encodingStatusIndexSize = parseLong(env.getProperty(ENCODING_STATUS_INDEX_SIZE, "100000"));
+        this.cqlWarmupQueries = Arrays.stream(env.getProperty(CQL_WARMUP_QUERIES, "SELECT release_version FROM system.local").split(";"))
+                .map(String::trim)
+                .filter(query -> !query.isEmpty())
+                .collect(toList());
+        this.cqlWarmupIterations = parseInt(env.getProperty(CQL_WARMUP_ITERATIONS, "100"));
+        this.cqlWarmupConcurrency = parseInt(env.getProperty(CQL_WARMUP_CONCURRENCY, "16"));
+        this.cqlReadyTimeoutSeconds = parseLong(env.getProperty(CQL_READY_TIMEOUT_SECONDS, "60"));
 
         /**
          * Need to set env variable KILLRVIDEO_DOCKER_IP and KILLRVIDEO_SERVER_IP before launching application
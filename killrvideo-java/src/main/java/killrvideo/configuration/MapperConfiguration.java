@@ -26,6 +26,9 @@ public class MapperConfiguration {
     @Bean
     public Mapper<CommentsByVideo> commentsByVideoMapper() { return manager.mapper(CommentsByVideo.class); }
 
+    @Bean
+    public Mapper<EncodingJobNotification> encodingJobNotificationMapper() { return manager.mapper(EncodingJobNotification.class); }
+
     @Bean
     public Mapper<LatestVideos> latestVideosMapper() { return manager.mapper(LatestVideos.class); }
 
@@ -0,0 +1,278 @@
+package killrvideo.cql;
+
+import static killrvideo.utils.ExceptionUtils.mergeStackTrace;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.LatencyTracker;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.RegularStatement;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.exceptions.UnpreparedException;
+import com.datastax.driver.dse.DseSession;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import killrvideo.async.KillrVideoThreadFactory;
+import killrvideo.metrics.PreparedStatementNames;
+import killrvideo.utils.FutureUtils;
+
+/**
+ * Prepares the statements of every service in parallel during startup.
+ *
+ * Services hand their statements to {@link #prepare(String, RegularStatement, Consumer)}
+ * from their @PostConstruct and get them back in a callback, so that the cluster round
+ * trips of all the services overlap instead of following each other. Once every bean is
+ * initialized the registry waits for the statements, then runs the warmup queries to open
+ * the pooled connections and get the driver code compiled, and only then is it ready,
+ * see {@link #awaitReady(long, TimeUnit)}. The gRPC server does not listen before.
+ *
+ * The driver prepares the statements again on a host that comes up, and on a host
+ * answering that it does not know a statement, e.g. after it restarted. Both are
+ * counted here, a steady count of the latter points at a prepared statement cache
+ * too small on the server side.
+ */
+@ManagedResource(objectName = "killrvideo:type=PreparedStatementRegistry", description = "Prepared statements of the services")
+public class PreparedStatementRegistry implements SmartInitializingSingleton, Host.StateListener, LatencyTracker, AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PreparedStatementRegistry.class);
+
+    private final DseSession dseSession;
+    private final PreparedStatementNames statementNames;
+    private final List<String> warmupQueries;
+    private final int warmupIterations;
+    private final int warmupConcurrency;
+
+    private final ConcurrentLinkedQueue<CompletableFuture<Void>> pending = new ConcurrentLinkedQueue<>();
+    private final CompletableFuture<Void> ready = new CompletableFuture<>();
+    private final AtomicInteger preparedStatements = new AtomicInteger();
+    private final AtomicInteger warmupFailures = new AtomicInteger();
+    private final AtomicLong reprepares = new AtomicLong();
+    private final AtomicLong hostReprepares = new AtomicLong();
+
+    private volatile boolean started = false;
+    private volatile long readyMillis = -1;
+
+    /**
+     * @param warmupQueries CQL queries run once the statements are prepared, none to skip the warmup
+     * @param warmupIterations times each warmup query is run
+     * @param warmupConcurrency warmup queries in flight at once
+     */
+    public PreparedStatementRegistry(DseSession dseSession, PreparedStatementNames statementNames,
+                                     List<String> warmupQueries, int warmupIterations, int warmupConcurrency) {
+        this.dseSession = dseSession;
+        this.statementNames = statementNames;
+        this.warmupQueries = warmupQueries;
+        this.warmupIterations = warmupIterations;
+        this.warmupConcurrency = Math.max(1, warmupConcurrency);
+
+        dseSession.getCluster().register((Host.StateListener) this);
+        dseSession.getCluster().register((LatencyTracker) this);
+    }
+
+    /**
+     * Prepare a statement without waiting for it, must be called while the beans are initialized
+     * @param name name of the statement in the metrics, usually the field it is assigned to
+     * @param whenPrepared sets the consistency level, idempotence... and keeps the statement,
+     *                     runs on a driver thread before the registry is ready
+     */
+    public void prepare(String name, RegularStatement statement, Consumer<PreparedStatement> whenPrepared) {
+        track(name, dseSession.prepareAsync(statement), whenPrepared);
+    }
+
+    /**
+     * @see #prepare(String, RegularStatement, Consumer)
+     */
+    public void prepare(String name, String query, Consumer<PreparedStatement> whenPrepared) {
+        track(name, dseSession.prepareAsync(query), whenPrepared);
+    }
+
+    private void track(String name, ListenableFuture<PreparedStatement> preparing, Consumer<PreparedStatement> whenPrepared) {
+        if (started) {
+            preparing.cancel(false);
+            throw new IllegalStateException("Statement " + name + " prepared after startup, prepare it from @PostConstruct");
+        }
+        pending.add(FutureUtils.buildCompletableFuture(preparing)
+                .thenAccept(prepared -> {
+                    statementNames.register(name, prepared);
+                    whenPrepared.accept(prepared);
+                    preparedStatements.incrementAndGet();
+                })
+                .whenComplete((ignored, ex) -> {
+                    if (ex != null) {
+                        LOGGER.error("Exception preparing statement " + name + " : " + mergeStackTrace(ex));
+                    }
+                }));
+    }
+
+    /**
+     * Every @PostConstruct ran, wait for their statements then warm up
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        started = true;
+        final long start = System.nanoTime();
+        final CompletableFuture<?>[] statements = pending.toArray(new CompletableFuture<?>[0]);
+        LOGGER.info("Preparing " + statements.length + " statements");
+
+        CompletableFuture.allOf(statements)
+                .thenCompose(ignored -> {
+                    LOGGER.info("Prepared " + statements.length + " statements in "
+                            + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+                    return warmUp();
+                })
+                .whenComplete((ignored, ex) -> {
+                    if (ex != null) {
+                        ready.completeExceptionally(ex);
+                        return;
+                    }
+                    readyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                    LOGGER.info("CQL statements ready in " + readyMillis + "ms");
+                    ready.complete(null);
+                });
+    }
+
+    /**
+     * Run the warmup queries, their failures are logged but never delay the readiness.
+     *
+     * Queries are issued from a thread of their own rather than chained from the driver
+     * callbacks, an answer received before its callback is added would run the next query
+     * on the same stack.
+     */
+    private CompletableFuture<Void> warmUp() {
+        final int total = warmupQueries.size() * warmupIterations;
+        if (total <= 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        final CompletableFuture<Void> warmedUp = new CompletableFuture<>();
+        new KillrVideoThreadFactory().newThread(() -> {
+            final long start = System.nanoTime();
+            final Semaphore inFlight = new Semaphore(warmupConcurrency);
+            for (int i = 0; i < total; i++) {
+                final String cql = warmupQueries.get(i % warmupQueries.size());
+                inFlight.acquireUninterruptibly();
+                FutureUtils.buildCompletableFuture(dseSession.executeAsync(cql))
+                        .whenComplete((rs, ex) -> {
+                            if (ex != null && warmupFailures.getAndIncrement() == 0) {
+                                LOGGER.warn("Exception running warmup query " + cql + " : " + mergeStackTrace(ex));
+                            }
+                            inFlight.release();
+                        });
+            }
+            inFlight.acquireUninterruptibly(warmupConcurrency);
+            LOGGER.info("Ran " + total + " warmup queries in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms, " + warmupFailures.get() + " failed");
+            warmedUp.complete(null);
+        }).start();
+        return warmedUp;
+    }
+
+    /**
+     * Wait until the statements are prepared and the warmup is over
+     * @throws IllegalStateException when a statement could not be prepared
+     */
+    public void awaitReady(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+        try {
+            ready.get(timeout, unit);
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("Could not prepare the CQL statements", ex.getCause());
+        }
+    }
+
+    @Override
+    public void close() {
+        dseSession.getCluster().unregister((Host.StateListener) this);
+        dseSession.getCluster().unregister((LatencyTracker) this);
+        ready.cancel(false);
+    }
+
+    /**
+     * Count the statements the driver prepares again after a host answered it does not know them
+     */
+    @Override
+    public void update(Host host, Statement statement, Exception exception, long newLatencyNanos) {
+        if (exception instanceof UnpreparedException && statement instanceof BoundStatement) {
+            reprepares.incrementAndGet();
+            LOGGER.warn("Statement " + statementNames.nameOf(((BoundStatement) statement).preparedStatement())
+                    + " unknown to " + host + ", preparing it again");
+        }
+    }
+
+    /**
+     * The driver prepares every statement again on a host added or back up
+     */
+    @Override
+    public void onAdd(Host host) {
+        onUp(host);
+    }
+
+    @Override
+    public void onUp(Host host) {
+        final int statements = preparedStatements.get();
+        hostReprepares.addAndGet(statements);
+        LOGGER.info("Host " + host + " up, the driver prepares the " + statements + " statements on it again");
+    }
+
+    @Override
+    public void onDown(Host host) {
+    }
+
+    @Override
+    public void onRemove(Host host) {
+    }
+
+    @Override
+    public void onRegister(Cluster cluster) {
+    }
+
+    @Override
+    public void onUnregister(Cluster cluster) {
+    }
+
+    @ManagedAttribute(description = "Whether the statements are prepared and the warmup is over")
+    public boolean isReady() {
+        return ready.isDone() && !ready.isCompletedExceptionally();
+    }
+
+    @ManagedAttribute(description = "Time from the end of the beans initialization to the readiness, -1 until ready")
+    public long getReadyMillis() {
+        return readyMillis;
+    }
+
+    @ManagedAttribute(description = "Statements prepared")
+    public int getPreparedStatements() {
+        return preparedStatements.get();
+    }
+
+    @ManagedAttribute(description = "Warmup queries that failed")
+    public int getWarmupFailures() {
+        return warmupFailures.get();
+    }
+
+    @ManagedAttribute(description = "Executions of a statement unknown to the host, prepared again before being retried")
+    public long getReprepares() {
+        return reprepares.get();
+    }
+
+    @ManagedAttribute(description = "Statements prepared again on the hosts added or back up")
+    public long getHostReprepares() {
+        return hostReprepares.get();
+    }
+}
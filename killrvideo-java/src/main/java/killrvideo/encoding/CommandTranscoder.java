@@ -0,0 +1,51 @@
+package killrvideo.encoding;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Runs a command to encode each video, e.g. ffmpeg -y -i {input} -c:v libx264 {output}.
+ * The {input} and {output} arguments are replaced by the paths of the video uploaded and
+ * of the file to write, the output of the command goes to a .log file next to that file.
+ */
+public class CommandTranscoder implements Transcoder {
+
+    private final List<String> command;
+    private final long timeoutSeconds;
+
+    /**
+     * @param commandLine arguments separated by spaces
+     * @param timeoutSeconds the command is killed when it runs longer
+     */
+    public CommandTranscoder(String commandLine, long timeoutSeconds) {
+        this.command = Arrays.asList(commandLine.trim().split("\\s+"));
+        this.timeoutSeconds = timeoutSeconds;
+    }
+
+    @Override
+    public void transcode(Path source, Path target) throws IOException, InterruptedException {
+        final List<String> arguments = command.stream()
+                .map(argument -> argument.replace("{input}", source.toString()).replace("{output}", target.toString()))
+                .collect(Collectors.toList());
+        final Path log = target.resolveSibling(target.getFileName() + ".log");
+
+        final Process process = new ProcessBuilder(arguments)
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile())
+                .start();
+        try {
+            if (!process.waitFor(timeoutSeconds, TimeUnit.SECONDS)) {
+                throw new IOException(command.get(0) + " did not encode " + source + " within " + timeoutSeconds + " seconds");
+            }
+        } finally {
+            process.destroyForcibly();
+        }
+        if (process.exitValue() != 0) {
+            throw new IOException(command.get(0) + " exited with " + process.exitValue() + " encoding " + source + ", see " + log);
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package killrvideo.encoding;
+
+import static killrvideo.utils.ExceptionUtils.mergeStackTrace;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import killrvideo.async.KillrVideoThreadFactory;
+import killrvideo.entity.EncodingJobNotification;
+import killrvideo.metrics.KillrVideoMetrics;
+import killrvideo.metrics.RequestMetrics;
+
+/**
+ * Encodes the uploaded videos on a pool of workers, no larger than the number of cores.
+ *
+ * Jobs wait in one queue per tenant, ordered by priority then by submission. Workers take
+ * the job of highest priority across the tenants and, between tenants whose next jobs
+ * have the same priority, the tenant served least recently, i.e. in turn. A tenant
+ * submitting many videos thus only delays its own videos, the others get a worker
+ * every few jobs.
+ *
+ * Each job goes through Queued, Processing then Finished or Error, the states being
+ * appended to the {@link EncodingStateLog}, usually the {@link EncodingNotifications}.
+ * Jobs are only kept in memory, the jobs still queued or running when the application
+ * stops are lost and their videos stay Queued or Processing until their upload is marked complete
+ * again, see {@link #isPending(UUID)}. The time spent queued and encoding is recorded in
+ * the "queue" and "transcode" encoding job metrics.
+ */
+@ManagedResource(objectName = "killrvideo:type=EncodingJobScheduler", description = "Encoding jobs of the uploaded videos")
+public class EncodingJobScheduler implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EncodingJobScheduler.class);
+
+    public static final String QUEUED = "Queued";
+    public static final String PROCESSING = "Processing";
+    public static final String FINISHED = "Finished";
+    public static final String ERROR = "Error";
+
+    public static final int NORMAL_PRIORITY = 0;
+
+    private static final Comparator<Job> JOB_ORDER = Comparator
+            .comparingInt((Job job) -> -job.priority)
+            .thenComparingLong(job -> job.sequence);
+
+    private static final Comparator<TenantQueue> TENANT_ORDER = Comparator
+            .comparingInt((TenantQueue tenant) -> -tenant.jobs.peek().priority)
+            .thenComparingLong(tenant -> tenant.lastServed)
+            .thenComparingLong(tenant -> tenant.jobs.peek().sequence);
+
+    private static class Job {
+        final UUID videoId;
+        final String tenant;
+        final int priority;
+        final Path source;
+        final Path target;
+        final long sequence;
+        final long submittedNanos = System.nanoTime();
+        final CompletableFuture<Path> encoded = new CompletableFuture<>();
+
+        Job(UUID videoId, String tenant, int priority, Path source, Path target, long sequence) {
+            this.videoId = videoId;
+            this.tenant = tenant;
+            this.priority = priority;
+            this.source = source;
+            this.target = target;
+            this.sequence = sequence;
+        }
+    }
+
+    private static class TenantQueue {
+        final String tenant;
+        final PriorityQueue<Job> jobs = new PriorityQueue<>(JOB_ORDER);
+        /**
+         * Jobs taken by the workers when this tenant was last served, tenants coming
+         * back with new jobs wait for the ones already queued as if just served
+         */
+        long lastServed;
+
+        TenantQueue(String tenant, long lastServed) {
+            this.tenant = tenant;
+            this.lastServed = lastServed;
+        }
+    }
+
+    private final Transcoder transcoder;
+    private final EncodingStateLog notifications;
+    private final int maxQueuedJobs;
+    private final int workers;
+    private final ExecutorService workerPool;
+    private final RequestMetrics queueMetrics;
+    private final RequestMetrics transcodeMetrics;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition jobQueued = lock.newCondition();
+    private final Map<String, TenantQueue> tenants = new HashMap<>();
+    private final PriorityQueue<TenantQueue> readyTenants = new PriorityQueue<>(TENANT_ORDER);
+    private final Set<UUID> pendingVideos = new HashSet<>();
+    private long sequence;
+    private long served;
+    private int queued;
+    private boolean closed;
+
+    /**
+     * @param workers encoding concurrently, capped to the number of cores
+     * @param maxQueuedJobs jobs waiting for a worker before the next ones are rejected
+     */
+    public EncodingJobScheduler(Transcoder transcoder, EncodingStateLog notifications, KillrVideoMetrics metrics,
+                                int workers, int maxQueuedJobs) {
+        this.transcoder = transcoder;
+        this.notifications = notifications;
+        this.maxQueuedJobs = maxQueuedJobs;
+        this.workers = Math.max(1, Math.min(workers, Runtime.getRuntime().availableProcessors()));
+        this.queueMetrics = metrics.encodingJob("queue");
+        this.transcodeMetrics = metrics.encodingJob("transcode");
+        this.workerPool = Executors.newFixedThreadPool(this.workers, new KillrVideoThreadFactory());
+        for (int i = 0; i < this.workers; i++) {
+            workerPool.execute(this::work);
+        }
+    }
+
+    /**
+     * Queue the encoding of a video
+     * @param tenant owner of the video, e.g. its user id, jobs are shared fairly between tenants
+     * @param priority jobs of higher priority are encoded first, e.g. {@link #NORMAL_PRIORITY}
+     * @param source video uploaded
+     * @param target file to write, its directory is created if missing
+     * @return CompletableFuture completing once the video is encoded
+     * @throws RejectedExecutionException when too many jobs are queued already
+     */
+    public CompletableFuture<Path> submit(UUID videoId, String tenant, int priority, Path source, Path target) {
+        return submit(videoId, tenant, priority, source, target, EncodingJobNotification.UPLOADED);
+    }
+
+    /**
+     * Queue the encoding of a video again, e.g. after its job was lost at a restart
+     * @param currentState latest state of the video, appended as the old state of Queued
+     * @see #submit(UUID, String, int, Path, Path)
+     */
+    public CompletableFuture<Path> submit(UUID videoId, String tenant, int priority, Path source, Path target,
+                                          String currentState) {
+        final Job job;
+        lock.lock();
+        try {
+            if (closed) {
+                throw new RejectedExecutionException("Encoding job scheduler is closed");
+            }
+            if (queued >= maxQueuedJobs) {
+                throw new RejectedExecutionException(queued + " encoding jobs queued already");
+            }
+            job = new Job(videoId, tenant, priority, source, target, sequence++);
+            /** Appended before a worker can take the job, so that Queued comes before Processing **/
+            notifications.append(videoId, jobId(job), currentState, QUEUED);
+            pendingVideos.add(videoId);
+            final TenantQueue tenantQueue = tenants.computeIfAbsent(tenant, key -> new TenantQueue(key, served));
+            /** The order of a tenant depends on its first job, reinsert it **/
+            readyTenants.remove(tenantQueue);
+            tenantQueue.jobs.add(job);
+            readyTenants.add(tenantQueue);
+            queued++;
+            queueMetrics.started();
+            jobQueued.signal();
+        } finally {
+            lock.unlock();
+        }
+        return job.encoded;
+    }
+
+    /**
+     * Stop the workers, the jobs queued are cancelled and the ones running interrupted,
+     * their videos stay in their current state
+     */
+    @Override
+    public void close() {
+        final List<Job> cancelled = new ArrayList<>();
+        lock.lock();
+        try {
+            closed = true;
+            readyTenants.forEach(tenant -> cancelled.addAll(tenant.jobs));
+            readyTenants.clear();
+            tenants.clear();
+            pendingVideos.clear();
+            queued = 0;
+            jobQueued.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        cancelled.forEach(job -> job.encoded.completeExceptionally(new CancellationException("Encoding job scheduler closed")));
+
+        workerPool.shutdownNow();
+        try {
+            workerPool.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return true while a job of the video is queued or running on this instance
+     */
+    public boolean isPending(UUID videoId) {
+        lock.lock();
+        try {
+            return pendingVideos.contains(videoId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @ManagedAttribute(description = "Workers encoding concurrently")
+    public int getWorkers() {
+        return workers;
+    }
+
+    @ManagedAttribute(description = "Jobs waiting for a worker")
+    public int getQueuedJobs() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @ManagedAttribute(description = "Tenants with jobs waiting for a worker")
+    public int getQueuedTenants() {
+        lock.lock();
+        try {
+            return readyTenants.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @ManagedAttribute(description = "Jobs being encoded")
+    public int getRunningJobs() {
+        return transcodeMetrics.getInFlight();
+    }
+
+    private void work() {
+        try {
+            Job job;
+            while ((job = take()) != null) {
+                run(job);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return next job, null once closed
+     */
+    private Job take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (readyTenants.isEmpty() && !closed) {
+                jobQueued.await();
+            }
+            if (closed) {
+                return null;
+            }
+            final TenantQueue tenantQueue = readyTenants.poll();
+            final Job job = tenantQueue.jobs.poll();
+            tenantQueue.lastServed = ++served;
+            if (tenantQueue.jobs.isEmpty()) {
+                tenants.remove(tenantQueue.tenant);
+            } else {
+                readyTenants.add(tenantQueue);
+            }
+            queued--;
+            return job;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void run(Job job) throws InterruptedException {
+        final long startedNanos = System.nanoTime();
+        queueMetrics.completed(startedNanos - job.submittedNanos, RequestMetrics.OK);
+        notifications.append(job.videoId, jobId(job), QUEUED, PROCESSING);
+
+        transcodeMetrics.started();
+        try {
+            Files.createDirectories(job.target.getParent());
+            transcoder.transcode(job.source, job.target);
+            transcodeMetrics.completed(System.nanoTime() - startedNanos, RequestMetrics.OK);
+            notifications.append(job.videoId, jobId(job), PROCESSING, FINISHED);
+            done(job);
+            job.encoded.complete(job.target);
+
+        } catch (InterruptedException ex) {
+            transcodeMetrics.completed(System.nanoTime() - startedNanos, ERROR);
+            /**
+             * Interrupted by close(), the video is left Processing so that its
+             * job is submitted again once the application is back
+             */
+            if (isClosed()) {
+                LOGGER.info("Encoding of video " + job.videoId + " interrupted by shutdown, left " + PROCESSING);
+                done(job);
+                job.encoded.completeExceptionally(new CancellationException("Encoding job scheduler closed"));
+            } else {
+                notifications.append(job.videoId, jobId(job), PROCESSING, ERROR);
+                done(job);
+                job.encoded.completeExceptionally(ex);
+            }
+            throw ex;
+
+        } catch (Exception ex) {
+            LOGGER.error("Exception encoding video " + job.videoId + " : " + mergeStackTrace(ex));
+            transcodeMetrics.completed(System.nanoTime() - startedNanos, ERROR);
+            notifications.append(job.videoId, jobId(job), PROCESSING, ERROR);
+            done(job);
+            job.encoded.completeExceptionally(ex);
+        }
+    }
+
+    private boolean isClosed() {
+        lock.lock();
+        try {
+            return closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void done(Job job) {
+        lock.lock();
+        try {
+            pendingVideos.remove(job.videoId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static String jobId(Job job) {
+        return "local-" + job.sequence;
+    }
+}
@@ -0,0 +1,204 @@
+package killrvideo.encoding;
+
+import static killrvideo.utils.ExceptionUtils.mergeStackTrace;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.querybuilder.QueryBuilder;
+import com.datastax.driver.core.utils.UUIDs;
+import com.datastax.driver.dse.DseSession;
+import com.datastax.driver.mapping.Mapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import killrvideo.async.WindowedBatcher;
+import killrvideo.cql.PreparedStatementRegistry;
+import killrvideo.entity.EncodingJobNotification;
+import killrvideo.entity.Schema;
+import killrvideo.utils.FutureUtils;
+
+/**
+ * State changes of the uploaded videos, appended to <strong>encoding_job_notifications</strong>
+ * and indexed in memory.
+ *
+ * Changes are queued in a {@link WindowedBatcher} and written every flush window, or as
+ * soon as a batch is full, in UNLOGGED batches of the changes of one video so that each
+ * batch targets a single partition. The latest state of each video is kept in a bounded
+ * index as it changes, so that {@link #latest(UUID)} only reads the partition of the
+ * videos it evicted or that changed on another instance before this one started.
+ */
+public class EncodingNotifications implements EncodingStateLog, AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EncodingNotifications.class);
+
+    private static final Mapper.Option SKIP_NULLS = Mapper.Option.saveNullFields(false);
+
+    private static class PendingNotification {
+        final EncodingJobNotification notification;
+        final CompletableFuture<Void> written = new CompletableFuture<>();
+
+        PendingNotification(EncodingJobNotification notification) {
+            this.notification = notification;
+        }
+    }
+
+    private final DseSession dseSession;
+    private final Mapper<EncodingJobNotification> mapper;
+    private PreparedStatement latestNotificationPrepared;
+    private final int maxBatchSize;
+    private final Cache<UUID, EncodingJobNotification> latestByVideo;
+    private final WindowedBatcher<PendingNotification> batcher;
+
+    /**
+     * @param statementRegistry prepares the read of the latest state, must be created while the beans are initialized
+     * @param flushWindowMs maximum time a change waits before being written
+     * @param maxBatchSize flush as soon as this many changes are queued, also caps the size of each batch
+     * @param indexSize videos whose latest state is kept in memory
+     */
+    public EncodingNotifications(DseSession dseSession, PreparedStatementRegistry statementRegistry,
+                                 Mapper<EncodingJobNotification> mapper, long flushWindowMs, int maxBatchSize, long indexSize) {
+        this.dseSession = dseSession;
+        this.mapper = mapper;
+        this.maxBatchSize = maxBatchSize;
+        this.latestByVideo = CacheBuilder.newBuilder().maximumSize(indexSize).build();
+
+        /**
+         * Notifications are clustered latest first, the first row
+         * holds the current state
+         */
+        statementRegistry.prepare("latestNotificationPrepared",
+                QueryBuilder
+                        .select().all()
+                        .from(Schema.KEYSPACE, mapper.getTableMetadata().getName())
+                        .where(QueryBuilder.eq("videoid", QueryBuilder.bindMarker()))
+                        .limit(1),
+                prepared -> latestNotificationPrepared = prepared.setConsistencyLevel(ConsistencyLevel.LOCAL_ONE));
+
+        this.batcher = new WindowedBatcher<>("encoding notifications", flushWindowMs, maxBatchSize, this::writeNotifications);
+    }
+
+    /**
+     * Index a state change and queue it for the next flush
+     */
+    @Override
+    public CompletableFuture<Void> append(UUID videoId, String jobId, String oldState, String newState) {
+        /**
+         * Rows are clustered by status_date DESC then etag ASC, two changes of the same
+         * millisecond would be read back oldest first. The date of a change is moved
+         * past the one of the latest indexed change of the video so that it is unique.
+         */
+        final EncodingJobNotification notification = latestByVideo.asMap().compute(videoId, (id, indexed) -> {
+            long statusDate = System.currentTimeMillis();
+            if (indexed != null && statusDate <= indexed.getStatusDate().getTime()) {
+                statusDate = indexed.getStatusDate().getTime() + 1;
+            }
+            return new EncodingJobNotification(videoId, new Date(statusDate),
+                    UUIDs.timeBased().toString(), jobId, newState, oldState);
+        });
+
+        final PendingNotification pending = new PendingNotification(notification);
+        if (!batcher.add(pending)) {
+            pending.written.completeExceptionally(new IllegalStateException("Encoding notifications are closed"));
+        }
+        return pending.written;
+    }
+
+    /**
+     * @return latest state change of the video, null when it has none
+     */
+    public CompletableFuture<EncodingJobNotification> latest(UUID videoId) {
+        final EncodingJobNotification indexed = latestByVideo.getIfPresent(videoId);
+        if (indexed != null) {
+            return CompletableFuture.completedFuture(indexed);
+        }
+        return FutureUtils.buildCompletableFuture(dseSession.executeAsync(latestNotificationPrepared.bind()
+                .setUUID("videoid", videoId)))
+                .thenApply(rs -> {
+                    final Row row = rs.one();
+                    if (row == null) {
+                        return null;
+                    }
+                    final EncodingJobNotification stored = new EncodingJobNotification(videoId,
+                            row.getTimestamp("status_date"), row.getString("etag"), row.getString("jobid"),
+                            row.getString("newstate"), row.getString("oldstate"));
+                    return latestByVideo.asMap().merge(videoId, stored, EncodingNotifications::later);
+                });
+    }
+
+    /**
+     * Write every queued change, grouped per video
+     * @return CompletableFuture completing once all the writes are acknowledged
+     */
+    public CompletableFuture<Void> flush() {
+        return batcher.flush();
+    }
+
+    private CompletableFuture<Void> writeNotifications(List<PendingNotification> notifications) {
+        final Map<UUID, List<PendingNotification>> byVideo = new LinkedHashMap<>();
+        for (PendingNotification pending : notifications) {
+            byVideo.computeIfAbsent(pending.notification.getVideoid(), k -> new ArrayList<>()).add(pending);
+        }
+
+        final List<CompletableFuture<Void>> writes = new ArrayList<>();
+        byVideo.values().forEach(notifications -> {
+            for (int from = 0; from < notifications.size(); from += maxBatchSize) {
+                writes.add(writeBatch(notifications.subList(from, Math.min(notifications.size(), from + maxBatchSize))));
+            }
+        });
+
+        if (!writes.isEmpty()) {
+            LOGGER.debug("Flushing encoding notifications of " + byVideo.size() + " videos");
+        }
+        return CompletableFuture.allOf(writes.toArray(new CompletableFuture[writes.size()]));
+    }
+
+    private CompletableFuture<Void> writeBatch(List<PendingNotification> notifications) {
+        final BatchStatement batch = new BatchStatement(BatchStatement.Type.UNLOGGED);
+        notifications.forEach(pending -> batch.add(mapper.saveQuery(pending.notification, SKIP_NULLS)));
+
+        return FutureUtils.buildCompletableFuture(dseSession.executeAsync(batch))
+                .handle((rs, ex) -> {
+                    if (ex != null) {
+                        LOGGER.error("Exception writing encoding notifications : " + mergeStackTrace(ex));
+                    }
+                    for (PendingNotification pending : notifications) {
+                        if (ex == null) {
+                            pending.written.complete(null);
+                        } else {
+                            pending.written.completeExceptionally(ex);
+                        }
+                    }
+                    return null;
+                });
+    }
+
+    /**
+     * Stop the periodic flush and write out every queued change
+     * @param timeoutMs
+     */
+    public void close(long timeoutMs) {
+        batcher.close(timeoutMs);
+    }
+
+    @Override
+    public void close() {
+        close(5000L);
+    }
+
+    private static EncodingJobNotification later(EncodingJobNotification indexed, EncodingJobNotification candidate) {
+        return candidate.getStatusDate().before(indexed.getStatusDate()) ? indexed : candidate;
+    }
+}
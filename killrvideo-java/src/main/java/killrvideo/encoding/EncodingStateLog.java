@@ -0,0 +1,17 @@
+package killrvideo.encoding;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Where the state changes of the encoding jobs are appended, see {@link EncodingNotifications}
+ */
+public interface EncodingStateLog {
+
+    /**
+     * @param jobId null for the changes before the encoding
+     * @param oldState null for the first state
+     * @return CompletableFuture completing once the change is written
+     */
+    CompletableFuture<Void> append(UUID videoId, String jobId, String oldState, String newState);
+}
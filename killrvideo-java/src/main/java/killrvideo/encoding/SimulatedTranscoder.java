@@ -0,0 +1,32 @@
+package killrvideo.encoding;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stand-in for a real encoder, used when no encoding command is configured: the video
+ * is copied as is and the worker is held as long as an encoder of the given throughput
+ * would take, so that the scheduling can be measured without any encoder installed.
+ */
+public class SimulatedTranscoder implements Transcoder {
+
+    private final long bytesPerSecond;
+
+    /**
+     * @param bytesPerSecond simulated encoding throughput of a worker, 0 to only copy the videos
+     */
+    public SimulatedTranscoder(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    @Override
+    public void transcode(Path source, Path target) throws IOException, InterruptedException {
+        Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+        if (bytesPerSecond > 0) {
+            TimeUnit.NANOSECONDS.sleep(TimeUnit.SECONDS.toNanos(Files.size(source)) / bytesPerSecond);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package killrvideo.encoding;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Encodes an uploaded video, run by the workers of {@link EncodingJobScheduler}
+ */
+public interface Transcoder {
+
+    /**
+     * @param source video uploaded
+     * @param target file to write, its directory exists
+     * @throws IOException when the video cannot be encoded, the job is then in error
+     */
+    void transcode(Path source, Path target) throws IOException, InterruptedException;
+}
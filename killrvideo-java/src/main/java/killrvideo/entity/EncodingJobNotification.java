@@ -14,6 +14,12 @@ import com.datastax.driver.mapping.annotations.Table;
 @Table(keyspace = KEYSPACE, name = "encoding_job_notifications")
 public class EncodingJobNotification {
 
+    /**
+     * States of an uploaded video before its encoding
+     */
+    public static final String UPLOADING = "Uploading";
+    public static final String UPLOADED = "Uploaded";
+
     @PartitionKey
     private UUID videoid;
 
@@ -14,6 +14,22 @@ import killrvideo.video_catalog.VideoCatalogServiceOuterClass.VideoPreview;
 @Table(keyspace = Schema.KEYSPACE, name = "latest_videos")
 public class LatestVideos extends AbstractVideoList {
 
+    /**
+     * Same rows spread over several partitions per day, partition key (yyyymmdd, bucket).
+     * Rows of that table are read into this entity as well, see {@link #shardOf(UUID, int)}
+     */
+    public static final String SHARDED_TABLE_NAME = "latest_videos_sharded";
+
+    /**
+     * Bucket of a video in the sharded table
+     * @param videoid
+     * @param shardCount number of buckets per day
+     * @return bucket in [0, shardCount)
+     */
+    public static int shardOf(UUID videoid, int shardCount) {
+        return Math.floorMod(videoid.hashCode(), shardCount);
+    }
+
     @PartitionKey
     private String yyyymmdd;
 
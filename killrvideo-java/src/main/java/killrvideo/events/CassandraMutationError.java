@@ -1,18 +1,43 @@
 package killrvideo.events;
 
+import java.io.Serializable;
 
 import com.google.protobuf.GeneratedMessageV3;
 
 import killrvideo.utils.ExceptionUtils;
 
-public class CassandraMutationError {
+public class CassandraMutationError implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     public final GeneratedMessageV3 request;
     public final Throwable throwable;
 
+    /**
+     * Time used by the failed mutation for its dates and write timestamps,
+     * a replay must use the same one to be idempotent
+     */
+    public final long mutationTimeMillis;
+
+    /**
+     * Type the mutation is journaled with, the full name of the request type
+     * unless only part of the mutation is left to replay
+     */
+    public final String replayType;
+
     public CassandraMutationError(GeneratedMessageV3 request, Throwable throwable) {
+        this(request, throwable, System.currentTimeMillis());
+    }
+
+    public CassandraMutationError(GeneratedMessageV3 request, Throwable throwable, long mutationTimeMillis) {
+        this(request, throwable, mutationTimeMillis, request.getDescriptorForType().getFullName());
+    }
+
+    public CassandraMutationError(GeneratedMessageV3 request, Throwable throwable, long mutationTimeMillis, String replayType) {
         this.request = request;
         this.throwable = throwable;
+        this.mutationTimeMillis = mutationTimeMillis;
+        this.replayType = replayType;
     }
 
     public String buildErrorLog() {
@@ -1,9 +1,8 @@
 package killrvideo.events;
 
-import java.io.FileNotFoundException;
-import java.io.PrintWriter;
-import javax.annotation.PostConstruct;
-import javax.annotation.PreDestroy;
+import static killrvideo.utils.ExceptionUtils.mergeStackTrace;
+
+import java.io.IOException;
 import javax.inject.Inject;
 
 import org.slf4j.Logger;
@@ -11,8 +10,10 @@ import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
 import com.google.common.eventbus.Subscribe;
+import com.google.protobuf.GeneratedMessageV3;
 
-import killrvideo.configuration.KillrVideoProperties;
+import killrvideo.journal.MutationJournal;
+import killrvideo.journal.MutationReplayService;
 
 @Component
 public class CassandraMutationErrorHandler {
@@ -20,36 +21,39 @@ public class CassandraMutationErrorHandler {
     private static Logger LOGGER = LoggerFactory.getLogger(CassandraMutationErrorHandler.class);
 
     @Inject
-    KillrVideoProperties properties;
-
-    private PrintWriter errorLogFile;
+    MutationJournal journal;
 
-    @PostConstruct
-    public void openErrorLogFile() throws FileNotFoundException {
-        this.errorLogFile = new PrintWriter(properties.mutationErrorLog);
-    }
+    @Inject
+    MutationReplayService replayService;
 
     /**
-     * Here we just record the original Grpc request so that we can replay
-     * them later.
-     *
-     * An alternative impl can just push the request to a message queue or
-     * event bus so that it can be handled by another micro-service
+     * Here we record the original Grpc request in the mutation journal,
+     * along with the time of the mutation, so that the {@link MutationReplayService}
+     * can write it again once Cassandra is reachable.
      *
+     * Requests the replay service does not know, such as user creations whose
+     * request holds a password, are only logged without their content
      */
     @Subscribe
     public void handle(CassandraMutationError mutationError) {
 
-        final String errorLog = mutationError.buildErrorLog();
-        LOGGER.debug(String.format("Recording mutation error %s", errorLog));
+        final GeneratedMessageV3 request = mutationError.request;
+        final String type = mutationError.replayType;
 
-        errorLogFile.append(errorLog).append("\n***********************\n");
-        errorLogFile.flush();
-    }
+        if (!replayService.canReplay(type)) {
+            LOGGER.error(String.format("Failed %s cannot be replayed, mutation lost : %s",
+                    type, mutationError.throwable.getMessage()));
+            return;
+        }
+
+        try {
+            final MutationJournal.Position position = journal.append(mutationError.mutationTimeMillis, type, request.toByteArray());
+            LOGGER.debug(String.format("Journaled failed %s at %s", type, position));
 
-    @PreDestroy
-    public void closeErrorLogFile() {
-        this.errorLogFile.close();
+        } catch (IOException ex) {
+            LOGGER.error("Exception journaling failed mutation, mutation lost : " + mergeStackTrace(ex)
+                    + "\n" + mutationError.buildErrorLog());
+        }
     }
 
 }
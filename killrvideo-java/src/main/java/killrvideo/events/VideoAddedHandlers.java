@@ -5,11 +5,15 @@ import com.datastax.driver.dse.DseSession;
 import com.datastax.driver.mapping.Mapper;
 import com.datastax.driver.mapping.MappingManager;
 import com.google.common.collect.Sets;
+import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
+import killrvideo.cql.PreparedStatementRegistry;
 import killrvideo.entity.Schema;
 import killrvideo.entity.TagsByLetter;
 import killrvideo.entity.VideoByTag;
+import killrvideo.index.TagSuggestionIndex;
 import killrvideo.utils.FutureUtils;
+import killrvideo.utils.TypeConverter;
 import killrvideo.video_catalog.events.VideoCatalogEvents.YouTubeVideoAdded;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,10 +22,17 @@ import org.springframework.stereotype.Component;
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static killrvideo.utils.ExceptionUtils.mergeStackTrace;
 
 @Component
 public class VideoAddedHandlers {
@@ -40,6 +51,15 @@ public class VideoAddedHandlers {
     @Inject
     DseSession dseSession;
 
+    @Inject
+    PreparedStatementRegistry statementRegistry;
+
+    @Inject
+    TagSuggestionIndex tagSuggestionIndex;
+
+    @Inject
+    EventBus eventBus;
+
     private String videosByTagTableName;
     private String tagsByLetterTableName;
     private PreparedStatement videosByTagPrepared;
@@ -51,23 +71,26 @@ public class VideoAddedHandlers {
         tagsByLetterTableName = tagsByLetterMapper.getTableMetadata().getName();
 
         // Prepared statements for handle()
-        videosByTagPrepared = dseSession.prepare(
+        statementRegistry.prepare("videosByTagPrepared",
                 "INSERT INTO " + Schema.KEYSPACE + "." + videosByTagTableName + " " +
                         "(tag, videoid, added_date, userid, name, preview_image_location, tagged_date) " +
-                        "VALUES (?, ?, ?, ?, ?, ?, ?)"
-        ).setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+                        "VALUES (?, ?, ?, ?, ?, ?, ?)",
+                prepared -> videosByTagPrepared = prepared.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM));
 
-        tagsByLetterPrepared = dseSession.prepare(
+        statementRegistry.prepare("tagsByLetterPrepared",
                 "INSERT INTO " + Schema.KEYSPACE + "." + tagsByLetterTableName + " " +
-                        "(first_letter, tag) VALUES (?, ?)"
-        ).setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+                        "(first_letter, tag) VALUES (?, ?)",
+                prepared -> tagsByLetterPrepared = prepared.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM));
     }
 
     /**
      * Make @Subscribe subscriber magic happen anytime a youTube video is added from
      * VideoCatalogService.submitYouTubeVideo() with a call to eventBus.post().
      * This method inserts any provided tags into multiple tag based tables for use with
-     * searching later using batch functionality.
+     * searching later, see {@link #indexTags(YouTubeVideoAdded)}.
+     *
+     * When some of the writes fail, the event is journaled and indexed again later
+     * by the {@link killrvideo.journal.MutationReplayService}
      * @param youTubeVideoAdded
      */
     @Subscribe
@@ -75,7 +98,37 @@ public class VideoAddedHandlers {
         final String className = this.getClass().getName();
 
         LOGGER.debug("Start handling YouTubeVideoAdded for " + className);
+        LOGGER.debug("Handler thread " + Thread.currentThread().toString());
+
+        indexTags(youTubeVideoAdded)
+                .whenComplete((rs, ex) -> {
+                    if (ex == null) {
+                        LOGGER.debug("End handling YouTubeVideoAdded");
+                    } else {
+                        LOGGER.error("Exception indexing tags of video " + youTubeVideoAdded.getVideoId().getValue()
+                                + " : " + mergeStackTrace(ex));
+                        eventBus.post(new CassandraMutationError(youTubeVideoAdded, ex,
+                                TypeConverter.dateFromTimestamp(youTubeVideoAdded.getTimestamp()).getTime()));
+                    }
+                });
+    }
 
+    /**
+     * Write the tags of the video to videos_by_tag and tags_by_letter, then make
+     * them available to type-ahead suggestions.
+     *
+     * A single LOGGED batch over every tag would span as many partitions as tags,
+     * the slowest kind of write for the coordinator. Instead, each videos_by_tag row
+     * is its own partition and written alone, while the tags_by_letter rows are
+     * grouped per first letter into single partition UNLOGGED batches, all of them
+     * executed concurrently.
+     *
+     * Every write uses the tagged date of the event as write timestamp, in microseconds
+     * as Cassandra expects, so indexing the same event again leaves the tables unchanged.
+     * @param youTubeVideoAdded
+     * @return completes once every write is acknowledged, exceptionally if any failed
+     */
+    public CompletableFuture<Void> indexTags(YouTubeVideoAdded youTubeVideoAdded) {
         final UUID userId = UUID.fromString(youTubeVideoAdded.getUserId().getValue());
         final UUID videoId = UUID.fromString(youTubeVideoAdded.getVideoId().getValue());
         final HashSet<String> tags = Sets.newHashSet(youTubeVideoAdded.getTagsList());
@@ -83,37 +136,31 @@ public class VideoAddedHandlers {
         final String previewImageLocation = youTubeVideoAdded.getPreviewImageLocation();
         Date addedDate = Date.from(Instant.ofEpochSecond(youTubeVideoAdded.getAddedDate().getSeconds(), youTubeVideoAdded.getTimestamp().getNanos()));
         Date taggedDate = Date.from(Instant.ofEpochSecond(youTubeVideoAdded.getTimestamp().getSeconds(), youTubeVideoAdded.getTimestamp().getNanos()));
+        final long writeTimestamp = TimeUnit.MILLISECONDS.toMicros(taggedDate.getTime());
 
-        final BatchStatement batchStatement = new BatchStatement(BatchStatement.Type.LOGGED);
+        final List<CompletableFuture<ResultSet>> writes = new ArrayList<>();
+        final Map<String, BatchStatement> tagsByLetterBatches = new HashMap<>();
 
-        LOGGER.debug("Handler thread " + Thread.currentThread().toString());
-
-        //:TODO Potential implement this with mapper async by using saveAsync and build each statement in the batch with a future and handle
         tags.forEach(tag -> {
-            BoundStatement videosByTagBound = videosByTagPrepared.bind(
+            final Statement videosByTagBound = videosByTagPrepared.bind(
                     tag, videoId, addedDate, userId, name, previewImageLocation, taggedDate
-            );
-
-            BoundStatement tagsByLetterBound = tagsByLetterPrepared.bind(
-                    tag.substring(0, 1), tag
-            );
+            ).setDefaultTimestamp(writeTimestamp);
+            writes.add(FutureUtils.buildCompletableFuture(dseSession.executeAsync(videosByTagBound)));
 
-            batchStatement.add(videosByTagBound);
-            batchStatement.add(tagsByLetterBound);
+            final String firstLetter = tag.substring(0, 1);
+            tagsByLetterBatches
+                    .computeIfAbsent(firstLetter, letter -> new BatchStatement(BatchStatement.Type.UNLOGGED))
+                    .add(tagsByLetterPrepared.bind(firstLetter, tag));
         });
 
-        batchStatement.setDefaultTimestamp(taggedDate.getTime());
-
-        CompletableFuture<ResultSet> batchFuture = FutureUtils.buildCompletableFuture(dseSession.executeAsync(batchStatement))
-                .handle((rs, ex) -> {
-                    if (rs != null) {
-                        LOGGER.debug("End handling YouTubeVideoAdded");
-                    }
-                    if (ex != null) {
-                        //:TODO We should probably put in some logic that will repeat the transaction if it fails for some reason
+        tagsByLetterBatches.values().forEach(batch -> {
+            batch.setDefaultTimestamp(writeTimestamp);
+            writes.add(FutureUtils.buildCompletableFuture(dseSession.executeAsync(batch)));
+        });
 
-                    }
-                    return rs;
-                });
+        return CompletableFuture
+                .allOf(writes.toArray(new CompletableFuture[writes.size()]))
+                // Make the new tags available to type-ahead suggestions
+                .thenRun(() -> tagSuggestionIndex.addTags(videoId, tags));
     }
 }
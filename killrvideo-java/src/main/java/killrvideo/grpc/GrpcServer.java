@@ -4,6 +4,7 @@ import static java.lang.String.format;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
@@ -15,16 +16,21 @@ import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Component;
 
 import com.google.common.collect.Lists;
-import com.google.common.eventbus.EventBus;
 import com.xqbase.etcd4j.EtcdClient;
 
 import io.grpc.Server;
 import io.grpc.ServerBuilder;
+import io.grpc.ServerInterceptors;
 import io.grpc.ServerServiceDefinition;
+import killrvideo.async.QueuedEventBus;
+import killrvideo.async.RpcExecutor;
+import killrvideo.cache.VideoNearCache;
 import killrvideo.comments.CommentsServiceGrpc;
 import killrvideo.configuration.KillrVideoProperties;
+import killrvideo.cql.PreparedStatementRegistry;
 import killrvideo.events.CassandraMutationErrorHandler;
 import killrvideo.events.VideoAddedHandlers;
+import killrvideo.metrics.MetricsServerInterceptor;
 import killrvideo.ratings.RatingsServiceGrpc;
 import killrvideo.search.SearchServiceGrpc;
 import killrvideo.service.CommentService;
@@ -69,7 +75,7 @@ public class GrpcServer {
     VideoCatalogService videoCatalogService;
 
     @Inject
-    EventBus eventBus;
+    QueuedEventBus eventBus;
 
     @Inject
     VideoAddedHandlers videoAddedHandlers;
@@ -78,18 +84,37 @@ public class GrpcServer {
     @Inject
     CassandraMutationErrorHandler cassandraMutationErrorHandler;
 
+    @Inject
+    VideoNearCache videoNearCache;
+
     @Inject
     EtcdClient etcdClient;
 
     @Inject
     KillrVideoProperties properties;
 
+    @Inject
+    RpcExecutor rpcExecutor;
+
+    @Inject
+    MetricsServerInterceptor metricsInterceptor;
+
+    @Inject
+    PreparedStatementRegistry statementRegistry;
+
     private Server server;
 
     public void start() throws Exception {
 
         LOGGER.info("Try starting Grpc Server ");
 
+        /**
+         * Neither listen nor register to etcd before the statements are
+         * prepared and warmed up, the first calls would pay for it
+         */
+        LOGGER.info("Waiting for the CQL statements to be ready");
+        statementRegistry.awaitReady(properties.cqlReadyTimeoutSeconds, TimeUnit.SECONDS);
+
         final int port = Integer.parseInt(env.getProperty("killrvideo.server.port"));
         final ServerServiceDefinition commentService = CommentsServiceGrpc.bindService(this.commentService);
         final ServerServiceDefinition ratingService = RatingsServiceGrpc.bindService(this.ratingService);
@@ -102,23 +127,37 @@ public class GrpcServer {
 
         server = ServerBuilder
                 .forPort(port)
-                .addService(commentService)
-                .addService(ratingService)
-                .addService(statisticsService)
-                .addService(uploadsService)
-                .addService(userManagementService)
-                .addService(videoCatalogService)
-                .addService(searchService)
+                .executor(rpcExecutor)
+                .addService(ServerInterceptors.intercept(commentService, metricsInterceptor))
+                .addService(ServerInterceptors.intercept(ratingService, metricsInterceptor))
+                .addService(ServerInterceptors.intercept(statisticsService, metricsInterceptor))
+                .addService(ServerInterceptors.intercept(uploadsService, metricsInterceptor))
+                .addService(ServerInterceptors.intercept(userManagementService, metricsInterceptor))
+                .addService(ServerInterceptors.intercept(videoCatalogService, metricsInterceptor))
+                .addService(ServerInterceptors.intercept(searchService, metricsInterceptor))
                 .build();
 
         LOGGER.info("Starting Grpc Server on port " + port);
 
-        eventBus.register(videoAddedHandlers);
-        eventBus.register(cassandraMutationErrorHandler);
+        /**
+         * Tag indexing and the journal of the failed mutations must see every
+         * event, even while the cluster is down and their queues fill up
+         */
+        eventBus.registerDurable(videoAddedHandlers);
+        eventBus.registerDurable(cassandraMutationErrorHandler);
+        eventBus.register(videoNearCache);
 
-        registerServicesToEtcd(Lists.newArrayList(commentService, ratingService, statisticsService,
-                 uploadsService, userManagementService, videoCatalogService,
-                searchService));
+        /**
+         * Registration can be turned off when no etcd is around,
+         * e.g. when the server is started by the load generator
+         */
+        if (properties.etcdRegistration) {
+            registerServicesToEtcd(Lists.newArrayList(commentService, ratingService, statisticsService,
+                     uploadsService, userManagementService, videoCatalogService,
+                    searchService));
+        } else {
+            LOGGER.info("Registration of Grpc services to etcd is disabled");
+        }
 
         /**
          * Declare a shutdown hook otherwise the JVM
@@ -138,6 +177,7 @@ public class GrpcServer {
     public void stop() {
         eventBus.unregister(videoAddedHandlers);
         eventBus.unregister(cassandraMutationErrorHandler);
+        eventBus.unregister(videoNearCache);
         server.shutdown();
     }
 
@@ -0,0 +1,154 @@
+package killrvideo.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.UUID;
+
+/**
+ * Set operations over posting lists, i.e. arrays of videoids sorted in
+ * ascending {@link UUID#compareTo(UUID)} order without duplicates.
+ */
+public final class PostingLists {
+
+    /**
+     * A videoid of a union together with the number of lists containing it
+     */
+    public static final class Match {
+        public final UUID videoId;
+        public final int matchedLists;
+
+        Match(UUID videoId, int matchedLists) {
+            this.videoId = videoId;
+            this.matchedLists = matchedLists;
+        }
+    }
+
+    private PostingLists() {
+    }
+
+    /**
+     * Sort and deduplicate a list of videoids into a posting list
+     * @param videoIds
+     * @return sorted array of distinct videoids
+     */
+    public static UUID[] of(List<UUID> videoIds) {
+        final UUID[] sorted = videoIds.toArray(new UUID[videoIds.size()]);
+        Arrays.sort(sorted);
+
+        int size = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (size == 0 || !sorted[size - 1].equals(sorted[i])) {
+                sorted[size++] = sorted[i];
+            }
+        }
+        return size == sorted.length ? sorted : Arrays.copyOf(sorted, size);
+    }
+
+    /**
+     * Intersection of all the lists.
+     *
+     * Lists are processed from the shortest to the longest. Each candidate of
+     * the running intersection is searched in the next list by galloping
+     * (exponential then binary search) from the last matched position, so
+     * a short list against a long one costs O(n log(m/n)) instead of O(m).
+     *
+     * @param lists posting lists
+     * @return sorted array of the videoids present in every list
+     */
+    public static UUID[] intersect(List<UUID[]> lists) {
+        if (lists.isEmpty()) {
+            return new UUID[0];
+        }
+
+        final List<UUID[]> bySize = new ArrayList<>(lists);
+        bySize.sort(Comparator.comparingInt(list -> list.length));
+
+        UUID[] result = bySize.get(0);
+        for (int i = 1; i < bySize.size() && result.length > 0; i++) {
+            result = intersect(result, bySize.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Union of all the lists with the number of lists each videoid appears in,
+     * computed with a k-way merge
+     * @param lists posting lists
+     * @return matches in ascending videoid order
+     */
+    public static List<Match> union(List<UUID[]> lists) {
+        final PriorityQueue<int[]> heads = new PriorityQueue<>(
+                (a, b) -> lists.get(a[0])[a[1]].compareTo(lists.get(b[0])[b[1]]));
+
+        for (int i = 0; i < lists.size(); i++) {
+            if (lists.get(i).length > 0) {
+                heads.add(new int[]{i, 0});
+            }
+        }
+
+        final List<Match> matches = new ArrayList<>();
+        while (!heads.isEmpty()) {
+            final int[] head = heads.poll();
+            final UUID videoId = lists.get(head[0])[head[1]];
+            int count = 1;
+            advance(lists, heads, head);
+
+            while (!heads.isEmpty() && lists.get(heads.peek()[0])[heads.peek()[1]].equals(videoId)) {
+                count++;
+                advance(lists, heads, heads.poll());
+            }
+            matches.add(new Match(videoId, count));
+        }
+        return matches;
+    }
+
+    private static void advance(List<UUID[]> lists, PriorityQueue<int[]> heads, int[] head) {
+        if (++head[1] < lists.get(head[0]).length) {
+            heads.add(head);
+        }
+    }
+
+    private static UUID[] intersect(UUID[] small, UUID[] large) {
+        final UUID[] result = new UUID[small.length];
+        int size = 0;
+        int position = 0;
+
+        for (UUID candidate : small) {
+            position = gallop(large, position, candidate);
+            if (position == large.length) {
+                break;
+            }
+            if (large[position].equals(candidate)) {
+                result[size++] = candidate;
+                position++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * @return index of the first element greater than or equal to the key, starting from <strong>from</strong>
+     */
+    static int gallop(UUID[] list, int from, UUID key) {
+        int bound = 1;
+        while (from + bound < list.length && list[from + bound].compareTo(key) < 0) {
+            bound <<= 1;
+        }
+
+        int low = from + (bound >> 1);
+        int high = Math.min(from + bound, list.length);
+        // First index in [low, high) with list[index] >= key, or high
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (list[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,137 @@
+package killrvideo.index;
+
+import static killrvideo.utils.ExceptionUtils.mergeStackTrace;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.querybuilder.QueryBuilder;
+import com.datastax.driver.dse.DseSession;
+import com.datastax.driver.mapping.Mapper;
+
+import killrvideo.entity.Schema;
+import killrvideo.entity.VideoByTag;
+
+/**
+ * In-memory type-ahead index over every known tag.
+ *
+ * The index is bootstrapped once at startup by paging through the (tag, videoid)
+ * keys of the whole <strong>videos_by_tag</strong> table on the application thread
+ * pool, then kept up to date by {@link killrvideo.events.VideoAddedHandlers} which
+ * adds the tags of every new video.
+ *
+ * A tag's weight is the number of distinct videos tagged with it. The videos
+ * of each tag are kept in memory so that a video counts once per tag, whether
+ * it is seen by the bootstrap, indexed again by a replay or both.
+ *
+ * Until the bootstrap is complete {@link #isReady()} returns false and callers
+ * should fall back to querying Cassandra.
+ */
+@Component
+public class TagSuggestionIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TagSuggestionIndex.class);
+
+    private static final int BOOTSTRAP_FETCH_SIZE = 1000;
+
+    @Inject
+    Mapper<VideoByTag> videosByTagMapper;
+
+    @Inject
+    DseSession dseSession;
+
+    @Inject
+    ExecutorService threadPool;
+
+    private final TagTrie trie = new TagTrie();
+    private final ConcurrentHashMap<String, Set<UUID>> videosByTag = new ConcurrentHashMap<>();
+
+    private volatile boolean ready = false;
+
+    @PostConstruct
+    public void init() {
+        final String videosByTagTableName = videosByTagMapper.getTableMetadata().getName();
+
+        final Statement scanTags = QueryBuilder
+                .select()
+                .column("tag")
+                .column("videoid")
+                .from(Schema.KEYSPACE, videosByTagTableName)
+                .setConsistencyLevel(ConsistencyLevel.LOCAL_ONE)
+                .setFetchSize(BOOTSTRAP_FETCH_SIZE);
+
+        /**
+         * Iterating the result set fetches the next pages synchronously,
+         * so the scan must not run on a driver I/O thread
+         */
+        threadPool.execute(() -> {
+            try {
+                LOGGER.info("Start loading tag suggestion index from " + videosByTagTableName);
+
+                /**
+                 * One row per tagged video, videos indexed meanwhile are not counted twice
+                 */
+                for (Row row : dseSession.execute(scanTags)) {
+                    addTag(row.getString("tag"), row.getUUID("videoid"));
+                }
+                ready = true;
+                LOGGER.info("Tag suggestion index loaded with " + trie.size() + " tags");
+
+            } catch (Throwable t) {
+                LOGGER.error("Exception loading tag suggestion index, suggestions will be read from Cassandra : "
+                        + mergeStackTrace(t));
+            }
+        });
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Record the tags of a newly added video, tags already recorded for it are ignored
+     * @param videoId
+     * @param tags
+     */
+    public void addTags(UUID videoId, Collection<String> tags) {
+        tags.forEach(tag -> addTag(tag, videoId));
+    }
+
+    private void addTag(String tag, UUID videoId) {
+        if (videosByTag.computeIfAbsent(tag, key -> ConcurrentHashMap.newKeySet()).add(videoId)) {
+            trie.add(tag, 1L);
+        }
+    }
+
+    /**
+     * @param tag
+     * @return whether a video was tagged with it, only meaningful once ready
+     */
+    public boolean contains(String tag) {
+        return trie.weightOf(tag) > 0;
+    }
+
+    /**
+     * Most popular tags starting with the given prefix
+     * @param prefix
+     * @param limit
+     * @return List of tags
+     */
+    public List<String> suggest(String prefix, int limit) {
+        return trie.topK(prefix, limit);
+    }
+}
@@ -0,0 +1,296 @@
+package killrvideo.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Compact radix trie of tags with a popularity weight per tag.
+ *
+ * Edges hold whole string fragments instead of single characters and every
+ * node keeps the highest weight found in its subtree. Top-K lookups for a
+ * prefix are a best-first walk bounded by those subtree maxima, so only the
+ * branches that can still contribute a result are visited.
+ *
+ * Weights can only grow, which keeps the subtree maxima valid without
+ * having to recompute them on update. Reads share a read lock and never
+ * block each other.
+ */
+public class TagTrie {
+
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    private static final class Node {
+        String label;
+        Node[] children = NO_CHILDREN;
+        boolean terminal;
+        long weight;
+        long maxWeight;
+
+        Node(String label) {
+            this.label = label;
+        }
+    }
+
+    /**
+     * Candidate of the best-first search, either a node still to expand
+     * or a complete tag ready to be returned
+     */
+    private static final class Candidate {
+        final Node node;
+        final String path;
+        final long score;
+        final boolean result;
+
+        Candidate(Node node, String path, long score, boolean result) {
+            this.node = node;
+            this.path = path;
+            this.score = score;
+            this.result = result;
+        }
+    }
+
+    /**
+     * Highest score first, then alphabetical order. On a tie a complete
+     * tag is returned before expanding the node it terminates on.
+     */
+    private static final Comparator<Candidate> BEST_FIRST = (a, b) -> {
+        if (a.score != b.score) {
+            return Long.compare(b.score, a.score);
+        }
+        final int byPath = a.path.compareTo(b.path);
+        if (byPath != 0) {
+            return byPath;
+        }
+        return Boolean.compare(b.result, a.result);
+    };
+
+    private final Node root = new Node("");
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private int size = 0;
+
+    /**
+     * Add a tag, or increase its weight if it is already indexed
+     * @param tag
+     * @param weight strictly positive weight increment
+     */
+    public void add(String tag, long weight) {
+        if (tag == null || tag.isEmpty()) {
+            return;
+        }
+        if (weight <= 0) {
+            throw new IllegalArgumentException("Tag weight increment should be strictly positive");
+        }
+
+        lock.writeLock().lock();
+        try {
+            insert(tag, weight);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return number of distinct tags
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param tag
+     * @return weight of the tag, 0 if it is not indexed
+     */
+    public long weightOf(String tag) {
+        if (tag == null || tag.isEmpty()) {
+            return 0;
+        }
+
+        lock.readLock().lock();
+        try {
+            Node node = root;
+            int i = 0;
+            while (i < tag.length()) {
+                final int index = childIndex(node, tag.charAt(i));
+                if (index < 0 || !tag.startsWith(node.children[index].label, i)) {
+                    return 0;
+                }
+                node = node.children[index];
+                i += node.label.length();
+            }
+            return node.terminal ? node.weight : 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Most popular tags starting with the given prefix, ties in alphabetical order
+     * @param prefix
+     * @param k maximum number of tags to return
+     * @return List of tags
+     */
+    public List<String> topK(String prefix, int k) {
+        if (prefix == null || k <= 0) {
+            return Collections.emptyList();
+        }
+
+        lock.readLock().lock();
+        try {
+            return search(prefix, k);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void insert(String tag, long weight) {
+        Node node = root;
+        int i = 0;
+
+        while (i < tag.length()) {
+            final int index = childIndex(node, tag.charAt(i));
+
+            if (index < 0) {
+                final Node leaf = new Node(tag.substring(i));
+                leaf.terminal = true;
+                leaf.weight = weight;
+                leaf.maxWeight = weight;
+                insertChild(node, -index - 1, leaf);
+                size++;
+                propagateMaxWeight(tag, weight);
+                return;
+            }
+
+            Node child = node.children[index];
+            final int common = commonPrefixLength(child.label, tag, i);
+
+            if (common < child.label.length()) {
+                // Split the edge, the new node takes over the shared fragment
+                final Node split = new Node(child.label.substring(0, common));
+                child.label = child.label.substring(common);
+                split.children = new Node[]{child};
+                split.maxWeight = child.maxWeight;
+                node.children[index] = split;
+                child = split;
+            }
+
+            i += common;
+            node = child;
+        }
+
+        if (!node.terminal) {
+            node.terminal = true;
+            size++;
+        }
+        node.weight += weight;
+        propagateMaxWeight(tag, node.weight);
+    }
+
+    /**
+     * Weights only grow, so raising the maxima along the path of the
+     * tag is enough to keep every subtree maximum exact
+     */
+    private void propagateMaxWeight(String tag, long weight) {
+        Node node = root;
+        int i = 0;
+        while (i < tag.length()) {
+            node.maxWeight = Math.max(node.maxWeight, weight);
+            final Node child = node.children[childIndex(node, tag.charAt(i))];
+            i += child.label.length();
+            node = child;
+        }
+        node.maxWeight = Math.max(node.maxWeight, weight);
+    }
+
+    private List<String> search(String prefix, int k) {
+        Node node = root;
+        final StringBuilder path = new StringBuilder();
+        int i = 0;
+
+        // Walk down to the node covering the whole prefix
+        while (i < prefix.length()) {
+            final int index = childIndex(node, prefix.charAt(i));
+            if (index < 0) {
+                return Collections.emptyList();
+            }
+            final Node child = node.children[index];
+            final int common = commonPrefixLength(child.label, prefix, i);
+
+            if (i + common < prefix.length() && common < child.label.length()) {
+                return Collections.emptyList();
+            }
+            path.append(child.label);
+            i += common;
+            node = child;
+        }
+
+        final List<String> results = new ArrayList<>(k);
+        final PriorityQueue<Candidate> queue = new PriorityQueue<>(BEST_FIRST);
+        queue.add(new Candidate(node, path.toString(), node.maxWeight, false));
+
+        while (!queue.isEmpty() && results.size() < k) {
+            final Candidate candidate = queue.poll();
+
+            if (candidate.result) {
+                results.add(candidate.path);
+                continue;
+            }
+
+            final Node current = candidate.node;
+            if (current.terminal) {
+                queue.add(new Candidate(current, candidate.path, current.weight, true));
+            }
+            for (Node child : current.children) {
+                queue.add(new Candidate(child, candidate.path + child.label, child.maxWeight, false));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Binary search of the child starting with the given character
+     * @return index of the child, or (-(insertion point) - 1) if there is none
+     */
+    private static int childIndex(Node node, char c) {
+        int low = 0;
+        int high = node.children.length - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final char midChar = node.children[mid].label.charAt(0);
+            if (midChar < c) {
+                low = mid + 1;
+            } else if (midChar > c) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private static void insertChild(Node node, int position, Node child) {
+        final Node[] children = Arrays.copyOf(node.children, node.children.length + 1);
+        System.arraycopy(children, position, children, position + 1, node.children.length - position);
+        children[position] = child;
+        node.children = children;
+    }
+
+    private static int commonPrefixLength(String label, String value, int offset) {
+        final int max = Math.min(label.length(), value.length() - offset);
+        int i = 0;
+        while (i < max && label.charAt(i) == value.charAt(offset + i)) {
+            i++;
+        }
+        return i;
+    }
+}
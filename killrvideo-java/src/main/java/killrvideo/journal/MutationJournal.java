@@ -0,0 +1,408 @@
+package killrvideo.journal;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only journal of binary records, split into memory-mapped segment files
+ * of a fixed size named <strong>&lt;sequence&gt;.journal</strong>.
+ *
+ * Each record is laid out as:
+ * <pre>
+ * int    body length (0 marks the end of the written part of a segment)
+ * int    CRC32 of the body
+ * long   timestamp in milliseconds
+ * short  type length, followed by the UTF-8 type
+ * byte[] payload
+ * </pre>
+ * A record that does not fit in the current segment starts a new one. Every
+ * append is forced to disk before returning. On open, the last segment is
+ * scanned and anything after the last record with a valid CRC, such as a record
+ * torn by a crash, is erased.
+ *
+ * Readers keep their own {@link Position}, {@link #saveCheckpoint(Position)}
+ * persists one, and segments entirely before it can be deleted.
+ */
+public class MutationJournal implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MutationJournal.class);
+
+    static final String SEGMENT_SUFFIX = ".journal";
+    static final String CHECKPOINT_FILE = "replay.checkpoint";
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final int BODY_HEADER_BYTES = 10;
+
+    /**
+     * Location of a record, or of the end of the journal
+     */
+    public static final class Position implements Comparable<Position> {
+        public final long segment;
+        public final int offset;
+
+        public Position(long segment, int offset) {
+            this.segment = segment;
+            this.offset = offset;
+        }
+
+        @Override
+        public int compareTo(Position other) {
+            return segment != other.segment ? Long.compare(segment, other.segment) : Integer.compare(offset, other.offset);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Position && compareTo((Position) other) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(segment) * 31 + offset;
+        }
+
+        @Override
+        public String toString() {
+            return segment + ":" + offset;
+        }
+    }
+
+    public static final class Entry {
+        public final Position position;
+        /**
+         * Position of the following record
+         */
+        public final Position next;
+        public final long timestampMillis;
+        public final String type;
+        public final byte[] payload;
+
+        Entry(Position position, Position next, long timestampMillis, String type, byte[] payload) {
+            this.position = position;
+            this.next = next;
+            this.timestampMillis = timestampMillis;
+            this.type = type;
+            this.payload = payload;
+        }
+    }
+
+    private final File directory;
+    private final int segmentBytes;
+
+    private long writeSegment;
+    private MappedByteBuffer writeBuffer;
+
+    private long readSegment = -1;
+    private ByteBuffer readBuffer;
+
+    /**
+     * @param directory created if missing
+     * @param segmentBytes size of each segment file
+     * @throws IOException
+     */
+    public MutationJournal(File directory, int segmentBytes) throws IOException {
+        if (segmentBytes <= RECORD_HEADER_BYTES + BODY_HEADER_BYTES) {
+            throw new IllegalArgumentException("Journal segments of " + segmentBytes + " bytes are too small");
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+
+        Files.createDirectories(directory.toPath());
+        final List<Long> segments = listSegments();
+        if (segments.isEmpty()) {
+            openWriteSegment(0L);
+        } else {
+            openWriteSegment(segments.get(segments.size() - 1));
+            recoverWritePosition();
+        }
+    }
+
+    /**
+     * Append a record and force it to disk
+     * @param timestampMillis
+     * @param type what the payload is, used to decode it
+     * @param payload
+     * @return position of the record
+     * @throws IOException
+     */
+    public synchronized Position append(long timestampMillis, String type, byte[] payload) throws IOException {
+        final byte[] typeBytes = type.getBytes(StandardCharsets.UTF_8);
+        final int bodyLength = BODY_HEADER_BYTES + typeBytes.length + payload.length;
+        if (RECORD_HEADER_BYTES + bodyLength > segmentBytes) {
+            throw new IOException("Record of " + bodyLength + " bytes does not fit in a journal segment of " + segmentBytes + " bytes");
+        }
+
+        if (writeBuffer.remaining() < RECORD_HEADER_BYTES + bodyLength) {
+            writeBuffer.force();
+            openWriteSegment(writeSegment + 1);
+        }
+
+        final ByteBuffer body = ByteBuffer.allocate(bodyLength);
+        body.putLong(timestampMillis);
+        body.putShort((short) typeBytes.length);
+        body.put(typeBytes);
+        body.put(payload);
+
+        final CRC32 crc = new CRC32();
+        crc.update(body.array(), 0, bodyLength);
+
+        final Position position = new Position(writeSegment, writeBuffer.position());
+
+        // Body first, then the length, so that a torn write never looks like a complete record
+        writeBuffer.position(position.offset + RECORD_HEADER_BYTES);
+        writeBuffer.put(body.array());
+        writeBuffer.putInt(position.offset + 4, (int) crc.getValue());
+        writeBuffer.putInt(position.offset, bodyLength);
+        writeBuffer.force();
+
+        return position;
+    }
+
+    /**
+     * @param from position of a record, or the end of the journal
+     * @return the record at that position, moving on to the next segment if needed,
+     *         null if there is nothing more to read yet
+     * @throws IOException
+     */
+    public synchronized Entry read(Position from) throws IOException {
+        Position position = from;
+        while (true) {
+            if (position.segment > writeSegment) {
+                return null;
+            }
+
+            final ByteBuffer buffer = segmentForRead(position.segment);
+            final Entry entry = buffer == null ? null : decode(buffer, position);
+            if (entry != null) {
+                return entry;
+            }
+            if (position.segment == writeSegment) {
+                return null;
+            }
+
+            // End of a sealed segment
+            position = new Position(nextSegment(position.segment), 0);
+        }
+    }
+
+    /**
+     * @return position right after the last record
+     */
+    public synchronized Position end() {
+        return new Position(writeSegment, writeBuffer.position());
+    }
+
+    /**
+     * Rough number of bytes between a position and the end of the journal
+     * @param from
+     * @return
+     */
+    public synchronized long bytesAfter(Position from) {
+        final Position end = end();
+        if (from.compareTo(end) >= 0) {
+            return 0L;
+        }
+        return (end.segment - from.segment) * segmentBytes + end.offset - from.offset;
+    }
+
+    /**
+     * Delete the segments entirely before the given one
+     * @param segment
+     */
+    public synchronized void deleteSegmentsBefore(long segment) throws IOException {
+        for (Long candidate : listSegments()) {
+            if (candidate < segment) {
+                if (candidate == readSegment) {
+                    readSegment = -1;
+                    readBuffer = null;
+                }
+                Files.deleteIfExists(segmentFile(candidate).toPath());
+                LOGGER.debug("Deleted replayed journal segment " + candidate);
+            }
+        }
+    }
+
+    /**
+     * @return position saved by the last {@link #saveCheckpoint(Position)}, start of the oldest segment if none
+     */
+    public synchronized Position loadCheckpoint() throws IOException {
+        final File checkpoint = new File(directory, CHECKPOINT_FILE);
+        if (checkpoint.exists()) {
+            try (DataInputStream in = new DataInputStream(new FileInputStream(checkpoint))) {
+                final long segment = in.readLong();
+                final int offset = in.readInt();
+                final long crc = in.readLong();
+                if (crc == checkpointCrc(segment, offset)) {
+                    return new Position(segment, offset);
+                }
+            } catch (IOException ex) {
+                LOGGER.warn("Cannot read journal checkpoint : " + ex.getMessage());
+            }
+            LOGGER.warn("Journal checkpoint is corrupted, replaying from the oldest segment");
+        }
+
+        final List<Long> segments = listSegments();
+        return new Position(segments.isEmpty() ? writeSegment : segments.get(0), 0);
+    }
+
+    /**
+     * Atomically replace the checkpoint
+     * @param position
+     */
+    public synchronized void saveCheckpoint(Position position) throws IOException {
+        final File temp = new File(directory, CHECKPOINT_FILE + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(file)) {
+            out.writeLong(position.segment);
+            out.writeInt(position.offset);
+            out.writeLong(checkpointCrc(position.segment, position.offset));
+            out.flush();
+            file.getFD().sync();
+        }
+        Files.move(temp.toPath(), new File(directory, CHECKPOINT_FILE).toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (writeBuffer != null) {
+            writeBuffer.force();
+            writeBuffer = null;
+        }
+        readBuffer = null;
+    }
+
+    private Entry decode(ByteBuffer buffer, Position position) {
+        final int offset = position.offset;
+        if (offset + RECORD_HEADER_BYTES > buffer.limit()) {
+            return null;
+        }
+
+        final int bodyLength = buffer.getInt(offset);
+        if (bodyLength == 0) {
+            return null;
+        }
+        if (bodyLength < BODY_HEADER_BYTES || offset + RECORD_HEADER_BYTES + bodyLength > buffer.limit()) {
+            LOGGER.error("Invalid record length " + bodyLength + " at " + position + " of the mutation journal");
+            return null;
+        }
+
+        final byte[] body = new byte[bodyLength];
+        final ByteBuffer view = buffer.duplicate();
+        view.position(offset + RECORD_HEADER_BYTES);
+        view.get(body);
+
+        final CRC32 crc = new CRC32();
+        crc.update(body, 0, bodyLength);
+        if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+            LOGGER.error("CRC mismatch for the record at " + position + " of the mutation journal");
+            return null;
+        }
+
+        final ByteBuffer reader = ByteBuffer.wrap(body);
+        final long timestampMillis = reader.getLong();
+        final byte[] type = new byte[reader.getShort()];
+        reader.get(type);
+        final byte[] payload = new byte[reader.remaining()];
+        reader.get(payload);
+
+        return new Entry(position, new Position(position.segment, offset + RECORD_HEADER_BYTES + bodyLength),
+                timestampMillis, new String(type, StandardCharsets.UTF_8), payload);
+    }
+
+    private ByteBuffer segmentForRead(long segment) throws IOException {
+        if (segment == writeSegment) {
+            return writeBuffer.duplicate();
+        }
+        if (segment != readSegment) {
+            final File file = segmentFile(segment);
+            if (!file.exists()) {
+                return null;
+            }
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                readBuffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            }
+            readSegment = segment;
+        }
+        return readBuffer.duplicate();
+    }
+
+    private long nextSegment(long segment) throws IOException {
+        for (Long candidate : listSegments()) {
+            if (candidate > segment) {
+                return candidate;
+            }
+        }
+        return writeSegment;
+    }
+
+    private void openWriteSegment(long segment) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(segmentFile(segment), "rw")) {
+            writeBuffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        }
+        writeSegment = segment;
+    }
+
+    /**
+     * Move the write position after the last valid record and erase the rest
+     */
+    private void recoverWritePosition() {
+        Position position = new Position(writeSegment, 0);
+        Entry entry;
+        while ((entry = decode(writeBuffer.duplicate(), position)) != null) {
+            position = entry.next;
+        }
+
+        writeBuffer.position(position.offset);
+        if (position.offset < writeBuffer.limit() && writeBuffer.getInt(position.offset) != 0) {
+            LOGGER.warn("Erasing a partially written record at " + position + " of the mutation journal");
+        }
+        for (int i = position.offset; i < writeBuffer.limit(); i++) {
+            writeBuffer.put(i, (byte) 0);
+        }
+        writeBuffer.force();
+    }
+
+    private List<Long> listSegments() {
+        final List<Long> segments = new ArrayList<>();
+        final File[] files = directory.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+        if (files != null) {
+            for (File file : files) {
+                final String name = file.getName();
+                try {
+                    segments.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException ex) {
+                    LOGGER.warn("Ignoring unexpected file " + name + " in the mutation journal");
+                }
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private File segmentFile(long segment) {
+        return new File(directory, String.format("%020d%s", segment, SEGMENT_SUFFIX));
+    }
+
+    private static long checkpointCrc(long segment, int offset) {
+        final CRC32 crc = new CRC32();
+        crc.update(ByteBuffer.allocate(12).putLong(segment).putInt(offset).array());
+        return crc.getValue();
+    }
+}
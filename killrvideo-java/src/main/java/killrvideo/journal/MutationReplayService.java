@@ -0,0 +1,323 @@
+package killrvideo.journal;
+
+import static killrvideo.utils.ExceptionUtils.mergeStackTrace;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import com.datastax.driver.core.exceptions.InvalidQueryException;
+import com.google.protobuf.GeneratedMessageV3;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Parser;
+
+import killrvideo.async.KillrVideoThreadFactory;
+import killrvideo.comments.CommentsServiceOuterClass.CommentOnVideoRequest;
+import killrvideo.configuration.KillrVideoProperties;
+import killrvideo.cql.PreparedStatementRegistry;
+import killrvideo.events.VideoAddedHandlers;
+import killrvideo.ratings.RatingsServiceOuterClass.RateVideoRequest;
+import killrvideo.service.CommentService;
+import killrvideo.service.RatingsService;
+import killrvideo.service.VideoCatalogService;
+import killrvideo.video_catalog.VideoCatalogServiceOuterClass.SubmitYouTubeVideoRequest;
+import killrvideo.video_catalog.events.VideoCatalogEvents.YouTubeVideoAdded;
+
+/**
+ * Reads the {@link MutationJournal} from its checkpoint and writes the
+ * failed mutations again, one at a time and in order, on its own thread.
+ *
+ * Each request is replayed with the time of the original mutation, which
+ * makes the writes idempotent. When a replay fails, the same record is
+ * tried again after an exponential backoff with jitter, records behind it
+ * wait.
+ *
+ * Records that can never succeed, because they cannot be decoded or the
+ * request is invalid, are moved to the dead-letter journal in the
+ * <strong>dead-letter</strong> sub directory of the journal, along with
+ * records still failing after the maximum number of attempts if one is set.
+ * Any other failure, thrown or not, is retried.
+ */
+@Component
+@ManagedResource(objectName = "killrvideo:type=MutationReplay", description = "Replay of the journaled failed mutations")
+public class MutationReplayService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MutationReplayService.class);
+
+    @Inject
+    MutationJournal journal;
+
+    @Inject
+    KillrVideoProperties properties;
+
+    @Inject
+    CommentService commentService;
+
+    @Inject
+    VideoCatalogService videoCatalogService;
+
+    @Inject
+    RatingsService ratingsService;
+
+    @Inject
+    VideoAddedHandlers videoAddedHandlers;
+
+    @Inject
+    PreparedStatementRegistry statementRegistry;
+
+    private final Map<String, Replayer<?>> replayers = new HashMap<>();
+    private MutationJournal deadLetters;
+    private ScheduledExecutorService scheduler;
+
+    private final LongAdder replayed = new LongAdder();
+    private final LongAdder failedAttempts = new LongAdder();
+    private final LongAdder deadLettered = new LongAdder();
+
+    private volatile MutationJournal.Position checkpoint;
+    private volatile long pendingSinceMillis = 0;
+    private volatile long backoffMillis = 0;
+    private int attempts = 0;
+
+    @PostConstruct
+    public void init() throws IOException {
+        register(CommentOnVideoRequest.getDescriptor().getFullName(), CommentOnVideoRequest.parser(),
+                (request, time) -> commentService.insertComment(request, new Date(time)));
+        register(SubmitYouTubeVideoRequest.getDescriptor().getFullName(), SubmitYouTubeVideoRequest.parser(),
+                (request, time) -> videoCatalogService.insertYouTubeVideo(request, new Date(time)));
+        register(RatingsService.RATING_COUNTERS_REPLAY, RateVideoRequest.parser(),
+                (request, time) -> ratingsService.replayRatingCounters(request));
+        register(RatingsService.RATING_ROW_REPLAY, RateVideoRequest.parser(),
+                (request, time) -> ratingsService.replayRatingRow(request, time));
+        register(YouTubeVideoAdded.getDescriptor().getFullName(), YouTubeVideoAdded.parser(),
+                (event, time) -> videoAddedHandlers.indexTags(event));
+
+        deadLetters = new MutationJournal(new File(properties.mutationJournalDir, "dead-letter"),
+                properties.mutationJournalSegmentBytes);
+        checkpoint = journal.loadCheckpoint();
+        scheduler = Executors.newSingleThreadScheduledExecutor(new KillrVideoThreadFactory());
+        scheduleNext(properties.mutationReplayPollMs);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        scheduler.shutdownNow();
+        scheduler.awaitTermination(properties.mutationReplayTimeoutMs, TimeUnit.MILLISECONDS);
+        deadLetters.close();
+    }
+
+    /**
+     * @param type journal type of the mutation, see {@link killrvideo.events.CassandraMutationError#replayType}
+     * @return true if mutations of this type can be journaled for replay
+     */
+    public boolean canReplay(String type) {
+        return replayers.containsKey(type);
+    }
+
+    private <T extends GeneratedMessageV3> void register(String type, Parser<T> parser,
+                                                         BiFunction<T, Long, CompletableFuture<?>> replay) {
+        replayers.put(type, new Replayer<>(parser, replay));
+    }
+
+    private void scheduleNext(long delayMillis) {
+        try {
+            scheduler.schedule(this::replayPending, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ex) {
+            LOGGER.debug("Mutation replay stopped");
+        }
+    }
+
+    /**
+     * Replay everything journaled after the checkpoint, stopping at the first failure
+     */
+    private void replayPending() {
+        long delay = properties.mutationReplayPollMs;
+        try {
+            /**
+             * The statements of the services are still being prepared
+             */
+            if (!statementRegistry.isReady()) {
+                return;
+            }
+            MutationJournal.Entry entry;
+            while (!Thread.currentThread().isInterrupted() && (entry = journal.read(checkpoint)) != null) {
+                pendingSinceMillis = entry.timestampMillis;
+                if (!replay(entry)) {
+                    delay = nextBackoff();
+                    return;
+                }
+                advance(entry.next);
+            }
+            pendingSinceMillis = 0;
+            backoffMillis = 0;
+
+        } catch (IOException ex) {
+            LOGGER.error("Exception reading the mutation journal : " + mergeStackTrace(ex));
+            delay = nextBackoff();
+
+        } finally {
+            scheduleNext(delay);
+        }
+    }
+
+    /**
+     * @param entry
+     * @return false if the mutation should be tried again later
+     */
+    private boolean replay(MutationJournal.Entry entry) throws IOException {
+        final Replayer<?> replayer = replayers.get(entry.type);
+        if (replayer == null) {
+            deadLetter(entry, "no replay for " + entry.type);
+            return true;
+        }
+
+        try {
+            replayer.replay(entry.payload, entry.timestampMillis)
+                    .get(properties.mutationReplayTimeoutMs, TimeUnit.MILLISECONDS);
+            replayed.increment();
+            attempts = 0;
+            LOGGER.debug("Replayed journaled " + entry.type + " at " + entry.position);
+            return true;
+
+        } catch (InvalidProtocolBufferException ex) {
+            deadLetter(entry, "cannot decode " + entry.type + " : " + mergeStackTrace(ex));
+            return true;
+
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+
+        } catch (RuntimeException ex) {
+            if (isInvalid(ex)) {
+                deadLetter(entry, "invalid request : " + mergeStackTrace(ex));
+                return true;
+            }
+            // e.g. no host available or a busy pool while sending the statements
+            return retryLater(entry, ex);
+
+        } catch (ExecutionException ex) {
+            if (isInvalid(ex.getCause())) {
+                deadLetter(entry, "rejected by Cassandra : " + mergeStackTrace(ex.getCause()));
+                return true;
+            }
+            return retryLater(entry, ex.getCause());
+
+        } catch (TimeoutException ex) {
+            return retryLater(entry, ex);
+        }
+    }
+
+    /**
+     * @return true when the request itself is wrong, replaying it again cannot succeed
+     */
+    private static boolean isInvalid(Throwable ex) {
+        return ex instanceof InvalidQueryException || ex instanceof IllegalArgumentException;
+    }
+
+    private boolean retryLater(MutationJournal.Entry entry, Throwable cause) throws IOException {
+        failedAttempts.increment();
+        attempts++;
+        if (properties.mutationReplayMaxAttempts > 0 && attempts >= properties.mutationReplayMaxAttempts) {
+            deadLetter(entry, "still failing after " + attempts + " attempts : " + mergeStackTrace(cause));
+            return true;
+        }
+        LOGGER.warn("Exception replaying journaled " + entry.type + " at " + entry.position
+                + ", attempt " + attempts + " : " + cause);
+        return false;
+    }
+
+    private void deadLetter(MutationJournal.Entry entry, String reason) throws IOException {
+        final MutationJournal.Position position = deadLetters.append(entry.timestampMillis, entry.type, entry.payload);
+        deadLettered.increment();
+        attempts = 0;
+        LOGGER.error("Moved journaled mutation " + entry.position + " to dead letter " + position + ", " + reason);
+    }
+
+    private void advance(MutationJournal.Position next) throws IOException {
+        final MutationJournal.Position previous = checkpoint;
+        journal.saveCheckpoint(next);
+        checkpoint = next;
+        if (next.segment != previous.segment) {
+            journal.deleteSegmentsBefore(next.segment);
+        }
+    }
+
+    /**
+     * Exponential backoff with jitter, the delay is picked between
+     * half and all of the current backoff
+     * @return
+     */
+    private long nextBackoff() {
+        final long current = backoffMillis == 0
+                ? properties.mutationReplayBackoffInitialMs
+                : Math.min(backoffMillis * 2, properties.mutationReplayBackoffMaxMs);
+        backoffMillis = current;
+        return current / 2 + ThreadLocalRandom.current().nextLong(current / 2 + 1);
+    }
+
+    @ManagedAttribute(description = "Journaled mutations written again successfully")
+    public long getReplayedMutations() {
+        return replayed.sum();
+    }
+
+    @ManagedAttribute(description = "Replay attempts that failed and will be retried")
+    public long getFailedAttempts() {
+        return failedAttempts.sum();
+    }
+
+    @ManagedAttribute(description = "Journaled mutations moved to the dead-letter journal")
+    public long getDeadLetteredMutations() {
+        return deadLettered.sum();
+    }
+
+    @ManagedAttribute(description = "Journal bytes not replayed yet")
+    public long getReplayLagBytes() {
+        return checkpoint == null ? 0L : journal.bytesAfter(checkpoint);
+    }
+
+    @ManagedAttribute(description = "Age of the oldest mutation not replayed yet, 0 when none")
+    public long getReplayLagMillis() {
+        final long since = pendingSinceMillis;
+        return since == 0 ? 0L : System.currentTimeMillis() - since;
+    }
+
+    @ManagedAttribute(description = "Current retry backoff, 0 when the last replay succeeded")
+    public long getBackoffMillis() {
+        return backoffMillis;
+    }
+
+    private static final class Replayer<T extends GeneratedMessageV3> {
+        private final Parser<T> parser;
+        private final BiFunction<T, Long, CompletableFuture<?>> replay;
+
+        Replayer(Parser<T> parser, BiFunction<T, Long, CompletableFuture<?>> replay) {
+            this.parser = parser;
+            this.replay = replay;
+        }
+
+        CompletableFuture<?> replay(byte[] payload, long timeMillis) throws InvalidProtocolBufferException {
+            return replay.apply(parser.parseFrom(payload), timeMillis);
+        }
+    }
+}
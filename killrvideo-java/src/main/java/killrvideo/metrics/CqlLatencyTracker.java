@@ -0,0 +1,55 @@
+package killrvideo.metrics;
+
+import javax.inject.Inject;
+
+import org.springframework.stereotype.Component;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.LatencyTracker;
+import com.datastax.driver.core.RegularStatement;
+import com.datastax.driver.core.Statement;
+
+/**
+ * Driver latency tracker recording each CQL request under the name of its statement,
+ * see {@link PreparedStatementNames}. Every attempt is recorded, retries and
+ * speculative executions included, with the driver exception as outcome when it failed.
+ */
+@Component
+public class CqlLatencyTracker implements LatencyTracker {
+
+    private static final String BATCH = "batch";
+
+    @Inject
+    KillrVideoMetrics metrics;
+
+    @Inject
+    PreparedStatementNames statementNames;
+
+    @Override
+    public void update(Host host, Statement statement, Exception exception, long newLatencyNanos) {
+        metrics.cqlStatement(nameOf(statement))
+                .record(newLatencyNanos, exception == null ? RequestMetrics.OK : exception.getClass().getSimpleName());
+    }
+
+    @Override
+    public void onRegister(Cluster cluster) {
+    }
+
+    @Override
+    public void onUnregister(Cluster cluster) {
+    }
+
+    String nameOf(Statement statement) {
+        if (statement instanceof BoundStatement) {
+            return statementNames.nameOf(((BoundStatement) statement).preparedStatement());
+        } else if (statement instanceof BatchStatement) {
+            return BATCH;
+        } else if (statement instanceof RegularStatement) {
+            return PreparedStatementNames.describe(((RegularStatement) statement).getQueryString());
+        }
+        return statement.getClass().getSimpleName();
+    }
+}
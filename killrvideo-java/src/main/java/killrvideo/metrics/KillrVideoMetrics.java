@@ -0,0 +1,196 @@
+package killrvideo.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Metrics of the gRPC methods served, of the CQL statements executed, of the password
+ * hashing and of the encoding jobs, created on first use. Each one is exposed over JMX as
+ * it is created, killrvideo:type=GrpcMethod, CqlStatement, PasswordHashing or EncodingJob,
+ * and all of them are written in the Prometheus text format by {@link #writePrometheus(StringBuilder)}.
+ */
+public class KillrVideoMetrics implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(KillrVideoMetrics.class);
+
+    private static final String GRPC_TYPE = "GrpcMethod";
+    private static final String CQL_TYPE = "CqlStatement";
+    private static final String PASSWORD_HASHING_TYPE = "PasswordHashing";
+    private static final String ENCODING_JOB_TYPE = "EncodingJob";
+
+    private final ConcurrentMap<String, RequestMetrics> grpcMethods = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, RequestMetrics> cqlStatements = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, RequestMetrics> passwordHashing = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, RequestMetrics> encodingJobs = new ConcurrentHashMap<>();
+
+    /**
+     * @param fullMethodName e.g. killrvideo.ratings.RatingsService/RateVideo
+     */
+    public RequestMetrics grpcMethod(String fullMethodName) {
+        final RequestMetrics metrics = grpcMethods.get(fullMethodName);
+        return metrics != null ? metrics : grpcMethods.computeIfAbsent(fullMethodName, name -> create(GRPC_TYPE, name));
+    }
+
+    /**
+     * @param statementName e.g. rateVideo_updateRatingPrepared
+     */
+    public RequestMetrics cqlStatement(String statementName) {
+        final RequestMetrics metrics = cqlStatements.get(statementName);
+        return metrics != null ? metrics : cqlStatements.computeIfAbsent(statementName, name -> create(CQL_TYPE, name));
+    }
+
+    /**
+     * @param operation e.g. verify, see {@link killrvideo.security.PasswordHasher}
+     */
+    public RequestMetrics passwordHashing(String operation) {
+        return passwordHashing.computeIfAbsent(operation, name -> create(PASSWORD_HASHING_TYPE, name));
+    }
+
+    /**
+     * @param stage queue or transcode, see {@link killrvideo.encoding.EncodingJobScheduler}
+     */
+    public RequestMetrics encodingJob(String stage) {
+        return encodingJobs.computeIfAbsent(stage, name -> create(ENCODING_JOB_TYPE, name));
+    }
+
+    /**
+     * Write every metric in the Prometheus text exposition format (version 0.0.4)
+     */
+    public void writePrometheus(StringBuilder out) {
+        final Map<String, RequestMetrics> methods = new TreeMap<>(grpcMethods);
+        final Map<String, RequestMetrics> statements = new TreeMap<>(cqlStatements);
+        final Map<String, RequestMetrics> hashing = new TreeMap<>(passwordHashing);
+        final Map<String, RequestMetrics> encoding = new TreeMap<>(encodingJobs);
+
+        header(out, "killrvideo_grpc_server_handling_seconds", "histogram", "Latency of the gRPC calls served");
+        methods.forEach((name, metrics) -> histogram(out, "killrvideo_grpc_server_handling_seconds", grpcLabels(name), metrics.latency()));
+
+        header(out, "killrvideo_grpc_server_in_flight", "gauge", "gRPC calls started and not completed yet");
+        methods.forEach((name, metrics) -> sample(out, "killrvideo_grpc_server_in_flight", grpcLabels(name), metrics.getInFlight()));
+
+        header(out, "killrvideo_grpc_server_handled_total", "counter", "gRPC calls completed, by status code");
+        methods.forEach((name, metrics) -> metrics.outcomeCounts().forEach((code, count) ->
+                sample(out, "killrvideo_grpc_server_handled_total", grpcLabels(name) + ",grpc_code=" + quote(code), count)));
+
+        header(out, "killrvideo_cql_request_seconds", "histogram", "Latency of the CQL statements executed, by statement");
+        statements.forEach((name, metrics) -> histogram(out, "killrvideo_cql_request_seconds", cqlLabels(name), metrics.latency()));
+
+        header(out, "killrvideo_cql_requests_total", "counter", "CQL statements executed, by statement and outcome");
+        statements.forEach((name, metrics) -> metrics.outcomeCounts().forEach((outcome, count) ->
+                sample(out, "killrvideo_cql_requests_total", cqlLabels(name) + ",outcome=" + quote(outcome), count)));
+
+        header(out, "killrvideo_password_hashing_seconds", "histogram", "Latency of the password hashing, queuing included");
+        hashing.forEach((name, metrics) -> histogram(out, "killrvideo_password_hashing_seconds", hashingLabels(name), metrics.latency()));
+
+        header(out, "killrvideo_password_hashing_in_flight", "gauge", "Password hashing queued or running");
+        hashing.forEach((name, metrics) -> sample(out, "killrvideo_password_hashing_in_flight", hashingLabels(name), metrics.getInFlight()));
+
+        header(out, "killrvideo_password_hashing_total", "counter", "Password hashing completed, by operation and outcome");
+        hashing.forEach((name, metrics) -> metrics.outcomeCounts().forEach((outcome, count) ->
+                sample(out, "killrvideo_password_hashing_total", hashingLabels(name) + ",outcome=" + quote(outcome), count)));
+
+        header(out, "killrvideo_encoding_job_seconds", "histogram", "Time the encoding jobs spend in each stage");
+        encoding.forEach((name, metrics) -> histogram(out, "killrvideo_encoding_job_seconds", stageLabels(name), metrics.latency()));
+
+        header(out, "killrvideo_encoding_job_in_flight", "gauge", "Encoding jobs in each stage");
+        encoding.forEach((name, metrics) -> sample(out, "killrvideo_encoding_job_in_flight", stageLabels(name), metrics.getInFlight()));
+
+        header(out, "killrvideo_encoding_jobs_total", "counter", "Encoding jobs out of each stage, by outcome");
+        encoding.forEach((name, metrics) -> metrics.outcomeCounts().forEach((outcome, count) ->
+                sample(out, "killrvideo_encoding_jobs_total", stageLabels(name) + ",outcome=" + quote(outcome), count)));
+    }
+
+    @Override
+    public void close() {
+        grpcMethods.keySet().forEach(name -> unregisterMBean(GRPC_TYPE, name));
+        cqlStatements.keySet().forEach(name -> unregisterMBean(CQL_TYPE, name));
+        passwordHashing.keySet().forEach(name -> unregisterMBean(PASSWORD_HASHING_TYPE, name));
+        encodingJobs.keySet().forEach(name -> unregisterMBean(ENCODING_JOB_TYPE, name));
+    }
+
+    private static RequestMetrics create(String type, String name) {
+        final RequestMetrics metrics = new RequestMetrics(name);
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, objectName(type, name));
+        } catch (JMException ex) {
+            LOGGER.warn("Cannot expose the metrics of " + name + " : " + ex.getMessage());
+        }
+        return metrics;
+    }
+
+    private static void unregisterMBean(String type, String name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName(type, name));
+        } catch (JMException ex) {
+            LOGGER.debug("Metrics of " + name + " were not exposed : " + ex.getMessage());
+        }
+    }
+
+    private static ObjectName objectName(String type, String name) throws JMException {
+        return new ObjectName("killrvideo:type=" + type + ",name=" + ObjectName.quote(name));
+    }
+
+    private static void header(StringBuilder out, String metric, String type, String help) {
+        out.append("# HELP ").append(metric).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(metric).append(' ').append(type).append('\n');
+    }
+
+    private static void histogram(StringBuilder out, String metric, String labels, LatencyHistogram histogram) {
+        final long[] counts = histogram.bucketCounts();
+        long cumulative = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulative += counts[i];
+            final String bound = i < LatencyHistogram.BUCKET_BOUNDS_NANOS.length
+                    ? seconds(LatencyHistogram.BUCKET_BOUNDS_NANOS[i])
+                    : "+Inf";
+            out.append(metric).append("_bucket{").append(labels).append(",le=\"").append(bound).append("\"} ")
+                    .append(cumulative).append('\n');
+        }
+        out.append(metric).append("_sum{").append(labels).append("} ").append(seconds(histogram.sumNanos())).append('\n');
+        out.append(metric).append("_count{").append(labels).append("} ").append(cumulative).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String metric, String labels, long value) {
+        out.append(metric).append('{').append(labels).append("} ").append(value).append('\n');
+    }
+
+    /**
+     * grpc_service and grpc_method labels of a full method name, package.Service/Method
+     */
+    private static String grpcLabels(String fullMethodName) {
+        final int slash = fullMethodName.lastIndexOf('/');
+        final String service = fullMethodName.substring(0, Math.max(0, slash));
+        return "grpc_service=" + quote(service.substring(service.lastIndexOf('.') + 1))
+                + ",grpc_method=" + quote(fullMethodName.substring(slash + 1));
+    }
+
+    private static String cqlLabels(String statementName) {
+        return "statement=" + quote(statementName);
+    }
+
+    private static String hashingLabels(String operation) {
+        return "operation=" + quote(operation);
+    }
+
+    private static String stageLabels(String stage) {
+        return "stage=" + quote(stage);
+    }
+
+    private static String seconds(long nanos) {
+        return BigDecimal.valueOf(nanos, 9).stripTrailingZeros().toPlainString();
+    }
+
+    private static String quote(String labelValue) {
+        return '"' + labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + '"';
+    }
+}
@@ -0,0 +1,114 @@
+package killrvideo.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram with fixed buckets, the same buckets as the Prometheus export
+ * so that the scraped histograms can be aggregated across instances.
+ *
+ * Recording is lock free and allocation free, percentiles are estimated by linear
+ * interpolation inside the bucket holding the requested rank.
+ */
+public final class LatencyHistogram {
+
+    /**
+     * Inclusive upper bounds of the buckets, from 100us to 10s, the last bucket has no upper bound
+     */
+    static final long[] BUCKET_BOUNDS_NANOS = {
+            micros(100), micros(250), micros(500),
+            millis(1), millis(2) + micros(500), millis(5),
+            millis(10), millis(25), millis(50),
+            millis(100), millis(250), millis(500),
+            millis(1000), millis(2500), millis(5000),
+            millis(10000)
+    };
+
+    private final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS_NANOS.length + 1];
+    private final LongAdder sumNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        final long latency = Math.max(0, nanos);
+        buckets[bucketIndex(latency)].increment();
+        sumNanos.add(latency);
+        maxNanos.accumulate(latency);
+    }
+
+    /**
+     * @return count of each bucket, the last one holds the latencies above every bound
+     */
+    public long[] bucketCounts() {
+        final long[] counts = new long[buckets.length];
+        for (int i = 0; i < buckets.length; i++) {
+            counts[i] = buckets[i].sum();
+        }
+        return counts;
+    }
+
+    public long count() {
+        long count = 0;
+        for (LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    public long sumNanos() {
+        return sumNanos.sum();
+    }
+
+    public long maxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * @param quantile between 0 and 1, e.g. 0.99
+     * @return estimated latency at this quantile, 0 when nothing was recorded
+     */
+    public long percentileNanos(double quantile) {
+        final long[] counts = bucketCounts();
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        final long max = maxNanos();
+        final double rank = Math.min(1.0, Math.max(0.0, quantile)) * total;
+        long cumulative = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0 && cumulative + counts[i] >= rank) {
+                final long lower = i == 0 ? 0 : BUCKET_BOUNDS_NANOS[i - 1];
+                final long upper = i < BUCKET_BOUNDS_NANOS.length ? Math.min(BUCKET_BOUNDS_NANOS[i], max) : max;
+                final double position = (rank - cumulative) / counts[i];
+                return Math.min(max, lower + (long) (Math.max(0, upper - lower) * position));
+            }
+            cumulative += counts[i];
+        }
+        return max;
+    }
+
+    static int bucketIndex(long nanos) {
+        final int index = Arrays.binarySearch(BUCKET_BOUNDS_NANOS, nanos);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    private static long micros(long micros) {
+        return TimeUnit.MICROSECONDS.toNanos(micros);
+    }
+
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+}
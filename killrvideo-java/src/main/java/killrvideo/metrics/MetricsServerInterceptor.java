@@ -0,0 +1,66 @@
+package killrvideo.metrics;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.inject.Inject;
+
+import org.springframework.stereotype.Component;
+
+import io.grpc.ForwardingServerCall.SimpleForwardingServerCall;
+import io.grpc.ForwardingServerCallListener.SimpleForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+
+/**
+ * Time every gRPC call from its start to the status sent back, or to its cancellation,
+ * and count the calls in flight and the status codes per method
+ */
+@Component
+public class MetricsServerInterceptor implements ServerInterceptor {
+
+    @Inject
+    KillrVideoMetrics metrics;
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        final RequestMetrics methodMetrics = metrics.grpcMethod(call.getMethodDescriptor().getFullMethodName());
+        final long start = System.nanoTime();
+        final AtomicBoolean completed = new AtomicBoolean();
+        methodMetrics.started();
+
+        final ServerCall<ReqT, RespT> timedCall = new SimpleForwardingServerCall<ReqT, RespT>(call) {
+            @Override
+            public void close(Status status, Metadata trailers) {
+                if (completed.compareAndSet(false, true)) {
+                    methodMetrics.completed(System.nanoTime() - start, status.getCode().name());
+                }
+                super.close(status, trailers);
+            }
+        };
+
+        try {
+            return new SimpleForwardingServerCallListener<ReqT>(next.startCall(timedCall, headers)) {
+                @Override
+                public void onCancel() {
+                    /**
+                     * Cancelled by the client, past its deadline or aborted by an exception
+                     * thrown from the handler, close() is never called
+                     */
+                    if (completed.compareAndSet(false, true)) {
+                        methodMetrics.completed(System.nanoTime() - start, Status.Code.CANCELLED.name());
+                    }
+                    super.onCancel();
+                }
+            };
+        } catch (RuntimeException ex) {
+            if (completed.compareAndSet(false, true)) {
+                methodMetrics.completed(System.nanoTime() - start, Status.Code.UNKNOWN.name());
+            }
+            throw ex;
+        }
+    }
+}
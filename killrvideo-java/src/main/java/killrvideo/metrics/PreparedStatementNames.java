@@ -0,0 +1,73 @@
+package killrvideo.metrics;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ReflectionUtils;
+
+import com.datastax.driver.core.PreparedStatement;
+
+/**
+ * Names of the prepared statements, used to tag their metrics.
+ *
+ * The statements of the services are named by the PreparedStatementRegistry after the
+ * field they are assigned to, e.g. rateVideo_updateRatingPrepared. Once a bean is initialized,
+ * each PreparedStatement field already set is named after the field as well. The statements
+ * prepared elsewhere, by the mapper for instance, are named after their query,
+ * e.g. "SELECT killrvideo_java.videos".
+ */
+@Component
+public class PreparedStatementNames implements BeanPostProcessor {
+
+    private static final Pattern VERB = Pattern.compile("^\\s*(\\w+)");
+    private static final Pattern TABLE = Pattern.compile("\\b(?:FROM|INTO|UPDATE)\\s+([\\w.\"]+)", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Keyed by identity, the driver statements do not override equals
+     */
+    private final ConcurrentMap<PreparedStatement, String> names = new ConcurrentHashMap<>();
+
+    public void register(String name, PreparedStatement statement) {
+        names.put(statement, name);
+    }
+
+    public String nameOf(PreparedStatement statement) {
+        final String name = names.get(statement);
+        return name != null ? name : names.computeIfAbsent(statement, key -> describe(key.getQueryString()));
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) {
+        return bean;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        ReflectionUtils.doWithFields(bean.getClass(), field -> {
+            ReflectionUtils.makeAccessible(field);
+            final Object statement = field.get(bean);
+            if (statement != null) {
+                register(field.getName(), (PreparedStatement) statement);
+            }
+        }, field -> PreparedStatement.class.isAssignableFrom(field.getType()));
+        return bean;
+    }
+
+    /**
+     * Verb and table of a query, e.g. "INSERT killrvideo_java.videos"
+     */
+    static String describe(String query) {
+        final Matcher verb = VERB.matcher(query);
+        final Matcher table = TABLE.matcher(query);
+        final StringBuilder description = new StringBuilder(verb.find() ? verb.group(1).toUpperCase(Locale.ROOT) : "QUERY");
+        if (table.find()) {
+            description.append(' ').append(table.group(1).replace("\"", ""));
+        }
+        return description.toString();
+    }
+}
@@ -0,0 +1,122 @@
+package killrvideo.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Latencies, requests in flight and outcomes of a gRPC method, a CQL statement, a password hashing operation
+ * or an encoding job stage
+ */
+public final class RequestMetrics implements RequestMetricsMBean {
+
+    public static final String OK = "OK";
+
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private final String name;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final ConcurrentMap<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+
+    public RequestMetrics(String name) {
+        this.name = name;
+    }
+
+    public void started() {
+        inFlight.incrementAndGet();
+    }
+
+    /**
+     * Record a request counted by {@link #started()}
+     */
+    public void completed(long latencyNanos, String outcome) {
+        inFlight.decrementAndGet();
+        record(latencyNanos, outcome);
+    }
+
+    /**
+     * Record a request not counted in flight
+     */
+    public void record(long latencyNanos, String outcome) {
+        latency.record(latencyNanos);
+        LongAdder count = outcomes.get(outcome);
+        if (count == null) {
+            count = outcomes.computeIfAbsent(outcome, key -> new LongAdder());
+        }
+        count.increment();
+    }
+
+    LatencyHistogram latency() {
+        return latency;
+    }
+
+    /**
+     * @return count of each outcome, sorted by outcome
+     */
+    Map<String, Long> outcomeCounts() {
+        final Map<String, Long> counts = new TreeMap<>();
+        outcomes.forEach((outcome, count) -> counts.put(outcome, count.sum()));
+        return counts;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getCount() {
+        return latency.count();
+    }
+
+    @Override
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    @Override
+    public long getErrors() {
+        return outcomeCounts().entrySet().stream()
+                .filter(entry -> !OK.equals(entry.getKey()))
+                .mapToLong(Map.Entry::getValue)
+                .sum();
+    }
+
+    @Override
+    public String getOutcomes() {
+        return outcomeCounts().entrySet().stream()
+                .map(entry -> entry.getKey() + "=" + entry.getValue())
+                .collect(Collectors.joining(", "));
+    }
+
+    @Override
+    public double getMeanMillis() {
+        final long count = latency.count();
+        return count == 0 ? 0.0 : latency.sumNanos() / NANOS_PER_MILLI / count;
+    }
+
+    @Override
+    public double get50thPercentileMillis() {
+        return latency.percentileNanos(0.50) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double get95thPercentileMillis() {
+        return latency.percentileNanos(0.95) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double get99thPercentileMillis() {
+        return latency.percentileNanos(0.99) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return latency.maxNanos() / NANOS_PER_MILLI;
+    }
+}
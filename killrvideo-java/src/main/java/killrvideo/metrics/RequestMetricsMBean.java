@@ -0,0 +1,36 @@
+package killrvideo.metrics;
+
+/**
+ * JMX view of the latencies and outcomes of a gRPC method, a CQL statement, a password hashing operation or an encoding job stage
+ */
+public interface RequestMetricsMBean {
+
+    String getName();
+
+    long getCount();
+
+    /**
+     * @return requests started and not completed yet, always 0 for CQL statements
+     */
+    int getInFlight();
+
+    /**
+     * @return requests completed with another outcome than OK
+     */
+    long getErrors();
+
+    /**
+     * @return count of each outcome, gRPC status codes or driver exceptions, e.g. "OK=120, NOT_FOUND=2"
+     */
+    String getOutcomes();
+
+    double getMeanMillis();
+
+    double get50thPercentileMillis();
+
+    double get95thPercentileMillis();
+
+    double get99thPercentileMillis();
+
+    double getMaxMillis();
+}
@@ -0,0 +1,41 @@
+package killrvideo.security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * Unsalted SHA-512 digests decoded as a UTF-8 string, the format of the passwords stored
+ * before {@link Pbkdf2PasswordHashFormat}, including the ones of the killrvido-db datasets.
+ *
+ * Decoding the digest replaces its invalid UTF-8 sequences, so several digests share the
+ * same stored value. Hashes of this format are only verified, never written, and are
+ * always outdated so that they are replaced on the next login.
+ *
+ * A digest has no prefix of its own and may start with any character, "$" included, so
+ * this format recognizes every hash and must come after all the versioned ones.
+ */
+public class LegacyPasswordHashFormat implements PasswordHashFormat {
+
+    @Override
+    public boolean recognizes(String storedHash) {
+        return true;
+    }
+
+    @Override
+    public String hash(String password) {
+        return new String(DigestUtils.sha512(password.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public boolean matches(String password, String storedHash) {
+        return MessageDigest.isEqual(hash(password).getBytes(StandardCharsets.UTF_8),
+                storedHash.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public boolean isOutdated(String storedHash) {
+        return true;
+    }
+}
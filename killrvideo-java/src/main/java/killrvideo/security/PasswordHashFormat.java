@@ -0,0 +1,30 @@
+package killrvideo.security;
+
+/**
+ * Way of hashing the passwords stored in user_credentials. Every format but the legacy
+ * one writes hashes starting with its own $id$ prefix, so that the format of a stored
+ * hash is known when verifying it, see {@link PasswordHasher}.
+ */
+public interface PasswordHashFormat {
+
+    /**
+     * @return true when storedHash was written by this format
+     */
+    boolean recognizes(String storedHash);
+
+    /**
+     * @return hash of the password to store, salted so that two hashes of the same password differ
+     */
+    String hash(String password);
+
+    /**
+     * @param storedHash hash recognized by this format
+     */
+    boolean matches(String password, String storedHash);
+
+    /**
+     * @param storedHash hash recognized by this format
+     * @return true when storedHash is weaker than the hashes written now, e.g. fewer iterations
+     */
+    boolean isOutdated(String storedHash);
+}
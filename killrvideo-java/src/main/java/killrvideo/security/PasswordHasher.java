@@ -0,0 +1,156 @@
+package killrvideo.security;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import killrvideo.async.KillrVideoThreadFactory;
+import killrvideo.metrics.KillrVideoMetrics;
+import killrvideo.metrics.RequestMetrics;
+
+/**
+ * Hashes and verifies the passwords on a pool of its own, sized for the CPU, so that a
+ * slow key derivation never runs on the gRPC or driver threads. The pool queues a bounded
+ * number of requests and rejects the next ones, a login storm then fails fast with
+ * {@link RejectedExecutionException} instead of piling up requests that would time out.
+ *
+ * New hashes are written with the first format, the others are only used to verify the
+ * hashes stored before it. A verification of an outdated hash that succeeds comes with a
+ * new hash of the password to store in its place.
+ *
+ * Passwords are trimmed before being hashed, as they always were. The latency of each
+ * hash and verification, queuing included, is recorded in the "hash" and "verify"
+ * password hashing metrics.
+ */
+public class PasswordHasher implements AutoCloseable {
+
+    public static final String MISMATCH = "MISMATCH";
+    public static final String OUTDATED = "OUTDATED";
+    public static final String REJECTED = "REJECTED";
+
+    private final PasswordHashFormat current;
+    private final List<PasswordHashFormat> formats;
+    private final ThreadPoolExecutor executor;
+    private final RequestMetrics hashMetrics;
+    private final RequestMetrics verifyMetrics;
+
+    /**
+     * @param threads hashing concurrently, more than the cores only adds latency
+     * @param queueSize requests waiting for a thread before the next ones are rejected
+     * @param current format of the hashes written
+     * @param previous formats of the hashes stored before, tried in order so the legacy one comes last
+     */
+    public PasswordHasher(int threads, int queueSize, KillrVideoMetrics metrics,
+                          PasswordHashFormat current, PasswordHashFormat... previous) {
+        this.current = current;
+        this.formats = Arrays.asList(previous);
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), new KillrVideoThreadFactory());
+        this.hashMetrics = metrics.passwordHashing("hash");
+        this.verifyMetrics = metrics.passwordHashing("verify");
+    }
+
+    /**
+     * @return hash of the password to store
+     */
+    public CompletableFuture<String> hash(String password) {
+        return submit(hashMetrics, () -> current.hash(password.trim()), hash -> RequestMetrics.OK);
+    }
+
+    /**
+     * @param storedHash hash of any of the formats, may be null when there is none
+     */
+    public CompletableFuture<Verification> verify(String password, String storedHash) {
+        if (isBlank(password) || isBlank(storedHash)) {
+            verifyMetrics.record(0, MISMATCH);
+            return CompletableFuture.completedFuture(Verification.INVALID);
+        }
+        return submit(verifyMetrics, () -> {
+            final String trimmed = password.trim();
+            final PasswordHashFormat format = formatOf(storedHash);
+            if (format == null || !format.matches(trimmed, storedHash)) {
+                return Verification.INVALID;
+            }
+            if (format != current || current.isOutdated(storedHash)) {
+                return new Verification(true, current.hash(trimmed));
+            }
+            return Verification.VALID;
+        }, verification -> !verification.isValid() ? MISMATCH
+                : verification.getUpgradedHash() != null ? OUTDATED
+                : RequestMetrics.OK);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private PasswordHashFormat formatOf(String storedHash) {
+        if (current.recognizes(storedHash)) {
+            return current;
+        }
+        return formats.stream()
+                .filter(format -> format.recognizes(storedHash))
+                .findFirst()
+                .orElse(null);
+    }
+
+    private <T> CompletableFuture<T> submit(RequestMetrics metrics, Supplier<T> task,
+                                            Function<T, String> outcome) {
+        final long start = System.nanoTime();
+        metrics.started();
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    final T result = task.get();
+                    metrics.completed(System.nanoTime() - start, outcome.apply(result));
+                    future.complete(result);
+                } catch (RuntimeException ex) {
+                    metrics.completed(System.nanoTime() - start, ex.getClass().getSimpleName());
+                    future.completeExceptionally(ex);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            metrics.completed(System.nanoTime() - start, REJECTED);
+            future.completeExceptionally(ex);
+        }
+        return future;
+    }
+
+    /**
+     * Outcome of a verification
+     */
+    public static final class Verification {
+
+        static final Verification INVALID = new Verification(false, null);
+        static final Verification VALID = new Verification(true, null);
+
+        private final boolean valid;
+        private final String upgradedHash;
+
+        Verification(boolean valid, String upgradedHash) {
+            this.valid = valid;
+            this.upgradedHash = upgradedHash;
+        }
+
+        public boolean isValid() {
+            return valid;
+        }
+
+        /**
+         * @return hash of the current format to store instead of the outdated one verified, null when up to date
+         */
+        public String getUpgradedHash() {
+            return upgradedHash;
+        }
+    }
+}
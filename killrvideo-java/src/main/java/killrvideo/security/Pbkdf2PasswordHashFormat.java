@@ -0,0 +1,87 @@
+package killrvideo.security;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * PBKDF2 with HMAC-SHA256, stored as $pbkdf2-sha256$iterations$salt$hash with the salt and
+ * the hash in unpadded base64. The iterations are stored with each hash so that they can
+ * be raised without invalidating the hashes already stored, which are then outdated.
+ */
+public class Pbkdf2PasswordHashFormat implements PasswordHashFormat {
+
+    public static final String ID = "pbkdf2-sha256";
+
+    private static final String PREFIX = "$" + ID + "$";
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+
+    private final int iterations;
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * @param iterations of the hashes written, the higher the slower to hash and to guess
+     */
+    public Pbkdf2PasswordHashFormat(int iterations) {
+        if (iterations < 1) {
+            throw new IllegalArgumentException("Invalid PBKDF2 iterations " + iterations);
+        }
+        this.iterations = iterations;
+    }
+
+    @Override
+    public boolean recognizes(String storedHash) {
+        return storedHash.startsWith(PREFIX);
+    }
+
+    @Override
+    public String hash(String password) {
+        final byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        final Base64.Encoder encoder = Base64.getEncoder().withoutPadding();
+        return PREFIX + iterations + "$" + encoder.encodeToString(salt) + "$"
+                + encoder.encodeToString(derive(password, salt, iterations, HASH_BITS));
+    }
+
+    @Override
+    public boolean matches(String password, String storedHash) {
+        final String[] parts = parse(storedHash);
+        final Base64.Decoder decoder = Base64.getDecoder();
+        final byte[] expected = decoder.decode(parts[2]);
+        final byte[] actual = derive(password, decoder.decode(parts[1]), Integer.parseInt(parts[0]), expected.length * 8);
+        return MessageDigest.isEqual(expected, actual);
+    }
+
+    @Override
+    public boolean isOutdated(String storedHash) {
+        return Integer.parseInt(parse(storedHash)[0]) < iterations;
+    }
+
+    /**
+     * @return iterations, salt and hash
+     */
+    private static String[] parse(String storedHash) {
+        final String[] parts = storedHash.substring(PREFIX.length()).split("\\$");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Invalid " + ID + " hash");
+        }
+        return parts;
+    }
+
+    private static byte[] derive(String password, byte[] salt, int iterations, int bits) {
+        final PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, bits);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("Cannot derive a " + ALGORITHM + " key", ex);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
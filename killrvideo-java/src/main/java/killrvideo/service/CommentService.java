@@ -5,6 +5,8 @@ import static killrvideo.utils.ExceptionUtils.mergeStackTrace;
 import static org.apache.commons.lang3.StringUtils.isBlank;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 
@@ -24,11 +26,14 @@ import com.google.common.eventbus.EventBus;
 import io.grpc.Status;
 import io.grpc.stub.StreamObserver;
 
+import killrvideo.async.RpcExecutor;
+import killrvideo.codec.RowCodecs;
 import killrvideo.comments.CommentsServiceGrpc.AbstractCommentsService;
 import killrvideo.comments.CommentsServiceOuterClass.*;
 import killrvideo.comments.events.CommentsEvents.UserCommentedOnVideo;
 import killrvideo.common.CommonTypes.TimeUuid;
 import killrvideo.common.CommonTypes.Uuid;
+import killrvideo.cql.PreparedStatementRegistry;
 import killrvideo.entity.CommentsByVideo;
 import killrvideo.entity.CommentsByUser;
 import killrvideo.entity.Schema;
@@ -36,6 +41,7 @@ import killrvideo.events.CassandraMutationError;
 import killrvideo.utils.TypeConverter;
 import killrvideo.validation.KillrVideoInputValidator;
 import killrvideo.utils.FutureUtils;
+import killrvideo.utils.ResultSetStreamer;
 
 @Service
 public class CommentService extends AbstractCommentsService {
@@ -57,9 +63,15 @@ public class CommentService extends AbstractCommentsService {
     @Inject
     KillrVideoInputValidator validator;
 
+    @Inject
+    RpcExecutor rpcExecutor;
+
     @Inject
     DseSession dseSession;
 
+    @Inject
+    PreparedStatementRegistry statementRegistry;
+
     private String commentsByUserTableName;
     private String commentsByVideoTableName;
     private PreparedStatement commentsByUserPrepared;
@@ -87,20 +99,24 @@ public class CommentService extends AbstractCommentsService {
         commentsByVideoTableName = commentsByVideoMapper.getTableMetadata().getName();
 
         // Prepared statements for commentOnVideo()
-        commentsByUserPrepared = dseSession.prepare(
+        statementRegistry.prepare("commentsByUserPrepared",
                 "INSERT INTO " + Schema.KEYSPACE + "." + commentsByUserTableName + " " +
                         "(userid, commentid, comment, videoid) " +
-                        "VALUES (?, ?, ?, ?)"
-        ).setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+                        "VALUES (?, ?, ?, ?)",
+                prepared -> commentsByUserPrepared = prepared.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM));
 
-        commentsByVideoPrepared = dseSession.prepare(
+        statementRegistry.prepare("commentsByVideoPrepared",
                 "INSERT INTO " + Schema.KEYSPACE + "." + commentsByVideoTableName + " " +
                         "(videoid, commentid, comment, userid) " +
-                        "VALUES (?, ?, ?, ?)"
-        ).setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+                        "VALUES (?, ?, ?, ?)",
+                prepared -> commentsByVideoPrepared = prepared.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM));
 
         // Prepared statements for getUserComments()
         /**
+         * The reads below are marked idempotent themselves rather than through
+         * the QueryBuilder statement they are prepared from, so that they keep
+         * running speculatively if they are ever written as plain CQL.
+         *
          * Notice below I execute fcall() to pull the timestamp out of the
          * commentid timeuuid field, yet I am using the @Computed annotation
          * to do the same thing within the CommentsByUser entity for the dateOfComment
@@ -110,7 +126,7 @@ public class CommentService extends AbstractCommentsService {
          * So, I essentially have 2 ways to get the timestamp out of my timeUUID column
          * depending on the type of query I am executing.
          */
-        getUserComments_noStartingPointPrepared = dseSession.prepare(
+        statementRegistry.prepare("getUserComments_noStartingPointPrepared",
                 QueryBuilder
                         .select()
                         .column("userid")
@@ -119,10 +135,11 @@ public class CommentService extends AbstractCommentsService {
                         .column("comment")
                         .fcall("toTimestamp", QueryBuilder.column("commentid")).as("comment_timestamp")
                         .from(Schema.KEYSPACE, commentsByUserTableName)
-                        .where(QueryBuilder.eq("userid", QueryBuilder.bindMarker()))
-        ).setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+                        .where(QueryBuilder.eq("userid", QueryBuilder.bindMarker())),
+                prepared -> getUserComments_noStartingPointPrepared = prepared
+                        .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM).setIdempotent(true));
 
-        getUserComments_startingPointPrepared = dseSession.prepare(
+        statementRegistry.prepare("getUserComments_startingPointPrepared",
                 QueryBuilder
                         .select()
                         .column("userid")
@@ -132,11 +149,12 @@ public class CommentService extends AbstractCommentsService {
                         .fcall("toTimestamp", QueryBuilder.column("commentid")).as("comment_timestamp")
                         .from(Schema.KEYSPACE, commentsByUserTableName)
                         .where(QueryBuilder.eq("userid", QueryBuilder.bindMarker()))
-                        .and(QueryBuilder.lte("commentid", QueryBuilder.bindMarker()))
-        ).setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+                        .and(QueryBuilder.lte("commentid", QueryBuilder.bindMarker())),
+                prepared -> getUserComments_startingPointPrepared = prepared
+                        .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM).setIdempotent(true));
 
         // Prepared statements for getVideoComments()
-        getVideoComments_noStartingPointPrepared = dseSession.prepare(
+        statementRegistry.prepare("getVideoComments_noStartingPointPrepared",
                 QueryBuilder
                     .select()
                     .column("videoid")
@@ -145,10 +163,11 @@ public class CommentService extends AbstractCommentsService {
                     .column("comment")
                     .fcall("toTimestamp", QueryBuilder.column("commentid")).as("comment_timestamp")
                     .from(Schema.KEYSPACE, commentsByVideoTableName)
-                    .where(QueryBuilder.eq("videoid", QueryBuilder.bindMarker()))
-        ).setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+                    .where(QueryBuilder.eq("videoid", QueryBuilder.bindMarker())),
+                prepared -> getVideoComments_noStartingPointPrepared = prepared
+                        .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM).setIdempotent(true));
 
-        getVideoComments_startingPointPrepared = dseSession.prepare(
+        statementRegistry.prepare("getVideoComments_startingPointPrepared",
                 QueryBuilder
                         .select()
                         .column("videoid")
@@ -158,8 +177,9 @@ public class CommentService extends AbstractCommentsService {
                         .fcall("toTimestamp", QueryBuilder.column("commentid")).as("comment_timestamp")
                         .from(Schema.KEYSPACE, commentsByVideoTableName)
                         .where(QueryBuilder.eq("videoid", QueryBuilder.bindMarker()))
-                        .and(QueryBuilder.lte("commentid", QueryBuilder.bindMarker()))
-        ).setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+                        .and(QueryBuilder.lte("commentid", QueryBuilder.bindMarker())),
+                prepared -> getVideoComments_startingPointPrepared = prepared
+                        .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM).setIdempotent(true));
     }
 
     @Override
@@ -172,6 +192,37 @@ public class CommentService extends AbstractCommentsService {
         }
 
         final Date now = new Date();
+
+        insertComment(request, now)
+            .handleAsync((rs, ex) -> {
+                if(rs != null) {
+                    responseObserver.onNext(CommentOnVideoResponse.newBuilder().build());
+                    responseObserver.onCompleted();
+
+                    LOGGER.debug("End comment on video request");
+
+                } else if (ex != null) {
+                    LOGGER.error("Exception commenting on video : " + mergeStackTrace(ex));
+
+                    eventBus.post(new CassandraMutationError(request, ex, now.getTime()));
+                    responseObserver.onError(Status.INTERNAL.withCause(ex).asRuntimeException());
+                }
+                return rs;
+            }, rpcExecutor);
+    }
+
+    /**
+     * Write the comment to comments_by_user and comments_by_video, and post
+     * a UserCommentedOnVideo event once done.
+     *
+     * Both inserts use the given date as write timestamp, so writing the
+     * same comment again with the same date, as the mutation replay does,
+     * leaves the tables unchanged.
+     * @param request
+     * @param now
+     * @return
+     */
+    public CompletableFuture<ResultSet> insertComment(CommentOnVideoRequest request, Date now) {
         final UUID userId = UUID.fromString(request.getUserId().getValue());
         final UUID videoId = UUID.fromString(request.getVideoId().getValue());
         final UUID commentId = UUID.fromString(request.getCommentId().getValue());
@@ -194,28 +245,17 @@ public class CommentService extends AbstractCommentsService {
         final BatchStatement batchStatement = new BatchStatement(BatchStatement.Type.LOGGED);
         batchStatement.add(bs1);
         batchStatement.add(bs2);
-        batchStatement.setDefaultTimestamp(now.getTime());
-
-        FutureUtils.buildCompletableFuture(dseSession.executeAsync(batchStatement))
-            .handle((rs, ex) -> {
-                if(rs != null) {
-                    eventBus.post(UserCommentedOnVideo.newBuilder()
-                            .setCommentId(request.getCommentId())
-                            .setVideoId(request.getVideoId())
-                            .setUserId(request.getUserId())
-                            .setCommentTimestamp(TypeConverter.dateToTimestamp(now))
-                            .build());
-                    responseObserver.onNext(CommentOnVideoResponse.newBuilder().build());
-                    responseObserver.onCompleted();
-
-                    LOGGER.debug("End comment on video request");
-
-                } else if (ex != null) {
-                    LOGGER.error("Exception commenting on video : " + mergeStackTrace(ex));
-
-                    eventBus.post(new CassandraMutationError(request, ex));
-                    responseObserver.onError(Status.INTERNAL.withCause(ex).asRuntimeException());
-                }
+        // Cassandra write timestamps are in microseconds
+        batchStatement.setDefaultTimestamp(TimeUnit.MILLISECONDS.toMicros(now.getTime()));
+
+        return FutureUtils.buildCompletableFuture(dseSession.executeAsync(batchStatement))
+            .thenApply(rs -> {
+                eventBus.post(UserCommentedOnVideo.newBuilder()
+                        .setCommentId(request.getCommentId())
+                        .setVideoId(request.getVideoId())
+                        .setUserId(request.getUserId())
+                        .setCommentTimestamp(TypeConverter.dateToTimestamp(now))
+                        .build());
                 return rs;
             });
     }
@@ -229,6 +269,62 @@ public class CommentService extends AbstractCommentsService {
             return;
         }
 
+        FutureUtils.buildCompletableFuture(dseSession.executeAsync(bindUserComments(request)))
+                .handleAsync((commentResult, ex) -> {
+                    try {
+                        if (commentResult != null) {
+                            final GetUserCommentsResponse.Builder builder = GetUserCommentsResponse.newBuilder();
+
+                            int remaining = commentResult.getAvailableWithoutFetching();
+                            for (Row row : commentResult) {
+                                builder.addComments(RowCodecs.USER_COMMENT.apply(row));
+
+                                if (--remaining == 0) {
+                                    break;
+                                }
+                            }
+
+                            Optional.ofNullable(commentResult.getExecutionInfo().getPagingState())
+                                    .map(PagingState::toString)
+                                    .ifPresent(builder::setPagingState);
+                            responseObserver.onNext(builder.build());
+                            responseObserver.onCompleted();
+
+                            LOGGER.debug("End get user comments request");
+
+                        } else if (ex != null) {
+                            LOGGER.error("Exception getting user comments : " + mergeStackTrace(ex));
+
+                            responseObserver.onError(Status.INTERNAL.withCause(ex).asRuntimeException());
+                        }
+
+                    } catch (Exception exception) {
+                        LOGGER.error("CATCH Exception getting user comments : " + mergeStackTrace(ex));
+
+                    }
+                    return commentResult;
+
+                }, rpcExecutor);
+    }
+
+    /**
+     * Same query as getUserComments() with all the comments from the starting point
+     * streamed as they are fetched, page_size is the number of rows fetched at once
+     */
+    @Override
+    public void streamUserComments(GetUserCommentsRequest request, StreamObserver<UserComment> responseObserver) {
+
+        LOGGER.debug("Start stream user comments request");
+
+        if (!validator.isValid(request, responseObserver)) {
+            return;
+        }
+
+        ResultSetStreamer.stream(dseSession.executeAsync(bindUserComments(request)),
+                RowCodecs.USER_COMMENT, responseObserver, "user comments");
+    }
+
+    private BoundStatement bindUserComments(GetUserCommentsRequest request) {
         final TimeUuid startingCommentId = request.getStartingCommentId();
         final Uuid userId = request.getUserId();
         final Optional<String> pagingState = Optional
@@ -262,22 +358,27 @@ public class CommentService extends AbstractCommentsService {
         statement.setFetchSize(request.getPageSize());
 
         pagingState.ifPresent( x -> statement.setPagingState(PagingState.fromString(x)));
+        return statement;
+    }
+
+    @Override
+    public void getVideoComments(GetVideoCommentsRequest request, StreamObserver<GetVideoCommentsResponse> responseObserver) {
+
+        LOGGER.debug("Start get video comments request");
 
-        FutureUtils.buildCompletableFuture(dseSession.executeAsync(statement))
-                .handle((commentResult, ex) -> {
+        if (!validator.isValid(request, responseObserver)) {
+            return;
+        }
+
+        FutureUtils.buildCompletableFuture(dseSession.executeAsync(bindVideoComments(request)))
+                .handleAsync((commentResult, ex) -> {
                     try {
                         if (commentResult != null) {
-                            final GetUserCommentsResponse.Builder builder = GetUserCommentsResponse.newBuilder();
+                            final GetVideoCommentsResponse.Builder builder = GetVideoCommentsResponse.newBuilder();
 
                             int remaining = commentResult.getAvailableWithoutFetching();
                             for (Row row : commentResult) {
-                                CommentsByUser commentByUser = new CommentsByUser(
-                                        row.getUUID("userid"), row.getUUID("commentid"),
-                                        row.getUUID("videoid"), row.getString("comment")
-                                );
-
-                                commentByUser.setDateOfComment(row.getTimestamp("comment_timestamp"));
-                                builder.addComments(commentByUser.toUserComment());
+                                builder.addComments(RowCodecs.VIDEO_COMMENT.apply(row));
 
                                 if (--remaining == 0) {
                                     break;
@@ -290,32 +391,40 @@ public class CommentService extends AbstractCommentsService {
                             responseObserver.onNext(builder.build());
                             responseObserver.onCompleted();
 
-                            LOGGER.debug("End get user comments request");
+                            LOGGER.debug("End get video comments request");
 
                         } else if (ex != null) {
-                            LOGGER.error("Exception getting user comments : " + mergeStackTrace(ex));
+                            LOGGER.error("Exception getting video comments : " + mergeStackTrace(ex));
 
                             responseObserver.onError(Status.INTERNAL.withCause(ex).asRuntimeException());
                         }
 
                     } catch (Exception exception) {
-                        LOGGER.error("CATCH Exception getting user comments : " + mergeStackTrace(ex));
+                        LOGGER.error("CATCH Exception getting video comments : " + mergeStackTrace(exception));
 
                     }
                     return commentResult;
-
-                });
+                }, rpcExecutor);
     }
 
+    /**
+     * Same query as getVideoComments() with all the comments from the starting point
+     * streamed as they are fetched, page_size is the number of rows fetched at once
+     */
     @Override
-    public void getVideoComments(GetVideoCommentsRequest request, StreamObserver<GetVideoCommentsResponse> responseObserver) {
+    public void streamVideoComments(GetVideoCommentsRequest request, StreamObserver<VideoComment> responseObserver) {
 
-        LOGGER.debug("Start get video comments request");
+        LOGGER.debug("Start stream video comments request");
 
         if (!validator.isValid(request, responseObserver)) {
             return;
         }
 
+        ResultSetStreamer.stream(dseSession.executeAsync(bindVideoComments(request)),
+                RowCodecs.VIDEO_COMMENT, responseObserver, "video comments");
+    }
+
+    private BoundStatement bindVideoComments(GetVideoCommentsRequest request) {
         final TimeUuid startingCommentId = request.getStartingCommentId();
         final Uuid videoId = request.getVideoId();
         final Optional<String> pagingState = Optional
@@ -348,53 +457,6 @@ public class CommentService extends AbstractCommentsService {
         statement.setFetchSize(request.getPageSize());
 
         pagingState.ifPresent( x -> statement.setPagingState(PagingState.fromString(x)));
-
-        FutureUtils.buildCompletableFuture(dseSession.executeAsync(statement))
-                .handle((commentResult, ex) -> {
-                    try {
-                        if (commentResult != null) {
-                            final GetVideoCommentsResponse.Builder builder = GetVideoCommentsResponse.newBuilder();
-
-                            int remaining = commentResult.getAvailableWithoutFetching();
-                            for (Row row : commentResult) {
-                                CommentsByVideo commentByVideo = new CommentsByVideo(
-                                        row.getUUID("videoid"), row.getUUID("commentid"),
-                                        row.getUUID("userid"), row.getString("comment")
-                                );
-
-                                /**
-                                 * Explicitly set dateOfComment because I cannot use the @Computed
-                                 * annotation set on the dateOfComment field when using QueryBuilder.
-                                 * This gives us the "proper" return object expected for the response to the front-end
-                                 * UI.  It does not function if this value is null or not the correct type.
-                                 */
-                                commentByVideo.setDateOfComment(row.getTimestamp("comment_timestamp"));
-                                builder.addComments(commentByVideo.toVideoComment());
-
-                                if (--remaining == 0) {
-                                    break;
-                                }
-                            }
-
-                            Optional.ofNullable(commentResult.getExecutionInfo().getPagingState())
-                                    .map(PagingState::toString)
-                                    .ifPresent(builder::setPagingState);
-                            responseObserver.onNext(builder.build());
-                            responseObserver.onCompleted();
-
-                            LOGGER.debug("End get video comments request");
-
-                        } else if (ex != null) {
-                            LOGGER.error("Exception getting video comments : " + mergeStackTrace(ex));
-
-                            responseObserver.onError(Status.INTERNAL.withCause(ex).asRuntimeException());
-                        }
-
-                    } catch (Exception exception) {
-                        LOGGER.error("CATCH Exception getting video comments : " + mergeStackTrace(exception));
-
-                    }
-                    return commentResult;
-                });
+        return statement;
     }
 }
@@ -0,0 +1,228 @@
+package killrvideo.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import killrvideo.entity.LatestVideos;
+import killrvideo.utils.SortedMerge;
+
+/**
+ * Reads one page of latest videos spread over day buckets.
+ *
+ * Up to maxInFlight buckets are queried at once, each with the page size as
+ * fetch size. As soon as the contiguous run of completed buckets, starting
+ * at the current one, holds enough rows for the page, the remaining queries
+ * are cancelled and the completed buckets are merged on
+ * (added_date DESC, videoid ASC) with a k-way heap merge.
+ *
+ * Buckets hold disjoint, ordered days, so the page always ends in a single
+ * bucket and can be resumed with the (bucket index, Cassandra paging state)
+ * pair of the historical paging token. When the page ends in the middle of
+ * the rows fetched from that bucket, it is queried once more with a fetch
+ * size of the rows actually used, only to get the matching paging state.
+ */
+class LatestVideosScatterGather {
+
+    /**
+     * Async read of a single day bucket
+     */
+    interface BucketFetcher {
+        /**
+         * @param yyyymmdd bucket
+         * @param fetchSize maximum number of rows to return
+         * @param pagingState Cassandra paging state to resume from, null to read from the start
+         * @return CompletableFuture of the rows, cancelling it should cancel the query
+         */
+        CompletableFuture<BucketPage> fetch(String yyyymmdd, int fetchSize, String pagingState);
+    }
+
+    static final class BucketPage {
+        final List<LatestVideos> rows;
+        /**
+         * Null when the bucket has no more rows
+         */
+        final String pagingState;
+
+        BucketPage(List<LatestVideos> rows, String pagingState) {
+            this.rows = rows;
+            this.pagingState = pagingState;
+        }
+    }
+
+    static final class Page {
+        final List<LatestVideos> videos;
+        /**
+         * Bucket to resume from, equal to the number of buckets once they are all read
+         */
+        final int nextBucket;
+        final String nextBucketPagingState;
+
+        Page(List<LatestVideos> videos, int nextBucket, String nextBucketPagingState) {
+            this.videos = videos;
+            this.nextBucket = nextBucket;
+            this.nextBucketPagingState = nextBucketPagingState;
+        }
+    }
+
+    static final Comparator<LatestVideos> LATEST_FIRST = Comparator
+            .comparing(LatestVideos::getAddedDate, Comparator.nullsLast(Comparator.reverseOrder()))
+            .thenComparing(LatestVideos::getVideoid);
+
+    private final List<String> buckets;
+    private final int firstBucket;
+    private final String firstPagingState;
+    private final int pageSize;
+    private final int maxInFlight;
+    private final BucketFetcher fetcher;
+
+    private final BucketPage[] pages;
+    private final List<CompletableFuture<BucketPage>> inFlight;
+    private final CompletableFuture<Page> done = new CompletableFuture<>();
+    private int nextToLaunch;
+    private int launched = 0;
+    private boolean finished = false;
+
+    LatestVideosScatterGather(List<String> buckets, int firstBucket, String firstPagingState,
+                              int pageSize, int maxInFlight, BucketFetcher fetcher) {
+        this.buckets = buckets;
+        this.firstBucket = firstBucket;
+        this.firstPagingState = firstPagingState;
+        this.pageSize = pageSize;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.fetcher = fetcher;
+        this.pages = new BucketPage[buckets.size()];
+        this.inFlight = new ArrayList<>(Collections.nCopies(buckets.size(), null));
+        this.nextToLaunch = firstBucket;
+    }
+
+    /**
+     * Start reading, can only be called once
+     * @return CompletableFuture of the page
+     */
+    synchronized CompletableFuture<Page> read() {
+        if (firstBucket >= buckets.size()) {
+            done.complete(new Page(Collections.emptyList(), buckets.size(), ""));
+            return done;
+        }
+        fillWindow();
+        return done;
+    }
+
+    private void fillWindow() {
+        while (!finished && launched < maxInFlight && nextToLaunch < buckets.size()) {
+            final int bucket = nextToLaunch++;
+            final String pagingState = bucket == firstBucket ? firstPagingState : null;
+
+            launched++;
+            final CompletableFuture<BucketPage> future = fetcher.fetch(buckets.get(bucket), pageSize, pagingState);
+            inFlight.set(bucket, future);
+
+            /**
+             * May complete right away on this thread, the monitor is reentrant
+             */
+            future.whenComplete((page, ex) -> onBucketComplete(bucket, page, ex));
+        }
+    }
+
+    private synchronized void onBucketComplete(int bucket, BucketPage page, Throwable ex) {
+        if (finished) {
+            return;
+        }
+        inFlight.set(bucket, null);
+        launched--;
+
+        if (ex != null) {
+            fail(ex);
+            return;
+        }
+        pages[bucket] = page;
+
+        /**
+         * Walk the completed buckets in order. A bucket with a paging state
+         * still has rows that would come before the next buckets, so the
+         * page cannot extend past it.
+         */
+        int available = 0;
+        for (int i = firstBucket; i < buckets.size(); i++) {
+            if (pages[i] == null) {
+                fillWindow();
+                return;
+            }
+            available += pages[i].rows.size();
+            if (available >= pageSize || pages[i].pagingState != null) {
+                finish(i);
+                return;
+            }
+        }
+        finish(buckets.size() - 1);
+    }
+
+    private void finish(int lastBucket) {
+        finished = true;
+        cancelInFlight();
+
+        final List<List<LatestVideos>> sources = new ArrayList<>(lastBucket - firstBucket + 1);
+        for (int i = firstBucket; i <= lastBucket; i++) {
+            sources.add(pages[i].rows);
+        }
+
+        final int[] consumed = new int[sources.size()];
+        final List<LatestVideos> videos = SortedMerge.merge(sources, LATEST_FIRST, pageSize, consumed);
+
+        final BucketPage last = pages[lastBucket];
+        final int taken = consumed[consumed.length - 1];
+        final String lastStartingState = lastBucket == firstBucket ? firstPagingState : null;
+
+        if (taken == last.rows.size()) {
+            if (last.pagingState != null) {
+                done.complete(new Page(videos, lastBucket, last.pagingState));
+            } else {
+                done.complete(new Page(videos, lastBucket + 1, ""));
+            }
+
+        } else if (taken == 0) {
+            done.complete(new Page(videos, lastBucket,
+                    lastStartingState == null ? "" : lastStartingState));
+
+        } else {
+            fetcher.fetch(buckets.get(lastBucket), taken, lastStartingState)
+                    .whenComplete((page, ex) -> {
+                        if (ex != null) {
+                            done.completeExceptionally(ex);
+                            return;
+                        }
+                        /**
+                         * The rows of the last bucket are the tail of the page. Should this
+                         * query return fewer rows, the page is shortened to match its paging state.
+                         */
+                        final int missing = Math.max(0, taken - page.rows.size());
+                        final List<LatestVideos> kept = videos.subList(0, videos.size() - missing);
+
+                        if (page.pagingState != null) {
+                            done.complete(new Page(kept, lastBucket, page.pagingState));
+                        } else {
+                            done.complete(new Page(kept, lastBucket + 1, ""));
+                        }
+                    });
+        }
+    }
+
+    private void fail(Throwable ex) {
+        finished = true;
+        cancelInFlight();
+        done.completeExceptionally(ex);
+    }
+
+    private void cancelInFlight() {
+        for (int i = 0; i < inFlight.size(); i++) {
+            final CompletableFuture<BucketPage> future = inFlight.get(i);
+            if (future != null) {
+                future.cancel(true);
+                inFlight.set(i, null);
+            }
+        }
+    }
+}
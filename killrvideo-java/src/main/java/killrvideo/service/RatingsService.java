@@ -1,8 +1,8 @@
 package killrvideo.service;
 
-import com.datastax.driver.core.BoundStatement;
 import com.datastax.driver.core.ConsistencyLevel;
 import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Row;
 import com.datastax.driver.core.querybuilder.QueryBuilder;
 import com.datastax.driver.dse.DseSession;
 import com.datastax.driver.mapping.Mapper;
@@ -12,6 +12,10 @@ import com.google.common.eventbus.EventBus;
 import io.grpc.Status;
 import io.grpc.stub.StreamObserver;
 
+import killrvideo.async.RatingBatchPipeline;
+import killrvideo.async.RpcExecutor;
+import killrvideo.configuration.KillrVideoProperties;
+import killrvideo.cql.PreparedStatementRegistry;
 import killrvideo.entity.Schema;
 import killrvideo.entity.VideoRating;
 import killrvideo.entity.VideoRatingByUser;
@@ -20,6 +24,7 @@ import killrvideo.ratings.RatingsServiceGrpc.AbstractRatingsService;
 import killrvideo.ratings.RatingsServiceOuterClass.*;
 import killrvideo.ratings.events.RatingsEvents.UserRatedVideo;
 import killrvideo.utils.FutureUtils;
+import killrvideo.utils.IdempotentReads;
 import killrvideo.utils.TypeConverter;
 import killrvideo.validation.KillrVideoInputValidator;
 
@@ -28,10 +33,13 @@ import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 import java.time.Instant;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 
 import static killrvideo.utils.ExceptionUtils.mergeStackTrace;
 
@@ -40,6 +48,13 @@ public class RatingsService extends AbstractRatingsService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(RatingsService.class);
 
+    /**
+     * Journal types of a failed rating, its counter increments and its
+     * video_ratings_by_user row are replayed separately
+     */
+    public static final String RATING_COUNTERS_REPLAY = RateVideoRequest.getDescriptor().getFullName() + ".counters";
+    public static final String RATING_ROW_REPLAY = RateVideoRequest.getDescriptor().getFullName() + ".row";
+
     @Inject
     MappingManager manager;
 
@@ -52,27 +67,62 @@ public class RatingsService extends AbstractRatingsService {
     @Inject
     DseSession dseSession;
 
+    @Inject
+    PreparedStatementRegistry statementRegistry;
+
     @Inject
     EventBus eventBus;
 
     @Inject
     KillrVideoInputValidator validator;
 
+    @Inject
+    RpcExecutor rpcExecutor;
+
+    @Inject
+    KillrVideoProperties properties;
+
     private String videoRatingsTableName;
     private PreparedStatement rateVideo_updateRatingPrepared;
+    private PreparedStatement replayRating_ratingWriteTimePrepared;
+    private volatile RatingBatchPipeline ratingPipeline;
 
 
     @PostConstruct
     public void init(){
         videoRatingsTableName = videoRatingMapper.getTableMetadata().getName();
 
-        rateVideo_updateRatingPrepared = dseSession.prepare(
+        statementRegistry.prepare("rateVideo_updateRatingPrepared",
                 QueryBuilder
                         .update(Schema.KEYSPACE, videoRatingsTableName)
-                        .with(QueryBuilder.incr("rating_counter"))
+                        .with(QueryBuilder.incr("rating_counter", QueryBuilder.bindMarker()))
                         .and(QueryBuilder.incr("rating_total", QueryBuilder.bindMarker()))
+                        .where(QueryBuilder.eq("videoid", QueryBuilder.bindMarker())),
+                prepared -> {
+                    rateVideo_updateRatingPrepared = prepared.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+                    ratingPipeline = new RatingBatchPipeline(dseSession, rateVideo_updateRatingPrepared, videoRatingByUserMapper,
+                            properties.ratingsFlushWindowMs, properties.ratingsMaxBatchSize);
+                });
+
+        statementRegistry.prepare("replayRating_ratingWriteTimePrepared",
+                QueryBuilder
+                        .select()
+                        .writeTime("rating").as("written")
+                        .from(Schema.KEYSPACE, videoRatingByUserMapper.getTableMetadata().getName())
                         .where(QueryBuilder.eq("videoid", QueryBuilder.bindMarker()))
-        ).setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+                        .and(QueryBuilder.eq("userid", QueryBuilder.bindMarker())),
+                prepared -> replayRating_ratingWriteTimePrepared = prepared
+                        .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM).setIdempotent(true));
+    }
+
+    @PreDestroy
+    public void flushRatingPipeline() {
+        /**
+         * Not created when the update statement could not be prepared
+         */
+        if (ratingPipeline != null) {
+            ratingPipeline.close();
+        }
     }
 
     @Override
@@ -91,33 +141,19 @@ public class RatingsService extends AbstractRatingsService {
         final Integer rating = request.getRating();
 
         /**
-         * Increment rating_counter by 1
-         * Increment rating_total by amount of rating
-         */
-        BoundStatement counterUpdateStatement = rateVideo_updateRatingPrepared.bind()
-                .setLong("rating_total", rating)
-                .setUUID("videoid", videoId);
-
-        /**
-         * Here, instead of using logged batch, we can insert both mutations asynchronously
-         * In case of error, we log the request into the mutation error log for replay later
-         * by another micro-service
+         * Both the rating_counter/rating_total increments and the video_ratings_by_user
+         * row are handed to the rating pipeline. Ratings on the same video are merged
+         * into a single counter UPDATE plus UNLOGGED single partition batches, see
+         * {@link RatingBatchPipeline}. The returned future only completes once the
+         * flush for this video is acknowledged so the event below is never emitted
+         * for a rating that was not written.
          *
-         * Something else to notice is I am using both a prepared statement with executeAsync()
-         * and a call to the mapper's saveAsync() methods.  I could have kept things uniform
-         * and stuck with both prepared/bind statements, but I wanted to illustrate the combination
-         * and use the mapper for the second statement because it is a simple save operation with no
-         * options, increments, etc...  A key point is in the case you see below both statements are actually
-         * prepared, the first one I did manually in a more traditional sense and in the second one the
-         * mapper will prepare the statement for you automagically.
+         * In case of error, the request is journaled and replayed later, the
+         * counters only when they are not known to be written, see
+         * {@link #replayRatingCounters(RateVideoRequest)} and {@link #replayRatingRow(RateVideoRequest, long)}
          */
-        CompletableFuture<Void> rateVideoFuture = CompletableFuture
-                .allOf(
-                        FutureUtils.buildCompletableFuture(dseSession.executeAsync(counterUpdateStatement)),
-                        FutureUtils.buildCompletableFuture(videoRatingByUserMapper
-                                .saveAsync(new VideoRatingByUser(videoId, userId, rating)))
-                )
-                .handle((rs, ex) -> {
+        ratingPipeline.submit(videoId, userId, rating)
+                .handleAsync((rs, ex) -> {
                     if (ex == null) {
                         /**
                          * This eventBus.post() call will make its way to the SuggestedVideoService
@@ -137,10 +173,73 @@ public class RatingsService extends AbstractRatingsService {
                     } else {
                         LOGGER.error("Exception rating video : " + mergeStackTrace(ex));
 
-                        eventBus.post(new CassandraMutationError(request, ex));
+                        final Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                        final boolean countersWritten = cause instanceof RatingBatchPipeline.RatingWriteException
+                                && ((RatingBatchPipeline.RatingWriteException) cause).countersWritten;
+                        if (!countersWritten) {
+                            eventBus.post(new CassandraMutationError(request, ex, time.toEpochMilli(), RATING_COUNTERS_REPLAY));
+                        }
+                        eventBus.post(new CassandraMutationError(request, ex, time.toEpochMilli(), RATING_ROW_REPLAY));
                         responseObserver.onError(Status.INTERNAL.withCause(ex).asRuntimeException());
                     }
                     return rs;
+                }, rpcExecutor);
+    }
+
+    /**
+     * Increment again the counters of a rating whose flush failed.
+     *
+     * Counters cannot be written idempotently, this is only journaled when
+     * the counter UPDATE of the flush was not acknowledged. An UPDATE that
+     * timed out but was applied is therefore counted twice.
+     * @param request
+     * @return
+     */
+    public CompletableFuture<Void> replayRatingCounters(RateVideoRequest request) {
+        final UUID videoId = UUID.fromString(request.getVideoId().getValue());
+
+        return FutureUtils.buildCompletableFuture(dseSession.executeAsync(rateVideo_updateRatingPrepared.bind()
+                    .setLong("rating_counter", 1L)
+                    .setLong("rating_total", request.getRating())
+                    .setUUID("videoid", videoId)))
+                .thenRun(() -> LOGGER.debug("Replayed rating counters of video " + videoId));
+    }
+
+    /**
+     * Write again the video_ratings_by_user row of a rating whose flush failed.
+     *
+     * A row written at or after the rating time means the flush, or a later
+     * rating of the same user, made it and nothing is done. Otherwise the row
+     * is written with the rating time as write timestamp so it never
+     * overwrites a more recent rating.
+     * @param request
+     * @param timeMillis time of the original rating
+     * @return
+     */
+    public CompletableFuture<Void> replayRatingRow(RateVideoRequest request, long timeMillis) {
+        final UUID videoId = UUID.fromString(request.getVideoId().getValue());
+        final UUID userId = UUID.fromString(request.getUserId().getValue());
+        final int rating = request.getRating();
+        final long timeMicros = TimeUnit.MILLISECONDS.toMicros(timeMillis);
+
+        return FutureUtils.buildCompletableFuture(dseSession.executeAsync(
+                    replayRating_ratingWriteTimePrepared.bind(videoId, userId)))
+                .thenCompose(rs -> {
+                    final Row row = rs.one();
+                    if (row != null && !row.isNull("written") && row.getLong("written") >= timeMicros) {
+                        LOGGER.debug("Rating of video " + videoId + " by " + userId + " already written, skipping replay");
+                        return CompletableFuture.completedFuture(null);
+                    }
+
+                    return FutureUtils.buildCompletableFuture(videoRatingByUserMapper.saveAsync(
+                                    new VideoRatingByUser(videoId, userId, rating),
+                                    Mapper.Option.timestamp(timeMicros)))
+                            .thenRun(() -> eventBus.post(UserRatedVideo.newBuilder()
+                                    .setVideoId(request.getVideoId())
+                                    .setUserId(request.getUserId())
+                                    .setRating(rating)
+                                    .setRatingTimestamp(TypeConverter.instantToTimeStamp(Instant.ofEpochMilli(timeMillis)))
+                                    .build()));
                 });
     }
 
@@ -156,8 +255,8 @@ public class RatingsService extends AbstractRatingsService {
         final UUID videoId = UUID.fromString(request.getVideoId().getValue());
 
         // videoId matches the partition key set in the VideoRating class
-        FutureUtils.buildCompletableFuture(videoRatingMapper.getAsync(videoId))
-                .handle((ratings, ex) -> {
+        FutureUtils.buildCompletableFuture(IdempotentReads.getAsync(dseSession, videoRatingMapper, videoId))
+                .handleAsync((ratings, ex) -> {
                     if (ex != null) {
                         LOGGER.error("Exception when getting video rating : " + mergeStackTrace(ex));
                         responseObserver.onError(Status.INTERNAL.withCause(ex).asRuntimeException());
@@ -181,7 +280,7 @@ public class RatingsService extends AbstractRatingsService {
                         LOGGER.debug("End get video rating request");
                     }
                     return ratings;
-                });
+                }, rpcExecutor);
 
     }
 
@@ -197,8 +296,8 @@ public class RatingsService extends AbstractRatingsService {
         final UUID videoId = UUID.fromString(request.getVideoId().getValue());
         final UUID userId = UUID.fromString(request.getUserId().getValue());
 
-        FutureUtils.buildCompletableFuture(videoRatingByUserMapper.getAsync(videoId, userId))
-                .handle((videoRating, ex) -> {
+        FutureUtils.buildCompletableFuture(IdempotentReads.getAsync(dseSession, videoRatingByUserMapper, videoId, userId))
+                .handleAsync((videoRating, ex) -> {
                     if (ex != null) {
                         LOGGER.error("Exception when getting user rating : " + mergeStackTrace(ex));
                         responseObserver.onError(Status.INTERNAL.withCause(ex).asRuntimeException());
@@ -223,7 +322,7 @@ public class RatingsService extends AbstractRatingsService {
                         LOGGER.debug("End get user rating request");
                     }
                     return videoRating;
-                });
+                }, rpcExecutor);
     }
 
 }
@@ -2,7 +2,22 @@ package killrvideo.service;
 
 import static killrvideo.utils.ExceptionUtils.mergeStackTrace;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 
@@ -11,9 +26,18 @@ import com.datastax.driver.core.querybuilder.QueryBuilder;
 import com.datastax.driver.dse.DseSession;
 import com.datastax.driver.mapping.Mapper;
 import com.datastax.driver.mapping.MappingManager;
+import com.datastax.driver.mapping.Result;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import killrvideo.async.RpcExecutor;
+import killrvideo.codec.RowCodecs;
+import killrvideo.configuration.KillrVideoProperties;
+import killrvideo.cql.PreparedStatementRegistry;
 import killrvideo.entity.Schema;
 import killrvideo.entity.TagsByLetter;
 import killrvideo.entity.VideoByTag;
+import killrvideo.index.PostingLists;
+import killrvideo.index.TagSuggestionIndex;
 import killrvideo.utils.FutureUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -34,6 +58,60 @@ public class SearchService extends AbstractSearchService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(SearchService.class);
 
+    private static final Pattern QUERY_TERMS_SEPARATOR = Pattern.compile("\\s+");
+
+    /**
+     * Keyword switching a multi-term query from "all terms" to "any term"
+     */
+    private static final String ANY_TERM_KEYWORD = "OR";
+
+    private static final String MULTI_TERM_PAGING_STATE_PREFIX = "terms:";
+
+    private static final int POSTING_LIST_FETCH_SIZE = 1000;
+
+    /**
+     * Most recently added videos first
+     */
+    private static final Comparator<VideoByTag> BY_ADDED_DATE_DESC = Comparator
+            .comparing(VideoByTag::getAddedDate, Comparator.nullsLast(Comparator.reverseOrder()))
+            .thenComparing(VideoByTag::getVideoid);
+
+    /**
+     * Videos matching the most terms first, then the most recently added
+     */
+    private static final Comparator<RankedVideo> BY_RANK = Comparator
+            .comparingInt((RankedVideo ranked) -> ranked.matchedTerms).reversed()
+            .thenComparing(ranked -> ranked.video, BY_ADDED_DATE_DESC);
+
+    private static class RankedVideo {
+        final VideoByTag video;
+        final int matchedTerms;
+
+        RankedVideo(VideoByTag video, int matchedTerms) {
+            this.video = video;
+            this.matchedTerms = matchedTerms;
+        }
+    }
+
+    /**
+     * Rows of a videos_by_tag partition, truncated when it holds more
+     * than killrvideo.search.max.posting.list.size of them
+     */
+    private static class PostingList {
+        final List<VideoByTag> videos = new ArrayList<>();
+        boolean truncated;
+    }
+
+    private static class Ranking {
+        final List<RankedVideo> videos;
+        final boolean truncated;
+
+        Ranking(List<RankedVideo> videos, boolean truncated) {
+            this.videos = videos;
+            this.truncated = truncated;
+        }
+    }
+
     @Inject
     Mapper<VideoByTag> videosByTagMapper;
 
@@ -46,34 +124,52 @@ public class SearchService extends AbstractSearchService {
     @Inject
     KillrVideoInputValidator validator;
 
+    @Inject
+    RpcExecutor rpcExecutor;
+
     @Inject
     DseSession dseSession;
 
+    @Inject
+    PreparedStatementRegistry statementRegistry;
+
+    @Inject
+    TagSuggestionIndex tagSuggestionIndex;
+
+    @Inject
+    KillrVideoProperties properties;
+
     private String tagsByLetterTableName;
     private String videosByTagTableName;
     private PreparedStatement searchVideos_getVideosByTagPrepared;
     private PreparedStatement getQuerySuggestions_getTagsPrepared;
+    private Cache<String, Ranking> rankings;
 
     @PostConstruct
     public void init() {
+        rankings = Caffeine.newBuilder()
+                .maximumSize(properties.searchRankingCacheSize)
+                .expireAfterWrite(properties.searchRankingCacheTtlSeconds, TimeUnit.SECONDS)
+                .build();
+
         tagsByLetterTableName = tagsByLetterMapper.getTableMetadata().getName();
         videosByTagTableName = videosByTagMapper.getTableMetadata().getName();
 
-        searchVideos_getVideosByTagPrepared = dseSession.prepare(
+        statementRegistry.prepare("searchVideos_getVideosByTagPrepared",
                 QueryBuilder
                         .select()
                         .all()
                         .from(Schema.KEYSPACE, videosByTagTableName)
-                        .where(QueryBuilder.eq("tag", QueryBuilder.bindMarker()))
-        ).setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+                        .where(QueryBuilder.eq("tag", QueryBuilder.bindMarker())),
+                prepared -> searchVideos_getVideosByTagPrepared = prepared.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM));
 
-        getQuerySuggestions_getTagsPrepared = dseSession.prepare(
+        statementRegistry.prepare("getQuerySuggestions_getTagsPrepared",
                 QueryBuilder
                         .select()
                         .from(Schema.KEYSPACE, tagsByLetterTableName)
                         .where(QueryBuilder.eq("first_letter", QueryBuilder.bindMarker()))
-                        .and(QueryBuilder.gte("tag", QueryBuilder.bindMarker()))
-        ).setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+                        .and(QueryBuilder.gte("tag", QueryBuilder.bindMarker())),
+                prepared -> getQuerySuggestions_getTagsPrepared = prepared.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM));
     }
 
     @Override
@@ -85,33 +181,83 @@ public class SearchService extends AbstractSearchService {
             return;
         }
 
+        final List<String> terms = new ArrayList<>();
+        boolean anyTerm = false;
+        for (String token : QUERY_TERMS_SEPARATOR.split(request.getQuery().trim())) {
+            if (ANY_TERM_KEYWORD.equals(token)) {
+                anyTerm = true;
+            } else if (StringUtils.isNotBlank(token) && !terms.contains(token)) {
+                terms.add(token);
+            }
+        }
+
         final Optional<String> pagingState = Optional
                 .ofNullable(request.getPagingState())
                 .filter(StringUtils::isNotBlank);
 
+        /**
+         * A single term keeps the historical behaviour, an exact tag lookup
+         * paged by Cassandra itself
+         */
+        if (terms.size() <= 1) {
+            searchVideosByTag(request, terms.isEmpty() ? request.getQuery() : terms.get(0), pagingState, null, responseObserver);
+            return;
+        }
+
+        final boolean anyTermSearch = anyTerm;
+        final String wholeQuery = request.getQuery().trim();
+        final boolean termsPage = pagingState.filter(x -> x.startsWith(MULTI_TERM_PAGING_STATE_PREFIX)).isPresent();
+
+        /**
+         * Tags may contain spaces, the whole query is looked up as a single tag first
+         * and split into terms only when no video is tagged with it. The next pages of
+         * either search carry their own paging state.
+         */
+        if (termsPage || (!pagingState.isPresent() && tagSuggestionIndex.isReady() && !tagSuggestionIndex.contains(wholeQuery))) {
+            searchVideosByTerms(request, terms, anyTermSearch, responseObserver);
+        } else {
+            searchVideosByTag(request, wholeQuery, pagingState,
+                    () -> searchVideosByTerms(request, terms, anyTermSearch, responseObserver), responseObserver);
+        }
+    }
+
+    /**
+     * Exact lookup of the <strong>videos_by_tag</strong> partition of a tag
+     * @param whenMissing run instead of answering when the first page is empty, may be null
+     */
+    private void searchVideosByTag(SearchVideosRequest request, String tag, Optional<String> pagingState,
+                                   Runnable whenMissing, StreamObserver<SearchVideosResponse> responseObserver) {
+
         BoundStatement statement = searchVideos_getVideosByTagPrepared.bind()
-                .setString("tag", request.getQuery());
+                .setString("tag", tag);
 
         statement.setFetchSize(request.getPageSize());
 
         pagingState.ifPresent( x -> statement.setPagingState(PagingState.fromString(x)));
 
-        FutureUtils.buildCompletableFuture(videosByTagMapper.mapAsync(dseSession.executeAsync(statement)))
-                .handle((videos, ex) -> {
+        FutureUtils.buildCompletableFuture(dseSession.executeAsync(statement))
+                .handleAsync((videos, ex) -> {
                     if (videos != null) {
+                        final PagingState nextPage = videos.getExecutionInfo().getPagingState();
+                        if (whenMissing != null && !pagingState.isPresent()
+                                && videos.getAvailableWithoutFetching() == 0 && nextPage == null) {
+                            whenMissing.run();
+                            return videos;
+                        }
+
                         final SearchVideosResponse.Builder builder = SearchVideosResponse.newBuilder();
                         builder.setQuery(request.getQuery());
 
-                        int remaining = videos.getAvailableWithoutFetching();
-                        for (VideoByTag video : videos) {
-                            builder.addVideos(video.toResultVideoPreview());
-
-                            if (--remaining == 0) {
-                                break;
-                            }
+                        /**
+                         * Only the rows of this page, reading past them would
+                         * fetch the next page synchronously
+                         */
+                        final int available = videos.getAvailableWithoutFetching();
+                        for (int i = 0; i < available; i++) {
+                            builder.addVideos(RowCodecs.SEARCH_RESULT_VIDEO_PREVIEW.apply(videos.one()));
                         }
 
-                        Optional.ofNullable(videos.getExecutionInfo().getPagingState())
+                        Optional.ofNullable(nextPage)
                                 .map(PagingState::toString)
                                 .ifPresent(builder::setPagingState);
                         responseObserver.onNext(builder.build());
@@ -125,9 +271,206 @@ public class SearchService extends AbstractSearchService {
                         responseObserver.onError(Status.INTERNAL.withCause(ex).asRuntimeException());
                     }
                     return videos;
+                }, rpcExecutor);
+    }
+
+    /**
+     * Search videos tagged with all the terms of the query, or with any of
+     * them when the query contains the <strong>OR</strong> keyword.
+     *
+     * The posting list of every term (its <strong>videos_by_tag</strong> partition,
+     * capped to killrvideo.search.max.posting.list.size rows) is fetched in
+     * parallel, then intersected or merged in memory. Matches are ranked by
+     * number of matching terms then by most recently added.
+     *
+     * The paging state is the rank of the last video returned, the next page
+     * starts right after it. The ranking of the first page is kept for
+     * killrvideo.search.ranking.cache.ttl.seconds so that the next pages do not
+     * fetch the posting lists again, past that or on another instance they are
+     * ranked again and the page still starts after the same video.
+     */
+    private void searchVideosByTerms(SearchVideosRequest request, List<String> terms, boolean anyTerm,
+                                     StreamObserver<SearchVideosResponse> responseObserver) {
+
+        final Optional<RankedVideo> resumeAfter;
+        try {
+            resumeAfter = parseMultiTermPagingState(request.getPagingState());
+        } catch (IllegalArgumentException ex) {
+            responseObserver.onError(Status.INVALID_ARGUMENT
+                    .withDescription("Invalid paging state " + request.getPagingState())
+                    .asRuntimeException());
+            return;
+        }
+
+        final String rankingKey = (anyTerm ? ANY_TERM_KEYWORD + " " : "") + String.join(" ", new TreeSet<>(terms));
+        final Ranking cached = resumeAfter.isPresent() ? rankings.getIfPresent(rankingKey) : null;
+        final CompletableFuture<Ranking> ranking = cached != null
+                ? CompletableFuture.completedFuture(cached)
+                : rank(terms, anyTerm).thenApply(ranked -> {
+                    rankings.put(rankingKey, ranked);
+                    return ranked;
+                });
+
+        ranking
+                .handleAsync((ranked, ex) -> {
+                    if (ranked != null) {
+                        final SearchVideosResponse.Builder builder = SearchVideosResponse.newBuilder();
+                        builder.setQuery(request.getQuery());
+                        builder.setTruncated(ranked.truncated);
+
+                        final List<RankedVideo> videos = ranked.videos;
+                        final int from = resumeAfter.map(last -> startAfter(videos, last)).orElse(0);
+                        final int end = Math.min(videos.size(), from + request.getPageSize());
+                        for (int i = from; i < end; i++) {
+                            builder.addVideos(videos.get(i).video.toResultVideoPreview());
+                        }
+
+                        if (end > from && end < videos.size()) {
+                            builder.setPagingState(multiTermPagingState(videos.get(end - 1)));
+                        }
+                        responseObserver.onNext(builder.build());
+                        responseObserver.onCompleted();
+
+                        LOGGER.debug("End searching video by terms " + terms);
+
+                    } else if (ex != null) {
+                        LOGGER.error("Exception when searching video by terms : " + mergeStackTrace(ex));
+
+                        responseObserver.onError(Status.INTERNAL.withCause(ex).asRuntimeException());
+                    }
+                    return ranked;
+                }, rpcExecutor);
+    }
+
+    private CompletableFuture<Ranking> rank(List<String> terms, boolean anyTerm) {
+        final List<CompletableFuture<PostingList>> postings = terms
+                .stream()
+                .map(this::fetchPostingList)
+                .collect(Collectors.toList());
+
+        return CompletableFuture
+                .allOf(postings.toArray(new CompletableFuture[postings.size()]))
+                .thenApply(x -> {
+                    final List<PostingList> lists = postings.stream()
+                            .map(CompletableFuture::join)
+                            .collect(Collectors.toList());
+                    final boolean truncated = lists.stream().anyMatch(posting -> posting.truncated);
+                    if (truncated) {
+                        LOGGER.debug("Posting lists of " + terms + " truncated to " + properties.searchMaxPostingListSize + " videos");
+                    }
+                    return new Ranking(rankMatches(lists, anyTerm), truncated);
                 });
     }
 
+    /**
+     * Combine the posting lists of every term
+     * @param postings rows of videos_by_tag for each term
+     * @param anyTerm union instead of intersection
+     * @return ranked videos
+     */
+    private List<RankedVideo> rankMatches(List<PostingList> postings, boolean anyTerm) {
+        final Map<UUID, VideoByTag> videos = new HashMap<>();
+        final List<UUID[]> lists = new ArrayList<>(postings.size());
+
+        for (PostingList posting : postings) {
+            final List<UUID> videoIds = new ArrayList<>(posting.videos.size());
+            for (VideoByTag video : posting.videos) {
+                videos.putIfAbsent(video.getVideoid(), video);
+                videoIds.add(video.getVideoid());
+            }
+            lists.add(PostingLists.of(videoIds));
+        }
+
+        final List<RankedVideo> ranked;
+        if (!anyTerm) {
+            ranked = Arrays
+                    .stream(PostingLists.intersect(lists))
+                    .map(videoId -> new RankedVideo(videos.get(videoId), lists.size()))
+                    .collect(Collectors.toList());
+        } else {
+            ranked = PostingLists.union(lists)
+                    .stream()
+                    .map(match -> new RankedVideo(videos.get(match.videoId), match.matchedLists))
+                    .collect(Collectors.toList());
+        }
+        ranked.sort(BY_RANK);
+        return ranked;
+    }
+
+    /**
+     * @return index of the first video ranked after the given one, whether or not it is still in the ranking
+     */
+    private static int startAfter(List<RankedVideo> ranked, RankedVideo last) {
+        final int index = Collections.binarySearch(ranked, last, BY_RANK);
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+    /**
+     * Read a whole videos_by_tag partition page by page without blocking
+     * @param tag
+     * @return rows of the partition, at most killrvideo.search.max.posting.list.size
+     */
+    private CompletableFuture<PostingList> fetchPostingList(String tag) {
+        BoundStatement statement = searchVideos_getVideosByTagPrepared.bind()
+                .setString("tag", tag);
+
+        statement.setFetchSize(POSTING_LIST_FETCH_SIZE);
+
+        return FutureUtils
+                .buildCompletableFuture(dseSession.executeAsync(statement))
+                .thenCompose(resultSet -> drainPostingList(resultSet, new PostingList()));
+    }
+
+    private CompletableFuture<PostingList> drainPostingList(ResultSet resultSet, PostingList posting) {
+        final Result<VideoByTag> videos = videosByTagMapper.map(resultSet);
+
+        /**
+         * Only consume the rows already fetched, iterating further would
+         * fetch the next page synchronously on a driver thread
+         */
+        while (resultSet.getAvailableWithoutFetching() > 0 && posting.videos.size() < properties.searchMaxPostingListSize) {
+            posting.videos.add(videos.one());
+        }
+
+        if (posting.videos.size() >= properties.searchMaxPostingListSize) {
+            posting.truncated = resultSet.getAvailableWithoutFetching() > 0 || !resultSet.isFullyFetched();
+            return CompletableFuture.completedFuture(posting);
+        }
+        if (resultSet.isFullyFetched()) {
+            return CompletableFuture.completedFuture(posting);
+        }
+        return FutureUtils
+                .buildCompletableFuture(resultSet.fetchMoreResults())
+                .thenCompose(next -> drainPostingList(next, posting));
+    }
+
+    /**
+     * terms:&lt;matched terms&gt;:&lt;added date&gt;:&lt;videoid&gt; of the last video of a page
+     */
+    private static String multiTermPagingState(RankedVideo last) {
+        final Date addedDate = last.video.getAddedDate();
+        return MULTI_TERM_PAGING_STATE_PREFIX + last.matchedTerms
+                + ":" + (addedDate == null ? "" : String.valueOf(addedDate.getTime()))
+                + ":" + last.video.getVideoid();
+    }
+
+    private static Optional<RankedVideo> parseMultiTermPagingState(String pagingState) {
+        if (StringUtils.isBlank(pagingState)) {
+            return Optional.empty();
+        }
+        if (!pagingState.startsWith(MULTI_TERM_PAGING_STATE_PREFIX)) {
+            throw new IllegalArgumentException("Not a multi-term paging state");
+        }
+        final String[] resumeKey = pagingState.substring(MULTI_TERM_PAGING_STATE_PREFIX.length()).split(":", -1);
+        if (resumeKey.length != 3) {
+            throw new IllegalArgumentException("Not a resume key");
+        }
+        final VideoByTag last = new VideoByTag();
+        last.setAddedDate(resumeKey[1].isEmpty() ? null : new Date(Long.parseLong(resumeKey[1])));
+        last.setVideoid(UUID.fromString(resumeKey[2]));
+        return Optional.of(new RankedVideo(last, Integer.parseInt(resumeKey[0])));
+    }
+
     @Override
     public void getQuerySuggestions(GetQuerySuggestionsRequest request, StreamObserver<GetQuerySuggestionsResponse> responseObserver) {
 
@@ -137,6 +480,21 @@ public class SearchService extends AbstractSearchService {
             return;
         }
 
+        /**
+         * Suggestions are served from the in-memory tag index, the tags_by_letter
+         * query below is only used while the index is still loading
+         */
+        if (tagSuggestionIndex.isReady()) {
+            responseObserver.onNext(GetQuerySuggestionsResponse.newBuilder()
+                    .setQuery(request.getQuery())
+                    .addAllSuggestions(tagSuggestionIndex.suggest(request.getQuery(), request.getPageSize()))
+                    .build());
+            responseObserver.onCompleted();
+
+            LOGGER.debug("End getting query suggestions from tag index");
+            return;
+        }
+
         BoundStatement statement = getQuerySuggestions_getTagsPrepared.bind()
                 .setString("first_letter", request.getQuery().substring(0, 1))
                 .setString("tag", request.getQuery());
@@ -144,17 +502,13 @@ public class SearchService extends AbstractSearchService {
         statement.setFetchSize(request.getPageSize());
 
         FutureUtils.buildCompletableFuture(tagsByLetterMapper.mapAsync(dseSession.executeAsync(statement)))
-                .handle((tags, ex) -> {
+                .handleAsync((tags, ex) -> {
                     if (tags != null) {
                         final GetQuerySuggestionsResponse.Builder builder = GetQuerySuggestionsResponse.newBuilder();
 
-                        int remaining = tags.getAvailableWithoutFetching();
-                        for (TagsByLetter tag : tags) {
-                            builder.addSuggestions(tag.getTag());
-
-                            if (--remaining == 0) {
-                                break;
-                            }
+                        final int available = tags.getAvailableWithoutFetching();
+                        for (int i = 0; i < available; i++) {
+                            builder.addSuggestions(tags.one().getTag());
                         }
 
                         builder.setQuery(request.getQuery());
@@ -169,7 +523,7 @@ public class SearchService extends AbstractSearchService {
                         responseObserver.onError(Status.INTERNAL.withCause(ex).asRuntimeException());
                     }
                     return tags;
-                });
+                }, rpcExecutor);
     }
 
 }
\ No newline at end of file
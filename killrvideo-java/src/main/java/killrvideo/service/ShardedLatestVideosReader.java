@@ -0,0 +1,303 @@
+package killrvideo.service;
+
+import static killrvideo.service.LatestVideosScatterGather.LATEST_FIRST;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import killrvideo.entity.LatestVideos;
+import killrvideo.service.LatestVideosScatterGather.BucketPage;
+import killrvideo.utils.SortedMerge;
+
+/**
+ * Reads a day of latest videos from the <strong>latest_videos_sharded</strong> table,
+ * where the day is split into several partitions (shards).
+ *
+ * All the shards of the day are queried concurrently and merged on
+ * (added_date DESC, videoid ASC). The paging state of the day holds one
+ * position per shard: the Cassandra paging state of the shard page being
+ * read, how many of its rows were already returned and the key of the last
+ * one. Resuming a shard re-reads that page and skips the returned rows, so
+ * a page can stop in the middle of a shard page.
+ *
+ * Cassandra may answer a page holding no row, or only rows already returned,
+ * while the shard goes on, e.g. when its rows expired. The merge cannot order
+ * the other shards against such a shard, so its next pages are fetched until
+ * one has a row left to return or the shard ends.
+ */
+class ShardedLatestVideosReader {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShardedLatestVideosReader.class);
+
+    private static final String SHARD_SEPARATOR = ";";
+    private static final String FIELD_SEPARATOR = ".";
+    private static final String EXHAUSTED = "x";
+
+    /**
+     * Async read of a single shard of a day
+     */
+    interface ShardFetcher {
+        /**
+         * @param shard
+         * @param fetchSize maximum number of rows to return
+         * @param pagingState Cassandra paging state to resume from, null to read from the start
+         * @return CompletableFuture of the rows, cancelling it should cancel the query
+         */
+        CompletableFuture<BucketPage> fetch(int shard, int fetchSize, String pagingState);
+    }
+
+    /**
+     * Position within a shard
+     */
+    static final class ShardPosition {
+        static final ShardPosition START = new ShardPosition(null, 0, null);
+        static final ShardPosition END = new ShardPosition(null, 0, null);
+
+        /**
+         * Cassandra paging state of the page being read, null for the first page
+         */
+        final String pagingState;
+        /**
+         * Rows of that page already returned
+         */
+        final int skip;
+        /**
+         * Last row returned, null if none of that page
+         */
+        final LatestVideos lastReturned;
+
+        ShardPosition(String pagingState, int skip, LatestVideos lastReturned) {
+            this.pagingState = pagingState;
+            this.skip = skip;
+            this.lastReturned = lastReturned;
+        }
+
+        boolean isExhausted() {
+            return this == END;
+        }
+    }
+
+    /**
+     * Shard page to merge and the position it was read from
+     */
+    private static final class ShardRead {
+        static final ShardRead EXHAUSTED_SHARD = new ShardRead(ShardPosition.END,
+                new BucketPage(Collections.emptyList(), null), 0);
+
+        final ShardPosition position;
+        final BucketPage page;
+        /**
+         * Rows at the start of the page already returned
+         */
+        final int skip;
+
+        ShardRead(ShardPosition position, BucketPage page, int skip) {
+            this.position = position;
+            this.page = page;
+            this.skip = skip;
+        }
+    }
+
+    private final int shardCount;
+
+    ShardedLatestVideosReader(int shardCount) {
+        this.shardCount = shardCount;
+    }
+
+    /**
+     * Read the next rows of a day
+     * @param fetchSize maximum number of rows to return
+     * @param dayPagingState paging state returned by a previous read of the same day, null or blank to start
+     * @param fetcher query of a single shard of the day
+     * @return CompletableFuture of the rows and the paging state of the day, null once every shard is read
+     */
+    CompletableFuture<BucketPage> read(int fetchSize, String dayPagingState, ShardFetcher fetcher) {
+        final List<ShardPosition> positions = parsePositions(dayPagingState);
+        final List<CompletableFuture<ShardRead>> queries = new ArrayList<>(shardCount);
+
+        for (int shard = 0; shard < shardCount; shard++) {
+            final ShardPosition position = positions.get(shard);
+            queries.add(position.isExhausted()
+                    ? CompletableFuture.completedFuture(ShardRead.EXHAUSTED_SHARD)
+                    : readShard(fetcher, shard, fetchSize, position));
+        }
+
+        final CompletableFuture<BucketPage> page = CompletableFuture
+                .allOf(queries.toArray(new CompletableFuture[queries.size()]))
+                .thenApply(x -> merge(fetchSize, queries));
+
+        // Cancelling the day must also cancel the shard queries
+        page.whenComplete((rows, ex) -> {
+            if (page.isCancelled()) {
+                queries.forEach(query -> query.cancel(true));
+            }
+        });
+        return page;
+    }
+
+    /**
+     * Read a shard from its position, on to its next pages while they have no row left to return
+     * @return CompletableFuture of the page to merge, cancelling it cancels the query in flight
+     */
+    private CompletableFuture<ShardRead> readShard(ShardFetcher fetcher, int shard, int fetchSize, ShardPosition position) {
+        final CompletableFuture<ShardRead> read = new CompletableFuture<>();
+        readShard(fetcher, shard, fetchSize, position, read);
+        return read;
+    }
+
+    private void readShard(ShardFetcher fetcher, int shard, int fetchSize, ShardPosition position,
+                           CompletableFuture<ShardRead> read) {
+        if (read.isDone()) {
+            return;
+        }
+
+        final CompletableFuture<BucketPage> query = fetcher.fetch(shard, position.skip + fetchSize, position.pagingState);
+        read.whenComplete((shardRead, ex) -> {
+            if (read.isCancelled()) {
+                query.cancel(true);
+            }
+        });
+
+        query.whenComplete((shardPage, ex) -> {
+            if (ex != null) {
+                read.completeExceptionally(ex);
+                return;
+            }
+
+            /**
+             * Skip the rows already returned, by key rather than by count in
+             * case some rows of the page expired in between
+             */
+            final LatestVideos lastReturned = position.lastReturned;
+            int skip = 0;
+            if (lastReturned != null) {
+                while (skip < shardPage.rows.size() && LATEST_FIRST.compare(shardPage.rows.get(skip), lastReturned) <= 0) {
+                    skip++;
+                }
+            }
+
+            if (skip == shardPage.rows.size() && shardPage.pagingState != null) {
+                readShard(fetcher, shard, fetchSize, new ShardPosition(shardPage.pagingState, 0, lastReturned), read);
+            } else {
+                read.complete(new ShardRead(position, shardPage, skip));
+            }
+        });
+    }
+
+    private BucketPage merge(int fetchSize, List<CompletableFuture<ShardRead>> queries) {
+        final List<ShardRead> reads = new ArrayList<>(shardCount);
+        final List<List<LatestVideos>> sources = new ArrayList<>(shardCount);
+        final boolean[] complete = new boolean[shardCount];
+
+        for (int shard = 0; shard < shardCount; shard++) {
+            final ShardRead read = queries.get(shard).join();
+            reads.add(read);
+            sources.add(read.page.rows.subList(read.skip, read.page.rows.size()));
+            complete[shard] = read.page.pagingState == null;
+        }
+
+        final int[] consumed = new int[shardCount];
+        final List<LatestVideos> rows = SortedMerge.merge(sources, LATEST_FIRST, fetchSize, consumed, complete);
+
+        boolean exhausted = true;
+        final List<ShardPosition> next = new ArrayList<>(shardCount);
+        for (int shard = 0; shard < shardCount; shard++) {
+            final ShardRead read = reads.get(shard);
+            final ShardPosition position = read.position;
+            final List<LatestVideos> source = sources.get(shard);
+
+            final ShardPosition nextPosition;
+            if (position.isExhausted()) {
+                nextPosition = position;
+            } else if (consumed[shard] == source.size()) {
+                // Whole page returned, move to the next one
+                nextPosition = complete[shard]
+                        ? ShardPosition.END
+                        : new ShardPosition(read.page.pagingState, 0, null);
+            } else if (consumed[shard] == 0) {
+                nextPosition = position;
+            } else {
+                nextPosition = new ShardPosition(position.pagingState, read.skip + consumed[shard],
+                        source.get(consumed[shard] - 1));
+            }
+
+            exhausted &= nextPosition.isExhausted();
+            next.add(nextPosition);
+        }
+
+        return new BucketPage(rows, exhausted ? null : formatPositions(next));
+    }
+
+    /**
+     * Each shard position is either <strong>x</strong> once the shard is read, or
+     * <strong>pagingState.skip.addedDateMillis.videoid</strong> where all fields but skip
+     * may be empty. Positions are joined with <strong>;</strong> in shard order.
+     */
+    private String formatPositions(List<ShardPosition> positions) {
+        final StringJoiner joiner = new StringJoiner(SHARD_SEPARATOR);
+        for (ShardPosition position : positions) {
+            if (position.isExhausted()) {
+                joiner.add(EXHAUSTED);
+                continue;
+            }
+            final LatestVideos last = position.lastReturned;
+            joiner.add(StringUtils.defaultString(position.pagingState)
+                    + FIELD_SEPARATOR + position.skip
+                    + FIELD_SEPARATOR + (last == null ? "" : Long.toString(last.getAddedDate().getTime()))
+                    + FIELD_SEPARATOR + (last == null ? "" : last.getVideoid().toString()));
+        }
+        return joiner.toString();
+    }
+
+    private List<ShardPosition> parsePositions(String dayPagingState) {
+        final List<ShardPosition> positions = new ArrayList<>(Collections.nCopies(shardCount, ShardPosition.START));
+        if (StringUtils.isBlank(dayPagingState)) {
+            return positions;
+        }
+
+        final String[] shards = dayPagingState.split(SHARD_SEPARATOR, -1);
+        if (shards.length != shardCount) {
+            LOGGER.warn("Paging state has " + shards.length + " shard positions instead of "
+                    + shardCount + ", reading the day from the start");
+            return positions;
+        }
+
+        try {
+            for (int shard = 0; shard < shardCount; shard++) {
+                positions.set(shard, parsePosition(shards[shard]));
+            }
+        } catch (IllegalArgumentException ex) {
+            LOGGER.warn("Invalid shard positions " + dayPagingState + ", reading the day from the start");
+            Collections.fill(positions, ShardPosition.START);
+        }
+        return positions;
+    }
+
+    private static ShardPosition parsePosition(String position) {
+        if (EXHAUSTED.equals(position)) {
+            return ShardPosition.END;
+        }
+
+        final String[] fields = position.split("\\" + FIELD_SEPARATOR, -1);
+        if (fields.length != 4) {
+            throw new IllegalArgumentException("Expected 4 fields in shard position " + position);
+        }
+
+        LatestVideos lastReturned = null;
+        if (!fields[2].isEmpty() && !fields[3].isEmpty()) {
+            lastReturned = new LatestVideos();
+            lastReturned.setAddedDate(new Date(Long.parseLong(fields[2])));
+            lastReturned.setVideoid(UUID.fromString(fields[3]));
+        }
+        return new ShardPosition(StringUtils.trimToNull(fields[0]), Integer.parseInt(fields[1]), lastReturned);
+    }
+}
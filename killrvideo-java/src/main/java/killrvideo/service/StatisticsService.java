@@ -6,20 +6,26 @@ import static killrvideo.utils.ExceptionUtils.mergeStackTrace;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 
-import com.datastax.driver.core.BoundStatement;
 import com.datastax.driver.core.ConsistencyLevel;
 import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.querybuilder.QueryBuilder;
 import com.datastax.driver.dse.DseSession;
 import com.datastax.driver.mapping.Mapper;
 import com.datastax.driver.mapping.MappingManager;
+import killrvideo.async.RpcExecutor;
+import killrvideo.async.CounterAggregator;
+import killrvideo.configuration.KillrVideoProperties;
+import killrvideo.cql.PreparedStatementRegistry;
 import killrvideo.entity.Schema;
 import killrvideo.utils.FutureUtils;
+import killrvideo.utils.IdempotentReads;
+import killrvideo.utils.MultiKeyReadExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
@@ -30,7 +36,6 @@ import io.grpc.Status;
 import io.grpc.stub.StreamObserver;
 import killrvideo.common.CommonTypes.Uuid;
 import killrvideo.entity.VideoPlaybackStats;
-import killrvideo.events.CassandraMutationError;
 import killrvideo.statistics.StatisticsServiceGrpc.AbstractStatisticsService;
 import killrvideo.statistics.StatisticsServiceOuterClass.*;
 import killrvideo.validation.KillrVideoInputValidator;
@@ -52,22 +57,55 @@ public class StatisticsService extends AbstractStatisticsService {
     @Inject
     KillrVideoInputValidator validator;
 
+    @Inject
+    RpcExecutor rpcExecutor;
+
     @Inject
     DseSession dseSession;
 
+    @Inject
+    PreparedStatementRegistry statementRegistry;
+
+    @Inject
+    KillrVideoProperties properties;
+
     private String videoPlaybackStatsTableName;
     private PreparedStatement recordPlaybackStarted_incrStatsPrepared;
+    private CounterAggregator<UUID> playbackCounter;
+    private MultiKeyReadExecutor multiKeyReader;
 
     @PostConstruct
     public void init(){
         videoPlaybackStatsTableName = videoPlaybackStatsMapper.getTableMetadata().getName();
 
-        recordPlaybackStarted_incrStatsPrepared = dseSession.prepare(
+        statementRegistry.prepare("recordPlaybackStarted_incrStatsPrepared",
                 QueryBuilder
                         .update(Schema.KEYSPACE, videoPlaybackStatsTableName)
-                        .with(QueryBuilder.incr("views")) //use incr() call to increment my counter field https://docs.datastax.com/en/developer/java-driver/3.2/faq/#how-do-i-increment-counters-with-query-builder
-                        .where(QueryBuilder.eq("videoid", QueryBuilder.bindMarker()))
-        ).setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+                        .with(QueryBuilder.incr("views", QueryBuilder.bindMarker())) //use incr() call to increment my counter field https://docs.datastax.com/en/developer/java-driver/3.2/faq/#how-do-i-increment-counters-with-query-builder
+                        .where(QueryBuilder.eq("videoid", QueryBuilder.bindMarker())),
+                prepared -> recordPlaybackStarted_incrStatsPrepared = prepared
+                        .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM));
+
+        multiKeyReader = new MultiKeyReadExecutor(dseSession.getCluster().getMetadata(),
+                Schema.KEYSPACE, properties.multiGetMaxInFlight);
+
+        /**
+         * Playback starts are coalesced in memory per video and written
+         * as a single "views = views + N" on every flush, see {@link CounterAggregator}
+         */
+        playbackCounter = new CounterAggregator<>("video_playback_stats",
+                properties.statisticsFlushIntervalMs,
+                properties.statisticsFlushThreshold,
+                properties.statisticsMaxPendingVideos,
+                (videoId, delta) -> FutureUtils.buildCompletableFuture(dseSession.executeAsync(
+                        recordPlaybackStarted_incrStatsPrepared.bind()
+                                .setLong("views", delta)
+                                .setUUID("videoid", videoId))));
+    }
+
+    @PreDestroy
+    public void flushPlaybackCounter() {
+        playbackCounter.close();
     }
 
     @Override
@@ -83,29 +121,15 @@ public class StatisticsService extends AbstractStatisticsService {
 
         /**
          * Increment video playback counter
-         * In case of mutation error, record the request into
-         * a mutation log file for later replay by another
-         * micro-service
+         * The increment is buffered and flushed asynchronously,
+         * flushes Cassandra did not apply are retried by the aggregator itself
          */
-        BoundStatement bound = recordPlaybackStarted_incrStatsPrepared.bind()
-                .setUUID("videoid", videoId);
+        playbackCounter.increment(videoId);
 
-        FutureUtils.buildCompletableFuture(dseSession.executeAsync(bound))
-                .handle((rs, ex) -> {
-                    if (rs != null) {
-                        responseObserver.onNext(RecordPlaybackStartedResponse.newBuilder().build());
-                        responseObserver.onCompleted();
+        responseObserver.onNext(RecordPlaybackStartedResponse.newBuilder().build());
+        responseObserver.onCompleted();
 
-                        LOGGER.debug("End recording playback");
-
-                    } else if (ex != null) {
-                        LOGGER.error("Exception recording playback : " + mergeStackTrace(ex));
-
-                        eventBus.post(new CassandraMutationError(request, ex));
-                        responseObserver.onError(Status.INTERNAL.withCause(ex).asRuntimeException());
-                    }
-                    return rs;
-                });
+        LOGGER.debug("End recording playback");
     }
 
     @Override
@@ -117,25 +141,32 @@ public class StatisticsService extends AbstractStatisticsService {
             return;
         }
 
-        final List<CompletableFuture<VideoPlaybackStats>> statsFuture = request
+        final List<UUID> videoIds = request
                 .getVideoIdsList()
                 .stream()
                 .map(uuid -> UUID.fromString(uuid.getValue()))
-                .map(uuid -> videoPlaybackStatsMapper.getAsync(uuid))
-                .map(uuid -> FutureUtils.buildCompletableFuture(uuid))
                 .collect(toList());
 
         final GetNumberOfPlaysResponse.Builder builder = GetNumberOfPlaysResponse
                 .newBuilder();
 
         /**
-         * We fire a list of async SELECT request and wait for all of them
-         * to complete before returning a response to the client
+         * We read every requested video with a bounded number of in-flight
+         * SELECT, spread across replicas, see {@link MultiKeyReadExecutor}.
+         * Stats are collected as they arrive and the response is built
+         * in the requested order once all of them completed
          */
-        CompletableFuture
-                .allOf(statsFuture.toArray(new CompletableFuture[statsFuture.size()]))
-                .thenApply(v -> statsFuture.stream().map(CompletableFuture::join).collect(toList()))
-                .handle((list, ex) ->{
+        final Map<UUID, VideoPlaybackStats> stats = new ConcurrentHashMap<>();
+        multiKeyReader
+                .readAll(videoIds, MultiKeyReadExecutor::uuidRoutingKey,
+                        videoId -> IdempotentReads.getAsync(dseSession, videoPlaybackStatsMapper, videoId),
+                        (videoId, entity) -> {
+                            if (entity != null) {
+                                stats.put(videoId, entity);
+                            }
+                        })
+                .thenApply(v -> stats.values())
+                .handleAsync((list, ex) ->{
                     if (list != null) {
                         final Map<Uuid, PlayStats> result = list.stream()
                                 .filter(x -> x != null)
@@ -165,6 +196,6 @@ public class StatisticsService extends AbstractStatisticsService {
                         responseObserver.onError(Status.INTERNAL.withCause(ex).asRuntimeException());
                     }
                     return list;
-                });
+                }, rpcExecutor);
     }
 }
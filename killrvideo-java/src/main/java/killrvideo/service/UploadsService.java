@@ -1,31 +1,344 @@
 package killrvideo.service;
 
+import static killrvideo.utils.ExceptionUtils.mergeStackTrace;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.inject.Inject;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
-import io.grpc.stub.StreamObserver;
 import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import killrvideo.encoding.EncodingJobScheduler;
+import killrvideo.encoding.EncodingNotifications;
+import killrvideo.entity.EncodingJobNotification;
+import killrvideo.storage.Upload;
+import killrvideo.storage.UploadStore;
 import killrvideo.uploads.UploadsServiceGrpc.AbstractUploadsService;
 import killrvideo.uploads.UploadsServiceOuterClass.*;
+import killrvideo.utils.TypeConverter;
+import killrvideo.validation.KillrVideoInputValidator;
 
 /**
- * To be implemented. Right now we
- * only support videos import from Youtube
+ * Uploads of videos to the local object store, see {@link UploadStore}.
+ *
+ * A client gets an upload url, sends the chunks of the video with one or more
+ * UploadVideo calls, then marks the upload complete. An interrupted upload is
+ * resumed by sending the chunks missing from GetUploadProgress. Once complete,
+ * the video is queued for encoding, see {@link EncodingJobScheduler}. The states of
+ * the video are appended to encoding_job_notifications and served from the
+ * in memory index of {@link EncodingNotifications}.
  */
 @Service
 public class UploadsService extends AbstractUploadsService {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(UploadsService.class);
+
+    @Inject
+    UploadStore uploadStore;
+
+    @Inject
+    EncodingNotifications encodingNotifications;
+
+    @Inject
+    EncodingJobScheduler encodingJobScheduler;
+
+    @Inject
+    KillrVideoInputValidator validator;
+
     @Override
     public void getUploadDestination(GetUploadDestinationRequest request, StreamObserver<GetUploadDestinationResponse> responseObserver) {
-        responseObserver.onError(Status.UNIMPLEMENTED.withDescription("Uploading videos is currently not supported").asRuntimeException());
+
+        LOGGER.debug("-----Start getting upload destination-----");
+
+        if (!validator.isValid(request, responseObserver)) {
+            return;
+        }
+
+        final UUID videoId = request.hasVideoId()
+                ? UUID.fromString(request.getVideoId().getValue())
+                : UUID.randomUUID();
+
+        /**
+         * A video chosen by the client may be uploaded already, appending Uploading
+         * again would leave it there, whatever its encoding, so a destination is only
+         * given to a new video or to one still being uploaded, e.g. to send another file
+         */
+        final CompletableFuture<String> currentState = request.hasVideoId()
+                ? encodingNotifications.latest(videoId).thenApply(notification -> notification != null ? notification.getNewstate() : null)
+                : CompletableFuture.completedFuture(null);
+
+        currentState
+                .thenCompose(state -> {
+                    if (state != null && !EncodingJobNotification.UPLOADING.equals(state)) {
+                        throw new UploadedAlreadyException(videoId, state);
+                    }
+                    final String uploadUrl;
+                    try {
+                        uploadUrl = uploadStore.create(videoId, request.getFileName());
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                    return state != null
+                            ? CompletableFuture.completedFuture(uploadUrl)
+                            : encodingNotifications.append(videoId, null, null, EncodingJobNotification.UPLOADING)
+                                    .thenApply(written -> uploadUrl);
+                })
+                .handle((uploadUrl, ex) -> {
+                    final Throwable cause = ex instanceof CompletionException ? ex.getCause() : ex;
+                    if (cause == null) {
+                        responseObserver.onNext(GetUploadDestinationResponse.newBuilder()
+                                .setUploadUrl(uploadUrl)
+                                .build());
+                        responseObserver.onCompleted();
+
+                        LOGGER.debug("End getting upload destination");
+
+                    } else if (cause instanceof UploadedAlreadyException) {
+                        responseObserver.onError(Status.ALREADY_EXISTS.withDescription(cause.getMessage()).asRuntimeException());
+
+                    } else {
+                        LOGGER.error("Exception getting upload destination : " + mergeStackTrace(cause));
+                        responseObserver.onError(Status.INTERNAL.withCause(cause).asRuntimeException());
+                    }
+                    return uploadUrl;
+                });
+    }
+
+    /**
+     * Chunks are written as they arrive on the RPC executor thread, gRPC only
+     * delivers the next one once the previous one is written, so a slow disk
+     * slows the client down instead of filling the heap
+     */
+    @Override
+    public StreamObserver<UploadVideoChunk> uploadVideo(StreamObserver<UploadVideoResponse> responseObserver) {
+        return new StreamObserver<UploadVideoChunk>() {
+
+            private Upload upload;
+            private boolean failed;
+
+            @Override
+            public void onNext(UploadVideoChunk chunk) {
+                if (failed) {
+                    return;
+                }
+                try {
+                    if (upload == null) {
+                        if (StringUtils.isBlank(chunk.getUploadUrl())) {
+                            throw new IllegalArgumentException("upload url should be provided in the first chunk of upload video request");
+                        }
+                        upload = uploadStore.acquire(chunk.getUploadUrl());
+                    }
+                    upload.write(chunk.getOffset(), chunk.getData());
+
+                } catch (IllegalArgumentException ex) {
+                    fail(Status.INVALID_ARGUMENT.withDescription(ex.getMessage()));
+                } catch (IllegalStateException ex) {
+                    fail(Status.FAILED_PRECONDITION.withDescription(ex.getMessage()));
+                } catch (IOException ex) {
+                    LOGGER.error("Exception writing uploaded chunk : " + mergeStackTrace(ex));
+                    fail(Status.INTERNAL.withCause(ex));
+                }
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                LOGGER.debug("Upload interrupted : " + t.getMessage());
+                release();
+            }
+
+            @Override
+            public void onCompleted() {
+                if (failed) {
+                    return;
+                }
+                responseObserver.onNext(UploadVideoResponse.newBuilder()
+                        .setContiguousBytes(upload != null ? upload.getContiguousBytes() : 0)
+                        .build());
+                responseObserver.onCompleted();
+                release();
+            }
+
+            private void fail(Status status) {
+                failed = true;
+                release();
+                responseObserver.onError(status.asRuntimeException());
+            }
+
+            private void release() {
+                if (upload != null) {
+                    uploadStore.release(upload);
+                    upload = null;
+                }
+            }
+        };
+    }
+
+    @Override
+    public void getUploadProgress(GetUploadProgressRequest request, StreamObserver<GetUploadProgressResponse> responseObserver) {
+
+        LOGGER.debug("-----Start getting upload progress-----");
+
+        if (!validator.isValid(request, responseObserver)) {
+            return;
+        }
+
+        Upload upload = null;
+        try {
+            upload = uploadStore.acquire(request.getUploadUrl());
+            final GetUploadProgressResponse.Builder builder = GetUploadProgressResponse.newBuilder();
+            upload.getReceivedRanges().forEach(range -> builder.addReceived(ByteRange.newBuilder()
+                    .setOffset(range.lowerEndpoint())
+                    .setLength(range.upperEndpoint() - range.lowerEndpoint())));
+            responseObserver.onNext(builder.build());
+            responseObserver.onCompleted();
+
+            LOGGER.debug("End getting upload progress");
+
+        } catch (IllegalArgumentException ex) {
+            responseObserver.onError(Status.NOT_FOUND.withDescription(ex.getMessage()).asRuntimeException());
+        } catch (IOException ex) {
+            LOGGER.error("Exception getting upload progress : " + mergeStackTrace(ex));
+            responseObserver.onError(Status.INTERNAL.withCause(ex).asRuntimeException());
+        } finally {
+            if (upload != null) {
+                uploadStore.release(upload);
+            }
+        }
     }
 
     @Override
     public void markUploadComplete(MarkUploadCompleteRequest request, StreamObserver<MarkUploadCompleteResponse> responseObserver) {
-        responseObserver.onError(Status.UNIMPLEMENTED.withDescription("Uploading videos is currently not supported").asRuntimeException());
+
+        LOGGER.debug("-----Start marking upload complete-----");
+
+        if (!validator.isValid(request, responseObserver)) {
+            return;
+        }
+
+        final UUID videoId;
+        final boolean alreadyCompleted;
+        final Path uploaded;
+        Upload upload = null;
+        try {
+            upload = uploadStore.acquire(request.getUploadUrl());
+            videoId = upload.getVideoId();
+            alreadyCompleted = upload.isCompleted();
+            uploaded = upload.complete();
+
+        } catch (IllegalArgumentException ex) {
+            responseObserver.onError(Status.NOT_FOUND.withDescription(ex.getMessage()).asRuntimeException());
+            return;
+        } catch (IllegalStateException ex) {
+            responseObserver.onError(Status.FAILED_PRECONDITION.withDescription(ex.getMessage()).asRuntimeException());
+            return;
+        } catch (IOException ex) {
+            LOGGER.error("Exception completing upload : " + mergeStackTrace(ex));
+            responseObserver.onError(Status.INTERNAL.withCause(ex).asRuntimeException());
+            return;
+        } finally {
+            if (upload != null) {
+                uploadStore.release(upload);
+            }
+        }
+
+        /**
+         * Marked complete already, the video is only queued again when it
+         * was not then, i.e. its job was rejected or its state not written,
+         * or when its job was lost at a restart, i.e. it is still Queued or
+         * Processing but no job of this instance encodes it
+         */
+        final CompletableFuture<String> currentState = alreadyCompleted
+                ? encodingNotifications.latest(videoId).thenApply(notification -> notification != null ? notification.getNewstate() : null)
+                : encodingNotifications.append(videoId, null, EncodingJobNotification.UPLOADING, EncodingJobNotification.UPLOADED)
+                        .thenApply(written -> EncodingJobNotification.UPLOADED);
+
+        final String tenant = request.hasUserId() ? request.getUserId().getValue() : "";
+
+        currentState
+                .handle((state, ex) -> {
+                    if (ex != null) {
+                        LOGGER.error("Exception marking upload complete : " + mergeStackTrace(ex));
+                        responseObserver.onError(Status.INTERNAL.withCause(ex).asRuntimeException());
+                        return state;
+                    }
+
+                    final boolean jobLost = (EncodingJobScheduler.QUEUED.equals(state) || EncodingJobScheduler.PROCESSING.equals(state))
+                            && !encodingJobScheduler.isPending(videoId);
+                    if (EncodingJobNotification.UPLOADED.equals(state) || jobLost) {
+                        try {
+                            encodingJobScheduler.submit(videoId, tenant, EncodingJobScheduler.NORMAL_PRIORITY,
+                                    uploaded, uploaded.resolveSibling("encoded").resolve(uploaded.getFileName()), state);
+                        } catch (RejectedExecutionException rejected) {
+                            responseObserver.onError(Status.RESOURCE_EXHAUSTED
+                                    .withDescription("Too many videos waiting for encoding, mark the upload complete again later")
+                                    .asRuntimeException());
+                            return state;
+                        }
+                    }
+
+                    responseObserver.onNext(MarkUploadCompleteResponse.newBuilder().build());
+                    responseObserver.onCompleted();
+
+                    LOGGER.debug("End marking upload complete");
+                    return state;
+                });
     }
 
     @Override
     public void getStatusOfVideo(GetStatusOfVideoRequest request, StreamObserver<GetStatusOfVideoResponse> responseObserver) {
-        responseObserver.onError(Status.UNIMPLEMENTED.withDescription("Uploading videos is currently not supported").asRuntimeException());
+
+        LOGGER.debug("-----Start getting status of video-----");
+
+        if (!validator.isValid(request, responseObserver)) {
+            return;
+        }
+
+        final UUID videoId = UUID.fromString(request.getVideoId().getValue());
+
+        encodingNotifications.latest(videoId)
+                .handle((notification, ex) -> {
+                    if (ex != null) {
+                        LOGGER.error("Exception getting status of video : " + mergeStackTrace(ex));
+                        responseObserver.onError(Status.INTERNAL.withCause(ex).asRuntimeException());
+
+                    } else if (notification == null) {
+                        responseObserver.onError(Status.NOT_FOUND
+                                .withDescription("No uploaded video with id " + videoId)
+                                .asRuntimeException());
+
+                    } else {
+                        responseObserver.onNext(GetStatusOfVideoResponse.newBuilder()
+                                .setStatusDate(TypeConverter.dateToTimestamp(notification.getStatusDate()))
+                                .setCurrentState(notification.getNewstate())
+                                .build());
+                        responseObserver.onCompleted();
+
+                        LOGGER.debug("End getting status of video");
+                    }
+                    return notification;
+                });
+    }
+
+    /**
+     * Destination asked for a video past Uploading
+     */
+    private static class UploadedAlreadyException extends IllegalStateException {
+
+        private static final long serialVersionUID = 1L;
+
+        UploadedAlreadyException(UUID videoId, String state) {
+            super("Video " + videoId + " is uploaded already, its state is " + state);
+        }
     }
 }
@@ -13,16 +13,19 @@ import com.google.common.eventbus.EventBus;
 import io.grpc.Status;
 import io.grpc.stub.StreamObserver;
 
+import killrvideo.async.RpcExecutor;
 import killrvideo.common.CommonTypes;
+import killrvideo.cql.PreparedStatementRegistry;
 import killrvideo.entity.Schema;
 import killrvideo.entity.User;
 import killrvideo.entity.UserCredentials;
 import killrvideo.events.CassandraMutationError;
+import killrvideo.security.PasswordHasher;
 import killrvideo.user_management.UserManagementServiceGrpc.AbstractUserManagementService;
 import killrvideo.user_management.UserManagementServiceOuterClass.*;
 import killrvideo.user_management.events.UserManagementEvents.UserCreated;
 import killrvideo.utils.FutureUtils;
-import killrvideo.utils.HashUtils;
+import killrvideo.utils.IdempotentReads;
 import killrvideo.utils.TypeConverter;
 import killrvideo.validation.KillrVideoInputValidator;
 
@@ -37,6 +40,7 @@ import java.util.Arrays;
 import java.util.Date;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 
 import static killrvideo.utils.ExceptionUtils.mergeStackTrace;
 
@@ -45,6 +49,8 @@ public class UserManagementService extends AbstractUserManagementService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(UserManagementService.class);
 
+    private static final String HASHING_BUSY_MESSAGE = "Too many password checks in progress, retry later";
+
     @Inject
     Mapper<UserCredentials> userCredentialsMapper;
 
@@ -57,33 +63,43 @@ public class UserManagementService extends AbstractUserManagementService {
     @Inject
     DseSession dseSession;
 
+    @Inject
+    PreparedStatementRegistry statementRegistry;
+
     @Inject
     EventBus eventBus;
 
     @Inject
     KillrVideoInputValidator validator;
 
+    @Inject
+    RpcExecutor rpcExecutor;
+
+    @Inject
+    PasswordHasher passwordHasher;
+
     private String usersTableName;
     private String userCredentialsTableName;
     private PreparedStatement createUser_checkEmailPrepared;
     private PreparedStatement createUser_insertUserPrepared;
     private PreparedStatement getUserProfile_getUsersPrepared;
+    private PreparedStatement verifyCredentials_updatePasswordPrepared;
 
     @PostConstruct
     public void init(){
         usersTableName = userMapper.getTableMetadata().getName();
         userCredentialsTableName = userCredentialsMapper.getTableMetadata().getName();
 
-        createUser_checkEmailPrepared = dseSession.prepare(
+        statementRegistry.prepare("createUser_checkEmailPrepared",
                 QueryBuilder
                         .insertInto(Schema.KEYSPACE, userCredentialsTableName)
                         .value("email", QueryBuilder.bindMarker())
                         .value("password", QueryBuilder.bindMarker())
                         .value("userid", QueryBuilder.bindMarker())
-                        .ifNotExists() // use lightweight transaction
-        ).setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+                        .ifNotExists() // use lightweight transaction,
+                prepared -> createUser_checkEmailPrepared = prepared.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM));
 
-        createUser_insertUserPrepared = dseSession.prepare(
+        statementRegistry.prepare("createUser_insertUserPrepared",
                 QueryBuilder
                         .insertInto(Schema.KEYSPACE, usersTableName)
                         .value("userid", QueryBuilder.bindMarker())
@@ -91,16 +107,24 @@ public class UserManagementService extends AbstractUserManagementService {
                         .value("lastname", QueryBuilder.bindMarker())
                         .value("email", QueryBuilder.bindMarker())
                         .value("created_date", QueryBuilder.bindMarker())
-                        .ifNotExists() // use lightweight transaction
-        ).setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+                        .ifNotExists() // use lightweight transaction,
+                prepared -> createUser_insertUserPrepared = prepared.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM));
 
-        getUserProfile_getUsersPrepared = dseSession.prepare(
+        statementRegistry.prepare("getUserProfile_getUsersPrepared",
                 QueryBuilder
                         .select()
                         .all()
                         .from(Schema.KEYSPACE, usersTableName)
-                        .where(QueryBuilder.in("userid", QueryBuilder.bindMarker()))
-        ).setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+                        .where(QueryBuilder.in("userid", QueryBuilder.bindMarker())),
+                prepared -> getUserProfile_getUsersPrepared = prepared.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM));
+
+        statementRegistry.prepare("verifyCredentials_updatePasswordPrepared",
+                QueryBuilder
+                        .update(Schema.KEYSPACE, userCredentialsTableName)
+                        .with(QueryBuilder.set("password", QueryBuilder.bindMarker()))
+                        .where(QueryBuilder.eq("email", QueryBuilder.bindMarker())),
+                prepared -> verifyCredentials_updatePasswordPrepared = prepared
+                        .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM));
     }
 
     @Override
@@ -118,33 +142,32 @@ public class UserManagementService extends AbstractUserManagementService {
         final String firstName = request.getFirstName();
         final String lastName = request.getLastName();
 
-        /** Trim the password **/
-        final String hashedPassword = HashUtils.hashPassword(request.getPassword().trim());
         final String email = request.getEmail();
         final String exceptionMessage = String.format("Exception creating user because it already exists with email %s", email);
 
         /**
-         * We insert first the credentials since
+         * The password is trimmed and hashed on the password hashing threads,
+         * then we insert first the credentials since
          * the LWT condition is on the user email
          *
          * Note, the LWT condition is set up at the prepared statement
-         */
-        final BoundStatement checkEmailQuery = createUser_checkEmailPrepared.bind()
-                .setString("email", email)
-                .setString("password", hashedPassword)
-                .setUUID("userid", userIdUUID);
-
-        /**
+         *
          * Note that we have multiple executeAsync() calls in the following chain.
          * We check our user_credentials first, if that passes, we move onto inserting
          * the user into the users table.  Both cases use lightweight transactions
          * to ensure we are not duplicating already existing users within the database.
          */
-        CompletableFuture<ResultSet> checkEmailFuture = FutureUtils.buildCompletableFuture(dseSession.executeAsync(checkEmailQuery))
+        CompletableFuture<ResultSet> checkEmailFuture = passwordHasher.hash(request.getPassword())
+                .thenCompose(hashedPassword -> FutureUtils.buildCompletableFuture(dseSession.executeAsync(
+                        createUser_checkEmailPrepared.bind()
+                                .setString("email", email)
+                                .setString("password", hashedPassword)
+                                .setUUID("userid", userIdUUID))))
                 /**
                  * I use the *Async() version of .handle below because I am
                  * chaining multiple async futures.  In testing we found that chains like
                  * this would cause timeouts possibly from starvation.
+                 * It runs on the RPC executor rather than the common pool.
                  */
                 .handleAsync((rs, ex) -> {
                     try {
@@ -161,6 +184,10 @@ public class UserManagementService extends AbstractUserManagementService {
                                 throw new Throwable(exceptionMessage);
                             }
 
+                        } else if (ex != null && ex.getCause() instanceof RejectedExecutionException) {
+                            LOGGER.warn(this.getClass().getName() + ".createUser() " + HASHING_BUSY_MESSAGE);
+                            responseObserver.onError(Status.RESOURCE_EXHAUSTED.withDescription(HASHING_BUSY_MESSAGE).asRuntimeException());
+
                         } else { // throw in case our result set is null
                             throw new Throwable(ex);
                         }
@@ -171,7 +198,7 @@ public class UserManagementService extends AbstractUserManagementService {
                         LOGGER.debug(this.getClass().getName() + ".createUser() " + message);
                     }
                     return rs;
-                });
+                }, rpcExecutor);
 
         /**
          * No LWT error, we can proceed further
@@ -180,6 +207,9 @@ public class UserManagementService extends AbstractUserManagementService {
          * line in the chain
          */
         CompletableFuture<ResultSet> insertUserFuture = checkEmailFuture.thenCompose(rs -> {
+            if (rs == null || !rs.wasApplied()) {
+                return CompletableFuture.completedFuture(null);
+            }
             final BoundStatement insertUser = createUser_insertUserPrepared.bind()
                     .setUUID("userid", userIdUUID)
                     .setString("firstname", firstName)
@@ -243,32 +273,31 @@ public class UserManagementService extends AbstractUserManagementService {
     
         final UUID userIdUUID = UUID.randomUUID();
         
-        /** Trim the password **/
-        final String hashedPassword = HashUtils.hashPassword(password.trim());
         final String exceptionMessage = String.format("Exception creating user because it already exists with email %s", email);
 
         /**
-         * We insert first the credentials since
+         * The password is trimmed and hashed on the password hashing threads,
+         * then we insert first the credentials since
          * the LWT condition is on the user email
          *
          * Note, the LWT condition is set up at the prepared statement
-         */
-        final BoundStatement checkEmailQuery = createUser_checkEmailPrepared.bind()
-                .setString("email", email)
-                .setString("password", hashedPassword)
-                .setUUID("userid", userIdUUID);
-
-        /**
+         *
          * Note that we have multiple executeAsync() calls in the following chain.
          * We check our user_credentials first, if that passes, we move onto inserting
          * the user into the users table.  Both cases use lightweight transactions
          * to ensure we are not duplicating already existing users within the database.
          */
-        CompletableFuture<ResultSet> checkEmailFuture = FutureUtils.buildCompletableFuture(dseSession.executeAsync(checkEmailQuery))
+        CompletableFuture<ResultSet> checkEmailFuture = passwordHasher.hash(password)
+                .thenCompose(hashedPassword -> FutureUtils.buildCompletableFuture(dseSession.executeAsync(
+                        createUser_checkEmailPrepared.bind()
+                                .setString("email", email)
+                                .setString("password", hashedPassword)
+                                .setUUID("userid", userIdUUID))))
                 /**
                  * I use the *Async() version of .handle below because I am
                  * chaining multiple async futures.  In testing we found that chains like
                  * this would cause timeouts possibly from starvation.
+                 * It runs on the RPC executor rather than the common pool.
                  */
                 .handleAsync((rs, ex) -> {
                     try {
@@ -295,7 +324,7 @@ public class UserManagementService extends AbstractUserManagementService {
                         throw new RuntimeException(t);
                     }
                     return rs;
-                });
+                }, rpcExecutor);
 
         /**
          * No LWT error, we can proceed further
@@ -304,6 +333,9 @@ public class UserManagementService extends AbstractUserManagementService {
          * line in the chain
          */
         CompletableFuture<ResultSet> insertUserFuture = checkEmailFuture.thenCompose(rs -> {
+            if (rs == null || !rs.wasApplied()) {
+                return CompletableFuture.completedFuture(null);
+            }
             final BoundStatement insertUser = createUser_insertUserPrepared.bind()
                     .setUUID("userid", userIdUUID)
                     .setString("firstname", firstName)
@@ -368,18 +400,45 @@ public class UserManagementService extends AbstractUserManagementService {
 
         /**
          * Since email is the partitionKey for the UserCredentials
-         * entity I can simply pass it to the mapper getAsync() method
-         * to get my result
+         * entity I can simply pass it to the mapper SELECT to get my
+         * result, marked idempotent so that a slow replica can be
+         * bypassed by a speculative execution
          */
-        FutureUtils.buildCompletableFuture(userCredentialsMapper.getAsync(request.getEmail()))
-                .handle((credential, ex) -> {
-                    if (credential == null || !HashUtils.isPasswordValid(request.getPassword(), credential.getPassword())) {
+        final CompletableFuture<UserCredentials> credentialFuture =
+                FutureUtils.buildCompletableFuture(IdempotentReads.getAsync(dseSession, userCredentialsMapper, request.getEmail()));
+
+        /**
+         * The password is checked on the password hashing threads, the response
+         * is sent from the RPC executor to free them for the next checks
+         */
+        credentialFuture
+                .thenCompose(credential -> passwordHasher.verify(request.getPassword(),
+                        credential != null ? credential.getPassword() : null))
+                .handleAsync((verification, ex) -> {
+                    if (ex != null && ex.getCause() instanceof RejectedExecutionException) {
+                        LOGGER.warn(this.getClass().getName() + ".verifyCredentials() " + HASHING_BUSY_MESSAGE);
+                        responseObserver.onError(Status.RESOURCE_EXHAUSTED.withDescription(HASHING_BUSY_MESSAGE).asRuntimeException());
+
+                    } else if (ex != null) {
+                        /**
+                         * Reading the credentials or parsing the stored hash failed,
+                         * the password itself was never checked
+                         */
+                        LOGGER.error("Exception verifying user credentials : " + mergeStackTrace(ex));
+                        responseObserver.onError(Status.INTERNAL.withCause(ex).asRuntimeException());
+
+                    } else if (!verification.isValid()) {
                         final String errorMessage = "Email address or password are not correct.";
 
                         LOGGER.error(errorMessage);
                         responseObserver.onError(Status.INVALID_ARGUMENT.withDescription(errorMessage).asRuntimeException());
 
                     } else {
+                        final UserCredentials credential = credentialFuture.join();
+                        if (verification.getUpgradedHash() != null) {
+                            upgradePasswordHash(credential.getEmail(), verification.getUpgradedHash());
+                        }
+
                         responseObserver.onNext(VerifyCredentialsResponse
                                 .newBuilder()
                                 .setUserId(TypeConverter.uuidToUuid(credential.getUserid()))
@@ -388,7 +447,27 @@ public class UserManagementService extends AbstractUserManagementService {
 
                         LOGGER.debug("End verifying user credentials");
                     }
-                    return credential;
+                    return verification;
+                }, rpcExecutor);
+    }
+
+    /**
+     * Replace an outdated password hash by the one of the current format, the password
+     * was just verified so the login does not wait for it. When it fails the outdated
+     * hash is still valid and replaced on the next login.
+     */
+    private void upgradePasswordHash(String email, String upgradedHash) {
+        final BoundStatement updatePassword = verifyCredentials_updatePasswordPrepared.bind()
+                .setString("password", upgradedHash)
+                .setString("email", email);
+
+        FutureUtils.buildCompletableFuture(dseSession.executeAsync(updatePassword))
+                .whenComplete((rs, ex) -> {
+                    if (ex != null) {
+                        LOGGER.error("Exception upgrading the password hash of " + email + " : " + mergeStackTrace(ex));
+                    } else {
+                        LOGGER.debug("Upgraded the password hash of " + email);
+                    }
                 });
     }
 
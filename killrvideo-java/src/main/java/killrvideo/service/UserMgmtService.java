@@ -23,10 +23,11 @@ import com.datastax.driver.core.querybuilder.QueryBuilder;
 import com.datastax.driver.dse.DseSession;
 import com.google.common.eventbus.EventBus;
 
+import killrvideo.cql.PreparedStatementRegistry;
 import killrvideo.entity.Profile;
 import killrvideo.entity.Schema;
+import killrvideo.security.PasswordHasher;
 import killrvideo.utils.FutureUtils;
-import killrvideo.utils.HashUtils;
 import killrvideo.validation.KillrVideoInputValidator;
 
 @Service
@@ -40,9 +41,15 @@ public class UserMgmtService {
 	@Inject
 	DseSession dseSession;
 
+	@Inject
+	PreparedStatementRegistry statementRegistry;
+
 	@Inject
 	KillrVideoInputValidator validator;
 
+	@Inject
+	PasswordHasher passwordHasher;
+
 	private String usersTableName;
 	private String userCredentialsTableName;
 	private PreparedStatement createUser_checkEmailPrepared;
@@ -55,30 +62,27 @@ public class UserMgmtService {
 		usersTableName = "users";
 		userCredentialsTableName = "user_credentials";
 
-		createUser_checkEmailPrepared = dseSession.prepare(QueryBuilder
+		statementRegistry.prepare("createUser_checkEmailPrepared", QueryBuilder
 				.insertInto(Schema.KEYSPACE, userCredentialsTableName).value("email", QueryBuilder.bindMarker())
-				.value("password", QueryBuilder.bindMarker()).value("userid", QueryBuilder.bindMarker()).ifNotExists() // use
-																														// lightweight
-																														// transaction
-		).setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+				.value("password", QueryBuilder.bindMarker()).value("userid", QueryBuilder.bindMarker())
+				.ifNotExists(), // use lightweight transaction
+				prepared -> createUser_checkEmailPrepared = prepared.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM));
 
-		createUser_insertUserPrepared = dseSession.prepare(QueryBuilder.insertInto(Schema.KEYSPACE, usersTableName)
+		statementRegistry.prepare("createUser_insertUserPrepared", QueryBuilder.insertInto(Schema.KEYSPACE, usersTableName)
 				.value("userid", QueryBuilder.bindMarker()).value("firstname", QueryBuilder.bindMarker())
 				.value("lastname", QueryBuilder.bindMarker()).value("email", QueryBuilder.bindMarker())
-				.value("created_date", QueryBuilder.bindMarker()).ifNotExists() // use
-																				// lightweight
-																				// transaction
-		).setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+				.value("created_date", QueryBuilder.bindMarker()).ifNotExists(), // use lightweight transaction
+				prepared -> createUser_insertUserPrepared = prepared.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM));
 
-		getUserProfile_getUsersPrepared = dseSession
-				.prepare(QueryBuilder.select().all().from(Schema.KEYSPACE, usersTableName)
-						.where(QueryBuilder.in("userid", QueryBuilder.bindMarker())))
-				.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+		statementRegistry.prepare("getUserProfile_getUsersPrepared",
+				QueryBuilder.select().all().from(Schema.KEYSPACE, usersTableName)
+						.where(QueryBuilder.in("userid", QueryBuilder.bindMarker())),
+				prepared -> getUserProfile_getUsersPrepared = prepared.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM));
 
-		getUser_credentials = dseSession
-				.prepare(QueryBuilder.select().all().from(Schema.KEYSPACE, userCredentialsTableName)
-						.where(QueryBuilder.in("email", QueryBuilder.bindMarker())))
-				.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+		statementRegistry.prepare("getUser_credentials",
+				QueryBuilder.select().all().from(Schema.KEYSPACE, userCredentialsTableName)
+						.where(QueryBuilder.in("email", QueryBuilder.bindMarker())),
+				prepared -> getUser_credentials = prepared.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM));
 
 	}
 
@@ -89,29 +93,26 @@ public class UserMgmtService {
 		final Date now = new Date();
 		final UUID userIdUUID = UUID.randomUUID();
 
-		/** Trim the password **/
-		final String hashedPassword = HashUtils.hashPassword(user.getPassword().trim());
 		final String exceptionMessage = String.format("Exception creating user because it already exists with email %s",
 				user.getEmail());
 
 		/**
-		 * We insert first the credentials since the LWT condition is on the
-		 * user email
+		 * The password is trimmed and hashed on the password hashing threads,
+		 * then we insert first the credentials since the LWT condition is on
+		 * the user email
 		 *
 		 * Note, the LWT condition is set up at the prepared statement
-		 */
-		final BoundStatement checkEmailQuery = createUser_checkEmailPrepared.bind().setString("email", user.getEmail())
-				.setString("password", hashedPassword).setUUID("userid", userIdUUID);
-
-		/**
+		 *
 		 * Note that we have multiple executeAsync() calls in the following
 		 * chain. We check our user_credentials first, if that passes, we move
 		 * onto inserting the user into the users table. Both cases use
 		 * lightweight transactions to ensure we are not duplicating already
 		 * existing users within the database.
 		 */
-		CompletableFuture<ResultSet> checkEmailFuture = FutureUtils
-				.buildCompletableFuture(dseSession.executeAsync(checkEmailQuery))
+		CompletableFuture<ResultSet> checkEmailFuture = passwordHasher.hash(user.getPassword())
+				.thenCompose(hashedPassword -> FutureUtils.buildCompletableFuture(dseSession.executeAsync(
+						createUser_checkEmailPrepared.bind().setString("email", user.getEmail())
+								.setString("password", hashedPassword).setUUID("userid", userIdUUID))))
 				/**
 				 * I use the *Async() version of .handle below because I am
 				 * chaining multiple async futures. In testing we found that
@@ -236,7 +237,7 @@ public class UserMgmtService {
 				});
 	
 		Profile userProfile =  checkEmailFuture.get();
-		if(userProfile == null || !HashUtils.isPasswordValid(password, userProfile.getPassword())){
+		if(userProfile == null || !passwordHasher.verify(password, userProfile.getPassword()).get().isValid()){
             final String errorMessage = "Email address or password are not correct.";
             LOGGER.error(errorMessage);
             return null;
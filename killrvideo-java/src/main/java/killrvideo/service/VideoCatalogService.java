@@ -14,20 +14,27 @@ import com.google.protobuf.ProtocolStringList;
 import io.grpc.Status;
 import io.grpc.stub.StreamObserver;
 
+import killrvideo.async.RpcExecutor;
+import killrvideo.cache.VideoNearCache;
+import killrvideo.codec.RowCodecs;
 import killrvideo.common.CommonTypes.Uuid;
+import killrvideo.configuration.KillrVideoProperties;
+import killrvideo.cql.PreparedStatementRegistry;
 import killrvideo.entity.LatestVideos;
 import killrvideo.entity.Schema;
 import killrvideo.entity.UserVideos;
 import killrvideo.entity.Video;
 import killrvideo.events.CassandraMutationError;
 import killrvideo.utils.FutureUtils;
+import killrvideo.utils.IdempotentReads;
+import killrvideo.utils.MultiKeyReadExecutor;
+import killrvideo.utils.ResultSetStreamer;
 import killrvideo.utils.TypeConverter;
 import killrvideo.validation.KillrVideoInputValidator;
 import killrvideo.video_catalog.VideoCatalogServiceGrpc.AbstractVideoCatalogService;
 import killrvideo.video_catalog.VideoCatalogServiceOuterClass.*;
 import killrvideo.video_catalog.events.VideoCatalogEvents.YouTubeVideoAdded;
 
-import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,7 +49,8 @@ import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -55,7 +63,7 @@ import static killrvideo.utils.ExceptionUtils.mergeStackTrace;
 public class VideoCatalogService extends AbstractVideoCatalogService {
 
     // used as a container for custom paging state for latest videos
-    class CustomPagingState {
+    static class CustomPagingState {
         public List<String> buckets;
         public int currentBucket;
         public String cassandraPagingState;
@@ -82,12 +90,24 @@ public class VideoCatalogService extends AbstractVideoCatalogService {
     @Inject
     DseSession dseSession;
 
+    @Inject
+    PreparedStatementRegistry statementRegistry;
+
     @Inject
     EventBus eventBus;
 
     @Inject
     KillrVideoInputValidator validator;
 
+    @Inject
+    RpcExecutor rpcExecutor;
+
+    @Inject
+    KillrVideoProperties properties;
+
+    @Inject
+    VideoNearCache videoNearCache;
+
     private String videosTableName;
     private String latestVideosTableName;
     private String userVideosTableName;
@@ -98,6 +118,11 @@ public class VideoCatalogService extends AbstractVideoCatalogService {
     private PreparedStatement submitYouTubeVideo_insertVideo;
     private PreparedStatement submitYouTubeVideo_insertUserVideo;
     private PreparedStatement submitYouTubeVideo_insertLatestVideo;
+    private PreparedStatement latestVideoPreview_shardStartingPointPrepared;
+    private PreparedStatement latestVideoPreview_shardNoStartingPointPrepared;
+    private PreparedStatement submitYouTubeVideo_insertShardedLatestVideo;
+    private ShardedLatestVideosReader shardedLatestVideosReader;
+    private MultiKeyReadExecutor multiKeyReader;
 
     @PostConstruct
     public void init(){
@@ -117,41 +142,50 @@ public class VideoCatalogService extends AbstractVideoCatalogService {
         latestVideosTableName = latestVideosMapper.getTableMetadata().getName();
         userVideosTableName = userVideosMapper.getTableMetadata().getName();
 
+        /**
+         * Reads built from plain strings are not known to be idempotent by the driver,
+         * they are marked so they can be speculatively executed, see DriverProfile
+         */
+
         // Prepared statements for getLatestVideoPreviews()
-        latestVideoPreview_startingPointPrepared = dseSession.prepare(
+        statementRegistry.prepare("latestVideoPreview_startingPointPrepared",
                 "" +
                         "SELECT * " +
                         "FROM " + Schema.KEYSPACE + "." + latestVideosTableName + " " +
                         "WHERE yyyymmdd = :ymd " +
-                        "AND (added_date, videoid) <= (:ad, :vid)"
-        ).setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+                        "AND (added_date, videoid) <= (:ad, :vid)",
+                prepared -> latestVideoPreview_startingPointPrepared = prepared
+                        .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM).setIdempotent(true));
 
-        latestVideoPreview_noStartingPointPrepared = dseSession.prepare(
+        statementRegistry.prepare("latestVideoPreview_noStartingPointPrepared",
                 "" +
                         "SELECT * " +
                         "FROM " + Schema.KEYSPACE + "." + latestVideosTableName + " " +
-                        "WHERE yyyymmdd = :ymd "
-        ).setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+                        "WHERE yyyymmdd = :ymd ",
+                prepared -> latestVideoPreview_noStartingPointPrepared = prepared
+                        .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM).setIdempotent(true));
 
         // Prepared statements for getUserVideoPreviews()
-        userVideoPreview_startingPointPrepared = dseSession.prepare(
+        statementRegistry.prepare("userVideoPreview_startingPointPrepared",
                 "" +
                         "SELECT * " +
                         "FROM " + Schema.KEYSPACE + "." + userVideosTableName + " " +
                         "WHERE userid = :uid " +
-                        "AND (added_date, videoid) <= (:ad, :vid)"
-        ).setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+                        "AND (added_date, videoid) <= (:ad, :vid)",
+                prepared -> userVideoPreview_startingPointPrepared = prepared
+                        .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM).setIdempotent(true));
 
-        userVideoPreview_noStartingPointPrepared = dseSession.prepare(
+        statementRegistry.prepare("userVideoPreview_noStartingPointPrepared",
                 "" +
                         "SELECT * " +
                         "FROM " + Schema.KEYSPACE + "." + userVideosTableName + " " +
-                        "WHERE userid = :uid "
-        ).setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+                        "WHERE userid = :uid ",
+                prepared -> userVideoPreview_noStartingPointPrepared = prepared
+                        .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM).setIdempotent(true));
 
 
         // Prepared statements for submitYouTubeVideo()
-        submitYouTubeVideo_insertVideo = dseSession.prepare(
+        statementRegistry.prepare("submitYouTubeVideo_insertVideo",
                 QueryBuilder
                         .insertInto(Schema.KEYSPACE, videosTableName)
                         .value("videoId", QueryBuilder.bindMarker())
@@ -162,20 +196,20 @@ public class VideoCatalogService extends AbstractVideoCatalogService {
                         .value("location_type", QueryBuilder.bindMarker())
                         .value("preview_image_location", QueryBuilder.bindMarker())
                         .value("tags", QueryBuilder.bindMarker())
-                        .value("added_date", QueryBuilder.bindMarker())
-        ).setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+                        .value("added_date", QueryBuilder.bindMarker()),
+                prepared -> submitYouTubeVideo_insertVideo = prepared.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM));
 
-        submitYouTubeVideo_insertUserVideo = dseSession.prepare(
+        statementRegistry.prepare("submitYouTubeVideo_insertUserVideo",
                 QueryBuilder
                         .insertInto(Schema.KEYSPACE, userVideosTableName)
                         .value("userid", QueryBuilder.bindMarker())
                         .value("videoid", QueryBuilder.bindMarker())
                         .value("name", QueryBuilder.bindMarker())
                         .value("preview_image_location", QueryBuilder.bindMarker())
-                        .value("added_date", QueryBuilder.bindMarker())
-        ).setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+                        .value("added_date", QueryBuilder.bindMarker()),
+                prepared -> submitYouTubeVideo_insertUserVideo = prepared.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM));
 
-        submitYouTubeVideo_insertLatestVideo = dseSession.prepare(
+        statementRegistry.prepare("submitYouTubeVideo_insertLatestVideo",
                 QueryBuilder
                         .insertInto(Schema.KEYSPACE, latestVideosTableName)
                         .value("yyyymmdd", QueryBuilder.bindMarker())
@@ -184,8 +218,55 @@ public class VideoCatalogService extends AbstractVideoCatalogService {
                         .value("name", QueryBuilder.bindMarker())
                         .value("preview_image_location", QueryBuilder.bindMarker())
                         .value("added_date", QueryBuilder.bindMarker())
-                        .using(QueryBuilder.ttl(LATEST_VIDEOS_TTL_SECONDS))
-        ).setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+                        .using(QueryBuilder.ttl(LATEST_VIDEOS_TTL_SECONDS)),
+                prepared -> submitYouTubeVideo_insertLatestVideo = prepared.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM));
+
+        /**
+         * Sharded mode, latest videos are written to and read from latest_videos_sharded
+         * where each day is split into killrvideo.latest.videos.shards partitions.
+         * Existing rows of latest_videos can be copied with LatestVideosBackfill.
+         */
+        if (properties.latestVideosShards > 0) {
+            LOGGER.info("Latest videos are sharded over " + properties.latestVideosShards + " buckets per day");
+
+            statementRegistry.prepare("latestVideoPreview_shardStartingPointPrepared",
+                    "" +
+                            "SELECT yyyymmdd, added_date, videoid, userid, name, preview_image_location " +
+                            "FROM " + Schema.KEYSPACE + "." + LatestVideos.SHARDED_TABLE_NAME + " " +
+                            "WHERE yyyymmdd = :ymd " +
+                            "AND bucket = :bucket " +
+                            "AND (added_date, videoid) <= (:ad, :vid)",
+                    prepared -> latestVideoPreview_shardStartingPointPrepared = prepared
+                            .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM).setIdempotent(true));
+
+            statementRegistry.prepare("latestVideoPreview_shardNoStartingPointPrepared",
+                    "" +
+                            "SELECT yyyymmdd, added_date, videoid, userid, name, preview_image_location " +
+                            "FROM " + Schema.KEYSPACE + "." + LatestVideos.SHARDED_TABLE_NAME + " " +
+                            "WHERE yyyymmdd = :ymd " +
+                            "AND bucket = :bucket ",
+                    prepared -> latestVideoPreview_shardNoStartingPointPrepared = prepared
+                            .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM).setIdempotent(true));
+
+            statementRegistry.prepare("submitYouTubeVideo_insertShardedLatestVideo",
+                    QueryBuilder
+                            .insertInto(Schema.KEYSPACE, LatestVideos.SHARDED_TABLE_NAME)
+                            .value("yyyymmdd", QueryBuilder.bindMarker())
+                            .value("bucket", QueryBuilder.bindMarker())
+                            .value("userId", QueryBuilder.bindMarker())
+                            .value("videoid", QueryBuilder.bindMarker())
+                            .value("name", QueryBuilder.bindMarker())
+                            .value("preview_image_location", QueryBuilder.bindMarker())
+                            .value("added_date", QueryBuilder.bindMarker())
+                            .using(QueryBuilder.ttl(LATEST_VIDEOS_TTL_SECONDS)),
+                    prepared -> submitYouTubeVideo_insertShardedLatestVideo = prepared
+                            .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM));
+
+            shardedLatestVideosReader = new ShardedLatestVideosReader(properties.latestVideosShards);
+        }
+
+        multiKeyReader = new MultiKeyReadExecutor(dseSession.getCluster().getMetadata(),
+                Schema.KEYSPACE, properties.multiGetMaxInFlight);
     }
 
     @Override
@@ -198,6 +279,38 @@ public class VideoCatalogService extends AbstractVideoCatalogService {
         }
 
         final Date now = new Date();
+
+        insertYouTubeVideo(request, now)
+                .handleAsync((rs, ex) -> {
+                    if (rs != null) {
+                        responseObserver.onNext(SubmitYouTubeVideoResponse.newBuilder().build());
+                        responseObserver.onCompleted();
+
+                        LOGGER.debug("End submitting youtube video");
+
+                    } else if (ex != null) {
+                        LOGGER.error("Exception submitting youtube video : " + mergeStackTrace(ex));
+
+                        eventBus.post(new CassandraMutationError(request, ex, now.getTime()));
+                        responseObserver.onError(Status.INTERNAL.withCause(ex).asRuntimeException());
+
+                    }
+                    return rs;
+                }, rpcExecutor);
+    }
+
+    /**
+     * Write the video to videos, user_videos and latest_videos, and post a
+     * YouTubeVideoAdded event once done.
+     *
+     * Every row is derived from the request and the given date, used as write
+     * timestamp too, so writing the same video again with the same date, as the
+     * mutation replay does, leaves the tables unchanged.
+     * @param request
+     * @param now
+     * @return
+     */
+    public CompletableFuture<ResultSet> insertYouTubeVideo(SubmitYouTubeVideoRequest request, Date now) {
         final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyyMMdd");
         final String yyyyMMdd = dateFormat.format(now);
         final String location = request.getYouTubeVideoId();
@@ -226,7 +339,10 @@ public class VideoCatalogService extends AbstractVideoCatalogService {
                 .setString("preview_image_location", previewImageLocation)
                 .setTimestamp("added_date", now);
 
-        final BoundStatement insertLatestVideo = submitYouTubeVideo_insertLatestVideo.bind()
+        final BoundStatement insertLatestVideo = (properties.latestVideosShards > 0
+                ? submitYouTubeVideo_insertShardedLatestVideo.bind()
+                        .setInt("bucket", LatestVideos.shardOf(videoId, properties.latestVideosShards))
+                : submitYouTubeVideo_insertLatestVideo.bind())
                 .setString("yyyymmdd", yyyyMMdd)
                 .setUUID("userid", userId)
                 .setUUID("videoid", videoId)
@@ -241,46 +357,33 @@ public class VideoCatalogService extends AbstractVideoCatalogService {
         batchStatement.add(insertVideo);
         batchStatement.add(insertUserVideo);
         batchStatement.add(insertLatestVideo);
-        batchStatement.setDefaultTimestamp(now.getTime());
-
-        CompletableFuture<ResultSet> insertUserFuture = FutureUtils.buildCompletableFuture(dseSession.executeAsync(batchStatement))
-                .handle((rs, ex) -> {
-                    if (rs != null) {
-                        /**
-                         * See class {@link VideoAddedHandlers} for the impl
-                         */
-                        final YouTubeVideoAdded.Builder youTubeVideoAdded = YouTubeVideoAdded.newBuilder()
-                                .setAddedDate(TypeConverter.dateToTimestamp(now))
-                                .setDescription(description)
-                                .setLocation(location)
-                                .setName(name)
-                                .setPreviewImageLocation(previewImageLocation)
-                                .setTimestamp(TypeConverter.dateToTimestamp(now))
-                                .setUserId(request.getUserId())
-                                .setVideoId(request.getVideoId());
-
-                        youTubeVideoAdded.addAllTags(Sets.newHashSet(tagsList));
-
-                        /**
-                         * eventbus.post() for youTubeVideoAdded below is located both in the
-                         * VideoAddedhandlers and SuggestedVideos Service classes within the handle() method.
-                         * The YouTubeVideoAdded type triggers the handler.  The call in SuggestedVideos is
-                         * responsible for adding data into our graph recommendation engine.
-                         */
-                        eventBus.post(youTubeVideoAdded.build());
-
-                        responseObserver.onNext(SubmitYouTubeVideoResponse.newBuilder().build());
-                        responseObserver.onCompleted();
-
-                        LOGGER.debug("End submitting youtube video");
-
-                    } else if (ex != null) {
-                        LOGGER.error("Exception submitting youtube video : " + mergeStackTrace(ex));
+        // Cassandra write timestamps are in microseconds
+        batchStatement.setDefaultTimestamp(TimeUnit.MILLISECONDS.toMicros(now.getTime()));
 
-                        eventBus.post(new CassandraMutationError(request, ex));
-                        responseObserver.onError(Status.INTERNAL.withCause(ex).asRuntimeException());
+        return FutureUtils.buildCompletableFuture(dseSession.executeAsync(batchStatement))
+                .thenApply(rs -> {
+                    /**
+                     * See class {@link VideoAddedHandlers} for the impl
+                     */
+                    final YouTubeVideoAdded.Builder youTubeVideoAdded = YouTubeVideoAdded.newBuilder()
+                            .setAddedDate(TypeConverter.dateToTimestamp(now))
+                            .setDescription(description)
+                            .setLocation(location)
+                            .setName(name)
+                            .setPreviewImageLocation(previewImageLocation)
+                            .setTimestamp(TypeConverter.dateToTimestamp(now))
+                            .setUserId(request.getUserId())
+                            .setVideoId(request.getVideoId());
+
+                    youTubeVideoAdded.addAllTags(Sets.newHashSet(tagsList));
 
-                    }
+                    /**
+                     * eventbus.post() for youTubeVideoAdded below is located both in the
+                     * VideoAddedhandlers and SuggestedVideos Service classes within the handle() method.
+                     * The YouTubeVideoAdded type triggers the handler.  The call in SuggestedVideos is
+                     * responsible for adding data into our graph recommendation engine.
+                     */
+                    eventBus.post(youTubeVideoAdded.build());
                     return rs;
                 });
     }
@@ -296,34 +399,30 @@ public class VideoCatalogService extends AbstractVideoCatalogService {
 
         final UUID videoId = UUID.fromString(request.getVideoId().getValue());
 
-        // videoId matches the partition key set in the Video class
-        FutureUtils.buildCompletableFuture(videoMapper.getAsync(videoId))
-                .handle((video, ex) -> {
-                    if (video != null) {
+        /**
+         * Served from the near cache, only misses reach the videos table.
+         * videoId matches the partition key set in the Video class
+         */
+        videoNearCache.get(videoId)
+                .handleAsync((video, ex) -> {
+                    if (ex != null) {
+                        LOGGER.error("Exception getting video : " + mergeStackTrace(ex));
+                        responseObserver.onError(Status.INTERNAL.withCause(ex).asRuntimeException());
+
+                    } else if (video != null) {
                         LOGGER.debug("Video is: " + (video.getName()));
 
-                        /**
-                         * Check to see if any tags exist, if not, ensure to send
-                         * an empty set instead of null
-                         */
-                        if (CollectionUtils.isEmpty(video.getTags())) {
-                            video.setTags(Collections.emptySet());
-                        }
                         responseObserver.onNext((video.toVideoResponse()));
                         responseObserver.onCompleted();
 
-                    } else if (video == null) {
+                    } else {
                         LOGGER.warn("Video with id " + videoId + " was not found");
                         responseObserver.onError(Status.NOT_FOUND
                                 .withDescription("Video with id " + videoId + " was not found").asRuntimeException());
 
-                    } else if (ex != null) {
-                        LOGGER.error("Exception getting video : " + mergeStackTrace(ex));
-                        responseObserver.onError(Status.INTERNAL.withCause(ex).asRuntimeException());
-
                     }
                     return video;
-                });
+                }, rpcExecutor);
         LOGGER.debug("End getting video");
     }
 
@@ -348,23 +447,30 @@ public class VideoCatalogService extends AbstractVideoCatalogService {
         }
 
         try {
-            /**
-             * Fire a list of async SELECT, one for each video id
-             */
-            final List<CompletableFuture<Video>> listFuture = request
+            final List<UUID> videoIds = request
                     .getVideoIdsList()
                     .stream()
                     .map(uuid -> UUID.fromString(uuid.getValue()))
-                    .map(uuid -> FutureUtils.buildCompletableFuture(videoMapper.getAsync(uuid)))
                     .collect(toList());
 
             /**
-             * Merge all the async SELECT results
+             * Fire async SELECT, one for each video id, with a bounded
+             * number of them in flight, see {@link MultiKeyReadExecutor}
              */
-            CompletableFuture
-                    .allOf(listFuture.toArray(new CompletableFuture[listFuture.size()]))
-                    .thenApply(v -> listFuture.stream().map(CompletableFuture::join).collect(toList()))
-                    .handle((list, ex) -> {
+            final Map<UUID, Video> videos = new ConcurrentHashMap<>();
+            multiKeyReader
+                    .readAll(videoIds, MultiKeyReadExecutor::uuidRoutingKey,
+                            videoId -> IdempotentReads.getAsync(dseSession, videoMapper, videoId),
+                            (videoId, video) -> {
+                                if (video != null) {
+                                    videos.put(videoId, video);
+                                }
+                            })
+                    /**
+                     * Merge all the async SELECT results, keeping the requested order
+                     */
+                    .thenApply(v -> videoIds.stream().map(videos::get).collect(toList()))
+                    .handleAsync((list, ex) -> {
                         if (list != null) {
                             list.stream()
                                     .filter(x -> x != null)
@@ -382,7 +488,7 @@ public class VideoCatalogService extends AbstractVideoCatalogService {
 
                         }
                         return list;
-                    });
+                    }, rpcExecutor);
 
         } catch (Exception ex) {
             LOGGER.error("Exception getting video preview : " + mergeStackTrace(ex));
@@ -418,10 +524,16 @@ public class VideoCatalogService extends AbstractVideoCatalogService {
      * <br/>
      * <br/>
      *
-     * <strong>However, we can only use the native Cassandra paging state for the 1st query in the for loop. Indeed
+     * <strong>However, we can only use the native Cassandra paging state for the query of the current day. Indeed
      * Cassandra paging state is a hash of query string and bound values. We may switch partition to move one day
      * back in the past to fetch more results so the paging state will no longer be usable</strong>
      *
+     * <br/>
+     * <br/>
+     *
+     * The days are queried concurrently, up to <strong>killrvideo.latest.videos.max.buckets.in.flight</strong>
+     * at a time, and merged in (added_date, videoid) order.
+     *
      *
      */
     @Override
@@ -434,10 +546,10 @@ public class VideoCatalogService extends AbstractVideoCatalogService {
         }
 
         final CustomPagingState customPagingState = parseCustomPagingState(Optional.ofNullable(request.getPagingState()))
-                .orElse(this.buildFirstCustomPagingState());
+                .orElse(buildFirstCustomPagingState());
 
         final List<String> buckets = customPagingState.buckets;
-        int bucketIndex = customPagingState.currentBucket;
+        final int bucketIndex = customPagingState.currentBucket;
         final String rowPagingState = customPagingState.cassandraPagingState;
         LOGGER.debug("Custom paging state is: buckets: " + buckets.size() + " index: " + bucketIndex + " state: " + rowPagingState);
 
@@ -454,134 +566,165 @@ public class VideoCatalogService extends AbstractVideoCatalogService {
                 .filter(StringUtils::isNotBlank)
                 .map(UUID::fromString);
 
-        final List<VideoPreview> results = new ArrayList<>();
-        String nextPageState = "";
-
         /**
-         * Boolean to know if the native Cassandra paging
-         * state has been used
+         * Several day buckets are queried concurrently, see
+         * {@link LatestVideosScatterGather} for the merge and paging details
          */
-        final AtomicBoolean cassandraPagingStateUsed = new AtomicBoolean(false);
+        new LatestVideosScatterGather(buckets, bucketIndex, rowPagingState, request.getPageSize(),
+                properties.latestVideosMaxBucketsInFlight,
+                (yyyyMMdd, fetchSize, pagingState) -> properties.latestVideosShards > 0
+                        ? shardedLatestVideosReader.read(fetchSize, pagingState, (shard, shardFetchSize, shardPagingState) ->
+                                fetchLatestVideosShard(yyyyMMdd, shard, shardFetchSize, shardPagingState, startingAddedDate, startingVideoId))
+                        : fetchLatestVideosBucket(yyyyMMdd, fetchSize, pagingState, startingAddedDate, startingVideoId))
+                .read()
+                .handleAsync((page, ex) -> {
+                    if (page != null) {
+                        final String nextPageState = page.nextBucket < buckets.size()
+                                ? createPagingState(buckets, page.nextBucket, page.nextBucketPagingState)
+                                : "";
+
+                        LOGGER.debug("" +
+                                "buckets: " + buckets.size() +
+                                " index: " + page.nextBucket +
+                                " state: " + nextPageState +
+                                " results size: " + page.videos.size() +
+                                " request pageSize: " + request.getPageSize()
+                        );
+
+                        responseObserver.onNext(GetLatestVideoPreviewsResponse
+                                .newBuilder()
+                                .addAllVideoPreviews(page.videos.stream()
+                                        .map(LatestVideos::toVideoPreview)
+                                        .collect(toList()))
+                                .setPagingState(nextPageState).build());
+                        responseObserver.onCompleted();
 
-        try {
-            while (bucketIndex < buckets.size()) {
-                int recordsStillNeeded = request.getPageSize() - results.size();
-                LOGGER.debug("\nrecordsStillNeeded is: " + recordsStillNeeded + " pageSize is: " + request.getPageSize() + " results.size is: " + results.size());
+                        LOGGER.debug("End getting latest video preview");
 
-                final String yyyyMMdd = buckets.get(bucketIndex);
+                    } else if (ex != null) {
+                        LOGGER.error("Exception when getting latest preview videos : " + mergeStackTrace(ex));
+                        responseObserver.onError(Status.INTERNAL.withCause(ex).asRuntimeException());
+                    }
+                    return page;
+                }, rpcExecutor);
+    }
 
-                final Optional<String> pagingState =
-                        Optional.ofNullable(rowPagingState)
-                                .filter(StringUtils::isNotBlank)
-                                .filter(pg -> !cassandraPagingStateUsed.get());
+    /**
+     * Read a page of a single latest_videos day bucket
+     * @param yyyyMMdd bucket
+     * @param fetchSize
+     * @param pagingState Cassandra paging state, null to read from the start of the bucket
+     * @param startingAddedDate
+     * @param startingVideoId
+     * @return CompletableFuture of the rows, cancelling it cancels the query
+     */
+    private CompletableFuture<LatestVideosScatterGather.BucketPage> fetchLatestVideosBucket(
+            String yyyyMMdd, int fetchSize, String pagingState,
+            Optional<Date> startingAddedDate, Optional<UUID> startingVideoId) {
 
-                BoundStatement bound;
+        BoundStatement bound;
 
-                if (startingAddedDate.isPresent() && startingVideoId.isPresent()) {
-                    /**
-                     * The startingPointPrepared statement can be found at the top
-                     * of the class within PostConstruct
-                     */
-                    bound = latestVideoPreview_startingPointPrepared.bind()
-                            .setString("ymd", yyyyMMdd)
-                            .setTimestamp("ad", startingAddedDate.get())
-                            .setUUID("vid", startingVideoId.get());
+        if (startingAddedDate.isPresent() && startingVideoId.isPresent()) {
+            /**
+             * The startingPointPrepared statement can be found at the top
+             * of the class within PostConstruct
+             */
+            bound = latestVideoPreview_startingPointPrepared.bind()
+                    .setString("ymd", yyyyMMdd)
+                    .setTimestamp("ad", startingAddedDate.get())
+                    .setUUID("vid", startingVideoId.get());
 
-                    LOGGER.debug("Current query is: " + bound.preparedStatement().getQueryString());
+        } else {
+            /**
+             * The noStartingPointPrepared statement can be found at the top
+             * of the class within PostConstruct
+             */
+            bound = latestVideoPreview_noStartingPointPrepared.bind()
+                    .setString("ymd", yyyyMMdd);
+        }
 
-                } else {
-                    /**
-                     * The noStartingPointPrepared statement can be found at the top
-                     * of the class within PostConstruct
-                     */
-                    bound = latestVideoPreview_noStartingPointPrepared.bind()
-                            .setString("ymd", yyyyMMdd);
+        LOGGER.debug("Current query is: " + bound.preparedStatement().getQueryString()
+                + " FETCH SIZE is: " + fetchSize + " ymd is: " + yyyyMMdd);
 
-                    LOGGER.debug("Current query is: " + bound.preparedStatement().getQueryString());
-                }
+        return fetchLatestVideosPage(bound, fetchSize, pagingState);
+    }
 
-                bound.setFetchSize(recordsStillNeeded);
-                LOGGER.debug("FETCH SIZE is: " + bound.getFetchSize() + " ymd is: " + yyyyMMdd);
+    /**
+     * Read a page of a single shard of a day in latest_videos_sharded
+     * @param yyyyMMdd day
+     * @param shard bucket within the day
+     * @param fetchSize
+     * @param pagingState Cassandra paging state, null to read from the start of the shard
+     * @param startingAddedDate
+     * @param startingVideoId
+     * @return CompletableFuture of the rows, cancelling it cancels the query
+     */
+    private CompletableFuture<LatestVideosScatterGather.BucketPage> fetchLatestVideosShard(
+            String yyyyMMdd, int shard, int fetchSize, String pagingState,
+            Optional<Date> startingAddedDate, Optional<UUID> startingVideoId) {
 
-                pagingState.ifPresent(x -> {
-                            bound.setPagingState(PagingState.fromString(x));
-                            cassandraPagingStateUsed.compareAndSet(false, true);
-                        }
-                );
-
-                final CompletableFuture<Result<LatestVideos>> videosFuture = FutureUtils
-                        .buildCompletableFuture(latestVideosMapper.mapAsync(dseSession.executeAsync(bound)))
-                        .handle((latestVideos, ex) -> {
-                            if (latestVideos != null) {
-                                /**
-                                 * For those of you wondering where the call to fetchMoreResults()
-                                 * is take a look here for an explanation
-                                 * https://docs.datastax.com/en/drivers/java/3.2/com/datastax/driver/core/PagingIterable.html#getAvailableWithoutFetching--
-                                 * Quick summary, when getAvailableWithoutFetching() == 0 it automatically calls fetchMoreResults()
-                                 * We could use it to force a fetch in a "prefetch" scenario, but that
-                                 * is not what we are doing here.
-                                 */
-                                int remaining = latestVideos.getAvailableWithoutFetching();
-                                for (LatestVideos latestVideo : latestVideos) {
-                                    LOGGER.debug("latest video is: " + latestVideo.getName());
-                                    // Add each row to results
-                                    results.add(latestVideo.toVideoPreview());
-
-                                    if (--remaining == 0) {
-                                        break;
-                                    }
-                                }
+        BoundStatement bound;
 
-                            } else if (ex != null) {
-                                LOGGER.error("Exception getting latest video preview : " + mergeStackTrace(ex));
-                                responseObserver.onError(Status.INTERNAL.withCause(ex).asRuntimeException());
+        if (startingAddedDate.isPresent() && startingVideoId.isPresent()) {
+            bound = latestVideoPreview_shardStartingPointPrepared.bind()
+                    .setString("ymd", yyyyMMdd)
+                    .setInt("bucket", shard)
+                    .setTimestamp("ad", startingAddedDate.get())
+                    .setUUID("vid", startingVideoId.get());
 
-                            }
-                            return latestVideos;
-                        });
+        } else {
+            bound = latestVideoPreview_shardNoStartingPointPrepared.bind()
+                    .setString("ymd", yyyyMMdd)
+                    .setInt("bucket", shard);
+        }
 
-                final Result<LatestVideos> videos = videosFuture.get();
+        LOGGER.debug("Current query is: " + bound.preparedStatement().getQueryString()
+                + " FETCH SIZE is: " + fetchSize + " ymd is: " + yyyyMMdd + " bucket is: " + shard);
 
-                // See if we can stop querying
-                LOGGER.debug("results.size() is: " + results.size() + " request.getPageSize() is : " + request.getPageSize());
-                if (results.size() == request.getPageSize()) {
-                    final PagingState cassandraPagingState = videos.getAllExecutionInfo().get(0).getPagingState();
+        return fetchLatestVideosPage(bound, fetchSize, pagingState);
+    }
 
-                    if (cassandraPagingState != null) {
-                        LOGGER.debug("results.size() == request.getPageSize()");
-                        // Start from where we left off in this bucket if we get the next page
-                        nextPageState = createPagingState(buckets, bucketIndex, cassandraPagingState.toString());
+    /**
+     * Execute a latest videos query and keep the rows of its first page only
+     * @param bound
+     * @param fetchSize
+     * @param pagingState Cassandra paging state, null to read from the start
+     * @return CompletableFuture of the rows, cancelling it cancels the query
+     */
+    private CompletableFuture<LatestVideosScatterGather.BucketPage> fetchLatestVideosPage(
+            BoundStatement bound, int fetchSize, String pagingState) {
 
-                        break;
-                    }
+        bound.setFetchSize(fetchSize);
+        if (StringUtils.isNotBlank(pagingState)) {
+            bound.setPagingState(PagingState.fromString(pagingState));
+        }
+
+        final CompletableFuture<ResultSet> query = FutureUtils.buildCompletableFuture(dseSession.executeAsync(bound));
+        final CompletableFuture<LatestVideosScatterGather.BucketPage> page = query.thenApply(resultSet -> {
+            final Result<LatestVideos> latestVideos = latestVideosMapper.map(resultSet);
 
-                // Start from the beginning of the next bucket since we're out of rows in this one
-                } else if (bucketIndex == buckets.size() - 1) {
-                    LOGGER.debug("bucketIndex == buckets.size() - 1)");
-                    nextPageState = createPagingState(buckets, bucketIndex + 1, "");
-                }
-
-                LOGGER.debug("" +
-                        "buckets: " + buckets.size() +
-                        " index: " + bucketIndex +
-                        " state: " + nextPageState +
-                        " results size: " + results.size() +
-                        " request pageSize: " + request.getPageSize()
-                );
-                bucketIndex++;
+            /**
+             * Only keep the rows of the fetched page, iterating further
+             * would call fetchMoreResults() synchronously
+             */
+            final List<LatestVideos> rows = new ArrayList<>(resultSet.getAvailableWithoutFetching());
+            while (resultSet.getAvailableWithoutFetching() > 0) {
+                rows.add(latestVideos.one());
             }
 
-            responseObserver.onNext(GetLatestVideoPreviewsResponse
-                    .newBuilder()
-                    .addAllVideoPreviews(results)
-                    .setPagingState(nextPageState).build());
-            responseObserver.onCompleted();
+            return new LatestVideosScatterGather.BucketPage(rows, Optional
+                    .ofNullable(resultSet.getExecutionInfo().getPagingState())
+                    .map(PagingState::toString)
+                    .orElse(null));
+        });
 
-        } catch (Throwable throwable) {
-            LOGGER.error("Exception when getting latest preview videos : " + mergeStackTrace(throwable));
-            responseObserver.onError(Status.INTERNAL.withCause(throwable).asRuntimeException());
-        }
-        LOGGER.debug("End getting latest video preview");
+        // Cancelling the page must also cancel the underlying query
+        page.whenComplete((rows, ex) -> {
+            if (page.isCancelled()) {
+                query.cancel(true);
+            }
+        });
+        return page;
     }
 
 
@@ -594,6 +737,69 @@ public class VideoCatalogService extends AbstractVideoCatalogService {
             return;
         }
 
+        /**
+         * Rows are converted straight to previews, see {@link RowCodecs#USER_VIDEO_PREVIEW}
+         */
+        FutureUtils.buildCompletableFuture(dseSession.executeAsync(bindUserVideoPreviews(request)))
+                .handleAsync((userVideos, ex) -> {
+                    try {
+                        if (userVideos != null) {
+                            final GetUserVideoPreviewsResponse.Builder builder = GetUserVideoPreviewsResponse.newBuilder();
+
+                            int remaining = userVideos.getAvailableWithoutFetching();
+                            for (Row row : userVideos) {
+                                builder.addVideoPreviews(RowCodecs.USER_VIDEO_PREVIEW.apply(row));
+                                builder.setUserId(request.getUserId());
+
+                                if (--remaining == 0) {
+                                    break;
+                                }
+                            }
+
+                            Optional.ofNullable(userVideos.getExecutionInfo().getPagingState())
+                                    .map(PagingState::toString)
+                                    .ifPresent(builder::setPagingState);
+                            responseObserver.onNext(builder.build());
+                            responseObserver.onCompleted();
+
+                            LOGGER.debug("End getting user video preview");
+
+                        } else if (ex != null) {
+                            LOGGER.error("Exception getting user video preview : " + mergeStackTrace(ex));
+
+                            responseObserver.onError(Status.INTERNAL.withCause(ex).asRuntimeException());
+
+                        }
+
+                    } catch (Exception e) {
+                        LOGGER.error("Exception CATCH getting user video preview : " + mergeStackTrace(e));
+
+                        responseObserver.onError(Status.INTERNAL.withCause(e).asRuntimeException());
+                    }
+                    return userVideos;
+
+                }, rpcExecutor);
+    }
+
+    /**
+     * Same query as getUserVideoPreviews() with all the videos from the starting point
+     * streamed as they are fetched, page_size is the number of rows fetched at once.
+     * The rows are converted one at a time as they are sent.
+     */
+    @Override
+    public void streamUserVideoPreviews(GetUserVideoPreviewsRequest request, StreamObserver<VideoPreview> responseObserver) {
+
+        LOGGER.debug("-----Start streaming user video preview-----");
+
+        if (!validator.isValid(request, responseObserver)) {
+            return;
+        }
+
+        ResultSetStreamer.stream(dseSession.executeAsync(bindUserVideoPreviews(request)),
+                RowCodecs.USER_VIDEO_PREVIEW, responseObserver, "user video previews");
+    }
+
+    private BoundStatement bindUserVideoPreviews(GetUserVideoPreviewsRequest request) {
         final UUID userId = UUID.fromString(request.getUserId().getValue());
         final Optional<UUID> startingVideoId = Optional
                 .ofNullable(request.getStartingVideoId())
@@ -638,51 +844,7 @@ public class VideoCatalogService extends AbstractVideoCatalogService {
 
         bound.setFetchSize(request.getPageSize());
         pagingState.ifPresent( x -> bound.setPagingState(PagingState.fromString(x)));
-
-        /**
-         * Notice since I am passing userVideosMapper.mapAsync() into my call
-         * I get back results that are already mapped to UserVideos entities.
-         * This is a really nice convenience the mapper provides.
-         */
-        FutureUtils.buildCompletableFuture(userVideosMapper.mapAsync(dseSession.executeAsync(bound)))
-                .handle((userVideos, ex) -> {
-                    try {
-                        if (userVideos != null) {
-                            final GetUserVideoPreviewsResponse.Builder builder = GetUserVideoPreviewsResponse.newBuilder();
-
-                            int remaining = userVideos.getAvailableWithoutFetching();
-                            for (UserVideos userVideo : userVideos) {
-                                builder.addVideoPreviews(userVideo.toVideoPreview());
-                                builder.setUserId(request.getUserId());
-
-                                if (--remaining == 0) {
-                                    break;
-                                }
-                            }
-
-                            Optional.ofNullable(userVideos.getExecutionInfo().getPagingState())
-                                    .map(PagingState::toString)
-                                    .ifPresent(builder::setPagingState);
-                            responseObserver.onNext(builder.build());
-                            responseObserver.onCompleted();
-
-                            LOGGER.debug("End getting user video preview");
-
-                        } else if (ex != null) {
-                            LOGGER.error("Exception getting user video preview : " + mergeStackTrace(ex));
-
-                            responseObserver.onError(Status.INTERNAL.withCause(ex).asRuntimeException());
-
-                        }
-
-                    } catch (Exception e) {
-                        LOGGER.error("Exception CATCH getting user video preview : " + mergeStackTrace(e));
-
-                        responseObserver.onError(Status.INTERNAL.withCause(e).asRuntimeException());
-                    }
-                    return userVideos;
-
-                });
+        return bound;
     }
 
 
@@ -693,7 +855,7 @@ public class VideoCatalogService extends AbstractVideoCatalogService {
      * @param rowsPagingState
      * @return String
      */
-    private String createPagingState(List<String> buckets, int bucketIndex, String rowsPagingState) {
+    static String createPagingState(List<String> buckets, int bucketIndex, String rowsPagingState) {
         StringJoiner joiner = new StringJoiner("_");
         buckets.forEach(joiner::add);
         return joiner.toString() + "," + bucketIndex + "," + rowsPagingState;
@@ -706,7 +868,7 @@ public class VideoCatalogService extends AbstractVideoCatalogService {
      * @param customPagingStateString
      * @return Optional
      */
-    private Optional<CustomPagingState> parseCustomPagingState(Optional<String> customPagingStateString) {
+    static Optional<CustomPagingState> parseCustomPagingState(Optional<String> customPagingStateString) {
         return customPagingStateString
                 .map(pagingState -> {
                     Matcher matcher = PARSE_LATEST_PAGING_STATE.matcher(pagingState);
@@ -728,7 +890,7 @@ public class VideoCatalogService extends AbstractVideoCatalogService {
      * representing the initial state (List<String>, Integer, String).
      * @return CustomPagingState
      */
-    private CustomPagingState buildFirstCustomPagingState() {
+    static CustomPagingState buildFirstCustomPagingState() {
             final CustomPagingState customPagingState = new CustomPagingState();
             final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyyMMdd");
             final ZonedDateTime now = Instant.now().atZone(ZoneId.systemDefault());
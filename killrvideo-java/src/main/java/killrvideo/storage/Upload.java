@@ -0,0 +1,217 @@
+package killrvideo.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeSet;
+import com.google.common.collect.TreeRangeSet;
+import com.google.protobuf.ByteString;
+
+/**
+ * Video being uploaded, written in place as its chunks are received.
+ *
+ * Chunks are written at their offset in a hidden .part file, in any order and from any
+ * number of threads, so that a video is assembled while its chunks are uploaded in
+ * parallel, without ever being held in memory. The range of each chunk written is then
+ * appended to a hidden .ranges file, read back when the upload is opened again to resume it.
+ * Once the whole video is received, {@link #complete()} moves the .part file to the file
+ * of the video. It waits for the chunks being written, the ones written after it fail.
+ */
+public class Upload implements AutoCloseable {
+
+    private static final int RANGE_RECORD_BYTES = 16;
+
+    private final String url;
+    private final UUID videoId;
+    private final Path file;
+    private final Path partFile;
+    private final Path rangesFile;
+    private final long maxBytes;
+    private final FileChannel data;
+    private final FileChannel ranges;
+    private final RangeSet<Long> received = TreeRangeSet.create();
+
+    /**
+     * Held shared by the writes of chunks, and exclusively to complete or close the upload
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private boolean completed;
+
+    Upload(String url, UUID videoId, Path file, long maxBytes) throws IOException {
+        this.url = url;
+        this.videoId = videoId;
+        this.file = file;
+        this.partFile = file.resolveSibling("." + file.getFileName() + ".part");
+        this.rangesFile = file.resolveSibling("." + file.getFileName() + ".ranges");
+        this.maxBytes = maxBytes;
+        this.completed = Files.exists(file);
+        if (completed) {
+            this.data = null;
+            this.ranges = null;
+            received.add(Range.closedOpen(0L, Files.size(file)));
+        } else {
+            this.data = FileChannel.open(partFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.ranges = FileChannel.open(rangesFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            readRanges();
+        }
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public UUID getVideoId() {
+        return videoId;
+    }
+
+    /**
+     * Write a chunk, the buffers of the chunk are written as is with no intermediate copy
+     * @param offset position of the chunk in the video
+     * @throws IllegalArgumentException when the chunk ends past the largest video accepted
+     * @throws IllegalStateException when the upload is already complete
+     */
+    public void write(long offset, ByteString chunk) throws IOException {
+        final long end = offset + chunk.size();
+        if (offset < 0 || end > maxBytes) {
+            throw new IllegalArgumentException("Chunk [" + offset + ", " + end + ") out of the "
+                    + maxBytes + " bytes accepted for " + url);
+        }
+        lock.readLock().lock();
+        try {
+            checkNotCompleted();
+            if (chunk.isEmpty()) {
+                return;
+            }
+
+            long position = offset;
+            for (ByteBuffer buffer : chunk.asReadOnlyByteBufferList()) {
+                while (buffer.hasRemaining()) {
+                    position += data.write(buffer, position);
+                }
+            }
+
+            synchronized (received) {
+                final ByteBuffer record = ByteBuffer.allocate(RANGE_RECORD_BYTES).putLong(offset).putLong(end);
+                record.flip();
+                long recordPosition = ranges.size();
+                while (record.hasRemaining()) {
+                    recordPosition += ranges.write(record, recordPosition);
+                }
+                received.add(Range.closedOpen(offset, end));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return bytes received from the start of the video without any gap
+     */
+    public long getContiguousBytes() {
+        synchronized (received) {
+            final Range<Long> first = received.rangeContaining(0L);
+            return first == null ? 0 : first.upperEndpoint();
+        }
+    }
+
+    /**
+     * @return ranges received so far, in order
+     */
+    public List<Range<Long>> getReceivedRanges() {
+        synchronized (received) {
+            return new ArrayList<>(received.asRanges());
+        }
+    }
+
+    public boolean isCompleted() {
+        lock.readLock().lock();
+        try {
+            return completed;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Move the video received to its file, does nothing when the upload is already complete
+     * @return file of the video
+     * @throws IllegalStateException when nothing or only part of the video was received
+     */
+    public Path complete() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (completed) {
+                return file;
+            }
+            final List<Range<Long>> receivedRanges = getReceivedRanges();
+            if (receivedRanges.size() != 1 || receivedRanges.get(0).lowerEndpoint() != 0) {
+                throw new IllegalStateException("Upload " + url + " is missing chunks, received " + receivedRanges);
+            }
+            data.truncate(receivedRanges.get(0).upperEndpoint());
+            data.force(true);
+            completed = true;
+            data.close();
+            ranges.close();
+            Files.move(partFile, file, StandardCopyOption.ATOMIC_MOVE);
+            Files.delete(rangesFile);
+            return file;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (!completed) {
+                try {
+                    data.close();
+                } finally {
+                    ranges.close();
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void checkNotCompleted() {
+        if (completed) {
+            throw new IllegalStateException("Upload " + url + " is already complete");
+        }
+    }
+
+    /**
+     * Ranges written before the upload was closed, a record cut by a crash is ignored
+     * and the chunk it was written for is simply uploaded again
+     */
+    private void readRanges() throws IOException {
+        final ByteBuffer records = ByteBuffer.allocate(RANGE_RECORD_BYTES * 1024);
+        long position = 0;
+        while (true) {
+            final int read = ranges.read(records, position);
+            if (read < 0) {
+                break;
+            }
+            position += read;
+            records.flip();
+            while (records.remaining() >= RANGE_RECORD_BYTES) {
+                received.add(Range.closedOpen(records.getLong(), records.getLong()));
+            }
+            records.compact();
+        }
+        ranges.truncate(position - records.position());
+    }
+}
@@ -0,0 +1,126 @@
+package killrvideo.storage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Local object store of the uploaded videos, one directory per video under the root
+ * directory holding the video once uploaded.
+ *
+ * An upload is identified by its url, /uploads/videoid/file name, so that nothing but
+ * the files is needed to resume it after a restart. The uploads being written are
+ * opened once however many calls write to them, and closed when the last one releases
+ * them, see {@link #acquire(String)}.
+ */
+public class UploadStore implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(UploadStore.class);
+
+    private static final String URL_PREFIX = "/uploads/";
+    private static final Pattern URL = Pattern.compile(Pattern.quote(URL_PREFIX) + "([0-9a-fA-F-]{36})/([^/]+)");
+    private static final int MAX_FILE_NAME_LENGTH = 128;
+
+    private final Path root;
+    private final long maxUploadBytes;
+
+    /**
+     * Uploads opened, with the number of calls using each of them
+     */
+    private final Map<String, Upload> opened = new HashMap<>();
+    private final Map<String, Integer> users = new HashMap<>();
+
+    /**
+     * @param root directory of the videos, created if missing
+     * @param maxUploadBytes size of the largest video accepted
+     */
+    public UploadStore(Path root, long maxUploadBytes) throws IOException {
+        this.root = Files.createDirectories(root);
+        this.maxUploadBytes = maxUploadBytes;
+    }
+
+    /**
+     * Create the directory of a video
+     * @param fileName name of the file uploaded, only letters, digits, dots, dashes and underscores are kept
+     * @return url of the upload
+     */
+    public String create(UUID videoId, String fileName) throws IOException {
+        final String url = URL_PREFIX + videoId + "/" + sanitize(fileName);
+        Files.createDirectories(root.resolve(videoId.toString()));
+        return url;
+    }
+
+    /**
+     * Open an upload, every call must be followed by one of {@link #release(Upload)}
+     * @throws IllegalArgumentException when the url is not one of {@link #create(UUID, String)}
+     */
+    public synchronized Upload acquire(String url) throws IOException {
+        Upload upload = opened.get(url);
+        if (upload == null) {
+            final Matcher matcher = URL.matcher(url);
+            if (!matcher.matches() || !sanitize(matcher.group(2)).equals(matcher.group(2))) {
+                throw new IllegalArgumentException("Invalid upload url " + url);
+            }
+            final UUID videoId = UUID.fromString(matcher.group(1));
+            final Path directory = root.resolve(videoId.toString());
+            if (!Files.isDirectory(directory)) {
+                throw new IllegalArgumentException("Unknown upload url " + url);
+            }
+            upload = new Upload(url, videoId, directory.resolve(matcher.group(2)), maxUploadBytes);
+            opened.put(url, upload);
+        }
+        users.merge(url, 1, Integer::sum);
+        return upload;
+    }
+
+    /**
+     * Close the upload when no other call uses it
+     */
+    public synchronized void release(Upload upload) {
+        final Integer count = users.get(upload.getUrl());
+        if (count == null) {
+            return;
+        }
+        if (count > 1) {
+            users.put(upload.getUrl(), count - 1);
+            return;
+        }
+        users.remove(upload.getUrl());
+        opened.remove(upload.getUrl());
+        closeQuietly(upload);
+    }
+
+    @Override
+    public synchronized void close() {
+        opened.values().forEach(UploadStore::closeQuietly);
+        opened.clear();
+        users.clear();
+    }
+
+    static String sanitize(String fileName) {
+        final StringBuilder sanitized = new StringBuilder(Math.min(fileName.length(), MAX_FILE_NAME_LENGTH));
+        for (int i = 0; i < fileName.length() && sanitized.length() < MAX_FILE_NAME_LENGTH; i++) {
+            final char c = fileName.charAt(i);
+            final boolean kept = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '_' || (c == '.' && sanitized.length() > 0);
+            sanitized.append(kept ? c : '_');
+        }
+        return sanitized.length() == 0 ? "video" : sanitized.toString();
+    }
+
+    private static void closeQuietly(Upload upload) {
+        try {
+            upload.close();
+        } catch (IOException ex) {
+            LOGGER.warn("Cannot close upload " + upload.getUrl() + " : " + ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,576 @@
+package killrvideo.tools;
+
+import static killrvideo.service.VideoCatalogService.LATEST_VIDEOS_TTL_SECONDS;
+import static killrvideo.tools.CsvReader.parseSet;
+import static killrvideo.tools.CsvReader.parseTimestamp;
+import static killrvideo.utils.ExceptionUtils.mergeStackTrace;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.CodecRegistry;
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.Metadata;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ProtocolVersion;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.dse.DseCluster;
+import com.datastax.driver.dse.DseSession;
+import com.datastax.driver.mapping.Mapper;
+import com.datastax.driver.mapping.MappingManager;
+import com.google.common.util.concurrent.RateLimiter;
+
+import killrvideo.async.KillrVideoThreadFactory;
+import killrvideo.entity.LatestVideos;
+import killrvideo.entity.Schema;
+import killrvideo.entity.TagsByLetter;
+import killrvideo.entity.User;
+import killrvideo.entity.UserCredentials;
+import killrvideo.entity.UserVideos;
+import killrvideo.entity.Video;
+import killrvideo.entity.VideoByTag;
+import killrvideo.utils.FutureUtils;
+
+/**
+ * Load the CSV datasets of killrvido-db, as written by cqlsh COPY TO, instead of cqlsh COPY FROM.
+ *
+ * Each record is turned into the entities of every table it feeds, the way the services
+ * write them: a video is written to videos, user_videos, videos_by_tag, tags_by_letter and,
+ * when added within the latest videos TTL, to latest_videos (or latest_videos_sharded) with
+ * its remaining TTL. Null columns are not written, so no tombstone is created.
+ *
+ * Writes are grouped by the replicas of their partition into UNLOGGED batches of up to
+ * --batch-size statements, each batch is sent to one of those replicas which applies all
+ * of it locally. At most --max-in-flight batches are executed at once, throttled to
+ * --rate statements per second, and a failed batch is retried up to --max-attempts times,
+ * after an exponential backoff from --retry-delay-ms up to --max-retry-delay-ms. The retries
+ * wait on a scheduler, not on the driver thread that reported the failure.
+ *
+ * The number of records loaded is saved in &lt;csv file&gt;.checkpoint under --checkpoint-dir,
+ * a load stopped or failed resumes from there when run again, unless --restart is given.
+ * Invalid records are logged with their line and skipped.
+ *
+ * Usage: BulkLoader &lt;contact point&gt; &lt;dataset&gt;=&lt;csv file&gt;... [--option=value...]
+ */
+public class BulkLoader implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BulkLoader.class);
+
+    private static final String USAGE = "" +
+            "Usage: BulkLoader <contact point> <dataset>=<csv file>... [--option=value...]\n" +
+            "  datasets: users, user_credentials, videos, loaded in the order given\n" +
+            "  --batch-size=10             statements per UNLOGGED batch\n" +
+            "  --max-in-flight=64          batches executed at once\n" +
+            "  --rate=0                    statements per second, 0 for no limit\n" +
+            "  --max-attempts=3            executions of a batch before the load fails\n" +
+            "  --retry-delay-ms=100        backoff before the first retry of a batch, doubled at each retry\n" +
+            "  --max-retry-delay-ms=10000  longest backoff between two executions of a batch\n" +
+            "  --checkpoint-dir=.          where the checkpoints are saved\n" +
+            "  --restart                   ignore the checkpoints and load every record\n" +
+            "  --latest-videos-shards=0    as killrvideo.latest.videos.shards";
+
+    /**
+     * Partially filled batches are sent, and the checkpoint saved, every that many records
+     */
+    private static final int CHECKPOINT_INTERVAL = 10000;
+
+    private static final Mapper.Option SKIP_NULLS = Mapper.Option.saveNullFields(false);
+
+    /**
+     * Columns of each dataset, in the order of cqlsh COPY: partition key, clustering
+     * columns then the other columns by name
+     */
+    enum Dataset {
+        /**
+         * userid, created_date, email, firstname, lastname
+         */
+        USERS(5),
+        /**
+         * email, password, userid
+         */
+        USER_CREDENTIALS(3),
+        /**
+         * videoid, added_date, description, location, location_type, name, preview_image_location, tags, userid
+         */
+        VIDEOS(9);
+
+        final int columns;
+
+        Dataset(int columns) {
+            this.columns = columns;
+        }
+
+        static Dataset parse(String dataset) {
+            try {
+                return valueOf(dataset.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException("Unknown dataset " + dataset + ", expected users, user_credentials or videos");
+            }
+        }
+
+        /**
+         * Missing trailing columns are read as null, as the required ones are checked anyway.
+         * Exports of older schemas have extra trailing columns, accepted as long as they are empty.
+         */
+        void checkColumns(List<String> fields) {
+            while (fields.size() < columns) {
+                fields.add(null);
+            }
+            for (int i = columns; i < fields.size(); i++) {
+                if (fields.get(i) != null) {
+                    throw new IllegalArgumentException("Unexpected value in column " + (i + 1) + " : " + fields.get(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Record waiting for its writes, complete in the checkpoint once they all succeeded
+     */
+    private static final class PendingRecord {
+        private final long index;
+        private final AtomicInteger pendingWrites;
+        private final LoadCheckpoint checkpoint;
+
+        PendingRecord(long index, int writes, LoadCheckpoint checkpoint) {
+            this.index = index;
+            this.pendingWrites = new AtomicInteger(writes);
+            this.checkpoint = checkpoint;
+        }
+
+        void written() {
+            if (pendingWrites.decrementAndGet() == 0) {
+                checkpoint.complete(index);
+            }
+        }
+    }
+
+    private static final class PendingWrite {
+        private final Statement statement;
+        private final PendingRecord record;
+
+        PendingWrite(Statement statement, PendingRecord record) {
+            this.statement = statement;
+            this.record = record;
+        }
+    }
+
+    private final DseCluster cluster;
+    private final DseSession session;
+    private final ProtocolVersion protocolVersion;
+    private final CodecRegistry codecRegistry;
+    private final int batchSize;
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+    private final RateLimiter rateLimiter;
+    private final int maxAttempts;
+    private final long retryDelayMs;
+    private final long maxRetryDelayMs;
+    private final ScheduledExecutorService retries;
+    private final Path checkpointDir;
+    private final boolean restart;
+    private final int latestVideosShards;
+    private final DateTimeFormatter yyyyMMdd = DateTimeFormatter.ofPattern("yyyyMMdd").withZone(ZoneId.systemDefault());
+
+    private final Mapper<User> userMapper;
+    private final Mapper<UserCredentials> userCredentialsMapper;
+    private final Mapper<Video> videoMapper;
+    private final Mapper<UserVideos> userVideosMapper;
+    private final Mapper<LatestVideos> latestVideosMapper;
+    private final Mapper<VideoByTag> videosByTagMapper;
+    private final Mapper<TagsByLetter> tagsByLetterMapper;
+    private PreparedStatement insertShardedLatestVideo;
+
+    /**
+     * Writes grouped by the replicas of their partition, waiting for a full batch
+     */
+    private final Map<Set<Host>, List<PendingWrite>> batches = new LinkedHashMap<>();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final AtomicLong statementsWritten = new AtomicLong();
+    private final AtomicLong batchesWritten = new AtomicLong();
+
+    BulkLoader(DseCluster cluster, DseSession session, int batchSize, int maxInFlight, double rate, int maxAttempts,
+               long retryDelayMs, long maxRetryDelayMs, Path checkpointDir, boolean restart, int latestVideosShards) {
+        this(cluster, session, new MappingManager(session), batchSize, maxInFlight, rate, maxAttempts,
+                retryDelayMs, maxRetryDelayMs, checkpointDir, restart, latestVideosShards);
+    }
+
+    BulkLoader(DseCluster cluster, DseSession session, MappingManager manager, int batchSize, int maxInFlight, double rate,
+               int maxAttempts, long retryDelayMs, long maxRetryDelayMs, Path checkpointDir, boolean restart,
+               int latestVideosShards) {
+        this.cluster = cluster;
+        this.session = session;
+        this.protocolVersion = cluster.getConfiguration().getProtocolOptions().getProtocolVersion();
+        this.codecRegistry = cluster.getConfiguration().getCodecRegistry();
+        this.batchSize = batchSize;
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.rateLimiter = rate > 0 ? RateLimiter.create(rate) : null;
+        this.maxAttempts = maxAttempts;
+        this.retryDelayMs = retryDelayMs;
+        this.maxRetryDelayMs = maxRetryDelayMs;
+        this.retries = Executors.newSingleThreadScheduledExecutor(new KillrVideoThreadFactory());
+        this.checkpointDir = checkpointDir;
+        this.restart = restart;
+        this.latestVideosShards = latestVideosShards;
+
+        this.userMapper = manager.mapper(User.class);
+        this.userCredentialsMapper = manager.mapper(UserCredentials.class);
+        this.videoMapper = manager.mapper(Video.class);
+        this.userVideosMapper = manager.mapper(UserVideos.class);
+        this.latestVideosMapper = manager.mapper(LatestVideos.class);
+        this.videosByTagMapper = manager.mapper(VideoByTag.class);
+        this.tagsByLetterMapper = manager.mapper(TagsByLetter.class);
+
+        if (latestVideosShards > 0) {
+            insertShardedLatestVideo = session.prepare(
+                    "" +
+                            "INSERT INTO " + Schema.KEYSPACE + "." + LatestVideos.SHARDED_TABLE_NAME + " " +
+                            "(yyyymmdd, bucket, added_date, videoid, userid, name, preview_image_location) " +
+                            "VALUES (:ymd, :bucket, :ad, :vid, :uid, :name, :preview) " +
+                            "USING TTL :ttl"
+            );
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        final Map<Dataset, Path> datasets = new LinkedHashMap<>();
+        final Map<String, String> options = new LinkedHashMap<>();
+        try {
+            if (args.length < 2) {
+                throw new IllegalArgumentException("Expected a contact point and at least one dataset");
+            }
+            for (int i = 1; i < args.length; i++) {
+                final String argument = args[i];
+                final int equals = argument.indexOf('=');
+                if (argument.startsWith("--")) {
+                    options.put(argument.substring(2, equals < 0 ? argument.length() : equals),
+                            equals < 0 ? "true" : argument.substring(equals + 1));
+                } else if (equals > 0) {
+                    datasets.put(Dataset.parse(argument.substring(0, equals)), Paths.get(argument.substring(equals + 1)));
+                } else {
+                    throw new IllegalArgumentException("Unexpected argument " + argument);
+                }
+            }
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+            return;
+        }
+
+        final int batchSize = Integer.parseInt(options.getOrDefault("batch-size", "10"));
+        final int maxInFlight = Integer.parseInt(options.getOrDefault("max-in-flight", "64"));
+        final double rate = Double.parseDouble(options.getOrDefault("rate", "0"));
+        final int maxAttempts = Integer.parseInt(options.getOrDefault("max-attempts", "3"));
+        final long retryDelayMs = Long.parseLong(options.getOrDefault("retry-delay-ms", "100"));
+        final long maxRetryDelayMs = Long.parseLong(options.getOrDefault("max-retry-delay-ms", "10000"));
+        final Path checkpointDir = Paths.get(options.getOrDefault("checkpoint-dir", "."));
+        final boolean restart = Boolean.parseBoolean(options.getOrDefault("restart", "false"));
+        final int latestVideosShards = Integer.parseInt(options.getOrDefault("latest-videos-shards", "0"));
+        if (batchSize <= 0 || maxInFlight <= 0 || maxAttempts <= 0) {
+            throw new IllegalArgumentException("Batch size, max in flight and max attempts should be strictly positive");
+        }
+        if (retryDelayMs < 0 || maxRetryDelayMs < retryDelayMs) {
+            throw new IllegalArgumentException("Retry delay should not be negative nor above the max retry delay");
+        }
+
+        try (DseCluster cluster = DseCluster.builder().addContactPoint(args[0]).build();
+             DseSession session = cluster.connect();
+             BulkLoader loader = new BulkLoader(cluster, session, batchSize, maxInFlight, rate, maxAttempts,
+                     retryDelayMs, maxRetryDelayMs, checkpointDir, restart, latestVideosShards)) {
+
+            for (Map.Entry<Dataset, Path> dataset : datasets.entrySet()) {
+                loader.load(dataset.getKey(), dataset.getValue());
+            }
+        }
+    }
+
+    /**
+     * Load the records of the file past its checkpoint
+     * @return records loaded
+     */
+    long load(Dataset dataset, Path csv) throws IOException, InterruptedException {
+        final Path checkpointFile = checkpointDir.resolve(csv.getFileName() + ".checkpoint");
+        final long resumeFrom = restart ? 0 : LoadCheckpoint.read(checkpointFile);
+        final LoadCheckpoint checkpoint = new LoadCheckpoint(checkpointFile, resumeFrom);
+        if (resumeFrom > 0) {
+            LOGGER.info("Resuming " + csv + " after " + resumeFrom + " records");
+        }
+
+        final long start = System.nanoTime();
+        final long statementsAtStart = statementsWritten.get();
+        final long batchesAtStart = batchesWritten.get();
+        long records = 0;
+        long rejected = 0;
+        long sinceCheckpoint = 0;
+
+        /**
+         * Malformed UTF-8 is replaced rather than failing the whole file
+         */
+        try (CsvReader reader = new CsvReader(new BufferedReader(
+                new InputStreamReader(Files.newInputStream(csv), StandardCharsets.UTF_8)))) {
+
+            List<String> fields;
+            while (failure.get() == null && (fields = reader.next()) != null) {
+                final long index = records++;
+                if (index < resumeFrom) {
+                    continue;
+                }
+
+                final List<Statement> statements;
+                try {
+                    statements = toStatements(dataset, fields);
+                } catch (IllegalArgumentException ex) {
+                    LOGGER.warn("Skipping " + csv.getFileName() + " line " + reader.getRecordLineNumber() + " : " + ex.getMessage());
+                    rejected++;
+                    checkpoint.complete(index);
+                    continue;
+                }
+
+                final PendingRecord record = new PendingRecord(index, statements.size(), checkpoint);
+                for (Statement statement : statements) {
+                    add(new PendingWrite(statement, record));
+                }
+
+                if (++sinceCheckpoint == CHECKPOINT_INTERVAL) {
+                    sinceCheckpoint = 0;
+                    flush();
+                    checkpoint.save();
+                    LOGGER.info("Loaded " + checkpoint.committed() + " records of " + csv.getFileName());
+                }
+            }
+        }
+
+        flush();
+        // Wait for the last writes
+        inFlight.acquire(maxInFlight);
+        inFlight.release(maxInFlight);
+        checkpoint.save();
+
+        if (failure.get() != null) {
+            throw new IllegalStateException("Loading " + csv + " failed after " + checkpoint.committed()
+                    + " records, run it again to resume", failure.get());
+        }
+
+        final double seconds = (System.nanoTime() - start) / (double) TimeUnit.SECONDS.toNanos(1);
+        final long statements = statementsWritten.get() - statementsAtStart;
+        LOGGER.info(String.format("Loaded %d records of %s in %.1fs, %d skipped, %d statements in %d batches, %.0f statements/s",
+                records - resumeFrom, csv.getFileName(), seconds, rejected, statements,
+                batchesWritten.get() - batchesAtStart, statements / Math.max(seconds, 0.001)));
+        return records - resumeFrom;
+    }
+
+    /**
+     * Writes of a record to every table it feeds
+     */
+    List<Statement> toStatements(Dataset dataset, List<String> fields) {
+        dataset.checkColumns(fields);
+        switch (dataset) {
+            case USERS:
+                return Collections.singletonList(userMapper.saveQuery(
+                        new User(uuid(fields.get(0)), fields.get(3), fields.get(4), fields.get(2), parseTimestamp(fields.get(1))),
+                        SKIP_NULLS));
+
+            case USER_CREDENTIALS:
+                if (fields.get(0) == null) {
+                    throw new IllegalArgumentException("Missing email");
+                }
+                return Collections.singletonList(userCredentialsMapper.saveQuery(
+                        new UserCredentials(fields.get(0), fields.get(1), uuid(fields.get(2))),
+                        SKIP_NULLS));
+
+            case VIDEOS:
+                return videoStatements(fields);
+
+            default:
+                throw new IllegalArgumentException("Unsupported dataset " + dataset);
+        }
+    }
+
+    private List<Statement> videoStatements(List<String> fields) {
+        final UUID videoId = uuid(fields.get(0));
+        final Date addedDate = parseTimestamp(fields.get(1));
+        final String description = fields.get(2);
+        final String location = fields.get(3);
+        final int locationType = fields.get(4) == null ? 0 : Integer.parseInt(fields.get(4));
+        final String name = fields.get(5);
+        final String previewImageLocation = fields.get(6);
+        final Set<String> tags = parseSet(fields.get(7));
+        final UUID userId = uuid(fields.get(8));
+        if (addedDate == null) {
+            throw new IllegalArgumentException("Missing added_date");
+        }
+
+        final List<Statement> statements = new ArrayList<>(3 + 2 * tags.size());
+        // An empty set would be written as a tombstone
+        statements.add(videoMapper.saveQuery(
+                new Video(videoId, userId, name, description, location, locationType, previewImageLocation,
+                        tags.isEmpty() ? null : tags, addedDate),
+                SKIP_NULLS));
+        statements.add(userVideosMapper.saveQuery(
+                new UserVideos(userId, videoId, name, previewImageLocation, addedDate),
+                SKIP_NULLS));
+
+        for (String tag : tags) {
+            if (tag.isEmpty()) {
+                continue;
+            }
+            statements.add(videosByTagMapper.saveQuery(
+                    new VideoByTag(tag, videoId, userId, name, previewImageLocation, addedDate, addedDate),
+                    SKIP_NULLS));
+            statements.add(tagsByLetterMapper.saveQuery(new TagsByLetter(tag.substring(0, 1), tag)));
+        }
+
+        /**
+         * Only the videos the latest videos would still show, with the TTL they would have left
+         */
+        final long ageSeconds = Math.max(0, TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() - addedDate.getTime()));
+        if (ageSeconds < LATEST_VIDEOS_TTL_SECONDS) {
+            final int ttl = (int) (LATEST_VIDEOS_TTL_SECONDS - ageSeconds);
+            final String day = yyyyMMdd.format(addedDate.toInstant());
+            if (latestVideosShards > 0) {
+                statements.add(insertShardedLatestVideo.bind()
+                        .setString("ymd", day)
+                        .setInt("bucket", LatestVideos.shardOf(videoId, latestVideosShards))
+                        .setTimestamp("ad", addedDate)
+                        .setUUID("vid", videoId)
+                        .setUUID("uid", userId)
+                        .setString("name", name)
+                        .setString("preview", previewImageLocation)
+                        .setInt("ttl", ttl));
+            } else {
+                statements.add(latestVideosMapper.saveQuery(
+                        new LatestVideos(day, userId, videoId, name, previewImageLocation, addedDate),
+                        SKIP_NULLS, Mapper.Option.ttl(ttl)));
+            }
+        }
+        return statements;
+    }
+
+    private void add(PendingWrite write) throws InterruptedException {
+        final Set<Host> replicas = replicasOf(write.statement);
+        final List<PendingWrite> batch = batches.computeIfAbsent(replicas, key -> new ArrayList<>(batchSize));
+        batch.add(write);
+        if (batch.size() >= batchSize) {
+            batches.remove(replicas);
+            submit(batch);
+        }
+    }
+
+    /**
+     * Send the partially filled batches
+     */
+    private void flush() throws InterruptedException {
+        for (List<PendingWrite> batch : batches.values()) {
+            submit(batch);
+        }
+        batches.clear();
+    }
+
+    /**
+     * @return replicas of the partition written, empty when unknown
+     */
+    private Set<Host> replicasOf(Statement statement) {
+        final ByteBuffer routingKey = statement.getRoutingKey(protocolVersion, codecRegistry);
+        final String keyspace = statement.getKeyspace();
+        if (routingKey == null || keyspace == null) {
+            return Collections.emptySet();
+        }
+        return cluster.getMetadata().getReplicas(Metadata.quote(keyspace), routingKey);
+    }
+
+    private void submit(List<PendingWrite> writes) throws InterruptedException {
+        final Statement statement;
+        if (writes.size() == 1) {
+            statement = writes.get(0).statement;
+        } else {
+            final BatchStatement batch = new BatchStatement(BatchStatement.Type.UNLOGGED);
+            writes.forEach(write -> batch.add(write.statement));
+            statement = batch;
+        }
+        statement.setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM).setIdempotent(true);
+
+        if (rateLimiter != null) {
+            rateLimiter.acquire(writes.size());
+        }
+        inFlight.acquire();
+        execute(statement, writes, 1);
+    }
+
+    private void execute(Statement statement, List<PendingWrite> writes, int attempt) {
+        FutureUtils.buildCompletableFuture(session.executeAsync(statement))
+                .whenComplete((rs, ex) -> {
+                    if (ex == null) {
+                        statementsWritten.addAndGet(writes.size());
+                        batchesWritten.incrementAndGet();
+                        writes.forEach(write -> write.record.written());
+                        inFlight.release();
+                    } else if (attempt < maxAttempts && failure.get() == null) {
+                        final long delay = retryDelay(attempt);
+                        LOGGER.warn("Retrying a batch of " + writes.size() + " statements in " + delay + "ms, attempt "
+                                + (attempt + 1) + " : " + ex.getMessage());
+                        retries.schedule(() -> execute(statement, writes, attempt + 1), delay, TimeUnit.MILLISECONDS);
+                    } else {
+                        LOGGER.error("Exception writing a batch of " + writes.size() + " statements : " + mergeStackTrace(ex));
+                        failure.compareAndSet(null, ex);
+                        inFlight.release();
+                    }
+                });
+    }
+
+    /**
+     * Exponential backoff with jitter, the delay is picked between half and all of
+     * --retry-delay-ms doubled at each failed attempt, up to --max-retry-delay-ms
+     * @param attempt executions of the batch so far, from 1
+     */
+    long retryDelay(int attempt) {
+        final long backoff = Math.min(maxRetryDelayMs, retryDelayMs << Math.min(attempt - 1, 30));
+        return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    }
+
+    /**
+     * Stop the retries, once every file is loaded
+     */
+    @Override
+    public void close() {
+        retries.shutdownNow();
+    }
+
+    private static UUID uuid(String value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Missing uuid");
+        }
+        return UUID.fromString(value);
+    }
+}
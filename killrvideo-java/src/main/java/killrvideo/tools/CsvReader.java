@@ -0,0 +1,208 @@
+package killrvideo.tools;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoField;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Streaming reader of the CSV files written by cqlsh COPY TO, one record at a time
+ * so that a file of any size is read in constant memory.
+ *
+ * Fields are separated by commas and may be quoted with double quotes, a quoted field
+ * can hold commas, line breaks and doubled quotes. As with the cqlsh default ESCAPE,
+ * a backslash takes the next character literally. Empty fields are read as null,
+ * as cqlsh does, and quoted empty fields as empty strings.
+ */
+public class CsvReader implements Closeable {
+
+    /**
+     * Timestamps as written by cqlsh, e.g. 2015-12-17 08:00:00+0000 or 2015-12-17 08:00:00.123+0000
+     */
+    private static final DateTimeFormatter TIMESTAMP = new DateTimeFormatterBuilder()
+            .appendPattern("yyyy-MM-dd HH:mm:ss")
+            .optionalStart().appendFraction(ChronoField.NANO_OF_SECOND, 0, 9, true).optionalEnd()
+            .appendPattern("Z")
+            .toFormatter();
+
+    private static final int END = -1;
+    private static final char ESCAPE = '\\';
+
+    private final Reader reader;
+    private final StringBuilder field = new StringBuilder(256);
+    private int pushedBack = Integer.MIN_VALUE;
+    private long lineNumber = 1;
+    private long recordLineNumber;
+
+    /**
+     * @param reader read as is, wrap it in a BufferedReader
+     */
+    public CsvReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * @return fields of the next record, null at the end of the input
+     */
+    public List<String> next() throws IOException {
+        int c = read();
+        while (c == '\r' || c == '\n') {
+            c = read();
+        }
+        if (c == END) {
+            return null;
+        }
+
+        recordLineNumber = lineNumber;
+        final List<String> fields = new ArrayList<>();
+        boolean quoted = false;
+        boolean wasQuoted = false;
+        field.setLength(0);
+
+        while (true) {
+            if (c == ESCAPE) {
+                c = read();
+                if (c == END) {
+                    throw new IOException("Escape at the end of the input line " + lineNumber);
+                }
+                field.append((char) c);
+            } else if (quoted) {
+                if (c == END) {
+                    throw new IOException("Unterminated quoted field starting line " + recordLineNumber);
+                } else if (c == '"') {
+                    final int following = read();
+                    if (following == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        c = following;
+                        continue;
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"' && field.length() == 0 && !wasQuoted) {
+                quoted = true;
+                wasQuoted = true;
+            } else if (c == ',') {
+                fields.add(fieldValue(wasQuoted));
+                wasQuoted = false;
+            } else if (c == '\n' || c == '\r' || c == END) {
+                fields.add(fieldValue(wasQuoted));
+                if (c == '\r') {
+                    final int following = read();
+                    if (following != '\n') {
+                        unread(following);
+                    }
+                }
+                return fields;
+            } else {
+                field.append((char) c);
+            }
+            c = read();
+        }
+    }
+
+    /**
+     * @return line of the first line of the last record returned, starting at 1
+     */
+    public long getRecordLineNumber() {
+        return recordLineNumber;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * @param value e.g. 2015-12-17 08:00:00+0000, may be null
+     */
+    public static Date parseTimestamp(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Date.from(ZonedDateTime.parse(value, TIMESTAMP).toInstant());
+        } catch (DateTimeParseException ex) {
+            throw new IllegalArgumentException("Invalid timestamp " + value, ex);
+        }
+    }
+
+    /**
+     * @param value CQL set of text literal, e.g. {'commando', 'it''s'}, may be null
+     * @return elements in order, empty when value is null
+     */
+    public static Set<String> parseSet(String value) {
+        final Set<String> elements = new LinkedHashSet<>();
+        if (value == null) {
+            return elements;
+        }
+        final String literal = value.trim();
+        if (!literal.startsWith("{") || !literal.endsWith("}")) {
+            throw new IllegalArgumentException("Invalid set " + value);
+        }
+
+        final StringBuilder element = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 1; i < literal.length() - 1; i++) {
+            final char c = literal.charAt(i);
+            if (quoted) {
+                if (c == '\'' && i + 1 < literal.length() - 1 && literal.charAt(i + 1) == '\'') {
+                    element.append('\'');
+                    i++;
+                } else if (c == '\'') {
+                    quoted = false;
+                    elements.add(element.toString());
+                    element.setLength(0);
+                } else {
+                    element.append(c);
+                }
+            } else if (c == '\'') {
+                quoted = true;
+            } else if (c != ',' && !Character.isWhitespace(c)) {
+                throw new IllegalArgumentException("Invalid set " + value);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Invalid set " + value);
+        }
+        return elements;
+    }
+
+    private String fieldValue(boolean wasQuoted) {
+        final String value = field.toString();
+        field.setLength(0);
+        return value.isEmpty() && !wasQuoted ? null : value;
+    }
+
+    private int read() throws IOException {
+        final int c;
+        if (pushedBack != Integer.MIN_VALUE) {
+            c = pushedBack;
+            pushedBack = Integer.MIN_VALUE;
+        } else {
+            c = reader.read();
+        }
+        if (c == '\n') {
+            lineNumber++;
+        }
+        return c;
+    }
+
+    private void unread(int c) {
+        pushedBack = c;
+        if (c == '\n') {
+            lineNumber--;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package killrvideo.tools;
+
+import static killrvideo.service.VideoCatalogService.LATEST_VIDEOS_TTL_SECONDS;
+import static killrvideo.service.VideoCatalogService.MAX_DAYS_IN_PAST_FOR_LATEST_VIDEOS;
+import static killrvideo.utils.ExceptionUtils.mergeStackTrace;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.dse.DseCluster;
+import com.datastax.driver.dse.DseSession;
+
+import killrvideo.entity.LatestVideos;
+import killrvideo.entity.Schema;
+import killrvideo.utils.FutureUtils;
+
+/**
+ * One-off copy of <strong>latest_videos</strong> into <strong>latest_videos_sharded</strong>,
+ * to run before switching a deployment to sharded mode (killrvideo.latest.videos.shards).
+ *
+ * Every day still within the latest videos TTL is read and each row is written
+ * to its bucket with its remaining TTL and original write timestamp, so
+ * running it again, or while the application is writing, is harmless.
+ *
+ * Usage: LatestVideosBackfill &lt;contact point&gt; &lt;shards&gt; [max writes in flight]
+ */
+public class LatestVideosBackfill {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LatestVideosBackfill.class);
+
+    private static final int READ_FETCH_SIZE = 500;
+    private static final int DEFAULT_MAX_IN_FLIGHT = 64;
+
+    private final DseSession session;
+    private final int shards;
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+    private final AtomicLong copied = new AtomicLong();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    private PreparedStatement readDay;
+    private PreparedStatement insertSharded;
+
+    LatestVideosBackfill(DseSession session, int shards, int maxInFlight) {
+        this.session = session;
+        this.shards = shards;
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: LatestVideosBackfill <contact point> <shards> [max writes in flight]");
+            System.exit(1);
+        }
+
+        final int shards = Integer.parseInt(args[1]);
+        final int maxInFlight = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_MAX_IN_FLIGHT;
+        if (shards <= 0 || maxInFlight <= 0) {
+            throw new IllegalArgumentException("Shards and max writes in flight should be strictly positive");
+        }
+
+        try (DseCluster cluster = DseCluster.builder().addContactPoint(args[0]).build();
+             DseSession session = cluster.connect()) {
+
+            final long total = new LatestVideosBackfill(session, shards, maxInFlight).run();
+            LOGGER.info("Copied " + total + " latest videos into " + LatestVideos.SHARDED_TABLE_NAME);
+        }
+    }
+
+    long run() throws InterruptedException {
+        readDay = session.prepare(
+                "" +
+                        "SELECT yyyymmdd, added_date, videoid, userid, name, preview_image_location, " +
+                        "TTL(name) AS ttl, WRITETIME(name) AS writetime " +
+                        "FROM " + Schema.KEYSPACE + ".latest_videos " +
+                        "WHERE yyyymmdd = :ymd"
+        ).setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+
+        insertSharded = session.prepare(
+                "" +
+                        "INSERT INTO " + Schema.KEYSPACE + "." + LatestVideos.SHARDED_TABLE_NAME + " " +
+                        "(yyyymmdd, bucket, added_date, videoid, userid, name, preview_image_location) " +
+                        "VALUES (:ymd, :bucket, :ad, :vid, :uid, :name, :preview) " +
+                        "USING TTL :ttl AND TIMESTAMP :ts"
+        ).setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+
+        final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyyMMdd");
+        final ZonedDateTime now = Instant.now().atZone(ZoneId.systemDefault());
+
+        for (int day = 0; day <= MAX_DAYS_IN_PAST_FOR_LATEST_VIDEOS; day++) {
+            copyDay(now.minusDays(day).format(formatter));
+        }
+
+        // Wait for the last writes
+        inFlight.acquire(maxInFlight);
+        if (failure.get() != null) {
+            throw new IllegalStateException("Backfill failed, it can safely be run again", failure.get());
+        }
+        return copied.get();
+    }
+
+    private void copyDay(String yyyyMMdd) throws InterruptedException {
+        LOGGER.info("Copying latest videos of " + yyyyMMdd);
+
+        final Statement read = readDay.bind().setString("ymd", yyyyMMdd).setFetchSize(READ_FETCH_SIZE);
+        long rows = 0;
+
+        for (Row row : session.execute(read)) {
+            if (failure.get() != null) {
+                return;
+            }
+            final UUID videoId = row.getUUID("videoid");
+
+            /**
+             * Rows without a TTL were written before TTLs were used,
+             * they get the full latest videos TTL
+             */
+            final int ttl = row.isNull("ttl") ? LATEST_VIDEOS_TTL_SECONDS : row.getInt("ttl");
+
+            final BoundStatement insert = insertSharded.bind()
+                    .setString("ymd", yyyyMMdd)
+                    .setInt("bucket", LatestVideos.shardOf(videoId, shards))
+                    .setTimestamp("ad", row.getTimestamp("added_date"))
+                    .setUUID("vid", videoId)
+                    .setUUID("uid", row.getUUID("userid"))
+                    .setString("name", row.getString("name"))
+                    .setString("preview", row.getString("preview_image_location"))
+                    .setInt("ttl", ttl)
+                    .setLong("ts", row.isNull("writetime") ? System.currentTimeMillis() * 1000 : row.getLong("writetime"));
+
+            inFlight.acquire();
+            FutureUtils.buildCompletableFuture(session.executeAsync(insert))
+                    .whenComplete((rs, ex) -> {
+                        if (ex != null) {
+                            LOGGER.error("Exception copying latest video " + videoId + " : " + mergeStackTrace(ex));
+                            failure.compareAndSet(null, ex);
+                        } else {
+                            copied.incrementAndGet();
+                        }
+                        inFlight.release();
+                    });
+            rows++;
+        }
+        LOGGER.info("Submitted " + rows + " latest videos of " + yyyyMMdd);
+    }
+}
@@ -0,0 +1,80 @@
+package killrvideo.tools;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.TreeSet;
+
+/**
+ * Number of records of a CSV file loaded so far, i.e. such that every record before
+ * it has been written. Records complete out of order, the ones completed past the
+ * first incomplete record are kept until it completes.
+ *
+ * The count is saved to a file so that a load can resume where it stopped. Every write
+ * of the loader is idempotent, so the few records loaded past the saved count are
+ * simply written again.
+ */
+public class LoadCheckpoint {
+
+    private final Path file;
+    private final TreeSet<Long> completedAhead = new TreeSet<>();
+    private long committed;
+
+    /**
+     * @param file where the count is saved
+     * @param committed records already loaded, see {@link #read(Path)}
+     */
+    public LoadCheckpoint(Path file, long committed) {
+        this.file = file;
+        this.committed = committed;
+    }
+
+    /**
+     * @return records loaded by a previous run, 0 when it never ran
+     */
+    public static long read(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        final String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim();
+        try {
+            return Long.parseLong(content);
+        } catch (NumberFormatException ex) {
+            throw new IOException("Invalid checkpoint " + content + " in " + file, ex);
+        }
+    }
+
+    /**
+     * @param record index of the record in the file, starting at 0
+     */
+    public synchronized void complete(long record) {
+        if (record < committed) {
+            return;
+        }
+        if (record > committed) {
+            completedAhead.add(record);
+            return;
+        }
+        committed++;
+        while (!completedAhead.isEmpty() && completedAhead.first() == committed) {
+            completedAhead.pollFirst();
+            committed++;
+        }
+    }
+
+    public synchronized long committed() {
+        return committed;
+    }
+
+    /**
+     * Write the count to a temporary file moved over the previous one, so that a crash
+     * never leaves a partial checkpoint
+     */
+    public void save() throws IOException {
+        final Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temporary, Long.toString(committed()).getBytes(StandardCharsets.UTF_8));
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,30 @@
+package killrvideo.utils;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.mapping.Mapper;
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Mapper reads the driver may run speculatively.
+ *
+ * The mapper prepares its SELECT from a query string, so the statements of
+ * {@link Mapper#getAsync(Object...)} are not idempotent and the driver never sends them
+ * again to another replica. The same SELECT is built with {@link Mapper#getQuery(Object...)}
+ * and marked idempotent instead, its row is mapped the way getAsync() does it.
+ */
+public class IdempotentReads {
+
+    /**
+     * Note that the mapper prepares its SELECT on the first call, like getAsync() does
+     * @param primaryKey values of the primary key columns, in order
+     * @return ListenableFuture of the entity, null when the row does not exist
+     */
+    public static <T> ListenableFuture<T> getAsync(Session session, Mapper<T> mapper, Object... primaryKey) {
+        final Statement get = mapper.getQuery(primaryKey).setIdempotent(true);
+        return Futures.transform(session.executeAsync(get), (Function<ResultSet, T>) rs -> mapper.map(rs).one());
+    }
+}
@@ -0,0 +1,174 @@
+package killrvideo.utils;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.Metadata;
+import com.datastax.driver.core.ProtocolVersion;
+import com.datastax.driver.core.TypeCodec;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Executes a list of single partition reads (one per key) with a bounded
+ * number of requests in flight.
+ *
+ * Keys are first grouped by the primary replica owning their token, then
+ * interleaved across groups so that the in-flight window is spread evenly
+ * over the replicas instead of piling up on a single node.
+ *
+ * Results are streamed to the supplied consumer as soon as each read
+ * completes, in completion order. The consumer can be called from driver
+ * threads concurrently and must be thread-safe.
+ */
+public class MultiKeyReadExecutor {
+
+    private final Metadata metadata;
+    private final String keyspace;
+    private final int maxInFlight;
+
+    public MultiKeyReadExecutor(Metadata metadata, String keyspace, int maxInFlight) {
+        this.metadata = metadata;
+        this.keyspace = keyspace;
+        this.maxInFlight = Math.max(1, maxInFlight);
+    }
+
+    /**
+     * Serialized form of a uuid partition key, as used by the driver to compute its token
+     * @param uuid
+     * @return ByteBuffer
+     */
+    public static ByteBuffer uuidRoutingKey(UUID uuid) {
+        return TypeCodec.uuid().serialize(uuid, ProtocolVersion.NEWEST_SUPPORTED);
+    }
+
+    /**
+     * Read all the keys
+     * @param keys keys to read, duplicates are read only once
+     * @param routingKey serialized partition key of a given key
+     * @param fetch async read of a single key, usually a mapper getAsync()
+     * @param consumer called with each key and its value (null when not found)
+     * @param <K> key type
+     * @param <V> value type
+     * @return CompletableFuture completing once every value has been consumed, or on the first failure
+     */
+    public <K, V> CompletableFuture<Void> readAll(Collection<K> keys,
+                                                  Function<K, ByteBuffer> routingKey,
+                                                  Function<K, ListenableFuture<V>> fetch,
+                                                  BiConsumer<K, V> consumer) {
+
+        final List<K> ordered = interleaveByReplica(keys, routingKey);
+        final Run<K, V> run = new Run<>(ordered, fetch, consumer);
+
+        if (ordered.isEmpty()) {
+            run.done.complete(null);
+            return run.done;
+        }
+
+        final int window = Math.min(maxInFlight, ordered.size());
+        for (int i = 0; i < window; i++) {
+            run.launchNext();
+        }
+        return run.done;
+    }
+
+    /**
+     * Group keys by primary replica, then take one key of each group in turn
+     */
+    private <K> List<K> interleaveByReplica(Collection<K> keys, Function<K, ByteBuffer> routingKey) {
+        final Map<Host, List<K>> byReplica = new LinkedHashMap<>();
+        final Set<K> seen = new LinkedHashSet<>();
+
+        for (K key : keys) {
+            if (!seen.add(key)) {
+                continue;
+            }
+            final Set<Host> replicas = metadata.getReplicas(keyspace, routingKey.apply(key));
+            final Host primary = replicas.isEmpty() ? null : replicas.iterator().next();
+            byReplica.computeIfAbsent(primary, h -> new ArrayList<>()).add(key);
+        }
+
+        final List<K> ordered = new ArrayList<>(seen.size());
+        final List<Iterator<K>> iterators = new ArrayList<>(byReplica.size());
+        byReplica.values().forEach(group -> iterators.add(group.iterator()));
+
+        while (!iterators.isEmpty()) {
+            final Iterator<Iterator<K>> groups = iterators.iterator();
+            while (groups.hasNext()) {
+                final Iterator<K> group = groups.next();
+                if (group.hasNext()) {
+                    ordered.add(group.next());
+                } else {
+                    groups.remove();
+                }
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * State of a single readAll() call. Each completed read launches
+     * the next pending key, keeping at most maxInFlight reads running.
+     */
+    private static class Run<K, V> {
+        final List<K> keys;
+        final Function<K, ListenableFuture<V>> fetch;
+        final BiConsumer<K, V> consumer;
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicInteger remaining;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Run(List<K> keys, Function<K, ListenableFuture<V>> fetch, BiConsumer<K, V> consumer) {
+            this.keys = keys;
+            this.fetch = fetch;
+            this.consumer = consumer;
+            this.remaining = new AtomicInteger(keys.size());
+        }
+
+        void launchNext() {
+            final int index = next.getAndIncrement();
+            if (index >= keys.size() || done.isDone()) {
+                return;
+            }
+
+            final K key = keys.get(index);
+            final ListenableFuture<V> future;
+            try {
+                future = fetch.apply(key);
+            } catch (Throwable t) {
+                done.completeExceptionally(t);
+                return;
+            }
+
+            FutureUtils.buildCompletableFuture(future).whenComplete((value, ex) -> {
+                if (ex != null) {
+                    done.completeExceptionally(ex);
+                    return;
+                }
+                try {
+                    consumer.accept(key, value);
+                } catch (Throwable t) {
+                    done.completeExceptionally(t);
+                    return;
+                }
+                if (remaining.decrementAndGet() == 0) {
+                    done.complete(null);
+                } else {
+                    launchNext();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package killrvideo.utils;
+
+import static killrvideo.utils.ExceptionUtils.mergeStackTrace;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+
+/**
+ * Push the rows of a query to a server streaming call as the driver fetches them.
+ *
+ * Rows are only sent while the call is ready, so a slow client holds the rows in the
+ * driver instead of the gRPC buffers, and the next page is fetched in the background
+ * once less than a page of rows is left to send. At most two pages are held in memory.
+ * The stream ends when the last page has been sent or the client cancels.
+ *
+ * Rows are sent from whichever thread finds the call ready: the gRPC thread calling
+ * the on ready handler or the driver thread completing a fetch. The calls to the
+ * observer are serialized through {@link #drain()}.
+ * @param <T> message sent for each row
+ */
+public class ResultSetStreamer<T> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResultSetStreamer.class);
+
+    private final ServerCallStreamObserver<T> observer;
+    private final Function<Row, T> rowMapper;
+    private final String description;
+
+    /**
+     * Threads asking to drain, only the first one drains and loops until none is left
+     */
+    private final AtomicInteger drainRequests = new AtomicInteger();
+
+    private volatile ResultSet rows;
+    /**
+     * Rows of the first page, the next page is fetched when fewer rows are left
+     */
+    private volatile int pageSize;
+    private volatile Throwable failure;
+    private volatile boolean fetching;
+    private volatile boolean cancelled;
+    private boolean done;
+
+    private ResultSetStreamer(ServerCallStreamObserver<T> observer, Function<Row, T> rowMapper, String description) {
+        this.observer = observer;
+        this.rowMapper = rowMapper;
+        this.description = description;
+    }
+
+    /**
+     * Stream the rows of the query to the call, must be called from the service method
+     * so that the handlers are set before the call starts
+     * @param query rows of the query, usually Session.executeAsync()
+     * @param rowMapper message of a row
+     * @param responseObserver observer of a server streaming call
+     * @param description what is streamed, for the logs, e.g. "video comments"
+     */
+    public static <T> void stream(ListenableFuture<ResultSet> query, Function<Row, T> rowMapper,
+                                  StreamObserver<T> responseObserver, String description) {
+        final ResultSetStreamer<T> streamer = new ResultSetStreamer<>(
+                (ServerCallStreamObserver<T>) responseObserver, rowMapper, description);
+        streamer.observer.setOnReadyHandler(streamer::drain);
+        streamer.observer.setOnCancelHandler(() -> {
+            LOGGER.debug("Streaming " + description + " cancelled by the client");
+            streamer.cancelled = true;
+        });
+        streamer.receive(query);
+    }
+
+    private void receive(ListenableFuture<ResultSet> page) {
+        fetching = true;
+        FutureUtils.buildCompletableFuture(page)
+                .handle((resultSet, ex) -> {
+                    if (resultSet != null) {
+                        if (rows == null) {
+                            pageSize = Math.max(1, resultSet.getAvailableWithoutFetching());
+                        }
+                        rows = resultSet;
+                    } else {
+                        failure = ex;
+                    }
+                    fetching = false;
+                    drain();
+                    return resultSet;
+                });
+    }
+
+    void drain() {
+        if (drainRequests.getAndIncrement() != 0) {
+            return;
+        }
+        int requests = 1;
+        do {
+            if (!done) {
+                send();
+            }
+            requests = drainRequests.addAndGet(-requests);
+        } while (requests != 0);
+    }
+
+    /**
+     * Send the rows available without fetching while the call is ready
+     */
+    private void send() {
+        try {
+            if (cancelled) {
+                done = true;
+                return;
+            }
+            if (failure != null) {
+                done = true;
+                LOGGER.error("Exception streaming " + description + " : " + mergeStackTrace(failure));
+                observer.onError(Status.INTERNAL.withCause(failure).asRuntimeException());
+                return;
+            }
+            final ResultSet resultSet = rows;
+            if (resultSet == null) {
+                return;
+            }
+            while (observer.isReady() && !cancelled) {
+                final int available = resultSet.getAvailableWithoutFetching();
+                if (available <= pageSize && !fetching && !resultSet.isFullyFetched()) {
+                    receive(resultSet.fetchMoreResults());
+                }
+                if (available == 0) {
+                    if (!fetching && resultSet.isFullyFetched()) {
+                        done = true;
+                        observer.onCompleted();
+                    }
+                    return;
+                }
+                observer.onNext(rowMapper.apply(resultSet.one()));
+            }
+        } catch (RuntimeException ex) {
+            done = true;
+            LOGGER.error("Exception streaming " + description + " : " + mergeStackTrace(ex));
+            observer.onError(Status.INTERNAL.withCause(ex).asRuntimeException());
+        }
+    }
+}
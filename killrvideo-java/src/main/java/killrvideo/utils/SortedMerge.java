@@ -0,0 +1,67 @@
+package killrvideo.utils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * K-way merge of lists that are each already sorted
+ */
+public final class SortedMerge {
+
+    private SortedMerge() {
+    }
+
+    /**
+     * Merge the heads of all the sources with a binary heap, at most limit elements
+     * @param sources lists sorted according to order
+     * @param order
+     * @param limit maximum number of elements to return
+     * @param consumed filled with the number of elements taken from each source, same size as sources
+     * @param <T>
+     * @return merged elements
+     */
+    public static <T> List<T> merge(List<List<T>> sources, Comparator<? super T> order, int limit, int[] consumed) {
+        return merge(sources, order, limit, consumed, null);
+    }
+
+    /**
+     * Same as {@link #merge(List, Comparator, int, int[])} for sources that may
+     * only be the first part of a longer list. The merge stops as soon as such
+     * a source runs out, since its next element is not known yet.
+     * @param complete whether each source holds all its elements, null if they all do
+     */
+    public static <T> List<T> merge(List<List<T>> sources, Comparator<? super T> order, int limit, int[] consumed,
+                                    boolean[] complete) {
+        if (consumed.length != sources.size() || (complete != null && complete.length != sources.size())) {
+            throw new IllegalArgumentException("Expected one consumed counter and completion flag per source");
+        }
+
+        final PriorityQueue<Integer> heads = new PriorityQueue<>(Math.max(1, sources.size()),
+                (a, b) -> order.compare(sources.get(a).get(consumed[a]), sources.get(b).get(consumed[b])));
+
+        boolean blocked = false;
+        for (int i = 0; i < sources.size(); i++) {
+            consumed[i] = 0;
+            if (!sources.get(i).isEmpty()) {
+                heads.add(i);
+            } else if (complete != null && !complete[i]) {
+                blocked = true;
+            }
+        }
+
+        final List<T> merged = new ArrayList<>(Math.max(0, limit));
+        while (!blocked && merged.size() < limit && !heads.isEmpty()) {
+            final int source = heads.poll();
+            merged.add(sources.get(source).get(consumed[source]++));
+
+            if (consumed[source] < sources.get(source).size()) {
+                heads.add(source);
+            } else if (complete != null && !complete[source]) {
+                blocked = true;
+            }
+        }
+        return merged;
+    }
+}
@@ -11,30 +11,49 @@ import killrvideo.common.CommonTypes.Uuid;
 
 public class TypeConverter {
 
+    /**
+     * Slots of each UUID cache, a few pages of distinct ids
+     */
+    private static final int UUID_CACHE_SIZE = 8192;
+
+    private static final UuidMessageCache<Uuid> UUIDS = new UuidMessageCache<>(UUID_CACHE_SIZE,
+            uuid -> Uuid.newBuilder().setValue(uuid.toString()).build());
+
+    private static final UuidMessageCache<TimeUuid> TIME_UUIDS = new UuidMessageCache<>(UUID_CACHE_SIZE,
+            uuid -> TimeUuid.newBuilder().setValue(uuid.toString()).build());
+
     public static Timestamp instantToTimeStamp(Instant instant) {
         return Timestamp.newBuilder()
                 .setSeconds(instant.getEpochSecond())
                 .setNanos(instant.getNano()).build();
     }
 
+    /**
+     * Straight from the milliseconds, without the intermediate Instant
+     */
     public static Timestamp dateToTimestamp(Date date) {
-        return instantToTimeStamp(date.toInstant());
+        final long millis = date.getTime();
+        return Timestamp.newBuilder()
+                .setSeconds(Math.floorDiv(millis, 1000))
+                .setNanos((int) Math.floorMod(millis, 1000) * 1_000_000).build();
     }
 
     public static Date dateFromTimestamp(Timestamp timestamp) {
         return Date.from(Instant.ofEpochSecond(timestamp.getSeconds()));
     }
 
+    /**
+     * Messages are immutable, the ones of the UUIDs converted recently are reused
+     */
     public static TimeUuid uuidToTimeUuid(UUID uuid) {
-        return TimeUuid.newBuilder()
-                .setValue(uuid.toString())
-                .build();
+        return TIME_UUIDS.get(uuid);
     }
 
+    /**
+     * Messages are immutable, the ones of the UUIDs converted recently are reused
+     */
     public static Uuid uuidToUuid(UUID uuid) {
-        return Uuid.newBuilder()
-                .setValue(uuid.toString())
-                .build();
+        return UUIDS.get(uuid);
     }
 
     /**
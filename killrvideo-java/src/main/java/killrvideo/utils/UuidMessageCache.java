@@ -0,0 +1,59 @@
+package killrvideo.utils;
+
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Messages of the UUIDs converted recently, so that the ids found on every page of a
+ * listing, e.g. the author of the comments or the videos of a user, are only rendered
+ * to a string once.
+ *
+ * Direct mapped, a UUID only goes to one slot and replaces the one there, so a lookup
+ * is one array read and a hit allocates nothing. Entries are immutable and published
+ * through their final fields, threads racing on a slot at worst convert the UUID again.
+ * @param <M> immutable message of a UUID
+ */
+final class UuidMessageCache<M> {
+
+    private static final class Entry<M> {
+        final UUID uuid;
+        final M message;
+
+        Entry(UUID uuid, M message) {
+            this.uuid = uuid;
+            this.message = message;
+        }
+    }
+
+    private final Entry<M>[] entries;
+    private final int mask;
+    private final Function<UUID, M> converter;
+
+    /**
+     * @param size slots, rounded up to a power of 2
+     * @param converter message of a UUID missing from the cache
+     */
+    @SuppressWarnings("unchecked")
+    UuidMessageCache(int size, Function<UUID, M> converter) {
+        final int slots = Integer.highestOneBit(Math.max(1, size - 1)) << 1;
+        this.entries = new Entry[slots];
+        this.mask = slots - 1;
+        this.converter = converter;
+    }
+
+    M get(UUID uuid) {
+        /** Both halves, time based UUIDs of the same node only differ by their high bits **/
+        final long bits = uuid.getMostSignificantBits() ^ uuid.getLeastSignificantBits();
+        int hash = (int) (bits ^ (bits >>> 32));
+        hash ^= hash >>> 16;
+        final int slot = hash & mask;
+
+        final Entry<M> entry = entries[slot];
+        if (entry != null && entry.uuid.equals(uuid)) {
+            return entry.message;
+        }
+        final M message = converter.apply(uuid);
+        entries[slot] = new Entry<>(uuid, message);
+        return message;
+    }
+}
@@ -5,7 +5,6 @@ import static org.apache.commons.lang3.StringUtils.isBlank;
 import javax.inject.Inject;
 import javax.validation.Validator;
 
-import org.apache.commons.collections4.CollectionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
@@ -15,8 +14,6 @@ import io.grpc.stub.StreamObserver;
 import killrvideo.comments.CommentsServiceOuterClass.CommentOnVideoRequest;
 import killrvideo.comments.CommentsServiceOuterClass.GetUserCommentsRequest;
 import killrvideo.comments.CommentsServiceOuterClass.GetVideoCommentsRequest;
-import killrvideo.common.CommonTypes;
-import killrvideo.entity.User;
 import killrvideo.ratings.RatingsServiceOuterClass.GetRatingRequest;
 import killrvideo.ratings.RatingsServiceOuterClass.GetUserRatingRequest;
 import killrvideo.ratings.RatingsServiceOuterClass.RateVideoRequest;
@@ -25,6 +22,10 @@ import killrvideo.search.SearchServiceOuterClass.SearchVideosRequest;
 import killrvideo.statistics.StatisticsServiceOuterClass.GetNumberOfPlaysRequest;
 import killrvideo.statistics.StatisticsServiceOuterClass.RecordPlaybackStartedRequest;
 import killrvideo.suggested_videos.SuggestedVideosService.GetRelatedVideosRequest;
+import killrvideo.uploads.UploadsServiceOuterClass.GetStatusOfVideoRequest;
+import killrvideo.uploads.UploadsServiceOuterClass.GetUploadDestinationRequest;
+import killrvideo.uploads.UploadsServiceOuterClass.GetUploadProgressRequest;
+import killrvideo.uploads.UploadsServiceOuterClass.MarkUploadCompleteRequest;
 import killrvideo.user_management.UserManagementServiceOuterClass.CreateUserRequest;
 import killrvideo.user_management.UserManagementServiceOuterClass.GetUserProfileRequest;
 import killrvideo.user_management.UserManagementServiceOuterClass.VerifyCredentialsRequest;
@@ -38,405 +39,330 @@ import killrvideo.video_catalog.VideoCatalogServiceOuterClass.*;
  * annotations on them, thus requiring manual and tedious validation.
  * See : https://groups.google.com/forum/#!topic/grpc-io/Q7fyXSA4jmM
  *
+ * The rules of each request type are built once into a {@link RuleSet}. Every
+ * RPC is validated, a valid request is checked without any allocation and the
+ * error message, with the request rendered, is only built for invalid ones.
+ * Proto3 getters return the default instance of a missing message, so a missing
+ * id is caught by the blank value check.
  */
 @Service
 public class KillrVideoInputValidator {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(KillrVideoInputValidator.class);
 
+    private static final RuleSet<CommentOnVideoRequest> COMMENT_ON_VIDEO = RuleSet.<CommentOnVideoRequest>builder()
+            .rule(request -> isBlank(request.getUserId().getValue()),
+                    "user id should be provided for comment on video request")
+            .rule(request -> isBlank(request.getVideoId().getValue()),
+                    "video id should be provided for comment on video request")
+            .rule(request -> isBlank(request.getCommentId().getValue()),
+                    "comment id should be provided for comment on video request")
+            .rule(request -> isBlank(request.getComment()),
+                    "comment text should be provided (not blank) for comment on video request")
+            .build();
+
+    private static final RuleSet<GetUserCommentsRequest> GET_USER_COMMENTS = RuleSet.<GetUserCommentsRequest>builder()
+            .rule(request -> isBlank(request.getUserId().getValue()),
+                    "user id should be provided for get user comment request")
+            .rule(request -> request.getPageSize() <= 0,
+                    "page size should be strictly positive for get user comment request")
+            .build();
+
+    private static final RuleSet<GetVideoCommentsRequest> GET_VIDEO_COMMENTS = RuleSet.<GetVideoCommentsRequest>builder()
+            .rule(request -> isBlank(request.getVideoId().getValue()),
+                    "video id should be provided for get video comment request")
+            .rule(request -> request.getPageSize() <= 0,
+                    "page size should be strictly positive for get video comment request")
+            .build();
+
+    private static final RuleSet<RateVideoRequest> RATE_VIDEO = RuleSet.<RateVideoRequest>builder()
+            .rule(request -> isBlank(request.getVideoId().getValue()),
+                    "video id should be provided for rate video request")
+            .rule(request -> isBlank(request.getUserId().getValue()),
+                    "user id should be provided for rate video request")
+            .build();
+
+    private static final RuleSet<GetRatingRequest> GET_RATING = RuleSet.<GetRatingRequest>builder()
+            .rule(request -> isBlank(request.getVideoId().getValue()),
+                    "video id should be provided for get video rating request")
+            .build();
+
+    private static final RuleSet<GetUserRatingRequest> GET_USER_RATING = RuleSet.<GetUserRatingRequest>builder()
+            .rule(request -> isBlank(request.getVideoId().getValue()),
+                    "video id should be provided for get user rating request")
+            .rule(request -> isBlank(request.getUserId().getValue()),
+                    "user id should be provided for get user rating request")
+            .build();
+
+    private static final RuleSet<SearchVideosRequest> SEARCH_VIDEOS = RuleSet.<SearchVideosRequest>builder()
+            .rule(request -> isBlank(request.getQuery()),
+                    "query string should be provided for search videos request")
+            .rule(request -> request.getPageSize() <= 0,
+                    "page size should be strictly positive for search videos request")
+            .build();
+
+    private static final RuleSet<GetQuerySuggestionsRequest> GET_QUERY_SUGGESTIONS = RuleSet.<GetQuerySuggestionsRequest>builder()
+            .rule(request -> isBlank(request.getQuery()),
+                    "query string should be provided for get video suggestions request")
+            .rule(request -> request.getPageSize() <= 0,
+                    "page size should be strictly positive for get video suggestions request")
+            .build();
+
+    private static final RuleSet<RecordPlaybackStartedRequest> RECORD_PLAYBACK_STARTED = RuleSet.<RecordPlaybackStartedRequest>builder()
+            .rule(request -> isBlank(request.getVideoId().getValue()),
+                    "video id should be provided for record playback started request")
+            .build();
+
+    private static final RuleSet<GetNumberOfPlaysRequest> GET_NUMBER_OF_PLAYS = RuleSet.<GetNumberOfPlaysRequest>builder()
+            .rule(request -> request.getVideoIdsCount() <= 0,
+                    "video ids should be provided for get number of plays request")
+            .rule(request -> request.getVideoIdsCount() > 20,
+                    "cannot do a get more than 20 videos at once for get number of plays request")
+            .rule(KillrVideoInputValidator::hasBlankVideoId,
+                    "provided UUID values cannot be null or blank for get number of plays request")
+            .build();
+
+    private static final RuleSet<GetRelatedVideosRequest> GET_RELATED_VIDEOS = RuleSet.<GetRelatedVideosRequest>builder()
+            .rule(request -> isBlank(request.getVideoId().getValue()),
+                    "video id should be provided for get related videos request")
+            .build();
+
+    private static final RuleSet<CreateUserRequest> CREATE_USER = RuleSet.<CreateUserRequest>builder()
+            .rule(request -> isBlank(request.getUserId().getValue()),
+                    "user id should be provided for create user request")
+            .rule(request -> isBlank(request.getPassword()),
+                    "password should be provided for create user request")
+            .rule(request -> isBlank(request.getEmail()),
+                    "email should be provided for create user request")
+            .build();
+
+    private static final RuleSet<VerifyCredentialsRequest> VERIFY_CREDENTIALS = RuleSet.<VerifyCredentialsRequest>builder()
+            .rule(request -> isBlank(request.getEmail()),
+                    "email should be provided for verify credentials request")
+            .rule(request -> isBlank(request.getPassword()),
+                    "password should be provided for verify credentials request")
+            .build();
+
+    private static final RuleSet<GetUserProfileRequest> GET_USER_PROFILE = RuleSet.<GetUserProfileRequest>builder()
+            .rule(request -> request.getUserIdsCount() > 20,
+                    "cannot get more than 20 user profiles at once for get user profile request")
+            .rule(KillrVideoInputValidator::hasBlankUserId,
+                    "provided UUID values cannot be null or blank for get user profile request")
+            .build();
+
+    private static final RuleSet<SubmitUploadedVideoRequest> SUBMIT_UPLOADED_VIDEO = RuleSet.<SubmitUploadedVideoRequest>builder()
+            .rule(request -> isBlank(request.getVideoId().getValue()),
+                    "video id should be provided for submit uploaded video request")
+            .rule(request -> isBlank(request.getUserId().getValue()),
+                    "user id should be provided for submit uploaded video request")
+            .rule(request -> isBlank(request.getName()),
+                    "video name should be provided for submit uploaded video request")
+            .rule(request -> isBlank(request.getDescription()),
+                    "video description should be provided for submit uploaded video request")
+            .rule(request -> request.getTagsCount() == 0,
+                    "video tags list should be provided for submit uploaded video request")
+            .rule(request -> isBlank(request.getUploadUrl()),
+                    "video upload url should be provided for submit uploaded video request")
+            .build();
+
+    private static final RuleSet<SubmitYouTubeVideoRequest> SUBMIT_YOUTUBE_VIDEO = RuleSet.<SubmitYouTubeVideoRequest>builder()
+            .rule(request -> isBlank(request.getVideoId().getValue()),
+                    "video id should be provided for submit youtube video request")
+            .rule(request -> isBlank(request.getUserId().getValue()),
+                    "user id should be provided for submit youtube video request")
+            .rule(request -> isBlank(request.getName()),
+                    "video name should be provided for submit youtube video request")
+            .rule(request -> isBlank(request.getDescription()),
+                    "video description should be provided for submit youtube video request")
+            .rule(request -> isBlank(request.getYouTubeVideoId()),
+                    "video youtube id should be provided for submit youtube video request")
+            .build();
+
+    private static final RuleSet<GetVideoRequest> GET_VIDEO = RuleSet.<GetVideoRequest>builder()
+            .rule(request -> isBlank(request.getVideoId().getValue()),
+                    "video id should be provided for get video request")
+            .build();
+
+    private static final RuleSet<GetVideoPreviewsRequest> GET_VIDEO_PREVIEWS = RuleSet.<GetVideoPreviewsRequest>builder()
+            .rule(request -> request.getVideoIdsCount() >= 20,
+                    "cannot get more than 20 videos at once for get video previews request")
+            .rule(KillrVideoInputValidator::hasBlankVideoId,
+                    "provided UUID values cannot be null or blank for get video previews request")
+            .build();
+
+    private static final RuleSet<GetLatestVideoPreviewsRequest> GET_LATEST_VIDEO_PREVIEWS = RuleSet.<GetLatestVideoPreviewsRequest>builder()
+            .rule(request -> request.getPageSize() <= 0,
+                    "page size should be strictly positive for get latest preview video request")
+            .build();
+
+    private static final RuleSet<GetUserVideoPreviewsRequest> GET_USER_VIDEO_PREVIEWS = RuleSet.<GetUserVideoPreviewsRequest>builder()
+            .rule(request -> isBlank(request.getUserId().getValue()),
+                    "user id should be provided for get user video previews request")
+            .rule(request -> request.getPageSize() <= 0,
+                    "page size should be strictly positive for get user video previews request")
+            .build();
+
+    private static final RuleSet<GetUploadDestinationRequest> GET_UPLOAD_DESTINATION = RuleSet.<GetUploadDestinationRequest>builder()
+            .rule(request -> isBlank(request.getFileName()),
+                    "file name should be provided for get upload destination request")
+            .rule(request -> request.hasVideoId() && isBlank(request.getVideoId().getValue()),
+                    "video id cannot be blank when provided for get upload destination request")
+            .build();
+
+    private static final RuleSet<GetUploadProgressRequest> GET_UPLOAD_PROGRESS = RuleSet.<GetUploadProgressRequest>builder()
+            .rule(request -> isBlank(request.getUploadUrl()),
+                    "upload url should be provided for get upload progress request")
+            .build();
+
+    private static final RuleSet<MarkUploadCompleteRequest> MARK_UPLOAD_COMPLETE = RuleSet.<MarkUploadCompleteRequest>builder()
+            .rule(request -> isBlank(request.getUploadUrl()),
+                    "upload url should be provided for mark upload complete request")
+            .rule(request -> request.hasUserId() && isBlank(request.getUserId().getValue()),
+                    "user id cannot be blank when provided for mark upload complete request")
+            .build();
+
+    private static final RuleSet<GetStatusOfVideoRequest> GET_STATUS_OF_VIDEO = RuleSet.<GetStatusOfVideoRequest>builder()
+            .rule(request -> isBlank(request.getVideoId().getValue()),
+                    "video id should be provided for get status of video request")
+            .build();
+
     @Inject
     Validator validator;
 
     public boolean isValid(CommentOnVideoRequest request, StreamObserver<?> streamObserver) {
-        StringBuilder errorMessage = initErrorString(request);
-        boolean isValid = true;
-        if (!request.hasUserId() || isBlank(request.getUserId().getValue())) {
-            errorMessage.append("\t\tuser id should be provided for comment on video request\n");
-            isValid = false;
-        }
-
-        if (!request.hasVideoId() || isBlank(request.getVideoId().getValue())) {
-            errorMessage.append("\t\tvideo id should be provided for comment on video request\n");
-            isValid = false;
-        }
-
-        if (!request.hasCommentId() || isBlank(request.getCommentId().getValue())) {
-            errorMessage.append("\t\tcomment id should be provided for comment on video request\n");
-            isValid = false;
-        }
-
-        if (isBlank(request.getComment())) {
-            errorMessage.append("\t\tcomment text should be provided (not blank) for comment on video request\n");
-            isValid = false;
-        }
-
-        return validate(streamObserver, errorMessage, isValid);
+        return validate(COMMENT_ON_VIDEO, request, streamObserver);
     }
 
     public boolean isValid(GetUserCommentsRequest request, StreamObserver<?> streamObserver) {
-        final StringBuilder errorMessage = initErrorString(request);
-        boolean isValid = true;
-
-        if (!request.hasUserId() || isBlank(request.getUserId().getValue())) {
-            errorMessage.append("\t\tuser id should be provided for get user comment request\n");
-            isValid = false;
-        }
-
-        if (request.getPageSize() <= 0) {
-            errorMessage.append("\t\tpage size should be strictly positive for get user comment request");
-            isValid = false;
-        }
-
-        return validate(streamObserver, errorMessage, isValid);
+        return validate(GET_USER_COMMENTS, request, streamObserver);
     }
 
     public boolean isValid(GetVideoCommentsRequest request, StreamObserver<?> streamObserver) {
-        final StringBuilder errorMessage = initErrorString(request);
-        boolean isValid = true;
-
-        if (!request.hasVideoId() || isBlank(request.getVideoId().getValue())) {
-            errorMessage.append("\t\tvideo id should be provided for get video comment request\n");
-            isValid = false;
-        }
-
-        if (request.getPageSize() <= 0) {
-            errorMessage.append("\t\tpage size should be strictly positive for get video comment request");
-            isValid = false;
-        }
-
-        return validate(streamObserver, errorMessage, isValid);
+        return validate(GET_VIDEO_COMMENTS, request, streamObserver);
     }
 
     public boolean isValid(RateVideoRequest request, StreamObserver<?> streamObserver) {
-        final StringBuilder errorMessage = initErrorString(request);
-        boolean isValid = true;
-
-        if (!request.hasVideoId() || isBlank(request.getVideoId().getValue())) {
-            errorMessage.append("\t\tvideo id should be provided for rate video request\n");
-            isValid = false;
-        }
-
-        if (!request.hasUserId() || isBlank(request.getUserId().getValue())) {
-            errorMessage.append("\t\tuser id should be provided for rate video request");
-            isValid = false;
-        }
-        return validate(streamObserver, errorMessage, isValid);
+        return validate(RATE_VIDEO, request, streamObserver);
     }
 
     public boolean isValid(GetRatingRequest request, StreamObserver<?> streamObserver) {
-        final StringBuilder errorMessage = initErrorString(request);
-        boolean isValid = true;
-
-        if (!request.hasVideoId() || isBlank(request.getVideoId().getValue())) {
-            errorMessage.append("\t\tvideo id should be provided for get video rating request\n");
-            isValid = false;
-        }
-
-        return validate(streamObserver, errorMessage, isValid);
+        return validate(GET_RATING, request, streamObserver);
     }
 
     public boolean isValid(GetUserRatingRequest request, StreamObserver<?> streamObserver) {
-        final StringBuilder errorMessage = initErrorString(request);
-        boolean isValid = true;
-
-        if (!request.hasVideoId() || isBlank(request.getVideoId().getValue())) {
-            errorMessage.append("\t\tvideo id should be provided for get user rating request\n");
-            isValid = false;
-        }
-
-        if (!request.hasUserId() || isBlank(request.getUserId().getValue())) {
-            errorMessage.append("\t\tuser id should be provided for get user rating request\n");
-            isValid = false;
-        }
-
-        return validate(streamObserver, errorMessage, isValid);
+        return validate(GET_USER_RATING, request, streamObserver);
     }
 
     public boolean isValid(SearchVideosRequest request, StreamObserver<?> streamObserver) {
-        final StringBuilder errorMessage = initErrorString(request);
-        boolean isValid = true;
-
-        if (isBlank(request.getQuery())) {
-            errorMessage.append("\t\tquery string should be provided for search videos request\n");
-            isValid = false;
-        }
-
-        if (request.getPageSize() <= 0) {
-            errorMessage.append("\t\tpage size should be strictly positive for search videos request\n");
-            isValid = false;
-        }
-
-        return validate(streamObserver, errorMessage, isValid);
+        return validate(SEARCH_VIDEOS, request, streamObserver);
     }
 
     public boolean isValid(GetQuerySuggestionsRequest request, StreamObserver<?> streamObserver) {
-        final StringBuilder errorMessage = initErrorString(request);
-        boolean isValid = true;
-
-        if (isBlank(request.getQuery())) {
-            errorMessage.append("\t\tquery string should be provided for get video suggestions request\n");
-            isValid = false;
-        }
-
-        if (request.getPageSize() <= 0) {
-            errorMessage.append("\t\tpage size should be strictly positive for get video suggestions request\n");
-            isValid = false;
-        }
-
-        return validate(streamObserver, errorMessage, isValid);
+        return validate(GET_QUERY_SUGGESTIONS, request, streamObserver);
     }
 
     public boolean isValid(RecordPlaybackStartedRequest request, StreamObserver<?> streamObserver) {
-        final StringBuilder errorMessage = initErrorString(request);
-        boolean isValid = true;
-
-        if (request.getVideoId() == null || isBlank(request.getVideoId().getValue())) {
-            errorMessage.append("\t\tvideo id should be provided for record playback started request\n");
-            isValid = false;
-        }
-
-        return validate(streamObserver, errorMessage, isValid);
+        return validate(RECORD_PLAYBACK_STARTED, request, streamObserver);
     }
 
     public boolean isValid(GetNumberOfPlaysRequest request, StreamObserver<?> streamObserver) {
-        final StringBuilder errorMessage = initErrorString(request);
-        boolean isValid = true;
-
-        if (request.getVideoIdsCount() <= 0) {
-            errorMessage.append("\t\tvideo ids should be provided for get number of plays request\n");
-            isValid = false;
-        }
-
-        if (request.getVideoIdsCount() > 20) {
-            errorMessage.append("\t\tcannot do a get more than 20 videos at once for get number of plays request\n");
-            isValid = false;
-        }
-
-        for (CommonTypes.Uuid uuid : request.getVideoIdsList()) {
-            if (uuid == null || isBlank(uuid.getValue())) {
-                errorMessage.append("\t\tprovided UUID values cannot be null or blank for get number of plays request\n");
-                isValid = false;
-            }
-        }
-
-        return validate(streamObserver, errorMessage, isValid);
+        return validate(GET_NUMBER_OF_PLAYS, request, streamObserver);
     }
 
     public boolean isValid(GetRelatedVideosRequest request, StreamObserver<?> streamObserver) {
-        final StringBuilder errorMessage = initErrorString(request);
-        boolean isValid = true;
-
-        if (request.getVideoId() == null || isBlank(request.getVideoId().getValue())) {
-            errorMessage.append("\t\tvideo id should be provided for get related videos request\n");
-            isValid = false;
-        }
-
-        return validate(streamObserver, errorMessage, isValid);
+        return validate(GET_RELATED_VIDEOS, request, streamObserver);
     }
 
     public boolean isValid(CreateUserRequest request, StreamObserver<?> streamObserver) {
-        final StringBuilder errorMessage = initErrorString(request);
-        boolean isValid = true;
-
-        if (request.getUserId() == null || isBlank(request.getUserId().getValue())) {
-            errorMessage.append("\t\tuser id should be provided for create user request\n");
-            isValid = false;
-        }
-
-        if (isBlank(request.getPassword())) {
-            errorMessage.append("\t\tpassword should be provided for create user request\n");
-            isValid = false;
-        }
-
-        if (isBlank(request.getEmail())) {
-            errorMessage.append("\t\temail should be provided for create user request\n");
-            isValid = false;
-        }
-        return validate(streamObserver, errorMessage, isValid);
+        return validate(CREATE_USER, request, streamObserver);
     }
 
     public boolean isValid(VerifyCredentialsRequest request, StreamObserver<?> streamObserver) {
-        final StringBuilder errorMessage = initErrorString(request);
-        boolean isValid = true;
-
-        if (isBlank(request.getEmail())) {
-            errorMessage.append("\t\temail should be provided for verify credentials request\n");
-            isValid = false;
-        }
-
-        if (isBlank(request.getPassword())) {
-            errorMessage.append("\t\tpassword should be provided for verify credentials request\n");
-            isValid = false;
-        }
-
-        return validate(streamObserver, errorMessage, isValid);
+        return validate(VERIFY_CREDENTIALS, request, streamObserver);
     }
 
     public boolean isValid(GetUserProfileRequest request, StreamObserver<?> streamObserver) {
-        final StringBuilder errorMessage = initErrorString(request);
-        boolean isValid = true;
-
-
-        if (request.getUserIdsCount() > 20) {
-            errorMessage.append("\t\tcannot get more than 20 user profiles at once for get user profile request\n");
-            isValid = false;
-        }
-
-        for (CommonTypes.Uuid uuid : request.getUserIdsList()) {
-            if (uuid == null || isBlank(uuid.getValue())) {
-                errorMessage.append("\t\tprovided UUID values cannot be null or blank for get user profile request\n");
-                isValid = false;
-            }
-        }
-
-        return validate(streamObserver, errorMessage, isValid);
+        return validate(GET_USER_PROFILE, request, streamObserver);
     }
 
     public boolean isValid(SubmitUploadedVideoRequest request, StreamObserver<?> streamObserver) {
-        final StringBuilder errorMessage = initErrorString(request);
-        boolean isValid = true;
-
-        if (request.getVideoId() == null || isBlank(request.getVideoId().getValue())) {
-            errorMessage.append("\t\tvideo id should be provided for submit uploaded video request\n");
-            isValid = false;
-        }
-
-        if (request.getUserId() == null || isBlank(request.getUserId().getValue())) {
-            errorMessage.append("\t\tuser id should be provided for submit uploaded video request\n");
-            isValid = false;
-        }
-
-        if (isBlank(request.getName())) {
-            errorMessage.append("\t\tvideo name should be provided for submit uploaded video request\n");
-            isValid = false;
-        }
-
-        if (isBlank(request.getDescription())) {
-            errorMessage.append("\t\tvideo description should be provided for submit uploaded video request\n");
-            isValid = false;
-        }
-
-        if (request.getTagsList() == null || CollectionUtils.isEmpty(request.getTagsList())) {
-            errorMessage.append("\t\tvideo tags list should be provided for submit uploaded video request\n");
-            isValid = false;
-        }
-
-        if (isBlank(request.getUploadUrl())) {
-            errorMessage.append("\t\tvideo upload url should be provided for submit uploaded video request\n");
-            isValid = false;
-        }
-
-        return validate(streamObserver, errorMessage, isValid);
+        return validate(SUBMIT_UPLOADED_VIDEO, request, streamObserver);
     }
 
     public boolean isValid(SubmitYouTubeVideoRequest request, StreamObserver<?> streamObserver) {
-        final StringBuilder errorMessage = initErrorString(request);
-        boolean isValid = true;
-
-        if (request.getVideoId() == null || isBlank(request.getVideoId().getValue())) {
-            errorMessage.append("\t\tvideo id should be provided for submit youtube video request\n");
-            isValid = false;
-        }
-
-        if (request.getUserId() == null || isBlank(request.getUserId().getValue())) {
-            errorMessage.append("\t\tuser id should be provided for submit youtube video request\n");
-            isValid = false;
-        }
-
-        if (isBlank(request.getName())) {
-            errorMessage.append("\t\tvideo name should be provided for submit youtube video request\n");
-            isValid = false;
-        }
-
-        if (isBlank(request.getDescription())) {
-            errorMessage.append("\t\tvideo description should be provided for submit youtube video request\n");
-            isValid = false;
-        }
-
-        if (isBlank(request.getYouTubeVideoId())) {
-            errorMessage.append("\t\tvideo youtube id should be provided for submit youtube video request\n");
-            isValid = false;
-        }
-
-        return validate(streamObserver, errorMessage, isValid);
+        return validate(SUBMIT_YOUTUBE_VIDEO, request, streamObserver);
     }
 
     public boolean isValid(GetVideoRequest request, StreamObserver<?> streamObserver) {
-        final StringBuilder errorMessage = initErrorString(request);
-        boolean isValid = true;
-
-        if (request.getVideoId() == null || isBlank(request.getVideoId().getValue())) {
-            errorMessage.append("\t\tvideo id should be provided for submit youtube video request\n");
-            isValid = false;
-        }
-        return validate(streamObserver, errorMessage, isValid);
+        return validate(GET_VIDEO, request, streamObserver);
     }
 
     public boolean isValid(GetVideoPreviewsRequest request, StreamObserver<?> streamObserver) {
-        final StringBuilder errorMessage = initErrorString(request);
-        boolean isValid = true;
-
-
-        if (request.getVideoIdsCount() >= 20) {
-            errorMessage.append("\t\tcannot get more than 20 videos at once for get video previews request\n");
-            isValid = false;
-        }
-
-        for (CommonTypes.Uuid uuid : request.getVideoIdsList()) {
-            if (uuid == null || isBlank(uuid.getValue())) {
-                errorMessage.append("\t\tprovided UUID values cannot be null or blank for get video previews request\n");
-                isValid = false;
-            }
-        }
-
-        return validate(streamObserver, errorMessage, isValid);
+        return validate(GET_VIDEO_PREVIEWS, request, streamObserver);
     }
 
-
     public boolean isValid(GetLatestVideoPreviewsRequest request, StreamObserver<?> streamObserver) {
-        final StringBuilder errorMessage = initErrorString(request);
-        boolean isValid = true;
-
-        if (request.getPageSize() <= 0) {
-            errorMessage.append("\t\tpage size should be strictly positive for get latest preview video request\n");
-            isValid = false;
-        }
-
-        return validate(streamObserver, errorMessage, isValid);
+        return validate(GET_LATEST_VIDEO_PREVIEWS, request, streamObserver);
     }
 
     public boolean isValid(GetUserVideoPreviewsRequest request, StreamObserver<?> streamObserver) {
-        final StringBuilder errorMessage = initErrorString(request);
-        boolean isValid = true;
+        return validate(GET_USER_VIDEO_PREVIEWS, request, streamObserver);
+    }
 
-        if (request.getUserId() == null || isBlank(request.getUserId().getValue())) {
-            errorMessage.append("\t\tuser id should be provided for get user video previews request\n");
-            isValid = false;
-        }
+    public boolean isValid(GetUploadDestinationRequest request, StreamObserver<?> streamObserver) {
+        return validate(GET_UPLOAD_DESTINATION, request, streamObserver);
+    }
 
-        if (request.getPageSize() <= 0) {
-            errorMessage.append("\t\tpage size should be strictly positive for get user video previews request\n");
-            isValid = false;
-        }
+    public boolean isValid(GetUploadProgressRequest request, StreamObserver<?> streamObserver) {
+        return validate(GET_UPLOAD_PROGRESS, request, streamObserver);
+    }
 
-        return validate(streamObserver, errorMessage, isValid);
+    public boolean isValid(MarkUploadCompleteRequest request, StreamObserver<?> streamObserver) {
+        return validate(MARK_UPLOAD_COMPLETE, request, streamObserver);
     }
 
-    private StringBuilder initErrorString(Object request) {
-        return new StringBuilder("Validation error for '" + request.toString() + "' : \n");
+    public boolean isValid(GetStatusOfVideoRequest request, StreamObserver<?> streamObserver) {
+        return validate(GET_STATUS_OF_VIDEO, request, streamObserver);
     }
 
-    private boolean validate(StreamObserver<?> streamObserver, StringBuilder errorMessage, boolean isValid) {
-        if (isValid) {
+    private <R> boolean validate(RuleSet<R> rules, R request, StreamObserver<?> streamObserver) {
+        if (rules.accepts(request)) {
             return true;
-        } else {
-            final String description = errorMessage.toString();
-            LOGGER.error(description);
-            streamObserver.onError(Status.INVALID_ARGUMENT.withDescription(description).asRuntimeException());
-            streamObserver.onCompleted();
-            return false;
         }
+        final String description = rules.describeViolations(request);
+        LOGGER.error(description);
+        streamObserver.onError(Status.INVALID_ARGUMENT.withDescription(description).asRuntimeException());
+        streamObserver.onCompleted();
+        return false;
     }
 
+    /**
+     * Repeated fields are checked by index, iterating their list would allocate an iterator
+     */
+    private static boolean hasBlankVideoId(GetNumberOfPlaysRequest request) {
+        for (int i = 0; i < request.getVideoIdsCount(); i++) {
+            if (isBlank(request.getVideoIds(i).getValue())) {
+                return true;
+            }
+        }
+        return false;
+    }
 
+    private static boolean hasBlankUserId(GetUserProfileRequest request) {
+        for (int i = 0; i < request.getUserIdsCount(); i++) {
+            if (isBlank(request.getUserIds(i).getValue())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasBlankVideoId(GetVideoPreviewsRequest request) {
+        for (int i = 0; i < request.getVideoIdsCount(); i++) {
+            if (isBlank(request.getVideoIds(i).getValue())) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
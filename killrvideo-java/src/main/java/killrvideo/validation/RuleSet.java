@@ -0,0 +1,76 @@
+package killrvideo.validation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Rules of one request type, built once and then evaluated on every call.
+ *
+ * Checking a valid request only runs the rules, no diagnostic is built and nothing is
+ * allocated as long as the rules themselves do not allocate: write them as lambdas
+ * capturing nothing, and iterate repeated fields by index rather than through their
+ * list. The request is only rendered, with every rule it violates, once it is invalid.
+ * @param <R> request type
+ */
+final class RuleSet<R> {
+
+    private final Predicate<R>[] violations;
+    private final String[] messages;
+
+    private RuleSet(Predicate<R>[] violations, String[] messages) {
+        this.violations = violations;
+        this.messages = messages;
+    }
+
+    static <R> Builder<R> builder() {
+        return new Builder<>();
+    }
+
+    boolean accepts(R request) {
+        for (int i = 0; i < violations.length; i++) {
+            if (violations[i].test(request)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the request followed by the message of each rule it violates
+     */
+    String describeViolations(R request) {
+        final StringBuilder description = new StringBuilder("Validation error for '")
+                .append(request)
+                .append("' : \n");
+        for (int i = 0; i < violations.length; i++) {
+            if (violations[i].test(request)) {
+                description.append("\t\t").append(messages[i]).append('\n');
+            }
+        }
+        return description.toString();
+    }
+
+    static final class Builder<R> {
+        private final List<Predicate<R>> violations = new ArrayList<>();
+        private final List<String> messages = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        /**
+         * @param violation true when the request breaks the rule
+         * @param message why the request is rejected, e.g. "user id should be provided for rate video request"
+         */
+        Builder<R> rule(Predicate<R> violation, String message) {
+            violations.add(violation);
+            messages.add(message);
+            return this;
+        }
+
+        @SuppressWarnings("unchecked")
+        RuleSet<R> build() {
+            return new RuleSet<>(violations.toArray(new Predicate[0]), messages.toArray(new String[0]));
+        }
+    }
+}
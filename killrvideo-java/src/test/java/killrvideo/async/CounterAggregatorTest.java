@@ -0,0 +1,128 @@
+package killrvideo.async;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.WriteType;
+import com.datastax.driver.core.exceptions.UnavailableException;
+import com.datastax.driver.core.exceptions.WriteTimeoutException;
+
+public class CounterAggregatorTest {
+
+	@Test
+	public void testIncrementsAreCoalescedPerKey() throws Exception {
+		final Map<String, Long> written = new ConcurrentHashMap<>();
+		final Map<String, Integer> writes = new ConcurrentHashMap<>();
+
+		try (CounterAggregator<String> aggregator = new CounterAggregator<>("test", 60000L, 0L, 100,
+				(key, delta) -> {
+					written.merge(key, delta, Long::sum);
+					writes.merge(key, 1, Integer::sum);
+					return CompletableFuture.completedFuture(null);
+				})) {
+
+			for (int i = 0; i < 1000; i++) {
+				aggregator.increment("hot");
+			}
+			aggregator.increment("cold");
+			aggregator.flush().get(1, TimeUnit.SECONDS);
+
+			assertEquals(Long.valueOf(1000L), written.get("hot"));
+			assertEquals(Integer.valueOf(1), writes.get("hot"));
+			assertEquals(Long.valueOf(1L), written.get("cold"));
+		}
+	}
+
+	@Test
+	public void testWriteNotAppliedIsRetried() throws Exception {
+		final Map<String, Long> written = new ConcurrentHashMap<>();
+		final AtomicBoolean fail = new AtomicBoolean(true);
+
+		try (CounterAggregator<String> aggregator = new CounterAggregator<>("test", 60000L, 0L, 100,
+				(key, delta) -> {
+					final CompletableFuture<Void> future = new CompletableFuture<>();
+					if (fail.getAndSet(false)) {
+						future.completeExceptionally(new UnavailableException(ConsistencyLevel.LOCAL_QUORUM, 2, 1));
+					} else {
+						written.merge(key, delta, Long::sum);
+						future.complete(null);
+					}
+					return future;
+				})) {
+
+			aggregator.add("video", 5L);
+			aggregator.flush().get(1, TimeUnit.SECONDS);
+			aggregator.add("video", 2L);
+			aggregator.flush().get(1, TimeUnit.SECONDS);
+
+			assertEquals(Long.valueOf(7L), written.get("video"));
+		}
+	}
+
+	@Test
+	public void testTimedOutWriteIsNotRetried() throws Exception {
+		final Map<String, Long> written = new ConcurrentHashMap<>();
+		final AtomicBoolean fail = new AtomicBoolean(true);
+
+		try (CounterAggregator<String> aggregator = new CounterAggregator<>("test", 60000L, 0L, 100,
+				(key, delta) -> {
+					final CompletableFuture<Void> future = new CompletableFuture<>();
+					if (fail.getAndSet(false)) {
+						/** The replicas may have applied it before the coordinator gave up **/
+						future.completeExceptionally(new WriteTimeoutException(ConsistencyLevel.LOCAL_QUORUM, WriteType.COUNTER, 2, 1));
+					} else {
+						written.merge(key, delta, Long::sum);
+						future.complete(null);
+					}
+					return future;
+				})) {
+
+			aggregator.add("video", 5L);
+			aggregator.flush().get(1, TimeUnit.SECONDS);
+			aggregator.add("video", 2L);
+			aggregator.flush().get(1, TimeUnit.SECONDS);
+
+			assertEquals(Long.valueOf(2L), written.get("video"));
+			assertEquals(5L, aggregator.uncertainIncrements());
+		}
+	}
+
+	@Test
+	public void testTooManyKeysTriggerASingleFlush() throws Exception {
+		final AtomicInteger writes = new AtomicInteger();
+
+		try (CounterAggregator<String> aggregator = new CounterAggregator<>("test", 60000L, 0L, 2,
+				(key, delta) -> {
+					writes.incrementAndGet();
+					return CompletableFuture.completedFuture(null);
+				})) {
+
+			for (int i = 0; i < 3; i++) {
+				aggregator.increment("video" + i);
+			}
+			for (int i = 0; i < 100 && writes.get() < 3; i++) {
+				Thread.sleep(10);
+			}
+			assertEquals(3, writes.get());
+
+			/** Still over the bound until the idle keys are retired, no flush per new key **/
+			for (int i = 3; i < 10; i++) {
+				aggregator.increment("video" + i);
+			}
+			Thread.sleep(100);
+			assertEquals(3, writes.get());
+
+			aggregator.flush().get(1, TimeUnit.SECONDS);
+			assertEquals(10, writes.get());
+		}
+	}
+}
@@ -0,0 +1,156 @@
+package killrvideo.async;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import com.google.common.eventbus.Subscribe;
+
+public class QueuedEventBusTest {
+
+	private static final File TMP = new File(System.getProperty("java.io.tmpdir"));
+
+	public static class SlowListener {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch received;
+		final List<Integer> events = Collections.synchronizedList(new ArrayList<>());
+		volatile Thread thread;
+
+		SlowListener(int expected) {
+			this.received = new CountDownLatch(expected);
+		}
+
+		@Subscribe
+		public void handle(Integer event) throws InterruptedException {
+			thread = Thread.currentThread();
+			started.countDown();
+			release.await();
+			events.add(event);
+			received.countDown();
+		}
+	}
+
+	@Test
+	public void testPostDoesNotRunSubscriberInline() throws InterruptedException {
+		QueuedEventBus bus = new QueuedEventBus("test-inline", 4, QueuedEventBus.Backpressure.DROP, 0, TMP, Long.MAX_VALUE);
+		SlowListener listener = new SlowListener(1);
+		bus.register(listener);
+
+		bus.post(1);
+		listener.release.countDown();
+
+		assertTrue(listener.received.await(5, TimeUnit.SECONDS));
+		assertNotEquals(Thread.currentThread(), listener.thread);
+		bus.close();
+	}
+
+	@Test
+	public void testDropPolicyDiscardsWhenFull() throws InterruptedException {
+		QueuedEventBus bus = new QueuedEventBus("test-drop", 2, QueuedEventBus.Backpressure.DROP, 0, TMP, Long.MAX_VALUE);
+		SlowListener listener = new SlowListener(3);
+		bus.register(listener);
+
+		// First event is held by the listener, the next two fill the queue
+		bus.post(0);
+		assertTrue(listener.started.await(5, TimeUnit.SECONDS));
+		for (int i = 1; i < 10; i++) {
+			bus.post(i);
+		}
+		listener.release.countDown();
+
+		assertTrue(listener.received.await(5, TimeUnit.SECONDS));
+		bus.close();
+		assertEquals(Arrays.asList(0, 1, 2), listener.events);
+	}
+
+	@Test
+	public void testDurableSubscriberIsNeverDroppedAnEvent() throws InterruptedException {
+		QueuedEventBus bus = new QueuedEventBus("test-durable", 2, QueuedEventBus.Backpressure.DROP, 0, TMP, Long.MAX_VALUE);
+		SlowListener durable = new SlowListener(10);
+		bus.registerDurable(durable);
+
+		/** The posting thread waits for room in the queue of the durable listener */
+		Thread poster = new Thread(() -> {
+			for (int i = 0; i < 10; i++) {
+				bus.post(i);
+			}
+		});
+		poster.start();
+		assertTrue(durable.started.await(5, TimeUnit.SECONDS));
+		poster.join(200);
+		assertTrue(poster.isAlive());
+
+		durable.release.countDown();
+		poster.join(5000);
+
+		assertTrue(durable.received.await(5, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), durable.events);
+		bus.close();
+	}
+
+	@Test
+	public void testSpillPolicyKeepsEveryEventInOrder() throws InterruptedException {
+		QueuedEventBus bus = new QueuedEventBus("test-spill", 2, QueuedEventBus.Backpressure.SPILL, 0, TMP, Long.MAX_VALUE);
+		SlowListener listener = new SlowListener(100);
+		bus.register(listener);
+
+		List<Integer> expected = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			bus.post(i);
+			expected.add(i);
+		}
+		listener.release.countDown();
+
+		assertTrue(listener.received.await(5, TimeUnit.SECONDS));
+		assertEquals(expected, listener.events);
+		bus.close();
+	}
+
+	@Test
+	public void testSpillFileStopsGrowingAtItsMaximumSize() throws Exception {
+		QueuedEventBus bus = new QueuedEventBus("test-spill-cap", 2, QueuedEventBus.Backpressure.SPILL, 0, TMP, 512);
+		SlowListener listener = new SlowListener(0);
+		bus.register(listener);
+		ObjectName metrics = new ObjectName("killrvideo:type=EventSubscriber,bus=" + ObjectName.quote("test-spill-cap")
+				+ ",name=" + ObjectName.quote(SlowListener.class.getSimpleName()));
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+		bus.post(0);
+		assertTrue(listener.started.await(5, TimeUnit.SECONDS));
+		for (int i = 1; i < 100; i++) {
+			bus.post(i);
+			Thread.sleep(1);
+		}
+		assertTrue((Long) server.getAttribute(metrics, "SpillFileBytes") <= 512);
+		listener.release.countDown();
+
+		for (int i = 0; i < 500 && (Long) server.getAttribute(metrics, "Lag") > 0; i++) {
+			Thread.sleep(10);
+		}
+		final long dropped = (Long) server.getAttribute(metrics, "DroppedEvents");
+		assertTrue((Long) server.getAttribute(metrics, "SpillDroppedEvents") > 0);
+		assertEquals(100, listener.events.size() + dropped);
+
+		/** Events kept are still delivered in order **/
+		List<Integer> sorted = new ArrayList<>(listener.events);
+		Collections.sort(sorted);
+		assertEquals(sorted, listener.events);
+		assertEquals(Arrays.asList(0, 1, 2), listener.events.subList(0, 3));
+		bus.close();
+	}
+}
@@ -0,0 +1,233 @@
+package killrvideo.async;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.dse.DseSession;
+import com.datastax.driver.mapping.Mapper;
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.Futures;
+
+import killrvideo.entity.VideoRatingByUser;
+
+public class RatingBatchPipelineTest {
+
+	private final UUID video1 = UUID.randomUUID();
+	private final UUID video2 = UUID.randomUUID();
+
+	/** Values bound to each counter UPDATE **/
+	private final Map<Statement, Map<String, Object>> counterUpdates = new HashMap<>();
+	/** Row written by each insert **/
+	private final Map<Statement, VideoRatingByUser> rowInserts = new HashMap<>();
+	private final List<Statement> executed = new ArrayList<>();
+	private final List<TestResultSetFuture> writes = new ArrayList<>();
+	private volatile boolean acknowledgeWrites = true;
+
+	private RatingBatchPipeline pipeline;
+
+	@After
+	public void closePipeline() {
+		pipeline.close();
+	}
+
+	@Test
+	public void testCounterIncrementsAreMergedPerVideo() throws Exception {
+		pipeline = pipeline(10);
+		final UUID user1 = UUID.randomUUID();
+		final UUID user2 = UUID.randomUUID();
+		final UUID user3 = UUID.randomUUID();
+
+		pipeline.submit(video1, user1, 3);
+		pipeline.submit(video1, user2, 4);
+		pipeline.submit(video1, user1, 5);
+		pipeline.submit(video2, user3, 2);
+		pipeline.flush().get(5, TimeUnit.SECONDS);
+
+		final List<Map<String, Object>> counters = new ArrayList<>();
+		executed.stream().filter(counterUpdates::containsKey).forEach(update -> counters.add(counterUpdates.get(update)));
+		assertEquals(2, counters.size());
+		assertEquals(counter(video1, 3L, 12L), counters.get(0));
+		assertEquals(counter(video2, 1L, 2L), counters.get(1));
+
+		/** Only the last rating of a user is kept in video_ratings_by_user **/
+		final List<String> rows = new ArrayList<>();
+		rowInserts.values().forEach(row -> rows.add(row.getVideoid() + ":" + row.getUserid() + ":" + row.getRating()));
+		assertEquals(new HashSet<>(Arrays.asList(video1 + ":" + user1 + ":5", video1 + ":" + user2 + ":4",
+				video2 + ":" + user3 + ":2")), new HashSet<>(rows));
+	}
+
+	@Test
+	public void testUnloggedBatchesAreSplitPerPartitionAndSize() throws Exception {
+		pipeline = pipeline(2);
+		final List<CompletableFuture<Void>> committed = new ArrayList<>();
+
+		/** Holding the batcher keeps the early flush from starting until every rating is queued **/
+		final Object batcher = ReflectionTestUtils.getField(pipeline, "batcher");
+		synchronized (batcher) {
+			committed.add(pipeline.submit(video1, UUID.randomUUID(), 1));
+			committed.add(pipeline.submit(video1, UUID.randomUUID(), 2));
+			committed.add(pipeline.submit(video2, UUID.randomUUID(), 3));
+			committed.add(pipeline.submit(video1, UUID.randomUUID(), 4));
+		}
+		CompletableFuture.allOf(committed.toArray(new CompletableFuture[committed.size()])).get(5, TimeUnit.SECONDS);
+
+		final List<String> batches = new ArrayList<>();
+		for (Statement statement : executed) {
+			if (statement instanceof BatchStatement) {
+				final BatchStatement batch = (BatchStatement) statement;
+				assertEquals(BatchStatement.Type.UNLOGGED, ReflectionTestUtils.getField(batch, "batchType"));
+				final StringBuilder videos = new StringBuilder();
+				batch.getStatements().forEach(insert -> videos.append(video1.equals(rowInserts.get(insert).getVideoid()) ? "1" : "2"));
+				batches.add(videos.toString());
+			}
+		}
+		assertEquals(Arrays.asList("11", "1", "2"), batches);
+	}
+
+	@Test
+	public void testRatingCommitsOnlyOnceEveryWriteIsAcknowledged() throws Exception {
+		acknowledgeWrites = false;
+		pipeline = pipeline(10);
+
+		final CompletableFuture<Void> committed = pipeline.submit(video1, UUID.randomUUID(), 4);
+		pipeline.flush();
+		assertEquals(2, writes.size());
+
+		writes.get(1).set(mock(ResultSet.class));
+		assertFalse(committed.isDone());
+		writes.get(0).set(mock(ResultSet.class));
+		committed.get(5, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void testFailureTellsWhetherTheCountersWereWritten() throws Exception {
+		acknowledgeWrites = false;
+		pipeline = pipeline(10);
+
+		final CompletableFuture<Void> counterLost = pipeline.submit(video1, UUID.randomUUID(), 4);
+		final CompletableFuture<Void> rowLost = pipeline.submit(video2, UUID.randomUUID(), 5);
+		pipeline.flush();
+
+		/** Counter UPDATE then batch of each video **/
+		assertEquals(4, writes.size());
+		writes.get(0).setException(new IllegalStateException("Counter write timeout"));
+		writes.get(1).set(mock(ResultSet.class));
+		writes.get(2).set(mock(ResultSet.class));
+		writes.get(3).setException(new IllegalStateException("Batch write timeout"));
+
+		assertFalse(failure(counterLost).countersWritten);
+		assertTrue(failure(rowLost).countersWritten);
+	}
+
+	private RatingBatchPipeline pipeline(int maxBatchSize) {
+		final DseSession dseSession = mock(DseSession.class);
+		when(dseSession.executeAsync(any(Statement.class))).thenAnswer(invocation -> {
+			final TestResultSetFuture future = new TestResultSetFuture();
+			synchronized (executed) {
+				executed.add((Statement) invocation.getArguments()[0]);
+				writes.add(future);
+			}
+			if (acknowledgeWrites) {
+				future.set(mock(ResultSet.class));
+			}
+			return future;
+		});
+
+		final PreparedStatement counterUpdatePrepared = mock(PreparedStatement.class);
+		when(counterUpdatePrepared.bind()).thenAnswer(invocation -> counterUpdate());
+
+		@SuppressWarnings("unchecked")
+		final Mapper<VideoRatingByUser> mapper = mock(Mapper.class);
+		when(mapper.saveQuery(any(VideoRatingByUser.class))).thenAnswer(invocation -> {
+			final BoundStatement insert = mock(BoundStatement.class);
+			rowInserts.put(insert, (VideoRatingByUser) invocation.getArguments()[0]);
+			return insert;
+		});
+
+		return new RatingBatchPipeline(dseSession, counterUpdatePrepared, mapper, 60000L, maxBatchSize);
+	}
+
+	private BoundStatement counterUpdate() {
+		final BoundStatement update = mock(BoundStatement.class);
+		final Map<String, Object> values = new HashMap<>();
+		when(update.setLong(anyString(), anyLong())).thenAnswer(invocation -> {
+			values.put((String) invocation.getArguments()[0], invocation.getArguments()[1]);
+			return update;
+		});
+		when(update.setUUID(anyString(), any(UUID.class))).thenAnswer(invocation -> {
+			values.put((String) invocation.getArguments()[0], invocation.getArguments()[1]);
+			return update;
+		});
+		counterUpdates.put(update, values);
+		return update;
+	}
+
+	private static Map<String, Object> counter(UUID videoId, long count, long total) {
+		final Map<String, Object> values = new HashMap<>();
+		values.put("videoid", videoId);
+		values.put("rating_counter", count);
+		values.put("rating_total", total);
+		return values;
+	}
+
+	private static RatingBatchPipeline.RatingWriteException failure(CompletableFuture<Void> committed) throws Exception {
+		try {
+			committed.get(5, TimeUnit.SECONDS);
+			fail("Rating should not be committed");
+			return null;
+		} catch (ExecutionException ex) {
+			return (RatingBatchPipeline.RatingWriteException) ex.getCause();
+		}
+	}
+
+	private static class TestResultSetFuture extends AbstractFuture<ResultSet> implements ResultSetFuture {
+
+		@Override
+		public boolean set(ResultSet value) {
+			return super.set(value);
+		}
+
+		@Override
+		public boolean setException(Throwable throwable) {
+			return super.setException(throwable);
+		}
+
+		@Override
+		public ResultSet getUninterruptibly() {
+			return Futures.getUnchecked(this);
+		}
+
+		@Override
+		public ResultSet getUninterruptibly(long timeout, TimeUnit unit) {
+			return Futures.getUnchecked(this);
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package killrvideo.async;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class RpcExecutorTest {
+
+	@Test
+	public void testBoundedModeCountsTasksAndRejections() throws InterruptedException {
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(1));
+		RpcExecutor executor = RpcExecutor.create(RpcExecutor.Mode.BOUNDED, pool);
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch started = new CountDownLatch(1);
+
+		executor.execute(() -> {
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		started.await();
+		executor.execute(() -> { });
+		try {
+			executor.execute(() -> { });
+			fail("Third task should not fit in the bounded pool");
+		} catch (RejectedExecutionException expected) {
+		}
+
+		assertEquals(1, executor.getActiveTasks());
+		assertEquals(1, executor.getQueuedTasks());
+		assertEquals(1, executor.getRejectedTasks());
+
+		release.countDown();
+		pool.shutdown();
+		assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+
+		assertEquals(2, executor.getSubmittedTasks());
+		assertEquals(2, executor.getCompletedTasks());
+		assertEquals(0, executor.getActiveTasks());
+		assertEquals(1, executor.getPeakActiveTasks());
+	}
+
+	@Test
+	public void testBoundedPoolIsNotClosed() {
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(1));
+		RpcExecutor.create(RpcExecutor.Mode.BOUNDED, pool).close();
+
+		assertFalse(pool.isShutdown());
+		pool.shutdown();
+	}
+
+	@Test
+	public void testVirtualModeMatchesTheRunningJvm() throws Exception {
+		RpcExecutor executor = RpcExecutor.create(RpcExecutor.Mode.VIRTUAL, null);
+		CountDownLatch ran = new CountDownLatch(1);
+		AtomicReference<Thread> thread = new AtomicReference<>();
+
+		executor.execute(() -> {
+			thread.set(Thread.currentThread());
+			ran.countDown();
+		});
+		assertTrue(ran.await(5, TimeUnit.SECONDS));
+
+		boolean virtualThreads;
+		try {
+			Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			virtualThreads = true;
+		} catch (NoSuchMethodException ex) {
+			virtualThreads = false;
+		}
+		if (virtualThreads) {
+			assertEquals(RpcExecutor.Mode.VIRTUAL, executor.getMode());
+			assertEquals(Boolean.TRUE, Thread.class.getMethod("isVirtual").invoke(thread.get()));
+		} else {
+			// Falls back to the platform threads of the cached mode
+			assertEquals(RpcExecutor.Mode.CACHED, executor.getMode());
+		}
+		executor.close();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownModeIsRejected() {
+		RpcExecutor.Mode.parse("forkjoin");
+	}
+}
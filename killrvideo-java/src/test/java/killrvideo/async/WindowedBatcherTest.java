@@ -0,0 +1,60 @@
+package killrvideo.async;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class WindowedBatcherTest {
+
+	@Test
+	public void testFullBatchIsFlushedBeforeTheWindow() throws Exception {
+		final List<List<Integer>> batches = Collections.synchronizedList(new ArrayList<>());
+		final CountDownLatch flushed = new CountDownLatch(1);
+
+		try (WindowedBatcher<Integer> batcher = new WindowedBatcher<>("test", 60000L, 3,
+				items -> {
+					if (!items.isEmpty()) {
+						batches.add(items);
+						flushed.countDown();
+					}
+					return CompletableFuture.completedFuture(null);
+				})) {
+
+			batcher.add(1);
+			batcher.add(2);
+			assertTrue(batches.isEmpty());
+			batcher.add(3);
+
+			assertTrue(flushed.await(1, TimeUnit.SECONDS));
+			assertEquals(Collections.singletonList(Arrays.asList(1, 2, 3)), batches);
+		}
+	}
+
+	@Test
+	public void testCloseFlushesWhatIsQueued() throws Exception {
+		final List<Integer> written = Collections.synchronizedList(new ArrayList<>());
+
+		final WindowedBatcher<Integer> batcher = new WindowedBatcher<>("test", 60000L, 100,
+				items -> {
+					written.addAll(items);
+					return CompletableFuture.completedFuture(null);
+				});
+		batcher.add(1);
+		batcher.add(2);
+		batcher.close(1000L);
+
+		assertEquals(Arrays.asList(1, 2), written);
+		assertTrue(batcher.isClosed());
+		assertFalse(batcher.add(3));
+	}
+}
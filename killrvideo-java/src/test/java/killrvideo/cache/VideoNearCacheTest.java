@@ -0,0 +1,109 @@
+package killrvideo.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyVararg;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.stubbing.Answer;
+import org.springframework.mock.env.MockEnvironment;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.dse.DseSession;
+import com.datastax.driver.mapping.Mapper;
+import com.datastax.driver.mapping.Result;
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.Futures;
+
+import killrvideo.configuration.KillrVideoProperties;
+import killrvideo.entity.Video;
+
+public class VideoNearCacheTest {
+
+	private final VideoNearCache videoNearCache = new VideoNearCache();
+
+	@Before
+	@SuppressWarnings("unchecked")
+	public void createCache() {
+		videoNearCache.videoMapper = mock(Mapper.class);
+		videoNearCache.dseSession = mock(DseSession.class);
+		when(videoNearCache.videoMapper.getQuery(anyVararg())).thenAnswer(invocation ->
+				new SimpleStatement("SELECT * FROM killrvideo.videos WHERE videoid = ?", invocation.getArguments()));
+
+		/** Each SELECT answers the video of its videoid **/
+		final Map<ResultSet, UUID> videoIds = new ConcurrentHashMap<>();
+		when(videoNearCache.dseSession.executeAsync(any(Statement.class))).thenAnswer(invocation -> {
+			final ResultSet rs = mock(ResultSet.class);
+			videoIds.put(rs, (UUID) ((SimpleStatement) invocation.getArguments()[0]).getObject(0));
+			final TestResultSetFuture future = new TestResultSetFuture();
+			future.set(rs);
+			return future;
+		});
+		when(videoNearCache.videoMapper.map(any(ResultSet.class))).thenAnswer(invocation -> {
+			final Video video = new Video(videoIds.get(invocation.getArguments()[0]), UUID.randomUUID(), "video", null, 0,
+					Collections.emptySet(), new Date());
+			return mock(Result.class, (Answer<Video>) one -> video);
+		});
+
+		/** Room for two videos of about 300 bytes */
+		videoNearCache.properties = new KillrVideoProperties(new MockEnvironment()
+				.withProperty(KillrVideoProperties.VIDEO_CACHE_MAX_BYTES, "700"));
+		videoNearCache.init();
+	}
+
+	@Test
+	public void testHitsMissesAndEvictionsAreCounted() throws Exception {
+		final UUID first = UUID.randomUUID();
+		videoNearCache.get(first).get(1, TimeUnit.SECONDS);
+		videoNearCache.get(first).get(1, TimeUnit.SECONDS);
+
+		assertEquals(1L, videoNearCache.getHits());
+		assertEquals(1L, videoNearCache.getMisses());
+		assertEquals(0.5d, videoNearCache.getHitRate(), 0.0d);
+
+		videoNearCache.get(UUID.randomUUID()).get(1, TimeUnit.SECONDS);
+		videoNearCache.get(UUID.randomUUID()).get(1, TimeUnit.SECONDS);
+		assertEquals(3L, videoNearCache.getMisses());
+
+		/** Evictions happen on the maintenance of the cache, off the calling thread */
+		final long deadline = System.currentTimeMillis() + 1000L;
+		while (videoNearCache.getEvictions() == 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10L);
+		}
+		assertTrue(videoNearCache.getEvictions() >= 1L);
+		assertTrue(videoNearCache.getEstimatedSize() <= 2L);
+		assertEquals(0L, videoNearCache.getLoadFailures());
+	}
+
+	private static class TestResultSetFuture extends AbstractFuture<ResultSet> implements ResultSetFuture {
+
+		@Override
+		public boolean set(ResultSet value) {
+			return super.set(value);
+		}
+
+		@Override
+		public ResultSet getUninterruptibly() {
+			return Futures.getUnchecked(this);
+		}
+
+		@Override
+		public ResultSet getUninterruptibly(long timeout, TimeUnit unit) {
+			return Futures.getUnchecked(this);
+		}
+	}
+}
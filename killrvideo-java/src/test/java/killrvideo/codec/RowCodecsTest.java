@@ -0,0 +1,94 @@
+package killrvideo.codec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import com.datastax.driver.core.ColumnDefinitions;
+import com.datastax.driver.core.Row;
+
+import killrvideo.comments.CommentsServiceOuterClass.VideoComment;
+import killrvideo.entity.CommentsByVideo;
+import killrvideo.entity.UserVideos;
+import killrvideo.utils.TypeConverter;
+
+public class RowCodecsTest {
+
+	@Test
+	public void testVideoCommentMatchesTheEntityConversion() {
+		final UUID videoId = UUID.randomUUID();
+		final UUID commentId = UUID.fromString("1c4b1d40-c0e7-11e7-8f1a-0800200c9a66");
+		final UUID userId = UUID.randomUUID();
+		final Date timestamp = new Date(1509976800123L);
+
+		final ColumnDefinitions definitions = columns("videoid", "commentid", "userid", "comment", "comment_timestamp");
+		final Row row = mock(Row.class);
+		when(row.getColumnDefinitions()).thenReturn(definitions);
+		when(row.getUUID(0)).thenReturn(videoId);
+		when(row.getUUID(1)).thenReturn(commentId);
+		when(row.getUUID(2)).thenReturn(userId);
+		when(row.getString(3)).thenReturn("First!");
+		when(row.getTimestamp(4)).thenReturn(timestamp);
+
+		final CommentsByVideo entity = new CommentsByVideo(videoId, commentId, userId, "First!");
+		entity.setDateOfComment(timestamp);
+
+		final VideoComment comment = RowCodecs.VIDEO_COMMENT.apply(row);
+		assertEquals(entity.toVideoComment(), comment);
+		assertEquals(entity.toVideoComment(), RowCodecs.VIDEO_COMMENT.apply(row));
+
+		/** Indexes are looked up once for the rows of the same metadata **/
+		verify(definitions, times(4)).getIndexOf(anyString());
+	}
+
+	@Test
+	public void testMissingPreviewImageIsReplaced() {
+		final UUID videoId = UUID.randomUUID();
+		final UUID userId = UUID.randomUUID();
+		final Date addedDate = new Date();
+
+		final Row row = mock(Row.class);
+		when(row.getColumnDefinitions()).thenReturn(columns("userid", "added_date", "videoid", "name", "preview_image_location"));
+		when(row.getUUID(0)).thenReturn(userId);
+		when(row.getTimestamp(1)).thenReturn(addedDate);
+		when(row.getUUID(2)).thenReturn(videoId);
+		when(row.getString(3)).thenReturn("Cassandra Day");
+
+		assertEquals(new UserVideos(userId, videoId, "Cassandra Day", null, addedDate).toVideoPreview(),
+				RowCodecs.USER_VIDEO_PREVIEW.apply(row));
+		assertEquals("N/A", RowCodecs.USER_VIDEO_PREVIEW.apply(row).getPreviewImageLocation());
+	}
+
+	@Test
+	public void testConvertedUuidsAreReused() {
+		final UUID uuid = UUID.randomUUID();
+		assertSame(TypeConverter.uuidToUuid(uuid), TypeConverter.uuidToUuid(UUID.fromString(uuid.toString())));
+		assertEquals(uuid.toString(), TypeConverter.uuidToUuid(uuid).getValue());
+		assertEquals(uuid.toString(), TypeConverter.uuidToTimeUuid(uuid).getValue());
+	}
+
+	@Test
+	public void testTimestampsBeforeTheEpochAreConverted() {
+		final Date date = new Date(-1500L);
+		assertEquals(TypeConverter.instantToTimeStamp(date.toInstant()), TypeConverter.dateToTimestamp(date));
+		assertEquals(-2, TypeConverter.dateToTimestamp(date).getSeconds());
+		assertEquals(500_000_000, TypeConverter.dateToTimestamp(date).getNanos());
+	}
+
+	private static ColumnDefinitions columns(String... names) {
+		final ColumnDefinitions definitions = mock(ColumnDefinitions.class);
+		when(definitions.getIndexOf(anyString()))
+				.thenAnswer(invocation -> Arrays.asList(names).indexOf(invocation.getArguments()[0]));
+		return definitions;
+	}
+}
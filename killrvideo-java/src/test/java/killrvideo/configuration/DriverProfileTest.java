@@ -0,0 +1,29 @@
+package killrvideo.configuration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class DriverProfileTest {
+
+	@Test
+	public void testProfileNamesAreParsed() {
+		assertEquals(DriverProfile.DEFAULT, DriverProfile.parse("default"));
+		assertEquals(DriverProfile.LOW_LATENCY, DriverProfile.parse(" low-latency "));
+		assertEquals(DriverProfile.HIGH_THROUGHPUT, DriverProfile.parse("HIGH_THROUGHPUT"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownProfileIsRejected() {
+		DriverProfile.parse("fastest");
+	}
+
+	@Test
+	public void testPoolsAreConsistent() {
+		for (DriverProfile profile : DriverProfile.values()) {
+			assertTrue(profile.name(), profile.coreConnections <= profile.maxConnections);
+			assertTrue(profile.name(), profile.speculativeExecutions == 0 || profile.speculativeDelayMs > 0);
+		}
+	}
+}
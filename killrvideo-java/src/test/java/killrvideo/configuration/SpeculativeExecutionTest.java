@@ -0,0 +1,118 @@
+package killrvideo.configuration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyVararg;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.QueryOptions;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.policies.SpeculativeExecutionPolicy;
+import com.datastax.driver.core.policies.SpeculativeExecutionPolicy.SpeculativeExecutionPlan;
+import com.datastax.driver.mapping.Mapper;
+import com.datastax.driver.mapping.Result;
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.Futures;
+
+import killrvideo.utils.IdempotentReads;
+
+public class SpeculativeExecutionTest {
+
+	private final UUID videoId = UUID.randomUUID();
+	private final Session session = mock(Session.class);
+	private final List<Statement> executed = new ArrayList<>();
+	private Mapper<String> mapper;
+
+	@Before
+	@SuppressWarnings("unchecked")
+	public void mockMapper() {
+		final ResultSet rs = mock(ResultSet.class);
+		when(session.executeAsync(any(Statement.class))).thenAnswer(invocation -> {
+			executed.add((Statement) invocation.getArguments()[0]);
+			final TestResultSetFuture future = new TestResultSetFuture();
+			future.set(rs);
+			return future;
+		});
+
+		/** The mapper prepares its SELECT from a string, its idempotence is left unset **/
+		mapper = mock(Mapper.class);
+		when(mapper.getQuery(anyVararg())).thenAnswer(invocation ->
+				new SimpleStatement("SELECT * FROM killrvideo.videos WHERE videoid = ?", invocation.getArguments()));
+		final Result<String> result = mock(Result.class);
+		when(result.one()).thenReturn("video " + videoId);
+		when(mapper.map(rs)).thenReturn(result);
+	}
+
+	@Test
+	public void testMapperReadIsSpeculatedByLowLatencyProfile() throws Exception {
+		assertEquals("video " + videoId, IdempotentReads.getAsync(session, mapper, videoId).get(5, TimeUnit.SECONDS));
+		assertEquals(1, executed.size());
+
+		final Statement read = executed.get(0);
+		assertTrue(speculates(read));
+		final SpeculativeExecutionPlan plan = DSEConfiguration
+				.speculativeExecutionPolicy(DriverProfile.LOW_LATENCY, DriverProfile.LOW_LATENCY.speculativeDelayMs)
+				.newPlan("killrvideo", read);
+		assertEquals(25L, plan.nextExecution(mock(Host.class)));
+		assertEquals(-1L, plan.nextExecution(mock(Host.class)));
+	}
+
+	@Test
+	public void testMapperStatementIsNotSpeculatedAsIs() {
+		assertFalse(speculates(mapper.getQuery(videoId)));
+	}
+
+	@Test
+	public void testProfilesWithoutSpeculationNeverPlanOne() {
+		final Statement read = mapper.getQuery(videoId).setIdempotent(true);
+		for (DriverProfile profile : new DriverProfile[] { DriverProfile.DEFAULT, DriverProfile.HIGH_THROUGHPUT }) {
+			final SpeculativeExecutionPolicy policy = DSEConfiguration.speculativeExecutionPolicy(profile, profile.speculativeDelayMs);
+			assertEquals(profile.name(), -1L, policy.newPlan("killrvideo", read).nextExecution(mock(Host.class)));
+		}
+		/** A delay of 0 turns speculation off whatever the profile **/
+		assertEquals(-1L, DSEConfiguration.speculativeExecutionPolicy(DriverProfile.LOW_LATENCY, 0)
+				.newPlan("killrvideo", read).nextExecution(mock(Host.class)));
+	}
+
+	/**
+	 * The check of the driver before it asks the policy for a plan, the cluster
+	 * is built with the default query options, where statements are not idempotent
+	 */
+	private static boolean speculates(Statement statement) {
+		return statement.isIdempotent() != null ? statement.isIdempotent() : new QueryOptions().getDefaultIdempotence();
+	}
+
+	private static class TestResultSetFuture extends AbstractFuture<ResultSet> implements ResultSetFuture {
+
+		@Override
+		public boolean set(ResultSet value) {
+			return super.set(value);
+		}
+
+		@Override
+		public ResultSet getUninterruptibly() {
+			return Futures.getUnchecked(this);
+		}
+
+		@Override
+		public ResultSet getUninterruptibly(long timeout, TimeUnit unit) {
+			return Futures.getUnchecked(this);
+		}
+	}
+}
@@ -0,0 +1,195 @@
+package killrvideo.cql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.exceptions.UnpreparedException;
+import com.datastax.driver.dse.DseSession;
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.SettableFuture;
+
+import killrvideo.metrics.PreparedStatementNames;
+
+public class PreparedStatementRegistryTest {
+
+	private final DseSession session = session();
+	private final PreparedStatementNames statementNames = new PreparedStatementNames();
+
+	@Test
+	public void testStatementsArePreparedInParallelThenWarmedUp() throws Exception {
+		SettableFuture<PreparedStatement> first = SettableFuture.create();
+		SettableFuture<PreparedStatement> second = SettableFuture.create();
+		when(session.prepareAsync("SELECT first")).thenReturn(first);
+		when(session.prepareAsync("SELECT second")).thenReturn(second);
+		when(session.executeAsync(anyString())).thenReturn(resultSet());
+		PreparedStatementRegistry registry = new PreparedStatementRegistry(session, statementNames,
+				Arrays.asList("SELECT warm", "SELECT warmer"), 3, 2);
+
+		AtomicReference<PreparedStatement> firstPrepared = new AtomicReference<>();
+		AtomicReference<PreparedStatement> secondPrepared = new AtomicReference<>();
+		registry.prepare("firstPrepared", "SELECT first", firstPrepared::set);
+		registry.prepare("secondPrepared", "SELECT second", secondPrepared::set);
+		registry.afterSingletonsInstantiated();
+
+		verify(session).prepareAsync("SELECT first");
+		verify(session).prepareAsync("SELECT second");
+		assertNull(firstPrepared.get());
+		assertFalse(registry.isReady());
+
+		PreparedStatement firstStatement = statement("SELECT first");
+		first.set(firstStatement);
+		assertSame(firstStatement, firstPrepared.get());
+		assertFalse(registry.isReady());
+		verify(session, never()).executeAsync(anyString());
+
+		PreparedStatement secondStatement = statement("SELECT second");
+		second.set(secondStatement);
+		registry.awaitReady(1, TimeUnit.SECONDS);
+
+		assertTrue(registry.isReady());
+		assertSame(secondStatement, secondPrepared.get());
+		assertEquals(2, registry.getPreparedStatements());
+		assertEquals("secondPrepared", statementNames.nameOf(secondStatement));
+		verify(session, times(3)).executeAsync("SELECT warm");
+		verify(session, times(3)).executeAsync("SELECT warmer");
+	}
+
+	@Test
+	public void testStatementFailingToPrepareIsNeverReady() throws Exception {
+		when(session.prepareAsync("SELECT first")).thenReturn(Futures.immediateFuture(statement("SELECT first")));
+		when(session.prepareAsync("SELECT missing"))
+				.thenReturn(Futures.<PreparedStatement>immediateFailedFuture(new IllegalStateException("unconfigured table")));
+		PreparedStatementRegistry registry = new PreparedStatementRegistry(session, statementNames,
+				Collections.singletonList("SELECT warm"), 1, 1);
+
+		registry.prepare("firstPrepared", "SELECT first", prepared -> {});
+		registry.prepare("missingPrepared", "SELECT missing", prepared -> {});
+		registry.afterSingletonsInstantiated();
+
+		try {
+			registry.awaitReady(1, TimeUnit.SECONDS);
+			fail("A statement could not be prepared");
+		} catch (IllegalStateException ex) {
+			assertEquals("unconfigured table", ex.getCause().getMessage());
+		}
+		assertFalse(registry.isReady());
+		verify(session, never()).executeAsync(anyString());
+	}
+
+	@Test
+	public void testFailedWarmupQueriesDoNotDelayTheReadiness() throws Exception {
+		when(session.executeAsync(anyString())).thenReturn(failedResultSet());
+		PreparedStatementRegistry registry = new PreparedStatementRegistry(session, statementNames,
+				Collections.singletonList("SELECT warm"), 5, 2);
+
+		registry.afterSingletonsInstantiated();
+		registry.awaitReady(1, TimeUnit.SECONDS);
+
+		assertTrue(registry.isReady());
+		assertEquals(5, registry.getWarmupFailures());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testStatementsCannotBePreparedAfterStartup() {
+		when(session.prepareAsync("SELECT late")).thenReturn(SettableFuture.<PreparedStatement>create());
+		PreparedStatementRegistry registry = new PreparedStatementRegistry(session, statementNames,
+				Collections.<String>emptyList(), 0, 1);
+
+		registry.afterSingletonsInstantiated();
+		registry.prepare("latePrepared", "SELECT late", prepared -> {});
+	}
+
+	@Test
+	public void testReprepareEventsAreCounted() throws Exception {
+		PreparedStatement statement = statement("SELECT first");
+		when(session.prepareAsync("SELECT first")).thenReturn(Futures.immediateFuture(statement));
+		PreparedStatementRegistry registry = new PreparedStatementRegistry(session, statementNames,
+				Collections.<String>emptyList(), 0, 1);
+		registry.prepare("firstPrepared", "SELECT first", prepared -> {});
+		registry.afterSingletonsInstantiated();
+		registry.awaitReady(1, TimeUnit.SECONDS);
+
+		BoundStatement bound = mock(BoundStatement.class);
+		when(bound.preparedStatement()).thenReturn(statement);
+		Host host = mock(Host.class);
+		registry.update(host, bound, mock(UnpreparedException.class), 1000);
+		registry.update(host, bound, null, 1000);
+		registry.update(host, bound, new IllegalStateException("timeout"), 1000);
+		assertEquals(1, registry.getReprepares());
+
+		registry.onUp(host);
+		registry.onAdd(host);
+		assertEquals(2, registry.getHostReprepares());
+	}
+
+	private static DseSession session() {
+		DseSession session = mock(DseSession.class);
+		when(session.getCluster()).thenReturn(mock(Cluster.class));
+		return session;
+	}
+
+	private static PreparedStatement statement(String query) {
+		PreparedStatement statement = mock(PreparedStatement.class);
+		when(statement.getQueryString()).thenReturn(query);
+		return statement;
+	}
+
+	private static ResultSetFuture resultSet() {
+		TestResultSetFuture future = new TestResultSetFuture();
+		future.set(mock(ResultSet.class));
+		return future;
+	}
+
+	private static ResultSetFuture failedResultSet() {
+		TestResultSetFuture future = new TestResultSetFuture();
+		future.setException(new IllegalStateException("no host available"));
+		return future;
+	}
+
+	private static class TestResultSetFuture extends AbstractFuture<ResultSet> implements ResultSetFuture {
+
+		@Override
+		public boolean set(ResultSet value) {
+			return super.set(value);
+		}
+
+		@Override
+		public boolean setException(Throwable throwable) {
+			return super.setException(throwable);
+		}
+
+		@Override
+		public ResultSet getUninterruptibly() {
+			return Futures.getUnchecked(this);
+		}
+
+		@Override
+		public ResultSet getUninterruptibly(long timeout, TimeUnit unit) {
+			return Futures.getUnchecked(this);
+		}
+	}
+}
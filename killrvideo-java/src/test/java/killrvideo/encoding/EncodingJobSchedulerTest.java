@@ -0,0 +1,175 @@
+package killrvideo.encoding;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import killrvideo.metrics.KillrVideoMetrics;
+
+public class EncodingJobSchedulerTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final List<String> states = Collections.synchronizedList(new ArrayList<>());
+	private final EncodingStateLog stateLog = (videoId, jobId, oldState, newState) -> {
+		states.add(oldState + ">" + newState);
+		return CompletableFuture.completedFuture(null);
+	};
+
+	@Test
+	public void testJobsAreSharedBetweenTenantsByPriority() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final List<String> encoded = Collections.synchronizedList(new ArrayList<>());
+		final Transcoder transcoder = (source, target) -> {
+			encoded.add(source.getFileName().toString());
+			started.countDown();
+			release.await();
+		};
+
+		try (KillrVideoMetrics metrics = new KillrVideoMetrics();
+			 EncodingJobScheduler scheduler = new EncodingJobScheduler(transcoder, stateLog, metrics, 1, 10)) {
+			/** Hold the only worker while the other jobs are queued **/
+			final List<CompletableFuture<Path>> jobs = new ArrayList<>();
+			jobs.add(submit(scheduler, "a", EncodingJobScheduler.NORMAL_PRIORITY, "a0"));
+			assertTrue(started.await(5, TimeUnit.SECONDS));
+
+			jobs.add(submit(scheduler, "a", EncodingJobScheduler.NORMAL_PRIORITY, "a1"));
+			jobs.add(submit(scheduler, "a", EncodingJobScheduler.NORMAL_PRIORITY, "a2"));
+			jobs.add(submit(scheduler, "b", EncodingJobScheduler.NORMAL_PRIORITY, "b1"));
+			jobs.add(submit(scheduler, "a", EncodingJobScheduler.NORMAL_PRIORITY, "a3"));
+			jobs.add(submit(scheduler, "b", EncodingJobScheduler.NORMAL_PRIORITY, "b2"));
+			jobs.add(submit(scheduler, "c", 5, "c1"));
+			assertEquals(6, scheduler.getQueuedJobs());
+			assertEquals(3, scheduler.getQueuedTenants());
+
+			release.countDown();
+			for (CompletableFuture<Path> job : jobs) {
+				job.get(5, TimeUnit.SECONDS);
+			}
+
+			assertEquals(Arrays.asList("a0", "c1", "a1", "b1", "a2", "b2", "a3"), encoded);
+			assertEquals("OK=7", metrics.encodingJob("transcode").getOutcomes());
+		}
+	}
+
+	@Test
+	public void testStatesAreAppendedAsTheJobProgresses() throws Exception {
+		final Transcoder failing = (source, target) -> {
+			if (source.getFileName().toString().startsWith("broken")) {
+				throw new IOException("Unsupported codec");
+			}
+		};
+
+		try (KillrVideoMetrics metrics = new KillrVideoMetrics();
+			 EncodingJobScheduler scheduler = new EncodingJobScheduler(failing, stateLog, metrics, 1, 10)) {
+			final Path target = submit(scheduler, "a", EncodingJobScheduler.NORMAL_PRIORITY, "holiday.mp4").get(5, TimeUnit.SECONDS);
+			assertEquals(folder.getRoot().toPath().resolve("encoded").resolve("holiday.mp4"), target);
+			assertEquals(Arrays.asList("Uploaded>Queued", "Queued>Processing", "Processing>Finished"), states);
+
+			states.clear();
+			try {
+				submit(scheduler, "a", EncodingJobScheduler.NORMAL_PRIORITY, "broken.mp4").get(5, TimeUnit.SECONDS);
+				fail("Encoding should have failed");
+			} catch (ExecutionException ex) {
+				assertTrue(ex.getCause() instanceof IOException);
+			}
+			assertEquals(Arrays.asList("Uploaded>Queued", "Queued>Processing", "Processing>Error"), states);
+		}
+	}
+
+	@Test
+	public void testJobsAreRejectedWhenTheQueueIsFull() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final Transcoder blocking = (source, target) -> {
+			started.countDown();
+			release.await();
+		};
+
+		try (KillrVideoMetrics metrics = new KillrVideoMetrics();
+			 EncodingJobScheduler scheduler = new EncodingJobScheduler(blocking, stateLog, metrics, 1, 1)) {
+			submit(scheduler, "a", EncodingJobScheduler.NORMAL_PRIORITY, "v0");
+			assertTrue(started.await(5, TimeUnit.SECONDS));
+			submit(scheduler, "a", EncodingJobScheduler.NORMAL_PRIORITY, "v1");
+			try {
+				submit(scheduler, "b", EncodingJobScheduler.NORMAL_PRIORITY, "v2");
+				fail("Job should have been rejected");
+			} catch (RejectedExecutionException ex) {
+				assertEquals(1, scheduler.getQueuedJobs());
+			}
+			release.countDown();
+		}
+	}
+
+	@Test
+	public void testLostJobsAreSubmittedAgainFromTheirState() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		final Transcoder blocking = (source, target) -> release.await();
+		final UUID videoId = UUID.randomUUID();
+		final Path source = folder.getRoot().toPath().resolve("lost.mp4");
+
+		try (KillrVideoMetrics metrics = new KillrVideoMetrics();
+			 EncodingJobScheduler scheduler = new EncodingJobScheduler(blocking, stateLog, metrics, 1, 10)) {
+			assertFalse(scheduler.isPending(videoId));
+
+			final CompletableFuture<Path> job = scheduler.submit(videoId, "a", EncodingJobScheduler.NORMAL_PRIORITY,
+					source, source.resolveSibling("encoded").resolve("lost.mp4"), EncodingJobScheduler.PROCESSING);
+			assertTrue(scheduler.isPending(videoId));
+
+			release.countDown();
+			job.get(5, TimeUnit.SECONDS);
+			assertFalse(scheduler.isPending(videoId));
+			assertEquals(Arrays.asList("Processing>Queued", "Queued>Processing", "Processing>Finished"), states);
+		}
+	}
+
+	@Test
+	public void testJobInterruptedByCloseIsLeftProcessing() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final Transcoder blocking = (source, target) -> {
+			started.countDown();
+			new CountDownLatch(1).await();
+		};
+
+		final CompletableFuture<Path> job;
+		try (KillrVideoMetrics metrics = new KillrVideoMetrics();
+			 EncodingJobScheduler scheduler = new EncodingJobScheduler(blocking, stateLog, metrics, 1, 10)) {
+			job = submit(scheduler, "a", EncodingJobScheduler.NORMAL_PRIORITY, "restart.mp4");
+			assertTrue(started.await(5, TimeUnit.SECONDS));
+		}
+
+		try {
+			job.get(5, TimeUnit.SECONDS);
+			fail("Encoding should have been cancelled");
+		} catch (CancellationException ex) {
+			assertEquals(Arrays.asList("Uploaded>Queued", "Queued>Processing"), states);
+		}
+	}
+
+	private CompletableFuture<Path> submit(EncodingJobScheduler scheduler, String tenant, int priority, String fileName) {
+		final Path source = folder.getRoot().toPath().resolve(fileName);
+		return scheduler.submit(UUID.randomUUID(), tenant, priority, source,
+				source.resolveSibling("encoded").resolve(fileName));
+	}
+}
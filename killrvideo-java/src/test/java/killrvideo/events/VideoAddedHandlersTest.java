@@ -0,0 +1,109 @@
+package killrvideo.events;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyVararg;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.dse.DseSession;
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.Futures;
+import com.google.protobuf.Timestamp;
+
+import killrvideo.index.TagSuggestionIndex;
+import killrvideo.utils.TypeConverter;
+import killrvideo.video_catalog.events.VideoCatalogEvents.YouTubeVideoAdded;
+
+public class VideoAddedHandlersTest {
+
+	@Test
+	public void testWritesAreTimestampedInMicroseconds() throws Exception {
+		final BoundStatement videoByTag = mock(BoundStatement.class);
+		when(videoByTag.setDefaultTimestamp(anyLong())).thenReturn(videoByTag);
+		final VideoAddedHandlers handlers = handlers(videoByTag);
+
+		final Timestamp tagged = Timestamp.newBuilder().setSeconds(1509976800L).setNanos(123_000_000).build();
+		final UUID videoId = UUID.randomUUID();
+		handlers.indexTags(YouTubeVideoAdded.newBuilder()
+				.setVideoId(TypeConverter.uuidToUuid(videoId))
+				.setUserId(TypeConverter.uuidToUuid(UUID.randomUUID()))
+				.setName("Cassandra Day")
+				.addAllTags(Arrays.asList("cassandra", "data modeling", "datastax"))
+				.setAddedDate(tagged)
+				.setTimestamp(tagged)
+				.build()).get(1, TimeUnit.SECONDS);
+
+		final long micros = 1509976800123000L;
+		verify(videoByTag, times(3)).setDefaultTimestamp(micros);
+
+		final ArgumentCaptor<Statement> executed = ArgumentCaptor.forClass(Statement.class);
+		verify(handlers.dseSession, times(5)).executeAsync(executed.capture());
+		final List<Statement> statements = executed.getAllValues();
+		assertSame(videoByTag, statements.get(0));
+		for (Statement batch : statements.subList(3, 5)) {
+			assertEquals(BatchStatement.class, batch.getClass());
+			assertEquals(micros, batch.getDefaultTimestamp());
+		}
+		verify(handlers.tagSuggestionIndex).addTags(videoId, new HashSet<>(Arrays.asList("cassandra", "data modeling", "datastax")));
+	}
+
+	private static VideoAddedHandlers handlers(BoundStatement videoByTag) {
+		final VideoAddedHandlers handlers = new VideoAddedHandlers();
+		handlers.dseSession = mock(DseSession.class);
+		when(handlers.dseSession.executeAsync(any(Statement.class))).thenReturn(resultSet());
+		handlers.tagSuggestionIndex = mock(TagSuggestionIndex.class);
+
+		final PreparedStatement videosByTagPrepared = mock(PreparedStatement.class);
+		when(videosByTagPrepared.bind(anyVararg())).thenReturn(videoByTag);
+		final PreparedStatement tagsByLetterPrepared = mock(PreparedStatement.class);
+		when(tagsByLetterPrepared.bind(anyVararg())).thenReturn(mock(BoundStatement.class));
+		ReflectionTestUtils.setField(handlers, "videosByTagPrepared", videosByTagPrepared);
+		ReflectionTestUtils.setField(handlers, "tagsByLetterPrepared", tagsByLetterPrepared);
+		return handlers;
+	}
+
+	private static ResultSetFuture resultSet() {
+		TestResultSetFuture future = new TestResultSetFuture();
+		future.set(mock(ResultSet.class));
+		return future;
+	}
+
+	private static class TestResultSetFuture extends AbstractFuture<ResultSet> implements ResultSetFuture {
+
+		@Override
+		public boolean set(ResultSet value) {
+			return super.set(value);
+		}
+
+		@Override
+		public ResultSet getUninterruptibly() {
+			return Futures.getUnchecked(this);
+		}
+
+		@Override
+		public ResultSet getUninterruptibly(long timeout, TimeUnit unit) {
+			return Futures.getUnchecked(this);
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package killrvideo.index;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.Test;
+
+public class PostingListsTest {
+
+	private static UUID id(long value) {
+		return new UUID(0L, value);
+	}
+
+	private static UUID[] list(long... values) {
+		UUID[] ids = new UUID[values.length];
+		for (int i = 0; i < values.length; i++) {
+			ids[i] = id(values[i]);
+		}
+		return ids;
+	}
+
+	@Test
+	public void testOfSortsAndDeduplicates() {
+		assertArrayEquals(list(1, 2, 5), PostingLists.of(Arrays.asList(id(5), id(1), id(2), id(5), id(1))));
+	}
+
+	@Test
+	public void testIntersectGallopsOverLongLists() {
+		long[] evens = new long[1000];
+		for (int i = 0; i < evens.length; i++) {
+			evens[i] = 2L * i;
+		}
+
+		assertArrayEquals(list(4, 998, 1998),
+				PostingLists.intersect(Arrays.asList(list(evens), list(3, 4, 998, 1997, 1998, 5000), list(0, 4, 998, 1998))));
+		assertArrayEquals(list(),
+				PostingLists.intersect(Arrays.asList(list(evens), list(1, 3, 5))));
+	}
+
+	@Test
+	public void testUnionCountsMatchedLists() {
+		List<PostingLists.Match> matches = PostingLists.union(Arrays.asList(list(1, 3, 5), list(3, 4), list(), list(3, 5)));
+
+		assertEquals(4, matches.size());
+		assertEquals(id(1), matches.get(0).videoId);
+		assertEquals(1, matches.get(0).matchedLists);
+		assertEquals(id(3), matches.get(1).videoId);
+		assertEquals(3, matches.get(1).matchedLists);
+		assertEquals(id(4), matches.get(2).videoId);
+		assertEquals(1, matches.get(2).matchedLists);
+		assertEquals(id(5), matches.get(3).videoId);
+		assertEquals(2, matches.get(3).matchedLists);
+	}
+}
@@ -0,0 +1,98 @@
+package killrvideo.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.TableMetadata;
+import com.datastax.driver.dse.DseSession;
+import com.datastax.driver.mapping.Mapper;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import killrvideo.entity.VideoByTag;
+
+public class TagSuggestionIndexTest {
+
+	private final UUID video1 = UUID.randomUUID();
+	private final UUID video2 = UUID.randomUUID();
+	private final UUID video3 = UUID.randomUUID();
+
+	@Test
+	public void testBootstrapWeighsEachTagByItsVideos() {
+		final List<Row> rows = new ArrayList<>();
+		rows.add(row("cassandra", video1));
+		rows.add(row("cassandra", video2));
+		rows.add(row("cassandra", video3));
+		rows.add(row("cars", video1));
+		rows.add(row("cat", video2));
+		rows.add(row("cat", video3));
+		final TagSuggestionIndex index = index(rows);
+
+		index.init();
+
+		assertTrue(index.isReady());
+		assertEquals(Arrays.asList("cassandra", "cat", "cars"), index.suggest("ca", 3));
+
+		index.addTags(UUID.randomUUID(), Arrays.asList("cars"));
+		index.addTags(UUID.randomUUID(), Arrays.asList("cars"));
+		assertEquals(Arrays.asList("cars", "cassandra"), index.suggest("ca", 2));
+	}
+
+	@Test
+	public void testVideoCountsOncePerTag() {
+		final List<Row> rows = new ArrayList<>();
+		final TagSuggestionIndex index = index(rows);
+
+		/** Indexed while the bootstrap is scanning, then seen by the scan **/
+		rows.add(row("cassandra", video1));
+		rows.add(row("cassandra", video2));
+		index.addTags(video1, Arrays.asList("cassandra", "cars"));
+		index.init();
+
+		/** Indexed again by a replay **/
+		index.addTags(video1, Arrays.asList("cassandra", "cars"));
+		index.addTags(video2, Arrays.asList("cars"));
+		index.addTags(video3, Arrays.asList("cars"));
+
+		assertEquals(Arrays.asList("cars", "cassandra"), index.suggest("ca", 2));
+		index.addTags(video3, Arrays.asList("cassandra"));
+		assertEquals(Arrays.asList("cars", "cassandra"), index.suggest("ca", 2));
+		index.addTags(UUID.randomUUID(), Arrays.asList("cassandra"));
+		assertEquals(Arrays.asList("cassandra", "cars"), index.suggest("ca", 2));
+	}
+
+	@SuppressWarnings("unchecked")
+	private static TagSuggestionIndex index(List<Row> rows) {
+		final TagSuggestionIndex index = new TagSuggestionIndex();
+		index.videosByTagMapper = mock(Mapper.class);
+		final TableMetadata table = mock(TableMetadata.class);
+		when(table.getName()).thenReturn("videos_by_tag");
+		when(index.videosByTagMapper.getTableMetadata()).thenReturn(table);
+		index.threadPool = MoreExecutors.newDirectExecutorService();
+
+		final ResultSet videosByTag = mock(ResultSet.class);
+		when(videosByTag.iterator()).thenAnswer(invocation -> rows.iterator());
+		index.dseSession = mock(DseSession.class);
+		when(index.dseSession.execute(any(Statement.class))).thenReturn(videosByTag);
+		return index;
+	}
+
+	private static Row row(String tag, UUID videoId) {
+		final Row row = mock(Row.class);
+		when(row.getString("tag")).thenReturn(tag);
+		when(row.getUUID("videoid")).thenReturn(videoId);
+		return row;
+	}
+}
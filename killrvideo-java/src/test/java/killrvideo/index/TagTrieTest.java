@@ -0,0 +1,53 @@
+package killrvideo.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class TagTrieTest {
+
+	@Test
+	public void testPrefixLookupIsRankedByWeightThenAlphabetically() {
+		TagTrie trie = new TagTrie();
+		trie.add("cassandra", 1L);
+		trie.add("cat", 1L);
+		trie.add("cats", 1L);
+		trie.add("car", 1L);
+		trie.add("dog", 1L);
+		trie.add("cats", 5L);
+
+		assertEquals(4, trie.topK("c", 10).size());
+		assertEquals(Arrays.asList("cats", "car", "cassandra"), trie.topK("ca", 3));
+		assertEquals(Arrays.asList("cats", "cat"), trie.topK("cat", 10));
+		assertEquals(5, trie.size());
+	}
+
+	@Test
+	public void testPrefixEndingInsideAnEdge() {
+		TagTrie trie = new TagTrie();
+		trie.add("datastax", 1L);
+		trie.add("database", 2L);
+
+		assertEquals(Arrays.asList("database", "datastax"), trie.topK("d", 10));
+		assertEquals(Arrays.asList("datastax"), trie.topK("datas", 10));
+		assertTrue(trie.topK("dataz", 10).isEmpty());
+		assertTrue(trie.topK("databases", 10).isEmpty());
+	}
+
+	@Test
+	public void testWeightOfWholeTagsOnly() {
+		TagTrie trie = new TagTrie();
+		trie.add("data modeling", 2L);
+		trie.add("data", 1L);
+		trie.add("data modeling", 3L);
+
+		assertEquals(5L, trie.weightOf("data modeling"));
+		assertEquals(1L, trie.weightOf("data"));
+		assertEquals(0L, trie.weightOf("data model"));
+		assertEquals(0L, trie.weightOf("data modeling 101"));
+		assertEquals(0L, trie.weightOf(""));
+	}
+}
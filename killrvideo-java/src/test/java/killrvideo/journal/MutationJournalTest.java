@@ -0,0 +1,128 @@
+package killrvideo.journal;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MutationJournalTest {
+
+	private File directory;
+
+	@Before
+	public void createDirectory() throws IOException {
+		directory = Files.createTempDirectory("killrvideo-journal-test").toFile();
+	}
+
+	@After
+	public void deleteDirectory() {
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	private static byte[] payload(int value, int size) {
+		byte[] payload = new byte[size];
+		for (int i = 0; i < size; i++) {
+			payload[i] = (byte) (value + i);
+		}
+		return payload;
+	}
+
+	@Test
+	public void testAppendedRecordsAreReadBackInOrder() throws IOException {
+		try (MutationJournal journal = new MutationJournal(directory, 4096)) {
+			journal.append(1L, "a", payload(1, 10));
+			journal.append(2L, "b", payload(2, 20));
+
+			MutationJournal.Entry first = journal.read(journal.loadCheckpoint());
+			assertEquals(1L, first.timestampMillis);
+			assertEquals("a", first.type);
+			assertArrayEquals(payload(1, 10), first.payload);
+
+			MutationJournal.Entry second = journal.read(first.next);
+			assertEquals("b", second.type);
+			assertArrayEquals(payload(2, 20), second.payload);
+
+			assertNull(journal.read(second.next));
+			assertEquals(journal.end(), second.next);
+			assertEquals(0L, journal.bytesAfter(second.next));
+		}
+	}
+
+	@Test
+	public void testRecordsRollToNewSegments() throws IOException {
+		try (MutationJournal journal = new MutationJournal(directory, 256)) {
+			for (int i = 0; i < 10; i++) {
+				journal.append(i, "type", payload(i, 100));
+			}
+			assertTrue(journal.end().segment > 0);
+
+			MutationJournal.Position position = journal.loadCheckpoint();
+			for (int i = 0; i < 10; i++) {
+				MutationJournal.Entry entry = journal.read(position);
+				assertNotNull(entry);
+				assertEquals(i, entry.timestampMillis);
+				position = entry.next;
+			}
+			assertNull(journal.read(position));
+
+			journal.deleteSegmentsBefore(position.segment);
+			assertEquals(1, directory.listFiles((dir, name) -> name.endsWith(MutationJournal.SEGMENT_SUFFIX)).length);
+		}
+	}
+
+	@Test
+	public void testReopeningErasesTornRecord() throws IOException {
+		MutationJournal.Position torn;
+		try (MutationJournal journal = new MutationJournal(directory, 4096)) {
+			journal.append(1L, "a", payload(1, 10));
+			torn = journal.append(2L, "b", payload(2, 10));
+		}
+
+		// Corrupt the body of the second record
+		File segment = directory.listFiles((dir, name) -> name.endsWith(MutationJournal.SEGMENT_SUFFIX))[0];
+		try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+			raf.seek(torn.offset + 12);
+			raf.write(0xFF);
+		}
+
+		try (MutationJournal journal = new MutationJournal(directory, 4096)) {
+			assertEquals(torn, journal.end());
+			MutationJournal.Entry first = journal.read(journal.loadCheckpoint());
+			assertNull(journal.read(first.next));
+
+			journal.append(3L, "c", payload(3, 10));
+			assertEquals("c", journal.read(first.next).type);
+		}
+	}
+
+	@Test
+	public void testCheckpointSurvivesReopening() throws IOException {
+		MutationJournal.Position saved;
+		try (MutationJournal journal = new MutationJournal(directory, 4096)) {
+			journal.append(1L, "a", payload(1, 10));
+			journal.append(2L, "b", payload(2, 10));
+			saved = journal.read(journal.loadCheckpoint()).next;
+			journal.saveCheckpoint(saved);
+			assertFalse(journal.bytesAfter(saved) == 0L);
+		}
+
+		try (MutationJournal journal = new MutationJournal(directory, 4096)) {
+			assertEquals(saved, journal.loadCheckpoint());
+			assertEquals("b", journal.read(journal.loadCheckpoint()).type);
+		}
+	}
+}
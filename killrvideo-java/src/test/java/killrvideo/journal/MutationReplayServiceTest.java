@@ -0,0 +1,115 @@
+package killrvideo.journal;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.LongSupplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import com.datastax.driver.core.exceptions.NoHostAvailableException;
+
+import killrvideo.configuration.KillrVideoProperties;
+import killrvideo.cql.PreparedStatementRegistry;
+import killrvideo.events.VideoAddedHandlers;
+import killrvideo.ratings.RatingsServiceOuterClass.RateVideoRequest;
+import killrvideo.service.CommentService;
+import killrvideo.service.RatingsService;
+import killrvideo.service.VideoCatalogService;
+import killrvideo.utils.TypeConverter;
+
+public class MutationReplayServiceTest {
+
+	private File directory;
+	private MutationReplayService replayService;
+
+	@Before
+	public void createService() throws IOException {
+		directory = Files.createTempDirectory("killrvideo-replay-test").toFile();
+
+		replayService = new MutationReplayService();
+		replayService.properties = new KillrVideoProperties(new MockEnvironment()
+				.withProperty(KillrVideoProperties.MUTATION_JOURNAL_DIR, directory.getPath())
+				.withProperty(KillrVideoProperties.MUTATION_REPLAY_POLL_MS, "10")
+				.withProperty(KillrVideoProperties.MUTATION_REPLAY_BACKOFF_INITIAL_MS, "10")
+				.withProperty(KillrVideoProperties.MUTATION_REPLAY_BACKOFF_MAX_MS, "20"));
+		replayService.journal = new MutationJournal(directory, 4096);
+		replayService.commentService = mock(CommentService.class);
+		replayService.videoCatalogService = mock(VideoCatalogService.class);
+		replayService.ratingsService = mock(RatingsService.class);
+		replayService.videoAddedHandlers = mock(VideoAddedHandlers.class);
+		replayService.statementRegistry = mock(PreparedStatementRegistry.class);
+		when(replayService.statementRegistry.isReady()).thenReturn(true);
+
+		final RateVideoRequest rating = RateVideoRequest.newBuilder()
+				.setVideoId(TypeConverter.uuidToUuid(UUID.randomUUID()))
+				.setUserId(TypeConverter.uuidToUuid(UUID.randomUUID()))
+				.setRating(4)
+				.build();
+		replayService.journal.append(System.currentTimeMillis(), RatingsService.RATING_ROW_REPLAY,
+				rating.toByteArray());
+	}
+
+	@After
+	public void deleteDirectory() throws Exception {
+		replayService.stop();
+		replayService.journal.close();
+		delete(directory);
+	}
+
+	@Test
+	public void testThrownDriverFailureIsRetried() throws Exception {
+		doThrow(new NoHostAvailableException(Collections.emptyMap()))
+				.doReturn(CompletableFuture.completedFuture(null))
+				.when(replayService.ratingsService).replayRatingRow(any(RateVideoRequest.class), anyLong());
+		replayService.init();
+
+		await(replayService::getReplayedMutations);
+		assertEquals(1L, replayService.getReplayedMutations());
+		assertEquals(1L, replayService.getFailedAttempts());
+		assertEquals(0L, replayService.getDeadLetteredMutations());
+	}
+
+	@Test
+	public void testInvalidRequestIsDeadLettered() throws Exception {
+		doThrow(new IllegalArgumentException("Invalid rating"))
+				.when(replayService.ratingsService).replayRatingRow(any(RateVideoRequest.class), anyLong());
+		replayService.init();
+
+		await(replayService::getDeadLetteredMutations);
+		assertEquals(1L, replayService.getDeadLetteredMutations());
+		assertEquals(0L, replayService.getReplayedMutations());
+		assertEquals(0L, replayService.getFailedAttempts());
+	}
+
+	private static void await(LongSupplier counter) throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + 5000L;
+		while (counter.getAsLong() == 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10L);
+		}
+	}
+
+	private static void delete(File file) {
+		final File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
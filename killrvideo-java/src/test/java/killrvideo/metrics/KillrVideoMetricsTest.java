@@ -0,0 +1,63 @@
+package killrvideo.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class KillrVideoMetricsTest {
+
+	@Test
+	public void testGrpcMethodsAreExportedWithServiceAndMethodLabels() {
+		try (KillrVideoMetrics metrics = new KillrVideoMetrics()) {
+			final RequestMetrics rateVideo = metrics.grpcMethod("killrvideo.ratings.RatingsService/RateVideo");
+			assertSame(rateVideo, metrics.grpcMethod("killrvideo.ratings.RatingsService/RateVideo"));
+
+			rateVideo.started();
+			rateVideo.completed(TimeUnit.MILLISECONDS.toNanos(2), "OK");
+			rateVideo.started();
+			rateVideo.completed(TimeUnit.MILLISECONDS.toNanos(30), "INVALID_ARGUMENT");
+			rateVideo.started();
+
+			assertEquals(1, rateVideo.getInFlight());
+			assertEquals(2, rateVideo.getCount());
+			assertEquals(1, rateVideo.getErrors());
+			assertEquals("INVALID_ARGUMENT=1, OK=1", rateVideo.getOutcomes());
+
+			final StringBuilder text = new StringBuilder();
+			metrics.writePrometheus(text);
+			final String labels = "grpc_service=\"RatingsService\",grpc_method=\"RateVideo\"";
+			assertTrue(text.toString(), text.indexOf("# TYPE killrvideo_grpc_server_handling_seconds histogram\n") >= 0);
+			assertTrue(text.toString(), text.indexOf("killrvideo_grpc_server_handling_seconds_bucket{" + labels + ",le=\"0.0025\"} 1\n") >= 0);
+			assertTrue(text.toString(), text.indexOf("killrvideo_grpc_server_handling_seconds_bucket{" + labels + ",le=\"+Inf\"} 2\n") >= 0);
+			assertTrue(text.toString(), text.indexOf("killrvideo_grpc_server_handling_seconds_sum{" + labels + "} 0.032\n") >= 0);
+			assertTrue(text.toString(), text.indexOf("killrvideo_grpc_server_in_flight{" + labels + "} 1\n") >= 0);
+			assertTrue(text.toString(), text.indexOf("killrvideo_grpc_server_handled_total{" + labels + ",grpc_code=\"OK\"} 1\n") >= 0);
+		}
+	}
+
+	@Test
+	public void testCqlStatementsAreExportedByName() {
+		try (KillrVideoMetrics metrics = new KillrVideoMetrics()) {
+			metrics.cqlStatement("rateVideo_updateRatingPrepared").record(TimeUnit.MICROSECONDS.toNanos(800), "OK");
+			metrics.cqlStatement("rateVideo_updateRatingPrepared").record(TimeUnit.SECONDS.toNanos(2), "WriteTimeoutException");
+
+			final StringBuilder text = new StringBuilder();
+			metrics.writePrometheus(text);
+			final String labels = "statement=\"rateVideo_updateRatingPrepared\"";
+			assertTrue(text.toString(), text.indexOf("killrvideo_cql_request_seconds_bucket{" + labels + ",le=\"0.001\"} 1\n") >= 0);
+			assertTrue(text.toString(), text.indexOf("killrvideo_cql_request_seconds_count{" + labels + "} 2\n") >= 0);
+			assertTrue(text.toString(), text.indexOf("killrvideo_cql_requests_total{" + labels + ",outcome=\"WriteTimeoutException\"} 1\n") >= 0);
+		}
+	}
+
+	@Test
+	public void testQueriesAreDescribedByVerbAndTable() {
+		assertEquals("SELECT killrvideo_java.videos", PreparedStatementNames.describe("SELECT * FROM killrvideo_java.videos WHERE videoid = ?"));
+		assertEquals("INSERT killrvideo_java.users", PreparedStatementNames.describe("insert into \"killrvideo_java\".users (userid) VALUES (?)"));
+		assertEquals("UPDATE video_ratings", PreparedStatementNames.describe("UPDATE video_ratings SET rating_counter = rating_counter + 1"));
+	}
+}
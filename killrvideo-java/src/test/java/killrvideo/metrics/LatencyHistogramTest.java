@@ -0,0 +1,44 @@
+package killrvideo.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void testBoundsAreInclusive() {
+		assertEquals(0, LatencyHistogram.bucketIndex(0));
+		assertEquals(0, LatencyHistogram.bucketIndex(TimeUnit.MICROSECONDS.toNanos(100)));
+		assertEquals(1, LatencyHistogram.bucketIndex(TimeUnit.MICROSECONDS.toNanos(100) + 1));
+		assertEquals(LatencyHistogram.BUCKET_BOUNDS_NANOS.length, LatencyHistogram.bucketIndex(TimeUnit.SECONDS.toNanos(11)));
+	}
+
+	@Test
+	public void testPercentilesAreInterpolatedWithinBuckets() {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 100; i++) {
+			histogram.record(TimeUnit.MILLISECONDS.toNanos(i));
+		}
+
+		assertEquals(100, histogram.count());
+		assertEquals(TimeUnit.MILLISECONDS.toNanos(100), histogram.maxNanos());
+		assertEquals(TimeUnit.MILLISECONDS.toNanos(5050), histogram.sumNanos());
+
+		final long median = histogram.percentileNanos(0.5);
+		assertTrue("median " + median, median >= TimeUnit.MILLISECONDS.toNanos(45) && median <= TimeUnit.MILLISECONDS.toNanos(55));
+		final long p99 = histogram.percentileNanos(0.99);
+		assertTrue("p99 " + p99, p99 >= TimeUnit.MILLISECONDS.toNanos(95) && p99 <= TimeUnit.MILLISECONDS.toNanos(100));
+		assertEquals(histogram.maxNanos(), histogram.percentileNanos(1.0));
+	}
+
+	@Test
+	public void testEmptyHistogram() {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.count());
+		assertEquals(0, histogram.percentileNanos(0.99));
+	}
+}
@@ -0,0 +1,102 @@
+package killrvideo.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Test;
+
+import killrvideo.metrics.KillrVideoMetrics;
+
+public class PasswordHasherTest {
+
+	@Test
+	public void testPbkdf2HashesAreSaltedAndVerified() {
+		final Pbkdf2PasswordHashFormat format = new Pbkdf2PasswordHashFormat(1000);
+		final String hash = format.hash("secret");
+
+		assertTrue(hash, hash.startsWith("$pbkdf2-sha256$1000$"));
+		assertNotEquals(hash, format.hash("secret"));
+		assertTrue(format.matches("secret", hash));
+		assertFalse(format.matches("Secret", hash));
+		assertFalse(format.isOutdated(hash));
+		assertTrue(new Pbkdf2PasswordHashFormat(2000).isOutdated(hash));
+	}
+
+	@Test
+	public void testLegacyHashesAreUpgradedOnVerification() throws Exception {
+		try (KillrVideoMetrics metrics = new KillrVideoMetrics();
+			 PasswordHasher hasher = hasher(metrics, 1, 1)) {
+			final String legacyHash = new LegacyPasswordHashFormat().hash("secret");
+
+			final PasswordHasher.Verification verification = hasher.verify(" secret ", legacyHash).get();
+			assertTrue(verification.isValid());
+			assertTrue(verification.getUpgradedHash().startsWith("$pbkdf2-sha256$"));
+
+			final PasswordHasher.Verification upgraded = hasher.verify("secret", verification.getUpgradedHash()).get();
+			assertTrue(upgraded.isValid());
+			assertNull(upgraded.getUpgradedHash());
+
+			assertFalse(hasher.verify("wrong", legacyHash).get().isValid());
+			assertFalse(hasher.verify("secret", null).get().isValid());
+			assertEquals("MISMATCH=2, OK=1, OUTDATED=1", metrics.passwordHashing("verify").getOutcomes());
+		}
+	}
+
+	@Test
+	public void testLegacyHashesStartingWithDollarAreVerified() throws Exception {
+		try (KillrVideoMetrics metrics = new KillrVideoMetrics();
+			 PasswordHasher hasher = hasher(metrics, 1, 1)) {
+			/** The SHA-512 digest of this password starts with the byte of "$" **/
+			final String legacyHash = new LegacyPasswordHashFormat().hash("password324");
+			assertTrue(legacyHash.startsWith("$"));
+
+			final PasswordHasher.Verification verification = hasher.verify("password324", legacyHash).get();
+			assertTrue(verification.isValid());
+			assertTrue(verification.getUpgradedHash().startsWith("$pbkdf2-sha256$"));
+			assertFalse(hasher.verify("password325", legacyHash).get().isValid());
+		}
+	}
+
+	@Test
+	public void testHashingIsRejectedWhenTheQueueIsFull() throws Exception {
+		try (KillrVideoMetrics metrics = new KillrVideoMetrics()) {
+			final CountDownLatch blocked = new CountDownLatch(1);
+			final PasswordHashFormat blocking = new Pbkdf2PasswordHashFormat(1) {
+				@Override
+				public String hash(String password) {
+					try {
+						blocked.await();
+					} catch (InterruptedException ex) {
+						Thread.currentThread().interrupt();
+					}
+					return super.hash(password);
+				}
+			};
+			try (PasswordHasher busy = new PasswordHasher(1, 1, metrics, blocking)) {
+				busy.hash("running");
+				busy.hash("queued");
+				try {
+					busy.hash("rejected").get();
+					fail("Hashing accepted past the queue size");
+				} catch (ExecutionException ex) {
+					assertTrue(ex.getCause() instanceof RejectedExecutionException);
+				} finally {
+					blocked.countDown();
+				}
+			}
+			assertEquals(1, metrics.passwordHashing("hash").getErrors());
+		}
+	}
+
+	private static PasswordHasher hasher(KillrVideoMetrics metrics, int threads, int queueSize) {
+		return new PasswordHasher(threads, queueSize, metrics, new Pbkdf2PasswordHashFormat(1000), new LegacyPasswordHashFormat());
+	}
+}
@@ -0,0 +1,201 @@
+package killrvideo.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+
+import killrvideo.entity.LatestVideos;
+import killrvideo.service.LatestVideosScatterGather.BucketFetcher;
+import killrvideo.service.LatestVideosScatterGather.BucketPage;
+import killrvideo.service.LatestVideosScatterGather.Page;
+
+public class LatestVideosScatterGatherTest {
+
+	private final List<String> buckets = new ArrayList<>();
+	private final Map<String, List<LatestVideos>> rowsByBucket = new HashMap<>();
+	private final List<String> fetches = new ArrayList<>();
+
+	/**
+	 * Reads the rows of a bucket like Cassandra, the paging state being
+	 * the offset of the next row and null once the bucket is read
+	 */
+	private final BucketFetcher fetcher = (yyyymmdd, fetchSize, pagingState) -> {
+		fetches.add(yyyymmdd + ":" + fetchSize + ":" + pagingState);
+		return CompletableFuture.completedFuture(bucketPage(yyyymmdd, fetchSize, pagingState));
+	};
+
+	@Test
+	public void testPagesMatchTheSequentialReader() throws Exception {
+		bucketsOfSizes(3, 0, 2, 5, 1, 0, 4);
+
+		for (int pageSize = 1; pageSize <= 8; pageSize++) {
+			final List<String> sequential = readAll(pageSize, this::readSequentially);
+			for (int maxInFlight = 1; maxInFlight <= 4; maxInFlight++) {
+				final int inFlight = maxInFlight;
+				final List<String> scattered = readAll(pageSize, (bucket, pagingState, size) ->
+						new LatestVideosScatterGather(buckets, bucket, pagingState, size, inFlight, fetcher).read().get());
+				assertEquals("page size " + pageSize + ", " + maxInFlight + " buckets in flight", sequential, scattered);
+			}
+		}
+	}
+
+	@Test
+	public void testPageEndingMidBucketIsQueriedAgainForItsPagingState() throws Exception {
+		bucketsOfSizes(2, 5);
+
+		final Page page = new LatestVideosScatterGather(buckets, 0, null, 4, 2, fetcher).read().get();
+		assertEquals(rowsByBucket.get("0").get(0), page.videos.get(0));
+		assertEquals(rowsByBucket.get("1").subList(0, 2), page.videos.subList(2, 4));
+		assertEquals(1, page.nextBucket);
+		assertEquals("2", page.nextBucketPagingState);
+
+		/** One extra round trip on the last bucket, sized to the rows used from it **/
+		assertEquals(Arrays.asList("0:4:null", "1:4:null", "1:2:null"), fetches);
+	}
+
+	@Test
+	public void testPageIsShortenedWhenTheLastBucketLostRows() throws Exception {
+		bucketsOfSizes(2, 3);
+		final List<LatestVideos> bucket = rowsByBucket.get("1");
+
+		/** Two rows of the last bucket expire between its two queries **/
+		final BucketFetcher expiring = (yyyymmdd, fetchSize, pagingState) -> {
+			if (fetches.size() == 2) {
+				bucket.subList(0, 2).clear();
+			}
+			return fetcher.fetch(yyyymmdd, fetchSize, pagingState);
+		};
+
+		final Page page = new LatestVideosScatterGather(buckets, 0, null, 4, 2, expiring).read().get();
+		assertEquals(Arrays.asList("0:4:null", "1:4:null", "1:2:null"), fetches);
+		assertEquals(3, page.videos.size());
+		assertEquals(2, page.nextBucket);
+		assertEquals("", page.nextBucketPagingState);
+	}
+
+	@Test
+	public void testPendingBucketsAreCancelledOncePageIsFull() throws Exception {
+		bucketsOfSizes(3, 3, 3, 3);
+		final Map<String, CompletableFuture<BucketPage>> pending = new HashMap<>();
+		final BucketFetcher manual = (yyyymmdd, fetchSize, pagingState) -> {
+			fetches.add(yyyymmdd + ":" + fetchSize + ":" + pagingState);
+			final CompletableFuture<BucketPage> future = new CompletableFuture<>();
+			pending.put(yyyymmdd, future);
+			return future;
+		};
+
+		final CompletableFuture<Page> read = new LatestVideosScatterGather(buckets, 0, null, 3, 3, manual).read();
+		assertEquals(Arrays.asList("0:3:null", "1:3:null", "2:3:null"), fetches);
+
+		/** A later bucket completing first is not enough, the page starts in bucket 0, its slot goes to bucket 3 **/
+		pending.get("1").complete(bucketPage("1", 3, null));
+		assertFalse(read.isDone());
+		assertEquals(Arrays.asList("0:3:null", "1:3:null", "2:3:null", "3:3:null"), fetches);
+
+		pending.get("0").complete(bucketPage("0", 3, null));
+		assertTrue(read.isDone());
+		assertTrue(pending.get("2").isCancelled());
+		assertTrue(pending.get("3").isCancelled());
+		assertEquals(rowsByBucket.get("0"), read.get().videos);
+		assertEquals(1, read.get().nextBucket);
+		assertEquals("", read.get().nextBucketPagingState);
+	}
+
+	@Test
+	public void testFailedBucketCancelsTheOthers() throws Exception {
+		bucketsOfSizes(3, 3, 3);
+		final Map<String, CompletableFuture<BucketPage>> pending = new HashMap<>();
+		final BucketFetcher manual = (yyyymmdd, fetchSize, pagingState) -> {
+			final CompletableFuture<BucketPage> future = new CompletableFuture<>();
+			pending.put(yyyymmdd, future);
+			return future;
+		};
+
+		final CompletableFuture<Page> read = new LatestVideosScatterGather(buckets, 0, null, 5, 3, manual).read();
+		pending.get("1").completeExceptionally(new IllegalStateException("Read timeout"));
+
+		assertTrue(read.isCompletedExceptionally());
+		assertTrue(pending.get("0").isCancelled());
+		assertTrue(pending.get("2").isCancelled());
+	}
+
+	private interface PageReader {
+		Page read(int bucket, String pagingState, int pageSize) throws Exception;
+	}
+
+	/**
+	 * Every page with its paging token, from the first one to the last
+	 */
+	private List<String> readAll(int pageSize, PageReader reader) throws Exception {
+		final List<String> pages = new ArrayList<>();
+		int bucket = 0;
+		String pagingState = null;
+		while (bucket < buckets.size()) {
+			final Page page = reader.read(bucket, pagingState, pageSize);
+			pages.add(videoIds(page.videos) + " -> " + page.nextBucket + ":" + page.nextBucketPagingState);
+			bucket = page.nextBucket;
+			pagingState = page.nextBucketPagingState.isEmpty() ? null : page.nextBucketPagingState;
+		}
+		return pages;
+	}
+
+	/**
+	 * The historical reader, one bucket after the other
+	 */
+	private Page readSequentially(int bucket, String pagingState, int pageSize) throws Exception {
+		final List<LatestVideos> videos = new ArrayList<>();
+		while (bucket < buckets.size() && videos.size() < pageSize) {
+			final BucketPage page = fetcher.fetch(buckets.get(bucket), pageSize - videos.size(), pagingState).get();
+			videos.addAll(page.rows);
+			if (page.pagingState != null) {
+				return new Page(videos, bucket, page.pagingState);
+			}
+			bucket++;
+			pagingState = null;
+		}
+		return new Page(videos, bucket, "");
+	}
+
+	private BucketPage bucketPage(String yyyymmdd, int fetchSize, String pagingState) {
+		final List<LatestVideos> rows = rowsByBucket.get(yyyymmdd);
+		final int from = pagingState == null ? 0 : Integer.parseInt(pagingState);
+		final int to = Math.min(rows.size(), from + fetchSize);
+		return new BucketPage(new ArrayList<>(rows.subList(from, to)), to < rows.size() ? String.valueOf(to) : null);
+	}
+
+	/**
+	 * Buckets of the given sizes, from the latest day to the oldest
+	 */
+	private void bucketsOfSizes(int... sizes) {
+		long addedDate = 1000L;
+		for (int i = 0; i < sizes.length; i++) {
+			final List<LatestVideos> rows = new ArrayList<>();
+			for (int j = 0; j < sizes[i]; j++) {
+				final LatestVideos video = new LatestVideos();
+				video.setVideoid(UUID.randomUUID());
+				video.setAddedDate(new Date(addedDate--));
+				rows.add(video);
+			}
+			buckets.add(String.valueOf(i));
+			rowsByBucket.put(String.valueOf(i), rows);
+		}
+	}
+
+	private static List<UUID> videoIds(List<LatestVideos> videos) {
+		final List<UUID> videoIds = new ArrayList<>();
+		videos.forEach(video -> videoIds.add(video.getVideoid()));
+		return Collections.unmodifiableList(videoIds);
+	}
+}
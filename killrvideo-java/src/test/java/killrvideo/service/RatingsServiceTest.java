@@ -0,0 +1,103 @@
+package killrvideo.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.eventbus.EventBus;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import io.grpc.stub.StreamObserver;
+import killrvideo.async.RatingBatchPipeline;
+import killrvideo.async.RpcExecutor;
+import killrvideo.events.CassandraMutationError;
+import killrvideo.ratings.RatingsServiceOuterClass.RateVideoRequest;
+import killrvideo.ratings.RatingsServiceOuterClass.RateVideoResponse;
+import killrvideo.ratings.events.RatingsEvents.UserRatedVideo;
+import killrvideo.utils.TypeConverter;
+import killrvideo.validation.KillrVideoInputValidator;
+
+public class RatingsServiceTest {
+
+	private final RateVideoRequest request = RateVideoRequest.newBuilder()
+			.setVideoId(TypeConverter.uuidToUuid(UUID.randomUUID()))
+			.setUserId(TypeConverter.uuidToUuid(UUID.randomUUID()))
+			.setRating(4)
+			.build();
+
+	private final CompletableFuture<Void> committed = new CompletableFuture<>();
+	private RatingsService ratingsService;
+
+	@Before
+	@SuppressWarnings("unchecked")
+	public void createService() {
+		ratingsService = new RatingsService();
+		ratingsService.eventBus = mock(EventBus.class);
+		ratingsService.rpcExecutor = RpcExecutor.create(RpcExecutor.Mode.BOUNDED, MoreExecutors.newDirectExecutorService());
+		ratingsService.validator = mock(KillrVideoInputValidator.class);
+		when(ratingsService.validator.isValid(any(RateVideoRequest.class), any(StreamObserver.class))).thenReturn(true);
+
+		final RatingBatchPipeline pipeline = mock(RatingBatchPipeline.class);
+		when(pipeline.submit(any(UUID.class), any(UUID.class), anyInt())).thenReturn(committed);
+		ReflectionTestUtils.setField(ratingsService, "ratingPipeline", pipeline);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testEventIsPublishedOnceTheFlushCommits() {
+		final StreamObserver<RateVideoResponse> observer = mock(StreamObserver.class);
+		ratingsService.rateVideo(request, observer);
+		verify(ratingsService.eventBus, never()).post(any());
+		verify(observer, never()).onCompleted();
+
+		committed.complete(null);
+		final ArgumentCaptor<Object> posted = ArgumentCaptor.forClass(Object.class);
+		verify(ratingsService.eventBus).post(posted.capture());
+		assertTrue(posted.getValue() instanceof UserRatedVideo);
+		assertEquals(4, ((UserRatedVideo) posted.getValue()).getRating());
+		verify(observer).onCompleted();
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testFailedRatingIsJournaledWithoutItsWrittenCounters() {
+		final StreamObserver<RateVideoResponse> observer = mock(StreamObserver.class);
+		ratingsService.rateVideo(request, observer);
+		committed.completeExceptionally(new RatingBatchPipeline.RatingWriteException(true, new IllegalStateException("Batch write timeout")));
+
+		final ArgumentCaptor<Object> posted = ArgumentCaptor.forClass(Object.class);
+		verify(ratingsService.eventBus).post(posted.capture());
+		assertEquals(RatingsService.RATING_ROW_REPLAY, ((CassandraMutationError) posted.getValue()).replayType);
+		verify(observer).onError(any(Throwable.class));
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testFailedRatingIsJournaledWithItsMissingCounters() {
+		final StreamObserver<RateVideoResponse> observer = mock(StreamObserver.class);
+		ratingsService.rateVideo(request, observer);
+		committed.completeExceptionally(new RatingBatchPipeline.RatingWriteException(false, new IllegalStateException("Counter write timeout")));
+
+		final ArgumentCaptor<Object> posted = ArgumentCaptor.forClass(Object.class);
+		verify(ratingsService.eventBus, times(2)).post(posted.capture());
+		final List<Object> errors = posted.getAllValues();
+		assertEquals(RatingsService.RATING_COUNTERS_REPLAY, ((CassandraMutationError) errors.get(0)).replayType);
+		assertEquals(RatingsService.RATING_ROW_REPLAY, ((CassandraMutationError) errors.get(1)).replayType);
+		verify(observer).onError(any(Throwable.class));
+	}
+}
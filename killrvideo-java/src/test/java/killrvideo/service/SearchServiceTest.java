@@ -0,0 +1,337 @@
+package killrvideo.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.stubbing.Answer;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.ColumnDefinitions;
+import com.datastax.driver.core.ExecutionInfo;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.dse.DseSession;
+import com.datastax.driver.mapping.Mapper;
+import com.datastax.driver.mapping.Result;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import io.grpc.stub.StreamObserver;
+import killrvideo.configuration.KillrVideoProperties;
+import killrvideo.async.RpcExecutor;
+import killrvideo.entity.VideoByTag;
+import killrvideo.index.TagSuggestionIndex;
+import killrvideo.search.SearchServiceOuterClass.SearchVideosRequest;
+import killrvideo.search.SearchServiceOuterClass.SearchVideosResponse;
+import killrvideo.validation.KillrVideoInputValidator;
+
+public class SearchServiceTest {
+
+	private final SearchService searchService = new SearchService();
+	private final BoundStatement bound = mock(BoundStatement.class);
+
+	/** Rows of videos_by_tag of each tag, and the tag bound by the last query **/
+	private final Map<String, List<VideoByTag>> postings = new HashMap<>();
+	private final Map<ResultSet, Result<VideoByTag>> results = new IdentityHashMap<>();
+	private String boundTag;
+
+	@SuppressWarnings("unchecked")
+	private final StreamObserver<SearchVideosResponse> responseObserver = mock(StreamObserver.class);
+
+	@Before
+	@SuppressWarnings("unchecked")
+	public void createService() {
+		searchService.validator = mock(KillrVideoInputValidator.class);
+		when(searchService.validator.isValid(any(SearchVideosRequest.class), any(StreamObserver.class))).thenReturn(true);
+		searchService.dseSession = mock(DseSession.class);
+		searchService.tagSuggestionIndex = mock(TagSuggestionIndex.class);
+		searchService.videosByTagMapper = mock(Mapper.class);
+		searchService.properties = new KillrVideoProperties(new StandardEnvironment());
+		searchService.rpcExecutor = RpcExecutor.create(RpcExecutor.Mode.BOUNDED, MoreExecutors.newDirectExecutorService());
+
+		PreparedStatement prepared = mock(PreparedStatement.class);
+		when(prepared.bind()).thenReturn(bound);
+		when(bound.setString(anyString(), anyString())).thenAnswer(invocation -> {
+			boundTag = (String) invocation.getArguments()[1];
+			return bound;
+		});
+		ReflectionTestUtils.setField(searchService, "searchVideos_getVideosByTagPrepared", prepared);
+		ReflectionTestUtils.setField(searchService, "rankings", Caffeine.newBuilder().build());
+	}
+
+	@Test
+	public void testMultiWordTagIsLookedUpAsAWhole() {
+		when(searchService.tagSuggestionIndex.isReady()).thenReturn(true);
+		when(searchService.tagSuggestionIndex.contains("data modeling")).thenReturn(true);
+		final ResultSetFuture videos = resultSet(video("Data Modeling 101"));
+		when(searchService.dseSession.executeAsync(any(Statement.class))).thenReturn(videos);
+
+		searchService.searchVideos(request(" data modeling "), responseObserver);
+
+		verify(bound).setString("tag", "data modeling");
+		verify(bound, never()).setString("tag", "data");
+		assertEquals(Collections.singletonList("Data Modeling 101"), names(response()));
+	}
+
+	@Test
+	public void testMultiWordTagIsLookedUpWhileTheIndexLoads() {
+		when(searchService.tagSuggestionIndex.isReady()).thenReturn(false);
+		final ResultSetFuture videos = resultSet(video("Data Modeling 101"));
+		when(searchService.dseSession.executeAsync(any(Statement.class))).thenReturn(videos);
+
+		searchService.searchVideos(request("data modeling"), responseObserver);
+
+		verify(bound).setString("tag", "data modeling");
+		verify(bound, never()).setString("tag", "modeling");
+		assertEquals(Collections.singletonList("Data Modeling 101"), names(response()));
+	}
+
+	@Test
+	public void testUnknownMultiWordQueryIsSplitIntoTerms() {
+		when(searchService.tagSuggestionIndex.isReady()).thenReturn(true);
+		when(searchService.tagSuggestionIndex.contains("data modeling")).thenReturn(false);
+		final ResultSetFuture videos = resultSet();
+		when(searchService.dseSession.executeAsync(any(Statement.class))).thenReturn(videos);
+
+		searchService.searchVideos(request("data modeling"), responseObserver);
+
+		verify(bound, never()).setString("tag", "data modeling");
+		verify(bound).setString("tag", "data");
+		verify(bound).setString("tag", "modeling");
+		assertEquals(0, response().getVideosCount());
+	}
+
+	@Test
+	public void testMissingMultiWordTagFallsBackToTerms() {
+		when(searchService.tagSuggestionIndex.isReady()).thenReturn(false);
+		final ResultSetFuture videos = resultSet();
+		when(searchService.dseSession.executeAsync(any(Statement.class))).thenReturn(videos);
+
+		searchService.searchVideos(request("data modeling"), responseObserver);
+
+		verify(bound).setString("tag", "data modeling");
+		verify(bound).setString("tag", "data");
+		verify(bound).setString("tag", "modeling");
+		verify(responseObserver).onNext(any(SearchVideosResponse.class));
+	}
+
+	@Test
+	public void testTermsArePagedAfterTheLastVideoReturned() {
+		final VideoByTag latest = tagged(3000L);
+		final VideoByTag middle = tagged(2000L);
+		final VideoByTag oldest = tagged(1000L);
+		postings.put("data", Arrays.asList(oldest, latest, tagged(2500L), middle));
+		postings.put("modeling", Arrays.asList(middle, oldest, latest));
+		searchPostings();
+
+		final SearchVideosResponse first = search(request("data modeling", 2, ""));
+		assertEquals(Arrays.asList(latest.getName(), middle.getName()), names(first));
+		assertEquals("terms:2:2000:" + middle.getVideoid(), first.getPagingState());
+
+		/** The next page comes from the ranking of the first one **/
+		final SearchVideosResponse second = search(request("data modeling", 2, first.getPagingState()));
+		assertEquals(Collections.singletonList(oldest.getName()), names(second));
+		assertEquals("", second.getPagingState());
+		verify(searchService.dseSession, times(2)).executeAsync(any(Statement.class));
+
+		/** Once the ranking expired the page still starts after the last video returned **/
+		ReflectionTestUtils.setField(searchService, "rankings", Caffeine.newBuilder().build());
+		final SearchVideosResponse again = search(request("data modeling", 2, first.getPagingState()));
+		assertEquals(Collections.singletonList(oldest.getName()), names(again));
+		verify(searchService.dseSession, times(4)).executeAsync(any(Statement.class));
+	}
+
+	@Test
+	public void testAnyTermPagingKeepsTheNumberOfMatchedTerms() {
+		final VideoByTag both = tagged(1000L);
+		final VideoByTag dataOnly = tagged(3000L);
+		final VideoByTag modelingOnly = tagged(2000L);
+		postings.put("data", Arrays.asList(both, dataOnly));
+		postings.put("modeling", Arrays.asList(modelingOnly, both));
+		searchPostings();
+
+		final SearchVideosResponse first = search(request("data OR modeling", 2, ""));
+		assertEquals(Arrays.asList(both.getName(), dataOnly.getName()), names(first));
+		assertEquals("terms:1:3000:" + dataOnly.getVideoid(), first.getPagingState());
+
+		final SearchVideosResponse second = search(request("data OR modeling", 2, first.getPagingState()));
+		assertEquals(Collections.singletonList(modelingOnly.getName()), names(second));
+	}
+
+	@Test
+	public void testTruncatedPostingListIsReported() {
+		searchService.properties = new KillrVideoProperties(new MockEnvironment()
+				.withProperty(KillrVideoProperties.SEARCH_MAX_POSTING_LIST_SIZE, "2"));
+		final VideoByTag video = tagged(1000L);
+		postings.put("data", Arrays.asList(video, tagged(2000L), tagged(3000L)));
+		postings.put("modeling", Collections.singletonList(video));
+		searchPostings();
+
+		assertTrue(search(request("data modeling", 10, "")).getTruncated());
+
+		postings.put("data", Arrays.asList(video, tagged(2000L)));
+		assertFalse(search(request("data modeling", 10, "")).getTruncated());
+	}
+
+	@Test
+	public void testInvalidTermsPagingStateIsRejected() {
+		searchService.searchVideos(request("data modeling", 10, "terms:20"), responseObserver);
+
+		verify(responseObserver).onError(any(Throwable.class));
+		verify(searchService.dseSession, never()).executeAsync(any(Statement.class));
+	}
+
+	private static SearchVideosRequest request(String query) {
+		return SearchVideosRequest.newBuilder().setQuery(query).setPageSize(10).build();
+	}
+
+	private static SearchVideosRequest request(String query, int pageSize, String pagingState) {
+		return SearchVideosRequest.newBuilder().setQuery(query).setPageSize(pageSize).setPagingState(pagingState).build();
+	}
+
+	private SearchVideosResponse response() {
+		ArgumentCaptor<SearchVideosResponse> response = ArgumentCaptor.forClass(SearchVideosResponse.class);
+		verify(responseObserver).onNext(response.capture());
+		verify(responseObserver).onCompleted();
+		return response.getValue();
+	}
+
+	/**
+	 * Response of a search, the words of the query are never a tag of their own
+	 */
+	@SuppressWarnings("unchecked")
+	private SearchVideosResponse search(SearchVideosRequest request) {
+		final StreamObserver<SearchVideosResponse> observer = mock(StreamObserver.class);
+		searchService.searchVideos(request, observer);
+
+		ArgumentCaptor<SearchVideosResponse> response = ArgumentCaptor.forClass(SearchVideosResponse.class);
+		verify(observer).onNext(response.capture());
+		verify(observer).onCompleted();
+		return response.getValue();
+	}
+
+	/**
+	 * Answer the reads of videos_by_tag with the rows of {@link #postings}
+	 */
+	private void searchPostings() {
+		when(searchService.tagSuggestionIndex.isReady()).thenReturn(true);
+		when(searchService.tagSuggestionIndex.contains(anyString())).thenReturn(false);
+		when(searchService.videosByTagMapper.map(any(ResultSet.class))).thenAnswer(invocation -> results.get(invocation.getArguments()[0]));
+		when(searchService.dseSession.executeAsync(any(Statement.class))).thenAnswer(invocation -> postingList(postings.get(boundTag)));
+	}
+
+	@SuppressWarnings("unchecked")
+	private ResultSetFuture postingList(List<VideoByTag> videos) {
+		final Iterator<VideoByTag> rows = videos.iterator();
+		final AtomicInteger available = new AtomicInteger(videos.size());
+		final ResultSet resultSet = mock(ResultSet.class, (Answer<Object>) invocation -> {
+			switch (invocation.getMethod().getName()) {
+				case "getAvailableWithoutFetching":
+					return available.get();
+				case "isFullyFetched":
+					return true;
+				default:
+					return null;
+			}
+		});
+		results.put(resultSet, mock(Result.class, (Answer<Object>) invocation -> {
+			if (invocation.getMethod().getName().equals("one")) {
+				available.decrementAndGet();
+				return rows.next();
+			}
+			return null;
+		}));
+
+		TestResultSetFuture future = new TestResultSetFuture();
+		future.set(resultSet);
+		return future;
+	}
+
+	private static VideoByTag tagged(long addedDate) {
+		final UUID videoId = UUID.randomUUID();
+		return new VideoByTag("tag", videoId, UUID.randomUUID(), "video " + videoId, "https://img.youtube.com/vi/default.jpg",
+				new Date(addedDate), new Date(addedDate));
+	}
+
+	private static List<String> names(SearchVideosResponse response) {
+		return response.getVideosList().stream().map(video -> video.getName()).collect(Collectors.toList());
+	}
+
+	private static Row video(String name) {
+		final ColumnDefinitions definitions = mock(ColumnDefinitions.class);
+		final List<String> columns = Arrays.asList("videoid", "userid", "name", "preview_image_location", "added_date");
+		when(definitions.getIndexOf(anyString())).thenAnswer(invocation -> columns.indexOf(invocation.getArguments()[0]));
+
+		final Row row = mock(Row.class);
+		when(row.getColumnDefinitions()).thenReturn(definitions);
+		when(row.getUUID(0)).thenReturn(UUID.randomUUID());
+		when(row.getUUID(1)).thenReturn(UUID.randomUUID());
+		when(row.getString(2)).thenReturn(name);
+		when(row.getString(3)).thenReturn("https://img.youtube.com/vi/default.jpg");
+		when(row.getTimestamp(4)).thenReturn(new Date());
+		return row;
+	}
+
+	private static ResultSetFuture resultSet(Row... rows) {
+		final ResultSet resultSet = mock(ResultSet.class);
+		when(resultSet.getAvailableWithoutFetching()).thenReturn(rows.length);
+		when(resultSet.isFullyFetched()).thenReturn(true);
+		final Iterator<Row> iterator = Arrays.asList(rows).iterator();
+		when(resultSet.one()).thenAnswer(invocation -> iterator.hasNext() ? iterator.next() : null);
+		when(resultSet.getExecutionInfo()).thenReturn(mock(ExecutionInfo.class));
+
+		TestResultSetFuture future = new TestResultSetFuture();
+		future.set(resultSet);
+		return future;
+	}
+
+	private static class TestResultSetFuture extends AbstractFuture<ResultSet> implements ResultSetFuture {
+
+		@Override
+		public boolean set(ResultSet value) {
+			return super.set(value);
+		}
+
+		@Override
+		public ResultSet getUninterruptibly() {
+			return Futures.getUnchecked(this);
+		}
+
+		@Override
+		public ResultSet getUninterruptibly(long timeout, TimeUnit unit) {
+			return Futures.getUnchecked(this);
+		}
+	}
+}
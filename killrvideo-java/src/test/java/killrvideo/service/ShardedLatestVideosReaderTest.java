@@ -0,0 +1,86 @@
+package killrvideo.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+
+import killrvideo.entity.LatestVideos;
+import killrvideo.service.LatestVideosScatterGather.BucketPage;
+
+public class ShardedLatestVideosReaderTest {
+
+	private final ShardedLatestVideosReader reader = new ShardedLatestVideosReader(2);
+	private final Map<String, BucketPage> pages = new HashMap<>();
+	private final List<String> fetches = new ArrayList<>();
+
+	private final ShardedLatestVideosReader.ShardFetcher fetcher = (shard, fetchSize, pagingState) -> {
+		fetches.add(shard + ":" + pagingState);
+		return CompletableFuture.completedFuture(pages.get(shard + ":" + pagingState));
+	};
+
+	@Test
+	public void testEmptyShardPageIsReadOnToTheNextOne() throws Exception {
+		final LatestVideos first = video(3L);
+		final LatestVideos second = video(2L);
+		final LatestVideos third = video(1L);
+
+		/** Shard 0 answers an empty page before its row, e.g. its first rows expired */
+		pages.put("0:null", new BucketPage(Collections.emptyList(), "expired"));
+		pages.put("0:expired", new BucketPage(Collections.singletonList(first), null));
+		pages.put("1:null", new BucketPage(Arrays.asList(second, third), null));
+
+		final BucketPage page = reader.read(2, null, fetcher).get();
+		assertEquals(Arrays.asList(first, second), page.rows);
+		assertEquals(Arrays.asList("0:expired", "0:null", "1:null"), sorted(fetches));
+
+		final BucketPage last = reader.read(2, page.pagingState, fetcher).get();
+		assertEquals(Collections.singletonList(third), last.rows);
+		assertNull(last.pagingState);
+	}
+
+	@Test
+	public void testShardPageOfReturnedRowsIsReadOnToTheNextOne() throws Exception {
+		final LatestVideos first = video(4L);
+		final LatestVideos second = video(3L);
+		final LatestVideos third = video(2L);
+		final LatestVideos fourth = video(1L);
+
+		pages.put("0:null", new BucketPage(Arrays.asList(first, third), "next"));
+		pages.put("0:next", new BucketPage(Collections.singletonList(fourth), null));
+		pages.put("1:null", new BucketPage(Collections.singletonList(second), null));
+
+		final BucketPage page = reader.read(2, null, fetcher).get();
+		assertEquals(Arrays.asList(first, second), page.rows);
+
+		/** The third video expired, re-reading the page of shard 0 only gives back the first one */
+		pages.put("0:null", new BucketPage(Collections.singletonList(first), "next"));
+		final BucketPage last = reader.read(2, page.pagingState, fetcher).get();
+		assertEquals(Collections.singletonList(fourth), last.rows);
+		assertNull(last.pagingState);
+		assertEquals(Arrays.asList("0:next", "0:null", "0:null", "1:null"), sorted(fetches));
+	}
+
+	private static List<String> sorted(List<String> fetches) {
+		final List<String> sorted = new ArrayList<>(fetches);
+		Collections.sort(sorted);
+		return sorted;
+	}
+
+	private static LatestVideos video(long addedDate) {
+		final LatestVideos video = new LatestVideos();
+		video.setVideoid(UUID.randomUUID());
+		video.setAddedDate(new Date(addedDate));
+		return video;
+	}
+}
@@ -0,0 +1,253 @@
+package killrvideo.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+
+import com.google.protobuf.ByteString;
+
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import killrvideo.common.CommonTypes.Uuid;
+import killrvideo.encoding.EncodingJobScheduler;
+import killrvideo.encoding.EncodingNotifications;
+import killrvideo.entity.EncodingJobNotification;
+import killrvideo.storage.UploadStore;
+import killrvideo.uploads.UploadsServiceOuterClass.GetUploadDestinationRequest;
+import killrvideo.uploads.UploadsServiceOuterClass.GetUploadDestinationResponse;
+import killrvideo.uploads.UploadsServiceOuterClass.MarkUploadCompleteRequest;
+import killrvideo.uploads.UploadsServiceOuterClass.MarkUploadCompleteResponse;
+import killrvideo.uploads.UploadsServiceOuterClass.UploadVideoChunk;
+import killrvideo.uploads.UploadsServiceOuterClass.UploadVideoResponse;
+import killrvideo.validation.KillrVideoInputValidator;
+
+public class UploadsServiceTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final UUID videoId = UUID.randomUUID();
+	private final UploadsService service = new UploadsService();
+
+	/** Latest state of the video in encoding_job_notifications, null when it has none **/
+	private EncodingJobNotification latest;
+
+	@Before
+	public void createService() throws Exception {
+		service.uploadStore = new UploadStore(folder.getRoot().toPath(), 1 << 20);
+
+		service.encodingNotifications = mock(EncodingNotifications.class);
+		when(service.encodingNotifications.append(any(UUID.class), anyString(), anyString(), anyString()))
+				.thenReturn(CompletableFuture.completedFuture(null));
+		when(service.encodingNotifications.latest(videoId)).thenAnswer(invocation -> CompletableFuture.completedFuture(latest));
+
+		service.encodingJobScheduler = mock(EncodingJobScheduler.class);
+		when(service.encodingJobScheduler.submit(any(UUID.class), anyString(), anyInt(), any(Path.class), any(Path.class), anyString()))
+				.thenReturn(new CompletableFuture<>());
+
+		service.validator = mock(KillrVideoInputValidator.class);
+		when(service.validator.isValid(any(GetUploadDestinationRequest.class), any(StreamObserver.class))).thenReturn(true);
+		when(service.validator.isValid(any(MarkUploadCompleteRequest.class), any(StreamObserver.class))).thenReturn(true);
+	}
+
+	@After
+	public void closeStore() {
+		service.uploadStore.close();
+	}
+
+	@Test
+	public void testStreamedChunksAreCompletedAndQueuedForEncoding() throws Exception {
+		final String url = uploadUrl();
+		verify(service.encodingNotifications).append(videoId, null, null, EncodingJobNotification.UPLOADING);
+
+		/** Only the first chunk of a call carries the url, the chunks may come in any order **/
+		final Recorder<UploadVideoResponse> uploaded = upload(
+				chunk(url, 6, "world!"),
+				chunk(null, 0, "hello "));
+		assertEquals(12, uploaded.single().getContiguousBytes());
+
+		assertNull(markComplete(url).error);
+		verify(service.encodingNotifications).append(videoId, null, EncodingJobNotification.UPLOADING, EncodingJobNotification.UPLOADED);
+		final ArgumentCaptor<Path> source = ArgumentCaptor.forClass(Path.class);
+		verify(service.encodingJobScheduler).submit(eq(videoId), eq(""), eq(EncodingJobScheduler.NORMAL_PRIORITY),
+				source.capture(), any(Path.class), eq(EncodingJobNotification.UPLOADED));
+		assertEquals("hello world!", new String(Files.readAllBytes(source.getValue()), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testFirstChunkWithoutUrlFailsTheCall() throws Exception {
+		final String url = uploadUrl();
+
+		final Recorder<UploadVideoResponse> uploaded = upload(
+				chunk(null, 0, "hello "),
+				chunk(url, 6, "world!"));
+		assertEquals(Status.Code.INVALID_ARGUMENT, uploaded.errorCode());
+		assertTrue(uploaded.values.isEmpty());
+
+		/** The chunks after the failure were not written either **/
+		assertEquals(Status.Code.FAILED_PRECONDITION, markComplete(url).errorCode());
+	}
+
+	@Test
+	public void testUploadMissingChunksIsNotQueued() throws Exception {
+		final String url = uploadUrl();
+		assertEquals(6, upload(chunk(url, 0, "hello "), chunk(null, 12, "!")).single().getContiguousBytes());
+
+		assertEquals(Status.Code.FAILED_PRECONDITION, markComplete(url).errorCode());
+		verify(service.encodingNotifications, never()).append(videoId, null, EncodingJobNotification.UPLOADING, EncodingJobNotification.UPLOADED);
+		verify(service.encodingJobScheduler, never()).submit(any(UUID.class), anyString(), anyInt(), any(Path.class), any(Path.class), anyString());
+
+		/** Resumed with the missing chunk **/
+		assertEquals(13, upload(chunk(url, 6, "world!")).single().getContiguousBytes());
+		assertNull(markComplete(url).error);
+	}
+
+	@Test
+	public void testChunksOfCompletedUploadAreRejected() throws Exception {
+		final String url = uploadUrl();
+		upload(chunk(url, 0, "hello"));
+		assertNull(markComplete(url).error);
+
+		assertEquals(Status.Code.FAILED_PRECONDITION, upload(chunk(url, 5, " again")).errorCode());
+	}
+
+	@Test
+	public void testLostJobIsQueuedAgainWhenMarkedCompleteAgain() throws Exception {
+		final String url = uploadUrl();
+		upload(chunk(url, 0, "hello"));
+		assertNull(markComplete(url).error);
+
+		/** Queued before a restart, no job of this instance encodes it **/
+		latest = notification(EncodingJobScheduler.QUEUED);
+		assertNull(markComplete(url).error);
+		verify(service.encodingJobScheduler).submit(eq(videoId), eq(""), eq(EncodingJobScheduler.NORMAL_PRIORITY),
+				any(Path.class), any(Path.class), eq(EncodingJobScheduler.QUEUED));
+
+		/** Its job is pending now, marking it complete again does not queue it twice **/
+		when(service.encodingJobScheduler.isPending(videoId)).thenReturn(true);
+		assertNull(markComplete(url).error);
+		verify(service.encodingJobScheduler).submit(eq(videoId), eq(""), eq(EncodingJobScheduler.NORMAL_PRIORITY),
+				any(Path.class), any(Path.class), eq(EncodingJobScheduler.QUEUED));
+	}
+
+	@Test
+	public void testUploadedVideoGetsNoNewDestination() throws Exception {
+		for (String state : new String[] { EncodingJobNotification.UPLOADED, EncodingJobScheduler.QUEUED,
+				EncodingJobScheduler.PROCESSING, EncodingJobScheduler.FINISHED, EncodingJobScheduler.ERROR }) {
+			latest = notification(state);
+			final Recorder<GetUploadDestinationResponse> destination = destination();
+			assertEquals(state, Status.Code.ALREADY_EXISTS, destination.errorCode());
+		}
+		verify(service.encodingNotifications, never()).append(any(UUID.class), anyString(), anyString(), anyString());
+		assertFalse(Files.exists(folder.getRoot().toPath().resolve(videoId.toString())));
+	}
+
+	@Test
+	public void testVideoBeingUploadedGetsAnotherDestination() throws Exception {
+		latest = notification(EncodingJobNotification.UPLOADING);
+
+		assertEquals("/uploads/" + videoId + "/holiday.mp4", destination().single().getUploadUrl());
+		verify(service.encodingNotifications, never()).append(any(UUID.class), anyString(), anyString(), anyString());
+	}
+
+	private String uploadUrl() {
+		return destination().single().getUploadUrl();
+	}
+
+	private Recorder<GetUploadDestinationResponse> destination() {
+		final Recorder<GetUploadDestinationResponse> recorder = new Recorder<>();
+		service.getUploadDestination(GetUploadDestinationRequest.newBuilder()
+				.setFileName("holiday.mp4")
+				.setVideoId(Uuid.newBuilder().setValue(videoId.toString()))
+				.build(), recorder);
+		return recorder;
+	}
+
+	private Recorder<UploadVideoResponse> upload(UploadVideoChunk... chunks) {
+		final Recorder<UploadVideoResponse> recorder = new Recorder<>();
+		final StreamObserver<UploadVideoChunk> call = service.uploadVideo(recorder);
+		for (UploadVideoChunk chunk : chunks) {
+			call.onNext(chunk);
+		}
+		call.onCompleted();
+		return recorder;
+	}
+
+	private Recorder<MarkUploadCompleteResponse> markComplete(String url) {
+		final Recorder<MarkUploadCompleteResponse> recorder = new Recorder<>();
+		service.markUploadComplete(MarkUploadCompleteRequest.newBuilder().setUploadUrl(url).build(), recorder);
+		return recorder;
+	}
+
+	private static UploadVideoChunk chunk(String url, long offset, String data) {
+		final UploadVideoChunk.Builder chunk = UploadVideoChunk.newBuilder()
+				.setOffset(offset)
+				.setData(ByteString.copyFrom(data, StandardCharsets.UTF_8));
+		if (url != null) {
+			chunk.setUploadUrl(url);
+		}
+		return chunk.build();
+	}
+
+	private EncodingJobNotification notification(String state) {
+		return new EncodingJobNotification(videoId, new Date(), null, null, state, null);
+	}
+
+	private static class Recorder<T> implements StreamObserver<T> {
+
+		final List<T> values = new ArrayList<>();
+		Throwable error;
+		boolean completed;
+
+		@Override
+		public void onNext(T value) {
+			values.add(value);
+		}
+
+		@Override
+		public void onError(Throwable t) {
+			error = t;
+		}
+
+		@Override
+		public void onCompleted() {
+			completed = true;
+		}
+
+		T single() {
+			assertNull(error);
+			assertTrue(completed);
+			assertEquals(1, values.size());
+			return values.get(0);
+		}
+
+		Status.Code errorCode() {
+			return error == null ? null : Status.fromThrowable(error).getCode();
+		}
+	}
+}
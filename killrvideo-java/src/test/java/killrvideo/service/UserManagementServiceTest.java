@@ -1,14 +1,18 @@
 
 package killrvideo.service;
 
+import java.util.concurrent.TimeUnit;
+
 import javax.inject.Inject;
 
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
 import killrvideo.configuration.KillrvideoConfigurationTest;
+import killrvideo.cql.PreparedStatementRegistry;
 import killrvideo.entity.Profile;
 
 @RunWith(SpringJUnit4ClassRunner.class)
@@ -19,6 +23,14 @@ public class UserManagementServiceTest {
 	
 	@Inject
 	UserMgmtService ugmtService;
+
+	@Inject
+	PreparedStatementRegistry statementRegistry;
+
+	@Before
+	public void awaitStatements() throws Exception {
+		statementRegistry.awaitReady(60, TimeUnit.SECONDS);
+	}
 	
 	
 	@Test
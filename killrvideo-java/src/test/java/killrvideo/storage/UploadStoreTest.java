@@ -0,0 +1,165 @@
+package killrvideo.storage;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.Range;
+import com.google.protobuf.ByteString;
+
+public class UploadStoreTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testChunksUploadedInParallelAreAssembled() throws Exception {
+		final byte[] video = new byte[64 * 1024];
+		for (int i = 0; i < video.length; i++) {
+			video[i] = (byte) (i * 31);
+		}
+
+		try (UploadStore store = new UploadStore(folder.getRoot().toPath(), 1 << 20)) {
+			final String url = store.create(UUID.randomUUID(), "holiday.mp4");
+			final ExecutorService executor = Executors.newFixedThreadPool(4);
+			try {
+				final List<Future<?>> writes = new ArrayList<>();
+				for (int offset = video.length - 4096; offset >= 0; offset -= 4096) {
+					final int chunkOffset = offset;
+					writes.add(executor.submit(() -> {
+						final Upload upload = store.acquire(url);
+						try {
+							upload.write(chunkOffset, ByteString.copyFrom(video, chunkOffset, 4096));
+						} finally {
+							store.release(upload);
+						}
+						return null;
+					}));
+				}
+				for (Future<?> write : writes) {
+					write.get();
+				}
+			} finally {
+				executor.shutdown();
+			}
+
+			final Upload upload = store.acquire(url);
+			assertEquals(video.length, upload.getContiguousBytes());
+			final Path file = upload.complete();
+			store.release(upload);
+			assertEquals("holiday.mp4", file.getFileName().toString());
+			assertArrayEquals(video, Files.readAllBytes(file));
+			assertEquals(1, Files.list(file.getParent()).count());
+		}
+	}
+
+	@Test
+	public void testUploadIsResumedFromTheChunksWritten() throws Exception {
+		final Path root = folder.getRoot().toPath();
+		final String url;
+		try (UploadStore store = new UploadStore(root, 1 << 20)) {
+			url = store.create(UUID.randomUUID(), "clip.mov");
+			final Upload upload = store.acquire(url);
+			upload.write(0, bytes("hello "));
+			upload.write(12, bytes("!"));
+			store.release(upload);
+		}
+
+		try (UploadStore store = new UploadStore(root, 1 << 20)) {
+			final Upload upload = store.acquire(url);
+			assertEquals(6, upload.getContiguousBytes());
+			assertEquals(2, upload.getReceivedRanges().size());
+			assertEquals(Range.closedOpen(12L, 13L), upload.getReceivedRanges().get(1));
+			try {
+				upload.complete();
+				fail("Upload completed with a missing chunk");
+			} catch (IllegalStateException expected) {
+			}
+
+			upload.write(6, bytes("world!"));
+			assertEquals("hello world!!", new String(Files.readAllBytes(upload.complete()), StandardCharsets.UTF_8));
+			store.release(upload);
+		}
+	}
+
+	@Test
+	public void testChunksWrittenDuringCompletionEitherLandOrFail() throws Exception {
+		final byte[] chunk = new byte[4096];
+		for (int round = 0; round < 20; round++) {
+			try (UploadStore store = new UploadStore(folder.newFolder().toPath(), 1 << 20)) {
+				final String url = store.create(UUID.randomUUID(), "clip.mov");
+				final Upload upload = store.acquire(url);
+				upload.write(0, ByteString.copyFrom(chunk));
+
+				/** The same chunk written again and again while the upload completes, never to a closed channel **/
+				final ExecutorService executor = Executors.newFixedThreadPool(4);
+				try {
+					final List<Future<?>> writes = new ArrayList<>();
+					for (int i = 0; i < 4; i++) {
+						writes.add(executor.submit(() -> {
+							try {
+								while (true) {
+									upload.write(0, ByteString.copyFrom(chunk));
+								}
+							} catch (IllegalStateException completed) {
+							}
+							return null;
+						}));
+					}
+					assertEquals(chunk.length, Files.size(upload.complete()));
+					for (Future<?> write : writes) {
+						write.get();
+					}
+				} finally {
+					executor.shutdown();
+					store.release(upload);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testOnlyCreatedUploadsCanBeWritten() throws IOException {
+		try (UploadStore store = new UploadStore(folder.getRoot().toPath(), 10)) {
+			final String url = store.create(UUID.randomUUID(), "../../etc/passwd");
+			assertTrue(url, url.endsWith("/_._.._etc_passwd"));
+
+			for (String invalid : new String[] {"/uploads/" + UUID.randomUUID() + "/video", url + "/..", "/etc/passwd"}) {
+				try {
+					store.acquire(invalid);
+					fail("Acquired " + invalid);
+				} catch (IllegalArgumentException expected) {
+				}
+			}
+
+			final Upload upload = store.acquire(url);
+			try {
+				upload.write(8, bytes("too long"));
+				fail("Wrote past the largest upload");
+			} catch (IllegalArgumentException expected) {
+			} finally {
+				store.release(upload);
+			}
+		}
+	}
+
+	private static ByteString bytes(String text) {
+		return ByteString.copyFrom(text, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,227 @@
+package killrvideo.tools;
+
+import static killrvideo.service.VideoCatalogService.LATEST_VIDEOS_TTL_SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.anyVararg;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.stubbing.Answer;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.dse.DseCluster;
+import com.datastax.driver.dse.DseSession;
+import com.datastax.driver.mapping.Mapper;
+import com.datastax.driver.mapping.MappingManager;
+
+import killrvideo.entity.LatestVideos;
+import killrvideo.entity.TagsByLetter;
+import killrvideo.entity.User;
+import killrvideo.entity.UserCredentials;
+import killrvideo.entity.UserVideos;
+import killrvideo.entity.Video;
+import killrvideo.entity.VideoByTag;
+
+public class BulkLoaderTest {
+
+	private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ssZ").withZone(ZoneOffset.UTC);
+
+	private final DseCluster cluster = mock(DseCluster.class, RETURNS_DEEP_STUBS);
+	private final DseSession session = mock(DseSession.class);
+	private final MappingManager manager = mock(MappingManager.class);
+
+	// Entity saved by each statement, and the options it was saved with
+	private final Map<Statement, Object> entities = new HashMap<>();
+	private final Map<Statement, Integer> options = new HashMap<>();
+
+	private final UUID videoId = UUID.randomUUID();
+	private final UUID userId = UUID.randomUUID();
+
+	private BulkLoader loader;
+
+	@Before
+	public void mockMappers() {
+		for (Class<?> entity : Arrays.asList(User.class, UserCredentials.class, Video.class, UserVideos.class,
+				LatestVideos.class, VideoByTag.class, TagsByLetter.class)) {
+			mockMapper(entity);
+		}
+	}
+
+	@After
+	public void closeLoader() {
+		loader.close();
+	}
+
+	@Test
+	public void testUserIsOneWrite() {
+		loader = loader(0);
+		List<Statement> statements = loader.toStatements(BulkLoader.Dataset.USERS,
+				fields(userId.toString(), "2017-01-02 03:04:05+0000", "jane@example.com", "Jane", null));
+
+		assertEquals(1, statements.size());
+		User user = (User) entities.get(statements.get(0));
+		assertEquals(userId, user.getUserid());
+		assertEquals("jane@example.com", user.getEmail());
+		assertEquals("Jane", user.getFirstname());
+		assertNull(user.getLastname());
+		assertEquals(Instant.parse("2017-01-02T03:04:05Z"), user.getCreatedAt().toInstant());
+	}
+
+	@Test
+	public void testVideoIsWrittenToEveryTableItFeeds() {
+		loader = loader(0);
+		Instant addedDate = Instant.now().minus(1, ChronoUnit.HOURS).truncatedTo(ChronoUnit.SECONDS);
+		List<Statement> statements = loader.toStatements(BulkLoader.Dataset.VIDEOS, video(TIMESTAMP.format(addedDate),
+				"{'cassandra', '', 'java'}"));
+
+		assertEquals(Arrays.asList(Video.class, UserVideos.class, VideoByTag.class, TagsByLetter.class,
+				VideoByTag.class, TagsByLetter.class, LatestVideos.class), entityClasses(statements));
+
+		Video video = (Video) entities.get(statements.get(0));
+		assertEquals(videoId, video.getVideoid());
+		assertEquals(new LinkedHashSet<>(Arrays.asList("cassandra", "", "java")), video.getTags());
+		assertEquals(userId, ((UserVideos) entities.get(statements.get(1))).getUserid());
+
+		// The empty tag is kept in the video only
+		assertEquals("cassandra", ((VideoByTag) entities.get(statements.get(2))).getTag());
+		assertEquals("c", ((TagsByLetter) entities.get(statements.get(3))).getFirstLetter());
+		assertEquals("java", ((VideoByTag) entities.get(statements.get(4))).getTag());
+		assertEquals("j", ((TagsByLetter) entities.get(statements.get(5))).getFirstLetter());
+
+		// Saved in the bucket of its day, with SKIP_NULLS and its remaining TTL
+		LatestVideos latest = (LatestVideos) entities.get(statements.get(6));
+		assertEquals(DateTimeFormatter.ofPattern("yyyyMMdd").withZone(ZoneId.systemDefault()).format(addedDate),
+				latest.getYyyymmdd());
+		assertEquals(2, (int) options.get(statements.get(6)));
+	}
+
+	@Test
+	public void testVideoPastTheLatestVideosTtlIsNotInLatestVideos() {
+		loader = loader(0);
+		Instant addedDate = Instant.now().minus(LATEST_VIDEOS_TTL_SECONDS + 60, ChronoUnit.SECONDS);
+		List<Statement> statements = loader.toStatements(BulkLoader.Dataset.VIDEOS, video(TIMESTAMP.format(addedDate), null));
+
+		assertEquals(Arrays.asList(Video.class, UserVideos.class), entityClasses(statements));
+		// An empty set would be written as a tombstone
+		assertNull(((Video) entities.get(statements.get(0))).getTags());
+	}
+
+	@Test
+	public void testLatestVideoIsWrittenToItsShard() {
+		PreparedStatement insertSharded = mock(PreparedStatement.class);
+		BoundStatement bound = mock(BoundStatement.class, (Answer<Object>) invocation ->
+				invocation.getMethod().getReturnType().isInstance(invocation.getMock()) ? invocation.getMock() : null);
+		when(session.prepare(anyString())).thenReturn(insertSharded);
+		when(insertSharded.bind()).thenReturn(bound);
+
+		loader = loader(4);
+		List<Statement> statements = loader.toStatements(BulkLoader.Dataset.VIDEOS,
+				video(TIMESTAMP.format(Instant.now()), "{'cassandra'}"));
+
+		assertEquals(5, statements.size());
+		assertEquals(bound, statements.get(4));
+		verify(bound).setUUID("vid", videoId);
+		verify(bound).setInt("bucket", LatestVideos.shardOf(videoId, 4));
+		ArgumentCaptor<Integer> ttl = ArgumentCaptor.forClass(Integer.class);
+		verify(bound).setInt(eq("ttl"), ttl.capture());
+		assertTrue(ttl.getValue() > LATEST_VIDEOS_TTL_SECONDS - 60 && ttl.getValue() <= LATEST_VIDEOS_TTL_SECONDS);
+	}
+
+	@Test
+	public void testInvalidRecordsAreRejected() {
+		loader = loader(0);
+		List<List<String>> invalid = Arrays.asList(
+				fields(null, "jane@example.com", "secret"),
+				fields(null, null, null, null, null, null, null, null, userId.toString()),
+				video(null, null),
+				video(TIMESTAMP.format(Instant.now()), "cassandra"),
+				fields("jane@example.com", "secret", userId.toString(), "unexpected"));
+		List<BulkLoader.Dataset> datasets = Arrays.asList(BulkLoader.Dataset.USERS, BulkLoader.Dataset.VIDEOS,
+				BulkLoader.Dataset.VIDEOS, BulkLoader.Dataset.VIDEOS, BulkLoader.Dataset.USER_CREDENTIALS);
+
+		for (int i = 0; i < invalid.size(); i++) {
+			try {
+				loader.toStatements(datasets.get(i), invalid.get(i));
+				fail("Record " + invalid.get(i) + " was accepted");
+			} catch (IllegalArgumentException expected) {
+			}
+		}
+		assertTrue(entities.isEmpty());
+	}
+
+	@Test
+	public void testRetryDelayDoublesUpToTheMax() {
+		loader = loader(0);
+		long[] max = {100, 200, 400, 800, 1000, 1000};
+		for (int attempt = 1; attempt <= max.length; attempt++) {
+			for (int i = 0; i < 100; i++) {
+				long delay = loader.retryDelay(attempt);
+				assertTrue(attempt + ": " + delay, delay >= max[attempt - 1] / 2 && delay <= max[attempt - 1]);
+			}
+		}
+		// No overflow however many attempts were made
+		assertTrue(loader.retryDelay(Integer.MAX_VALUE) >= 500);
+	}
+
+	private BulkLoader loader(int latestVideosShards) {
+		return new BulkLoader(cluster, session, manager, 10, 4, 0, 3, 100, 1000, Paths.get("."), false, latestVideosShards);
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> void mockMapper(Class<T> entity) {
+		Mapper<T> mapper = mock(Mapper.class);
+		when(mapper.saveQuery(any(entity), (Mapper.Option[]) anyVararg())).thenAnswer(invocation -> {
+			Statement statement = mock(Statement.class);
+			entities.put(statement, invocation.getArguments()[0]);
+			options.put(statement, invocation.getArguments().length - 1);
+			return statement;
+		});
+		when(manager.mapper(entity)).thenReturn(mapper);
+	}
+
+	private List<Class<?>> entityClasses(List<Statement> statements) {
+		List<Class<?>> classes = new ArrayList<>();
+		statements.forEach(statement -> classes.add(entities.get(statement).getClass()));
+		return classes;
+	}
+
+	private List<String> video(String addedDate, String tags) {
+		return fields(videoId.toString(), addedDate, "Intro to Cassandra", "https://www.youtube.com/watch?v=abc", "0",
+				"Cassandra 101", "https://i.ytimg.com/vi/abc/hqdefault.jpg", tags, userId.toString());
+	}
+
+	private static List<String> fields(String... values) {
+		List<String> fields = new ArrayList<>();
+		Collections.addAll(fields, values);
+		return fields;
+	}
+}
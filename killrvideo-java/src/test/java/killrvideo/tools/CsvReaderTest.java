@@ -0,0 +1,65 @@
+package killrvideo.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.junit.Test;
+
+public class CsvReaderTest {
+
+	@Test
+	public void testQuotedFieldsAndEmptyFields() throws IOException {
+		CsvReader reader = new CsvReader(new StringReader(
+				"a,\"b, \"\"quoted\"\"\",,\"\"\r\n" +
+				"\"multi\nline\",c\n"));
+
+		assertEquals(Arrays.asList("a", "b, \"quoted\"", null, ""), reader.next());
+		assertEquals(1, reader.getRecordLineNumber());
+		assertEquals(Arrays.asList("multi\nline", "c"), reader.next());
+		assertEquals(2, reader.getRecordLineNumber());
+		assertNull(reader.next());
+	}
+
+	@Test
+	public void testLastRecordWithoutLineBreak() throws IOException {
+		CsvReader reader = new CsvReader(new StringReader("a,b\n\nc,"));
+
+		assertEquals(Arrays.asList("a", "b"), reader.next());
+		assertEquals(Arrays.asList("c", null), reader.next());
+		assertEquals(3, reader.getRecordLineNumber());
+		assertNull(reader.next());
+	}
+
+	@Test
+	public void testBackslashEscapesTheNextCharacter() throws IOException {
+		CsvReader reader = new CsvReader(new StringReader("\"\\\\Franky\\\"\",a\\,b\n"));
+
+		assertEquals(Arrays.asList("\\Franky\"", "a,b"), reader.next());
+	}
+
+	@Test(expected = IOException.class)
+	public void testUnterminatedQuoteIsRejected() throws IOException {
+		new CsvReader(new StringReader("a,\"b\n")).next();
+	}
+
+	@Test
+	public void testCqlshLiterals() {
+		assertEquals(new Date(1450339200000L), CsvReader.parseTimestamp("2015-12-17 08:00:00+0000"));
+		assertEquals(new Date(1450339200123L), CsvReader.parseTimestamp("2015-12-17 08:00:00.123+0000"));
+		assertEquals(Arrays.asList("aunt", "it's", "black stereotype"),
+				Arrays.asList(CsvReader.parseSet("{'aunt', 'it''s', 'black stereotype'}").toArray()));
+		assertTrue(CsvReader.parseSet(null).isEmpty());
+		assertTrue(CsvReader.parseSet("{}").isEmpty());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidSetIsRejected() {
+		CsvReader.parseSet("{'a', b}");
+	}
+}
@@ -0,0 +1,47 @@
+package killrvideo.tools;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+
+public class LoadCheckpointTest {
+
+	@Test
+	public void testCountStopsAtTheFirstIncompleteRecord() {
+		LoadCheckpoint checkpoint = new LoadCheckpoint(null, 10);
+
+		checkpoint.complete(11);
+		checkpoint.complete(13);
+		assertEquals(10, checkpoint.committed());
+
+		checkpoint.complete(10);
+		assertEquals(12, checkpoint.committed());
+
+		checkpoint.complete(12);
+		assertEquals(14, checkpoint.committed());
+
+		// Records loaded by a previous run are ignored
+		checkpoint.complete(3);
+		assertEquals(14, checkpoint.committed());
+	}
+
+	@Test
+	public void testCountIsSavedAndReadBack() throws IOException {
+		Path directory = Files.createTempDirectory("checkpoint");
+		Path file = directory.resolve("videos.csv.checkpoint");
+		assertEquals(0, LoadCheckpoint.read(file));
+
+		LoadCheckpoint checkpoint = new LoadCheckpoint(file, 0);
+		checkpoint.complete(0);
+		checkpoint.complete(1);
+		checkpoint.save();
+		assertEquals(2, LoadCheckpoint.read(file));
+
+		Files.delete(file);
+		Files.delete(directory);
+	}
+}
@@ -0,0 +1,177 @@
+package killrvideo.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.Metadata;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+public class MultiKeyReadExecutorTest {
+
+	private static final String KEYSPACE = "killrvideo";
+
+	/** The primary replica of a key is given by its first letter **/
+	private static final Function<String, ByteBuffer> ROUTING_KEY =
+			key -> ByteBuffer.wrap(key.substring(0, 1).getBytes(StandardCharsets.UTF_8));
+
+	private final Metadata metadata = mock(Metadata.class);
+	private final List<String> fetches = Collections.synchronizedList(new ArrayList<>());
+	private final Map<String, String> consumed = Collections.synchronizedMap(new HashMap<>());
+
+	@Before
+	public void mockReplicas() {
+		final Map<String, Host> hosts = new HashMap<>();
+		hosts.put("a", mock(Host.class));
+		hosts.put("b", mock(Host.class));
+		hosts.put("c", mock(Host.class));
+		when(metadata.getReplicas(eq(KEYSPACE), any(ByteBuffer.class))).thenAnswer(invocation -> {
+			final String letter = StandardCharsets.UTF_8.decode(((ByteBuffer) invocation.getArguments()[1]).duplicate()).toString();
+			final Host host = hosts.get(letter);
+			return host == null ? Collections.emptySet() : Collections.singleton(host);
+		});
+	}
+
+	@Test
+	public void testInFlightReadsAreCapped() throws Exception {
+		final Map<String, SettableFuture<String>> pending = new HashMap<>();
+		final MultiKeyReadExecutor executor = new MultiKeyReadExecutor(metadata, KEYSPACE, 2);
+
+		final CompletableFuture<Void> done = executor.readAll(Arrays.asList("a1", "a2", "a3", "a4", "a5"), ROUTING_KEY,
+				key -> {
+					fetches.add(key);
+					final SettableFuture<String> future = SettableFuture.create();
+					pending.put(key, future);
+					return future;
+				}, consumed::put);
+		assertEquals(Arrays.asList("a1", "a2"), fetches);
+
+		/** Each completed read launches the next key, never more than two at once **/
+		pending.get("a2").set("v2");
+		assertEquals(Arrays.asList("a1", "a2", "a3"), fetches);
+		pending.get("a1").set("v1");
+		pending.get("a3").set("v3");
+		assertEquals(Arrays.asList("a1", "a2", "a3", "a4", "a5"), fetches);
+		assertFalse(done.isDone());
+
+		pending.get("a5").set(null);
+		pending.get("a4").set("v4");
+		done.get(5, TimeUnit.SECONDS);
+		assertEquals(5, consumed.size());
+		assertEquals("v4", consumed.get("a4"));
+		assertTrue(consumed.containsKey("a5"));
+	}
+
+	@Test
+	public void testKeysAreInterleavedAcrossReplicas() throws Exception {
+		final MultiKeyReadExecutor executor = new MultiKeyReadExecutor(metadata, KEYSPACE, 1);
+
+		executor.readAll(Arrays.asList("a1", "a2", "a3", "b1", "b2", "c1", "x1"), ROUTING_KEY, this::immediate, consumed::put)
+				.get(5, TimeUnit.SECONDS);
+
+		/** x1 has no known replica, it is grouped with the other keys without one **/
+		assertEquals(Arrays.asList("a1", "b1", "c1", "x1", "a2", "b2", "a3"), fetches);
+		assertEquals(7, consumed.size());
+	}
+
+	@Test
+	public void testDuplicateKeysAreReadOnce() throws Exception {
+		final MultiKeyReadExecutor executor = new MultiKeyReadExecutor(metadata, KEYSPACE, 4);
+
+		executor.readAll(Arrays.asList("a1", "b1", "a1", "b1", "a1"), ROUTING_KEY, this::immediate, consumed::put)
+				.get(5, TimeUnit.SECONDS);
+
+		assertEquals(Arrays.asList("a1", "b1"), fetches);
+		assertEquals(2, consumed.size());
+	}
+
+	@Test
+	public void testConsumerFailureStopsTheReads() throws Exception {
+		final IllegalStateException failure = new IllegalStateException("Cannot convert b1");
+		final MultiKeyReadExecutor executor = new MultiKeyReadExecutor(metadata, KEYSPACE, 1);
+
+		final CompletableFuture<Void> done = executor.readAll(Arrays.asList("a1", "a2", "b1", "b2"), ROUTING_KEY, this::immediate,
+				(key, value) -> {
+					if (key.equals("b1")) {
+						throw failure;
+					}
+					consumed.put(key, value);
+				});
+
+		assertSame(failure, failure(done));
+		assertEquals(Arrays.asList("a1", "b1"), fetches);
+		assertEquals(Collections.singleton("a1"), consumed.keySet());
+	}
+
+	@Test
+	public void testFetchFailureStopsTheReads() throws Exception {
+		final IllegalStateException failure = new IllegalStateException("No host available");
+		final MultiKeyReadExecutor executor = new MultiKeyReadExecutor(metadata, KEYSPACE, 1);
+
+		final CompletableFuture<Void> done = executor.readAll(Arrays.asList("a1", "b1", "a2", "b2"), ROUTING_KEY,
+				key -> {
+					if (key.equals("a2")) {
+						fetches.add(key);
+						return Futures.immediateFailedFuture(failure);
+					}
+					return immediate(key);
+				}, consumed::put);
+
+		assertSame(failure, failure(done));
+		assertEquals(Arrays.asList("a1", "b1", "a2"), fetches);
+		assertEquals(2, consumed.size());
+	}
+
+	@Test
+	public void testEmptyKeysCompleteAtOnce() throws Exception {
+		final MultiKeyReadExecutor executor = new MultiKeyReadExecutor(metadata, KEYSPACE, 4);
+
+		final CompletableFuture<Void> done = executor.readAll(Collections.<String>emptyList(), ROUTING_KEY, this::immediate,
+				consumed::put);
+
+		assertTrue(done.isDone());
+		done.get();
+		assertTrue(fetches.isEmpty());
+		assertTrue(consumed.isEmpty());
+	}
+
+	private ListenableFuture<String> immediate(String key) {
+		fetches.add(key);
+		return Futures.immediateFuture("value of " + key);
+	}
+
+	private static Throwable failure(CompletableFuture<Void> done) throws Exception {
+		try {
+			done.get(5, TimeUnit.SECONDS);
+			fail("Reads should have failed");
+			return null;
+		} catch (ExecutionException ex) {
+			return ex.getCause();
+		}
+	}
+}
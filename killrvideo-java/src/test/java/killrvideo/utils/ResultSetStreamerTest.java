@@ -0,0 +1,134 @@
+package killrvideo.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.google.common.util.concurrent.Futures;
+
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ServerCallStreamObserver;
+
+public class ResultSetStreamerTest {
+
+	@Test
+	public void testAllPagesAreStreamedAndCompleted() {
+		ResultSet rows = pages(Arrays.asList("a", "b"), Arrays.asList("c"), Arrays.asList("d", "e"));
+		List<String> sent = new ArrayList<>();
+		ServerCallStreamObserver<String> observer = observer(sent);
+		when(observer.isReady()).thenReturn(true);
+
+		ResultSetStreamer.stream(Futures.immediateFuture(rows), row -> row.getString("v"), observer, "test rows");
+
+		assertEquals(Arrays.asList("a", "b", "c", "d", "e"), sent);
+		verify(observer).onCompleted();
+	}
+
+	@Test
+	public void testRowsAreOnlySentWhenTheCallIsReady() {
+		ResultSet rows = pages(Arrays.asList("a", "b"), Arrays.asList("c"));
+		List<String> sent = new ArrayList<>();
+		ServerCallStreamObserver<String> observer = observer(sent);
+		when(observer.isReady()).thenReturn(false);
+
+		ResultSetStreamer.stream(Futures.immediateFuture(rows), row -> row.getString("v"), observer, "test rows");
+		assertEquals(0, sent.size());
+
+		ArgumentCaptor<Runnable> onReady = ArgumentCaptor.forClass(Runnable.class);
+		verify(observer).setOnReadyHandler(onReady.capture());
+		when(observer.isReady()).thenReturn(true, false);
+		onReady.getValue().run();
+		assertEquals(Arrays.asList("a"), sent);
+
+		when(observer.isReady()).thenReturn(true);
+		onReady.getValue().run();
+		assertEquals(Arrays.asList("a", "b", "c"), sent);
+		verify(observer).onCompleted();
+	}
+
+	@Test
+	public void testNothingIsSentOnceCancelled() {
+		ResultSet rows = pages(Arrays.asList("a", "b"));
+		List<String> sent = new ArrayList<>();
+		ServerCallStreamObserver<String> observer = observer(sent);
+		when(observer.isReady()).thenReturn(false);
+
+		ResultSetStreamer.stream(Futures.immediateFuture(rows), row -> row.getString("v"), observer, "test rows");
+
+		ArgumentCaptor<Runnable> onCancel = ArgumentCaptor.forClass(Runnable.class);
+		ArgumentCaptor<Runnable> onReady = ArgumentCaptor.forClass(Runnable.class);
+		verify(observer).setOnCancelHandler(onCancel.capture());
+		verify(observer).setOnReadyHandler(onReady.capture());
+		onCancel.getValue().run();
+		when(observer.isReady()).thenReturn(true);
+		onReady.getValue().run();
+
+		assertEquals(0, sent.size());
+		verify(observer, never()).onCompleted();
+	}
+
+	@Test
+	public void testQueryFailureIsReported() {
+		ServerCallStreamObserver<String> observer = observer(new ArrayList<>());
+		when(observer.isReady()).thenReturn(true);
+
+		ResultSetStreamer.stream(Futures.<ResultSet>immediateFailedFuture(new IllegalStateException("timeout")),
+				row -> row.getString("v"), observer, "test rows");
+
+		verify(observer).onError(any(StatusRuntimeException.class));
+		verify(observer, never()).onCompleted();
+	}
+
+	@SuppressWarnings("unchecked")
+	private static ServerCallStreamObserver<String> observer(List<String> sent) {
+		ServerCallStreamObserver<String> observer = mock(ServerCallStreamObserver.class);
+		doAnswer(invocation -> sent.add((String) invocation.getArguments()[0]))
+				.when(observer).onNext(any(String.class));
+		return observer;
+	}
+
+	/**
+	 * Result set holding the first page, the next ones are fetched one at a time
+	 */
+	@SafeVarargs
+	private static ResultSet pages(List<String>... pages) {
+		final Deque<List<String>> remainingPages = new ArrayDeque<>(Arrays.asList(pages));
+		final Deque<Row> available = new ArrayDeque<>();
+		final ResultSet rows = mock(ResultSet.class);
+		addPage(available, remainingPages.poll());
+
+		when(rows.getAvailableWithoutFetching()).thenAnswer(invocation -> available.size());
+		when(rows.isFullyFetched()).thenAnswer(invocation -> remainingPages.isEmpty());
+		when(rows.one()).thenAnswer(invocation -> available.poll());
+		when(rows.fetchMoreResults()).thenAnswer(invocation -> {
+			if (!remainingPages.isEmpty()) {
+				addPage(available, remainingPages.poll());
+			}
+			return Futures.immediateFuture(rows);
+		});
+		return rows;
+	}
+
+	private static void addPage(Deque<Row> available, List<String> page) {
+		for (String value : page) {
+			Row row = mock(Row.class);
+			when(row.getString("v")).thenReturn(value);
+			available.add(row);
+		}
+	}
+}
@@ -0,0 +1,39 @@
+package killrvideo.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.Test;
+
+public class SortedMergeTest {
+
+	@Test
+	public void testMergeStopsAtLimitAndCountsConsumed() {
+		List<List<Integer>> sources = Arrays.asList(
+				Arrays.asList(9, 5, 1),
+				Collections.<Integer>emptyList(),
+				Arrays.asList(8, 7, 2));
+		int[] consumed = new int[3];
+
+		List<Integer> merged = SortedMerge.merge(sources, Comparator.reverseOrder(), 4, consumed);
+
+		assertEquals(Arrays.asList(9, 8, 7, 5), merged);
+		assertArrayEquals(new int[]{2, 0, 2}, consumed);
+	}
+
+	@Test
+	public void testMergeReturnsEverythingBelowLimit() {
+		int[] consumed = new int[2];
+
+		List<Integer> merged = SortedMerge.merge(Arrays.asList(Arrays.asList(1, 3), Arrays.asList(2)),
+				Comparator.naturalOrder(), 10, consumed);
+
+		assertEquals(Arrays.asList(1, 2, 3), merged);
+		assertArrayEquals(new int[]{2, 1}, consumed);
+	}
+}
@@ -0,0 +1,97 @@
+package killrvideo.validation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+import java.lang.management.ManagementFactory;
+import java.util.UUID;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.sun.management.ThreadMXBean;
+
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.StreamObserver;
+import killrvideo.comments.CommentsServiceOuterClass.CommentOnVideoRequest;
+import killrvideo.common.CommonTypes.TimeUuid;
+import killrvideo.common.CommonTypes.Uuid;
+import killrvideo.video_catalog.VideoCatalogServiceOuterClass.GetVideoPreviewsRequest;
+
+public class KillrVideoInputValidatorTest {
+
+	private final KillrVideoInputValidator validator = new KillrVideoInputValidator();
+
+	@Test
+	public void testEveryViolatedRuleIsReported() {
+		final StreamObserver<?> observer = mock(StreamObserver.class);
+		final CommentOnVideoRequest request = CommentOnVideoRequest.newBuilder()
+				.setVideoId(uuid())
+				.setComment(" ")
+				.build();
+
+		assertFalse(validator.isValid(request, observer));
+
+		final ArgumentCaptor<Throwable> error = ArgumentCaptor.forClass(Throwable.class);
+		verify(observer).onError(error.capture());
+		final Status status = ((StatusRuntimeException) error.getValue()).getStatus();
+		assertEquals(Status.Code.INVALID_ARGUMENT, status.getCode());
+		assertEquals("Validation error for '" + request + "' : \n"
+				+ "\t\tuser id should be provided for comment on video request\n"
+				+ "\t\tcomment id should be provided for comment on video request\n"
+				+ "\t\tcomment text should be provided (not blank) for comment on video request\n",
+				status.getDescription());
+	}
+
+	@Test
+	public void testRepeatedIdsAreChecked() {
+		final StreamObserver<?> observer = mock(StreamObserver.class);
+		assertTrue(validator.isValid(GetVideoPreviewsRequest.newBuilder().addVideoIds(uuid()).build(), observer));
+		verifyZeroInteractions(observer);
+
+		assertFalse(validator.isValid(GetVideoPreviewsRequest.newBuilder()
+				.addVideoIds(uuid())
+				.addVideoIds(Uuid.newBuilder().setValue(""))
+				.build(), observer));
+	}
+
+	@Test
+	public void testValidRequestsAreCheckedWithoutAllocating() {
+		Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof ThreadMXBean);
+		final ThreadMXBean allocations = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(allocations.isThreadAllocatedMemorySupported());
+		allocations.setThreadAllocatedMemoryEnabled(true);
+
+		final StreamObserver<?> observer = mock(StreamObserver.class);
+		final CommentOnVideoRequest request = CommentOnVideoRequest.newBuilder()
+				.setVideoId(uuid())
+				.setUserId(uuid())
+				.setCommentId(TimeUuid.newBuilder().setValue(UUID.randomUUID().toString()))
+				.setComment("Great introduction to data modeling, thanks!")
+				.build();
+		final long threadId = Thread.currentThread().getId();
+
+		/** First calls link the lambdas of the rules **/
+		assertTrue(validator.isValid(request, observer));
+		final long before = allocations.getThreadAllocatedBytes(threadId);
+		boolean valid = true;
+		for (int i = 0; i < 100_000; i++) {
+			valid &= validator.isValid(request, observer);
+		}
+		final long allocated = allocations.getThreadAllocatedBytes(threadId) - before;
+
+		assertTrue(valid);
+		/** Leaves room for the bytes allocated by the measure itself **/
+		assertTrue(allocated + " bytes allocated", allocated < 100_000);
+	}
+
+	private static Uuid uuid() {
+		return Uuid.newBuilder().setValue(UUID.randomUUID().toString()).build();
+	}
+}
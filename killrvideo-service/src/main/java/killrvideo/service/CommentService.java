@@ -10,7 +10,6 @@ import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
 
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
@@ -168,7 +167,7 @@ public class CommentService  {
         ).setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
     }
 
-    public void commentOnVideo(VideoComment request) {
+    public CompletableFuture<Void> commentOnVideo(VideoComment request) {
 
         LOGGER.debug("-----Start comment on video request-----");
 
@@ -201,7 +200,7 @@ public class CommentService  {
         batchStatement.add(bs2);
         batchStatement.setDefaultTimestamp(now.getTime());
 
-        FutureUtils.buildCompletableFuture(dseSession.executeAsync(batchStatement))
+        return FutureUtils.buildCompletableFuture(dseSession.executeAsync(batchStatement))
             .handle((rs, ex) -> {
                 if(rs != null) {
                     eventBus.post(VideoComment.newBuilder()
@@ -220,11 +219,11 @@ public class CommentService  {
                     throw new ApplicationException(exceptionMessage);
                     
                 }
-                return rs;
+                return null;
             });
     }
 
-    public PaginatedResponse<UserComment> getUserComments(final String startingCommentId, final String userId, final String pagingState, final int pageSize) {
+    public CompletableFuture<PaginatedResponse<UserComment>> getUserComments(final String startingCommentId, final String userId, final String pagingState, final int pageSize) {
 
         LOGGER.debug("Start get user comments request");
 
@@ -308,16 +307,12 @@ public class CommentService  {
                     return respone;
 
                 });
-        try {
-			return result.get();
-		} catch (InterruptedException | ExecutionException e) {
-			throw new ApplicationException(e.getMessage());
-		}
+        return result;
 
     }
 
     
-    public PaginatedResponse<VideoComment> getVideoComments(final String startingCommentId, final String videoId, String pagingState, int pageSize) {
+    public CompletableFuture<PaginatedResponse<VideoComment>> getVideoComments(final String startingCommentId, final String videoId, String pagingState, int pageSize) {
 
         LOGGER.debug("Start get video comments request");
 
@@ -407,10 +402,6 @@ public class CommentService  {
                     }
                     return response;
                 });
-        try {
-			return result.get();
-		} catch (InterruptedException | ExecutionException e) {
-			throw new ApplicationException(e.getMessage());
-		}
+        return result;
     }
 }
@@ -5,7 +5,6 @@ import static killrvideo.utils.ExceptionUtils.mergeStackTrace;
 import java.time.Instant;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
 
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
@@ -29,8 +28,6 @@ import killrvideo.entity.VideoRating;
 import killrvideo.entity.VideoRatingByUser;
 import killrvideo.events.CassandraMutationError;
 import killrvideo.exception.ApplicationException;
-import killrvideo.utils.ExecutionStatus;
-import killrvideo.utils.ExecutionStatus.STATUS;
 import killrvideo.utils.FutureUtils;
 import killrvideo.validation.KillrVideoInputValidator;
 
@@ -74,7 +71,7 @@ public class RatingsService {
         ).setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
     }
     
-    public void rateVideo(String videoid,String userid, Integer rating) {
+    public CompletableFuture<Void> rateVideo(String videoid,String userid, Integer rating) {
 
         LOGGER.debug("-----Start rate video request-----");
 
@@ -109,43 +106,31 @@ public class RatingsService {
          * prepared, the first one I did manually in a more traditional sense and in the second one the
          * mapper will prepare the statement for you automagically.
          */
-        CompletableFuture<ExecutionStatus> result = CompletableFuture
+        return CompletableFuture
                 .allOf(
                         FutureUtils.buildCompletableFuture(dseSession.executeAsync(counterUpdateStatement)),
                         FutureUtils.buildCompletableFuture(videoRatingByUserMapper
                                 .saveAsync(new VideoRatingByUser(videoId, userId, rating)))
                 )
                 .handle((rs, ex) -> {
-                	ExecutionStatus exStatus = new ExecutionStatus();
-                    if (ex == null) {
-                        /**
-                         * This eventBus.post() call will make its way to the SuggestedVideoService
-                         * class to handle adding data to our graph recommendation engine
-                         */
-                        eventBus.post(new killrvideo.events.UserRatedVideo(videoid, userid, rating, time));
-                        exStatus.setStatus(STATUS.SUCCESS);
-                        
-                        LOGGER.debug("End rate video request");
-
-                    } else {
+                    if (ex != null) {
                         LOGGER.error("Exception rating video : " + mergeStackTrace(ex));
-                        exStatus.setStatus(STATUS.FAIL);
-                        exStatus.setException(ex);
                         eventBus.post(new CassandraMutationError(videoId, ex));
+                        throw new ApplicationException(ex.getMessage(), ex);
                     }
-                    return exStatus;
+
+                    /**
+                     * This eventBus.post() call will make its way to the SuggestedVideoService
+                     * class to handle adding data to our graph recommendation engine
+                     */
+                    eventBus.post(new killrvideo.events.UserRatedVideo(videoid, userid, rating, time));
+
+                    LOGGER.debug("End rate video request");
+                    return null;
                 });
-        try {
-			ExecutionStatus status = result.get();
-			if(status.getStatus() == STATUS.FAIL) {
-				throw new ApplicationException(status.getException().getMessage());
-			}
-		} catch (InterruptedException | ExecutionException e) {
-			throw new ApplicationException(e.getMessage());
-		}
     }
 
-    public VideoRating getRating(String videoid) {
+    public CompletableFuture<VideoRating> getRating(String videoid) {
 
         LOGGER.debug("-----Start get video rating request-----");
 
@@ -156,45 +141,32 @@ public class RatingsService {
         final UUID videoId = UUID.fromString(videoid);
 
         // videoId matches the partition key set in the VideoRating class
-        CompletableFuture<ExecutionStatus> result = FutureUtils.buildCompletableFuture(videoRatingMapper.getAsync(videoId))
+        return FutureUtils.buildCompletableFuture(videoRatingMapper.getAsync(videoId))
                 .handle((ratings, ex) -> {
-                	ExecutionStatus exStatus = new ExecutionStatus();
                     if (ex != null) {
                         LOGGER.error("Exception when getting video rating : " + mergeStackTrace(ex));
-                        exStatus.setStatus(STATUS.FAIL);
-                        exStatus.setException(ex);
-                    } else {
-                        if (ratings != null) {
-                            exStatus.setData(ratings.toRatingResponse());
-                        }
-                        /**
-                         * If no row is returned (entity == null), we should
-                         * still build a response with 0 as rating value
-                         */
-                        else {
-                        	VideoRating videoRating = new VideoRating();
-                        	videoRating.setVideoid(UUID.fromString(videoid));
-                        	videoRating.setRatingCounter(0l);
-                        	videoRating.setRatingTotal(0l);
-                        	exStatus.setData(videoRating);
-                        }
-                        LOGGER.debug("End get video rating request");
+                        throw new ApplicationException(ex.getMessage(), ex);
+                    }
+
+                    LOGGER.debug("End get video rating request");
+                    if (ratings != null) {
+                        return ratings.toRatingResponse();
                     }
-                    return exStatus;
+
+                    /**
+                     * If no row is returned (entity == null), we should
+                     * still build a response with 0 as rating value
+                     */
+                    VideoRating videoRating = new VideoRating();
+                    videoRating.setVideoid(videoId);
+                    videoRating.setRatingCounter(0l);
+                    videoRating.setRatingTotal(0l);
+                    return videoRating;
                 });
-        try {
-			ExecutionStatus status = result.get();
-			if(status.getStatus() == STATUS.FAIL) {
-				throw new ApplicationException(status.getException().getMessage());
-			}
-			return (VideoRating) status.getData();
-		} catch (InterruptedException | ExecutionException e) {
-			throw new ApplicationException(e.getMessage());
-		}
     }
 
     
-    public UserRatings getUserRating(String videoid, String userid) {
+    public CompletableFuture<UserRatings> getUserRating(String videoid, String userid) {
 
         LOGGER.debug("-----Start get user rating request-----");
 /*
@@ -205,39 +177,24 @@ public class RatingsService {
         final UUID videoId = UUID.fromString(videoid);
         final UUID userId = UUID.fromString(userid);
 
-        CompletableFuture<ExecutionStatus> result = FutureUtils.buildCompletableFuture(videoRatingByUserMapper.getAsync(videoId, userId))
+        return FutureUtils.buildCompletableFuture(videoRatingByUserMapper.getAsync(videoId, userId))
                 .handle((videoRating, ex) -> {
-                	ExecutionStatus exStatus = new ExecutionStatus();
                     if (ex != null) {
                         LOGGER.error("Exception when getting user rating : " + mergeStackTrace(ex));
-                        exStatus.setStatus(STATUS.FAIL);
-                        exStatus.setException(ex);
-
-                    } else {
-                        if (videoRating != null) {
-                        	exStatus.setData(videoRating.toUserRatings());
-                            
-                        }
-                        /**
-                         * If no row is returned (entity == null), we should
-                         * still build a response with 0 as rating value
-                         */
-                        else {
-                        	exStatus.setData(new UserRatings(videoid, userid, 0));
-                        }
-                        LOGGER.debug("End get user rating request");
+                        throw new ApplicationException(ex.getMessage(), ex);
+                    }
+
+                    LOGGER.debug("End get user rating request");
+                    if (videoRating != null) {
+                        return videoRating.toUserRatings();
                     }
-                    return exStatus;
+
+                    /**
+                     * If no row is returned (entity == null), we should
+                     * still build a response with 0 as rating value
+                     */
+                    return new UserRatings(videoid, userid, 0);
                 });
-        try {
-			ExecutionStatus status = result.get();
-			if(status.getStatus() == STATUS.FAIL) {
-				throw new ApplicationException(status.getException().getMessage());
-			}
-			return (UserRatings) status.getData();
-		} catch (InterruptedException | ExecutionException e) {
-			throw new ApplicationException(e.getMessage());
-		}
     }
 
 }
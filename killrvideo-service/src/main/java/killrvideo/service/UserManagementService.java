@@ -5,7 +5,6 @@ import static killrvideo.utils.ExceptionUtils.mergeStackTrace;
 import java.util.Date;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
 
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
@@ -94,7 +93,14 @@ public class UserManagementService {
 
 	}
 
-	public String createUser(String email, String password) {
+	/**
+	 * Create the credentials of a new user
+	 * @param email
+	 * @param password
+	 * @return CompletableFuture of the new userid, failing with an
+	 *         {@link ApplicationException} if the email is already used
+	 */
+	public CompletableFuture<String> createUser(String email, String password) {
 
 		LOGGER.debug("-----Start creating user-----");
 
@@ -114,51 +120,37 @@ public class UserManagementService {
 		final BoundStatement checkEmailQuery = createUser_checkEmailPrepared.bind().setString("email", email)
 				.setString("password", hashedPassword).setUUID("userid", userIdUUID);
 
-		/**
-		 * Note that we have multiple executeAsync() calls in the following
-		 * chain. We check our user_credentials first, if that passes, we move
-		 * onto inserting the user into the users table. Both cases use
-		 * lightweight transactions to ensure we are not duplicating already
-		 * existing users within the database.
-		 */
-		CompletableFuture<ResultSet> checkEmailFuture = FutureUtils
+		return FutureUtils
 				.buildCompletableFuture(dseSession.executeAsync(checkEmailQuery))
-				/**
-				 * I use the *Async() version of .handle below because I am
-				 * chaining multiple async futures. In testing we found that
-				 * chains like this would cause timeouts possibly from
-				 * starvation.
-				 */
-				.handleAsync((rs, ex) -> {
-					if (rs != null) {
-						/**
-						 * Check the result of the LWT, if it's false the email
-						 * already exists within our user_credentials table and
-						 * must not be duplicated. Note the use of wasApplied(),
-						 * this is a convenience method described here ->
-						 * http://docs.datastax.com/en/drivers/java/3.2/com/datastax/driver/core/ResultSet.html#wasApplied--
-						 * that allows an easy check of a conditional statement.
-						 */
-						if (!rs.wasApplied()) {
-							throw new ApplicationException(exceptionMessage);
-						}
-
-					} else { // throw in case our result set is null
+				.handle((rs, ex) -> {
+					if (ex != null) {
+						LOGGER.error("Exception creating user : " + mergeStackTrace(ex));
+						throw new ApplicationException("Error occoured while creating user", ex);
+					}
+
+					/**
+					 * Check the result of the LWT, if it's false the email
+					 * already exists within our user_credentials table and
+					 * must not be duplicated. Note the use of wasApplied(),
+					 * this is a convenience method described here ->
+					 * http://docs.datastax.com/en/drivers/java/3.2/com/datastax/driver/core/ResultSet.html#wasApplied--
+					 * that allows an easy check of a conditional statement.
+					 */
+					if (rs == null || !rs.wasApplied()) {
 						throw new ApplicationException(exceptionMessage);
 					}
 
-					return rs;
+					LOGGER.debug("End creating user");
+					return userIdUUID.toString();
 				});
-
-		try {
-			checkEmailFuture.get();
-		} catch (InterruptedException | ExecutionException e) {
-			throw new ApplicationException("Error occoured while creating user", e);
-		}
-		return userIdUUID.toString();
 	}
 
-	public void updateUser(User user) {
+	/**
+	 * Insert the profile of a user
+	 * @param user
+	 * @return CompletableFuture completing once the profile is written
+	 */
+	public CompletableFuture<Void> updateUser(User user) {
 
 		LOGGER.debug("-----Start updating user-----");
 
@@ -169,19 +161,19 @@ public class UserManagementService {
 				.setString("lastname", user.getLastName()).setString("email", user.getEmail())
 				.setTimestamp("created_date", now);
 
-		CompletableFuture<ResultSet> insertUserFuture = FutureUtils
-				.buildCompletableFuture(dseSession.executeAsync(insertUser));
-
 		/**
 		 * thenAccept in the same thread pool (not using thenAcceptAsync())
 		 */
-		insertUserFuture.thenAccept(rs -> {
-			if (rs != null) {
-				/**
-				 * Check to see if userInsert was applied. userId should be
-				 * unique, if not, the insert should fail
-				 */
-				if (rs.wasApplied()) {
+		return FutureUtils
+				.buildCompletableFuture(dseSession.executeAsync(insertUser))
+				.thenAccept(rs -> {
+					/**
+					 * Check to see if userInsert was applied. userId should be
+					 * unique, if not, the insert should fail
+					 */
+					if (rs == null || !rs.wasApplied()) {
+						throw new ApplicationException("Error occoured while updating the user");
+					}
 					LOGGER.debug("Updated user profile");
 
 					/**
@@ -194,103 +186,98 @@ public class UserManagementService {
 					eventBus.post(user);
 
 					LOGGER.debug("End updating user");
-
-				} else {
-					throw new ApplicationException("Error occoured while updating the user");
-				}
-			}
-		});
+				});
 	}
 
-	public String verifyCredentials(String email, String password) {
+	/**
+	 * Check the password of a user
+	 * @param email
+	 * @param password
+	 * @return CompletableFuture of the userid, or of null if the email or the
+	 *         password is not correct
+	 */
+	public CompletableFuture<String> verifyCredentials(String email, String password) {
 
 		LOGGER.debug("------Start verifying user credentials------");
 
 		final BoundStatement getUserCredentialsQuery = getUser_credentials.bind().setString("email", email);
 
-		CompletableFuture<User> checkEmailFuture = FutureUtils
-				.buildCompletableFuture(dseSession.executeAsync(getUserCredentialsQuery)).handleAsync((rs, ex) -> {
-					User userUser = null;
-					try {
-
-						if (rs == null) {
-							return null;
-						}
-
-						Row row = rs.one();
-						if (row != null) {
-							userUser = new User();
-							userUser.setEmail(row.getString("email"));
-							userUser.setPassword(row.getString("password"));
-							userUser.setUserId(row.getUUID("userid").toString());
-						}
-
-					} catch (Throwable t) {
-						final String message = t.getMessage();
-						LOGGER.debug(this.getClass().getName() + ".check credentials() " + message);
-						throw new ApplicationException(t);
+		/**
+		 * Hashing the password is CPU bound, it is done with handleAsync()
+		 * to keep it off the driver I/O threads
+		 */
+		return FutureUtils
+				.buildCompletableFuture(dseSession.executeAsync(getUserCredentialsQuery))
+				.handleAsync((rs, ex) -> {
+					if (ex != null) {
+						LOGGER.error("Exception verifying user credentials : " + mergeStackTrace(ex));
+						throw new ApplicationException("Error occoured while verifing credentials", ex);
+					}
+
+					final Row row = rs == null ? null : rs.one();
+					if (row == null || !HashUtils.isPasswordValid(password, row.getString("password"))) {
+						LOGGER.error("Email address or password are not correct.");
+						return null;
 					}
-					return userUser;
+
+					LOGGER.debug("End verifying user credentials");
+					return row.getUUID("userid").toString();
 				});
+	}
 
-		User userUser = null;
-		try {
-			userUser = checkEmailFuture.get();
-		} catch (InterruptedException | ExecutionException e) {
-			throw new ApplicationException("Error occoured while verifing credentials", e);
+	/**
+	 * Read the profile of a user
+	 * @param userId
+	 * @return CompletableFuture of the profile, or of null if the user does not exist
+	 */
+	public CompletableFuture<User> getUser(String userId) {
+		final BoundStatement getUser = getUser_getUsersPrepared.bind().setUUID("userid", UUID.fromString(userId));
 
-		}
-		if (userUser == null || !HashUtils.isPasswordValid(password, userUser.getPassword())) {
-			final String errorMessage = "Email address or password are not correct.";
-			LOGGER.error(errorMessage);
-			return null;
-		}
-		return userUser.getUserId();
+		return FutureUtils
+				.buildCompletableFuture(dseSession.executeAsync(getUser))
+				.handle((rs, ex) -> {
+					if (ex != null) {
+						LOGGER.error("Exception getting user : " + mergeStackTrace(ex));
+						throw new ApplicationException("Error occoured while retrieving user ", ex);
+					}
 
-	}
+					final Row row = rs == null ? null : rs.one();
+					if (row == null) {
+						return null;
+					}
 
-	public User getUser(String userId) {
-		final BoundStatement getUser = getUser_getUsersPrepared.bind().setUUID("userid", UUID.fromString(userId));
-		CompletableFuture<ResultSet> selectUserFuture = FutureUtils
-				.buildCompletableFuture(dseSession.executeAsync(getUser));
-		ResultSet rs;
-		try {
-			rs = selectUserFuture.get();
-		} catch (InterruptedException | ExecutionException e) {
-			throw new ApplicationException("Error occoured while retrieving user ", e);
-		}
-		if (rs == null) {
-			return null;
-		}
-		Row row = rs.one();
-		User profile = new User();
-		profile.setUserId(row.getUUID("userid").toString());
-		profile.setFirstName(row.getString("firstname"));
-		profile.setLastName(row.getString("lastname"));
-		profile.setEmail(row.getString("email"));
-		profile.setCreatedAt(row.getTimestamp("created_date"));
-		return profile;
+					User profile = new User();
+					profile.setUserId(row.getUUID("userid").toString());
+					profile.setFirstName(row.getString("firstname"));
+					profile.setLastName(row.getString("lastname"));
+					profile.setEmail(row.getString("email"));
+					profile.setCreatedAt(row.getTimestamp("created_date"));
+					return profile;
+				});
 	}
 
-	boolean deleteUser(String userId, String email) {
+	CompletableFuture<Boolean> deleteUser(String userId, String email) {
 		final BoundStatement deleteUser = deleteUserPrepared.bind().setUUID("userid", UUID.fromString(userId));
 
 		final BoundStatement deleteUserCredentials = deleteUserCredentialsPrepared.bind().setString("email", email);
 
-		try {
-			CompletableFuture<ResultSet> deleteUserFuture = FutureUtils
-					.buildCompletableFuture(dseSession.executeAsync(deleteUser));
-			ResultSet rs;
-
-			rs = deleteUserFuture.get();
-			CompletableFuture<ResultSet> deleteUserCredentialFuture = FutureUtils
-					.buildCompletableFuture(dseSession.executeAsync(deleteUserCredentials));
-			ResultSet rs1 = deleteUserCredentialFuture.get();
-			return rs.wasApplied() && rs1.wasApplied();
+		final CompletableFuture<ResultSet> deleteUserFuture = FutureUtils
+				.buildCompletableFuture(dseSession.executeAsync(deleteUser));
 
-		} catch (InterruptedException | ExecutionException e) {
-			throw new ApplicationException("Error occoured while deleting user ", e);
-		}
+		final CompletableFuture<ResultSet> deleteUserCredentialFuture = FutureUtils
+				.buildCompletableFuture(dseSession.executeAsync(deleteUserCredentials));
 
+		/**
+		 * Both deletes are independent, they run concurrently
+		 */
+		return deleteUserFuture
+				.thenCombine(deleteUserCredentialFuture, (rs, rs1) -> rs.wasApplied() && rs1.wasApplied())
+				.handle((deleted, ex) -> {
+					if (ex != null) {
+						LOGGER.error("Exception deleting user : " + mergeStackTrace(ex));
+						throw new ApplicationException("Error occoured while deleting user ", ex);
+					}
+					return deleted;
+				});
 	}
 }
@@ -16,7 +16,6 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 import java.util.stream.LongStream;
 
@@ -148,7 +147,12 @@ public class VideoCatalogService {
 
 	}
 
-	public void submitYouTubeVideo(Video request) {
+	/**
+	 * @param request
+	 * @return CompletableFuture completing once the video is written, failing
+	 *         with an {@link ApplicationException} if it could not be
+	 */
+	public CompletableFuture<Void> submitYouTubeVideo(Video request) {
 
 		LOGGER.debug("-----Start submitting youtube video-----");
 
@@ -187,7 +191,7 @@ public class VideoCatalogService {
 		batchStatement.add(insertLatestVideo);
 		batchStatement.setDefaultTimestamp(now.getTime());
 
-		CompletableFuture<ResultSet> insertUserFuture = FutureUtils
+		return FutureUtils
 				.buildCompletableFuture(dseSession.executeAsync(batchStatement)).handle((rs, ex) -> {
 					if (rs != null) {
 						/**
@@ -221,72 +225,71 @@ public class VideoCatalogService {
 						LOGGER.error("Exception submitting youtube video : " + mergeStackTrace(ex));
 
 						eventBus.post(new CassandraMutationError(request, ex));
-
+						throw new ApplicationException("Error occoured while submitting youtube video", ex);
 					}
-					return rs;
+					return null;
 				});
 	}
 
-	public Video getVideo(String reqVideoId) {
+	public CompletableFuture<Video> getVideo(String reqVideoId) {
 
 		LOGGER.debug("-----Start getting video-----");
 
 		if (reqVideoId == null) {
-			return null;
+			return CompletableFuture.completedFuture(null);
 		}
 
 		final UUID videoId = UUID.fromString(reqVideoId);
 
 		final BoundStatement selVideo = select_video.bind().setUUID("vid", videoId);
-		CompletableFuture<ResultSet> selectUserFuture = FutureUtils
-				.buildCompletableFuture(dseSession.executeAsync(selVideo));
-		ResultSet rs;
-		try {
-			rs = selectUserFuture.get();
-		} catch (InterruptedException | ExecutionException e) {
-			throw new ApplicationException("Error occoured while retrieving user ", e);
-		}
-		if (rs == null) {
-			return null;
-		}
-		Row row = rs.one();
-		Video video = new Video();
-		video.setVideoId(row.getUUID("videoid"));
-		video.setAddedDate(row.getTimestamp("added_date"));
-		video.setDescription(row.getString("description"));
-		video.setLocation(row.getString("location"));
-		video.setLocationType(VideoLocationType.valueOf(row.getString("location_type")));
-		video.setName(row.getString("name"));
-		video.setPreviewImageLocation(row.getString("preview_image_location"));
-		video.setTags(row.getSet("tags", String.class));
-		video.setUserId(row.getUUID("userid"));
-
-		LOGGER.debug("End getting video");
-
-		return video;
+		return FutureUtils
+				.buildCompletableFuture(dseSession.executeAsync(selVideo))
+				.handle((rs, ex) -> {
+					if (ex != null) {
+						LOGGER.error("Exception getting video : " + mergeStackTrace(ex));
+						throw new ApplicationException("Error occoured while retrieving video ", ex);
+					}
+
+					final Row row = rs == null ? null : rs.one();
+					if (row == null) {
+						return null;
+					}
+
+					Video video = new Video();
+					video.setVideoId(row.getUUID("videoid"));
+					video.setAddedDate(row.getTimestamp("added_date"));
+					video.setDescription(row.getString("description"));
+					video.setLocation(row.getString("location"));
+					video.setLocationType(VideoLocationType.valueOf(row.getString("location_type")));
+					video.setName(row.getString("name"));
+					video.setPreviewImageLocation(row.getString("preview_image_location"));
+					video.setTags(row.getSet("tags", String.class));
+					video.setUserId(row.getUUID("userid"));
+
+					LOGGER.debug("End getting video");
+
+					return video;
+				});
 	}
 
-	public List<Video> getVideoPreviews(List<String> videoIds) {
+	public CompletableFuture<List<Video>> getVideoPreviews(List<String> videoIds) {
 
 		LOGGER.debug("-----Start getting video preview-----");
 
 		if (videoIds == null || videoIds.isEmpty()) {
 			LOGGER.warn("No video id provided for video preview");
-			return null;
+			return CompletableFuture.completedFuture(null);
 		}
 
-		try {
-			/**
-			 * Fire a list of async SELECT, one for each video id
-			 */
-			final List<Video> listVideos = videoIds.stream().map(uuid -> getVideo(uuid)).collect(toList());
-
-			return listVideos;
+		/**
+		 * Fire a list of async SELECT, one for each video id, and gather them
+		 * without blocking once they are all done
+		 */
+		final List<CompletableFuture<Video>> videoFutures = videoIds.stream().map(this::getVideo).collect(toList());
 
-		} catch (Exception ex) {
-			LOGGER.error("Exception getting video preview : " + mergeStackTrace(ex));
-		}
-		return null;
+		return CompletableFuture
+				.allOf(videoFutures.toArray(new CompletableFuture[videoFutures.size()]))
+				.thenApply(x -> videoFutures.stream().map(CompletableFuture::join).collect(toList()));
 	}
 
 	/**
@@ -551,7 +554,7 @@ public class VideoCatalogService {
 			 * }); }
 			 */
 
-	public UserVideoPreviews getUserVideoPreviews(String userId, String startingVideoId, Date startingAddedDate, String pagingState, int pageSize) {
+	public CompletableFuture<UserVideoPreviews> getUserVideoPreviews(String userId, String startingVideoId, Date startingAddedDate, String pagingState, int pageSize) {
 
 		LOGGER.debug("-----Start getting user video preview-----");
 
@@ -599,43 +602,47 @@ public class VideoCatalogService {
 		 * convenience the mapper provides.
 		 */
 		
-		CompletableFuture<ResultSet> getUserVideosFuture = FutureUtils
-				.buildCompletableFuture(dseSession.executeAsync(bound));
-		ResultSet rs;
-		try {
-			rs = getUserVideosFuture.get();
-		} catch (InterruptedException | ExecutionException e) {
-			throw new ApplicationException("Error occoured while retrieving user ", e);
-		}
-		if (rs == null) {
-			return null;
-		}
+		return FutureUtils
+				.buildCompletableFuture(dseSession.executeAsync(bound))
+				.handle((rs, ex) -> {
+					if (ex != null) {
+						LOGGER.error("Exception getting user video preview : " + mergeStackTrace(ex));
+						throw new ApplicationException("Error occoured while retrieving user ", ex);
+					}
+					if (rs == null) {
+						return null;
+					}
+					return toUserVideoPreviews(userId, rs);
+				});
+	}
+
+	private UserVideoPreviews toUserVideoPreviews(String userId, ResultSet rs) {
 		int availableWithOutFetch = rs.getAvailableWithoutFetching();
 		UserVideoPreviews _userVideoPreviews = new UserVideoPreviews();
 		_userVideoPreviews.setUserId(userId);
 		List<VideoPreview> previewList = new ArrayList<>();
 		_userVideoPreviews.setPreviewList(previewList);
-		Iterator<Row> rowIterator = rs.iterator();
 
-		while(rowIterator.hasNext()) {
+		/**
+		 * Only iterate over the rows of the current page, iterating past them
+		 * would fetch the next page synchronously
+		 */
+		Iterator<Row> rowIterator = rs.iterator();
+		while (availableWithOutFetch > 0 && rowIterator.hasNext()) {
 			Row row = rowIterator.next();
-			 VideoPreview videoPreview = VideoPreview.newBuilder()
-			.setAddedDate(row.getTimestamp("added_date"))
-			.setVideoId(row.getUUID("Videoid").toString())
-			.setName(row.getString("name"))
-			.setPreviewImageLocation(row.getString("preview_image_location")).build();
+			VideoPreview videoPreview = VideoPreview.newBuilder()
+					.setAddedDate(row.getTimestamp("added_date"))
+					.setVideoId(row.getUUID("Videoid").toString())
+					.setName(row.getString("name"))
+					.setPreviewImageLocation(row.getString("preview_image_location")).build();
 			previewList.add(videoPreview);
-            if (--availableWithOutFetch == 0) {
-                break;
-            }
-	
+			availableWithOutFetch--;
 		}
 		Optional<String> _currPagingState = Optional.ofNullable(rs.getExecutionInfo().getPagingState())
 				.map(PagingState::toString);
-				_userVideoPreviews.setPagingState(_currPagingState.orElse(""));
-				
-		return _userVideoPreviews;
+		_userVideoPreviews.setPagingState(_currPagingState.orElse(""));
 
+		return _userVideoPreviews;
 	}
 
 	class CustomPagingState {
@@ -0,0 +1,33 @@
+package killrvideo.service.rest;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
+import javax.ws.rs.container.AsyncResponse;
+
+/**
+ * Bridges the CompletableFuture returned by the services to a suspended
+ * JAX-RS request, so that no container thread waits on Cassandra
+ */
+final class AsyncResponses {
+
+	private AsyncResponses() {
+	}
+
+	/**
+	 * Resume the request once the stage completes, with its value or with
+	 * the exception that failed it. A null value resumes with 204 No Content,
+	 * as a resource method returning null would.
+	 * @param asyncResponse suspended request
+	 * @param stage
+	 */
+	static <T> void resume(AsyncResponse asyncResponse, CompletionStage<T> stage) {
+		stage.whenComplete((value, ex) -> {
+			if (ex != null) {
+				asyncResponse.resume(ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex);
+			} else {
+				asyncResponse.resume(value);
+			}
+		});
+	}
+}
@@ -9,39 +9,45 @@ import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 
 import org.springframework.stereotype.Component;
 
 import killrvideo.entity.User;
 import killrvideo.service.UserManagementService;
 
-@Component	
+/**
+ * Every method suspends the request and resumes it from the driver callback,
+ * the container thread is released as soon as the query is sent
+ */
+@Component
 @Path("/api/users")
 public class UserResource {
 	@Inject
 	private UserManagementService userMgmtService;
-	
+
 	@GET
-	public String authenticate(@HeaderParam(value = "Authorization") String authenticationHeader ) {
-		System.out.println(authenticationHeader);
+	public void authenticate(@HeaderParam(value = "Authorization") String authenticationHeader,
+			@Suspended AsyncResponse asyncResponse) {
 		String credentials = authenticationHeader.split(" ")[1];
 		String decodedCredentials = new String(Base64.getDecoder().decode(credentials));
 		String uNamePassword[] = decodedCredentials.split(":");
-		
-		return userMgmtService.verifyCredentials(uNamePassword[0], uNamePassword[1]);
+
+		AsyncResponses.resume(asyncResponse, userMgmtService.verifyCredentials(uNamePassword[0], uNamePassword[1]));
 	}
-	
+
 	@Path("/{userId}")
 	@Produces("application/json")
 	@GET
-	public User getProfile(@PathParam(value = "userId") String userId) {
-		return userMgmtService.getUser(userId);
+	public void getProfile(@PathParam(value = "userId") String userId, @Suspended AsyncResponse asyncResponse) {
+		AsyncResponses.resume(asyncResponse, userMgmtService.getUser(userId));
 	}
-	
+
 	@Path("/{userId}")
 	@POST
-	public void updateProfile(User user ) {
-		userMgmtService.updateUser(user);
+	public void updateProfile(User user, @Suspended AsyncResponse asyncResponse) {
+		AsyncResponses.resume(asyncResponse, userMgmtService.updateUser(user));
 	}
-	
+
 }
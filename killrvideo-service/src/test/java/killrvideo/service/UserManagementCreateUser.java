@@ -27,9 +27,9 @@ public class UserManagementCreateUser {
 		profile.setFirstName("chandra1");
 		profile.setLastName("jayaram1");
 		profile.setPassword("testPassword");
-		String userId = userManagementService.createUser("chandraoops@gmail.com","testPassword");
+		String userId = userManagementService.createUser("chandraoops@gmail.com","testPassword").get();
 		profile.setUserId(userId);
-		userManagementService.updateUser(profile);
+		userManagementService.updateUser(profile).get();
 	}
 	
 	
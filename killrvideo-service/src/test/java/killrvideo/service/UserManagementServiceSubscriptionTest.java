@@ -33,20 +33,20 @@ public class UserManagementServiceSubscriptionTest {
 		profile.setFirstName("chandra");
 		profile.setLastName("jayaram");
 		profile.setPassword("testPassword");
-		this.userId = userManagementService.createUser("chandraoops@testmail1.com","testPassword");
+		this.userId = userManagementService.createUser("chandraoops@testmail1.com","testPassword").get();
 		profile.setUserId(userId);
-		userManagementService.updateUser(profile);
+		userManagementService.updateUser(profile).get();
 	}
 	
 	@After
 	public void tearDown() throws InterruptedException, ExecutionException {
-		boolean wasDeleted = userManagementService.deleteUser(userId,"chandraoops@testmail1.com");
+		boolean wasDeleted = userManagementService.deleteUser(userId,"chandraoops@testmail1.com").get();
 		assertEquals(wasDeleted, true);
 	}
 
 	@Test
 	public void testGetUser() throws InterruptedException, ExecutionException {
-		User createdUser = userManagementService.getUser(userId);
+		User createdUser = userManagementService.getUser(userId).get();
 		assertNotNull(createdUser);
 	}
 
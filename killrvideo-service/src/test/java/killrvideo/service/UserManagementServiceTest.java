@@ -33,26 +33,26 @@ public class UserManagementServiceTest {
 		profile.setFirstName("chandra");
 		profile.setLastName("jayaram");
 		profile.setPassword("testPassword");
-		this.userId = userManagementService.createUser("chandraoops@testmail1.com","testPassword");
+		this.userId = userManagementService.createUser("chandraoops@testmail1.com","testPassword").get();
 		profile.setUserId(userId);
-		userManagementService.updateUser(profile);
+		userManagementService.updateUser(profile).get();
 	}
 	
 	@After
 	public void tearDown() throws InterruptedException, ExecutionException {
-		boolean wasDeleted = userManagementService.deleteUser(userId,"chandraoops@testmail.com");
+		boolean wasDeleted = userManagementService.deleteUser(userId,"chandraoops@testmail.com").get();
 		assertEquals(wasDeleted, true);
 	}
 
 	@Test
 	public void testGetUser() throws InterruptedException, ExecutionException {
-		User createdUser = userManagementService.getUser(userId);
+		User createdUser = userManagementService.getUser(userId).get();
 		assertNotNull(createdUser);
 	}
 
 	@Test
 	public void testVerifyCredentials() throws InterruptedException, ExecutionException {
-		String successUserId = userManagementService.verifyCredentials("chandraoops@testmail.com", "testPassword");
+		String successUserId = userManagementService.verifyCredentials("chandraoops@testmail.com", "testPassword").get();
 		assertEquals(successUserId, userId);
 	}
 }
@@ -29,14 +29,14 @@ public class VideoCatalogServiceTest {
 		Date startingAddedDate = null;
 		String pagingState = null;
 		int pageSize = 5;
-		UserVideoPreviews userVideoPreviews = videoCatalogService.getUserVideoPreviews(userId, startingVideoId, startingAddedDate, pagingState, pageSize);
+		UserVideoPreviews userVideoPreviews = videoCatalogService.getUserVideoPreviews(userId, startingVideoId, startingAddedDate, pagingState, pageSize).get();
 		print(userVideoPreviews);
 		VideoPreview userVideo = userVideoPreviews.getPreviewList().get(userVideoPreviews.getPreviewList().size()-1);
-		userVideoPreviews = videoCatalogService.getUserVideoPreviews(userId, startingVideoId, startingAddedDate, userVideoPreviews.getPagingState(), pageSize);
+		userVideoPreviews = videoCatalogService.getUserVideoPreviews(userId, startingVideoId, startingAddedDate, userVideoPreviews.getPagingState(), pageSize).get();
 		print(userVideoPreviews);
 		
 		userVideo = userVideoPreviews.getPreviewList().get(userVideoPreviews.getPreviewList().size()-1);
-		userVideoPreviews = videoCatalogService.getUserVideoPreviews(userId, startingVideoId, startingAddedDate, userVideoPreviews.getPagingState(), pageSize);
+		userVideoPreviews = videoCatalogService.getUserVideoPreviews(userId, startingVideoId, startingAddedDate, userVideoPreviews.getPagingState(), pageSize).get();
 		print(userVideoPreviews);
 
 		